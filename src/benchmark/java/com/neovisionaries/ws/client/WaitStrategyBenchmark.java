@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.io.DataInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Latency between queueing a frame by {@link WebSocket#sendBinary(byte[])}
+ * and receiving it at the other end of the socket, for each {@link
+ * WaitStrategy}.
+ *
+ * <p>
+ * The server counts the frames it has read, and the benchmark thread spins
+ * until the count changes so that its own wake-up is not measured. A frame
+ * is queued only after the previous one has arrived, so the writing thread
+ * is usually waiting as the strategy specifies when a frame is queued.
+ * </p>
+ *
+ * <p>
+ * Run it on a machine with 3 or more processors. Otherwise, the writing
+ * thread which spins competes with the benchmark thread and the server
+ * thread, and the results show nothing but the competition.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WaitStrategyBenchmark
+{
+    private static final byte[] PAYLOAD = new byte[16];
+
+
+    @Param({ "BLOCKING", "YIELDING", "BUSY_SPIN_THEN_PARK", "TIMED_PARK" })
+    public String strategy;
+
+    private final AtomicLong mReceived = new AtomicLong();
+    private ServerSocket mServerSocket;
+    private WebSocket mWebSocket;
+
+
+    /**
+     * Server which reads frames from the client and counts them.
+     */
+    private class Server extends Thread
+    {
+        Server()
+        {
+            setDaemon(true);
+        }
+
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                Socket socket = mServerSocket.accept();
+                socket.setTcpNoDelay(true);
+
+                DataInputStream input = new DataInputStream(socket.getInputStream());
+                ServerUtil.acceptHandshake(input, socket.getOutputStream());
+
+                while (true)
+                {
+                    input.readUnsignedByte();
+                    ServerUtil.readPayload(input);
+                    mReceived.incrementAndGet();
+                }
+            }
+            catch (Exception e)
+            {
+                // The connection has been closed.
+            }
+        }
+    }
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        new Server().start();
+
+        mWebSocket = new WebSocketFactory()
+            .createSocket("ws://127.0.0.1:" + mServerSocket.getLocalPort())
+            .setWaitStrategy(WaitStrategy.valueOf(strategy))
+            .connect();
+
+        mWebSocket.getSocket().setTcpNoDelay(true);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        mWebSocket.disconnect();
+        mServerSocket.close();
+    }
+
+
+    @Benchmark
+    public long queueToSocket()
+    {
+        long count = mReceived.get();
+
+        mWebSocket.sendBinary(PAYLOAD);
+
+        long received;
+
+        while ((received = mReceived.get()) == count)
+        {
+        }
+
+        return received;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * JVM-wide record of recent connect RTTs and failures for each IP address.
+ *
+ * <p>
+ * {@link SocketInitiator} uses this to let the historically fastest healthy
+ * address race first, to demote addresses that have failed recently, and
+ * optionally to derive the <i>happy eyeballs</i> fallback delay from the
+ * observed RTTs (<a href="https://tools.ietf.org/html/rfc8305#section-5"
+ * >RFC 8305, 5. Connection Attempts</a>).
+ * </p>
+ */
+class AddressScoreboard
+{
+    private static final int MAX_ENTRIES = 1024;
+    private static final int MAX_SAMPLES = 16;
+    private static final long MIN_DEMOTION = 1000L;
+    private static final long MAX_DEMOTION = 60 * 1000L;
+    private static final int MIN_FALLBACK_DELAY = 100;
+    private static final int MAX_FALLBACK_DELAY = 2000;
+    private static final AddressScoreboard sInstance = new AddressScoreboard();
+
+    private final Map<InetAddress, Score> mScores;
+
+
+    private static class Score
+    {
+        // Recent connect RTTs in milliseconds (ring buffer).
+        final long[] samples = new long[MAX_SAMPLES];
+        int sampleCount;
+        int nextSample;
+
+        // Smoothed RTT in milliseconds.
+        long smoothedRtt;
+
+        // The number of consecutive failures.
+        int failures;
+
+        // The address is demoted until this time.
+        long demotedUntil;
+
+
+        void addSample(long rtt)
+        {
+            samples[nextSample] = rtt;
+            nextSample = (nextSample + 1) % MAX_SAMPLES;
+
+            if (sampleCount < MAX_SAMPLES)
+            {
+                ++sampleCount;
+            }
+
+            // Same weight as the smoothed RTT of TCP (RFC 6298).
+            smoothedRtt = (sampleCount == 1) ? rtt : (smoothedRtt * 7 + rtt) / 8;
+        }
+
+
+        long percentile(int percent)
+        {
+            long[] sorted = new long[sampleCount];
+            System.arraycopy(samples, 0, sorted, 0, sampleCount);
+            Arrays.sort(sorted);
+
+            return sorted[(sampleCount - 1) * percent / 100];
+        }
+    }
+
+
+    private static class Candidate
+    {
+        final InetAddress address;
+
+        // 0: measured and healthy, 1: unknown, 2: demoted.
+        final int rank;
+
+        // The smoothed RTT (rank 0) or the end of the demotion (rank 2).
+        final long key;
+
+
+        Candidate(InetAddress address, int rank, long key)
+        {
+            this.address = address;
+            this.rank    = rank;
+            this.key     = key;
+        }
+    }
+
+
+    private static final Comparator<Candidate> CANDIDATE_COMPARATOR = new Comparator<Candidate>() {
+        public int compare(Candidate left, Candidate right)
+        {
+            if (left.rank != right.rank)
+            {
+                return left.rank - right.rank;
+            }
+
+            return (left.key < right.key) ? -1 : (left.key == right.key) ? 0 : 1;
+        }
+    };
+
+
+    AddressScoreboard()
+    {
+        mScores = new LinkedHashMap<InetAddress, Score>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<InetAddress, Score> eldest)
+            {
+                // Forget the least recently used address.
+                return MAX_ENTRIES < size();
+            }
+        };
+    }
+
+
+    static AddressScoreboard getInstance()
+    {
+        return sInstance;
+    }
+
+
+    /**
+     * Record the time taken to connect to the address.
+     */
+    synchronized void recordSuccess(InetAddress address, long rtt)
+    {
+        Score score = getScore(address);
+
+        score.addSample(rtt);
+        score.failures     = 0;
+        score.demotedUntil = 0;
+    }
+
+
+    /**
+     * Record a failure to connect to the address. The address is demoted
+     * for a period that doubles with each consecutive failure.
+     */
+    synchronized void recordFailure(InetAddress address)
+    {
+        Score score = getScore(address);
+
+        score.failures += 1;
+
+        long demotion = MIN_DEMOTION << Math.min(score.failures - 1, 6);
+
+        score.demotedUntil = System.currentTimeMillis() + Math.min(demotion, MAX_DEMOTION);
+    }
+
+
+    private Score getScore(InetAddress address)
+    {
+        Score score = mScores.get(address);
+
+        if (score == null)
+        {
+            score = new Score();
+            mScores.put(address, score);
+        }
+
+        return score;
+    }
+
+
+    /**
+     * Sort the addresses. Healthy addresses with measured RTTs come first
+     * in ascending order of the smoothed RTT, then addresses without
+     * records in the given order, and then demoted addresses.
+     */
+    synchronized InetAddress[] sort(InetAddress[] addresses)
+    {
+        long now = System.currentTimeMillis();
+        Candidate[] candidates = new Candidate[addresses.length];
+
+        for (int i = 0; i < addresses.length; ++i)
+        {
+            InetAddress address = addresses[i];
+            Score score = mScores.get(address);
+
+            if (score != null && now < score.demotedUntil)
+            {
+                candidates[i] = new Candidate(address, 2, score.demotedUntil);
+            }
+            else if (score != null && score.sampleCount != 0)
+            {
+                candidates[i] = new Candidate(address, 0, score.smoothedRtt);
+            }
+            else
+            {
+                candidates[i] = new Candidate(address, 1, 0);
+            }
+        }
+
+        // The sort is stable, so the given order is kept for ties.
+        Arrays.sort(candidates, CANDIDATE_COMPARATOR);
+
+        InetAddress[] sorted = new InetAddress[addresses.length];
+
+        for (int i = 0; i < candidates.length; ++i)
+        {
+            sorted[i] = candidates[i].address;
+        }
+
+        return sorted;
+    }
+
+
+    /**
+     * Get the delay before the next address starts racing after a racer
+     * for the given address has started. The 90th percentile of the recent
+     * RTTs is used, clamped to the range recommended by RFC 8305. If no RTT
+     * has been recorded, {@code defaultDelay} is returned.
+     */
+    synchronized int getFallbackDelay(InetAddress address, int defaultDelay)
+    {
+        Score score = mScores.get(address);
+
+        if (score == null || score.sampleCount == 0)
+        {
+            return defaultDelay;
+        }
+
+        long delay = score.percentile(90);
+
+        return (int)Math.max(MIN_FALLBACK_DELAY, Math.min(delay, MAX_FALLBACK_DELAY));
+    }
+}
@@ -69,6 +69,15 @@ class ByteArray
     }
 
 
+    /**
+     * The capacity of the internal buffer.
+     */
+    public int capacity()
+    {
+        return mBuffer.capacity();
+    }
+
+
     /**
      * Get a byte at the index.
      */
@@ -227,6 +236,22 @@ class ByteArray
     }
 
 
+    /**
+     * Discard data after the given length.
+     */
+    public void truncate(int length)
+    {
+        if (length < 0 || mLength < length)
+        {
+            throw new IllegalArgumentException(
+                    String.format("Bad length: length=%d, current length=%d", length, mLength));
+        }
+
+        mBuffer.position(length);
+        mLength = length;
+    }
+
+
     public void shrink(int size)
     {
         if (mBuffer.capacity() <= size)
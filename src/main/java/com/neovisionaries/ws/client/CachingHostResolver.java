@@ -0,0 +1,447 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * {@link HostResolver} which caches results of another resolver.
+ *
+ * <ul>
+ * <li>Successful results are cached for {@linkplain #setPositiveTtl(long)
+ *     the positive TTL}, and failures are cached for {@linkplain
+ *     #setNegativeTtl(long) the negative TTL}.
+ * <li>When a cached successful result is used after 80% of its TTL has
+ *     elapsed, the hostname is resolved again in a background daemon
+ *     thread, so that connections do not wait for the resolution when
+ *     the entry expires.
+ * <li>Concurrent lookups for the same hostname are coalesced. Only one
+ *     thread calls the underlying resolver and the others wait for its
+ *     result.
+ * </ul>
+ *
+ * <p>
+ * The instance returned by {@link #getDefault()} is shared by all {@link
+ * WebSocketFactory} instances which have no {@link HostResolver} set.
+ * It resolves hostnames by {@link InetAddress#getAllByName(String)}.
+ * </p>
+ *
+ * @since 2.10
+ */
+public class CachingHostResolver implements HostResolver
+{
+    private static final long DEFAULT_POSITIVE_TTL = 60 * 1000L;
+    private static final long DEFAULT_NEGATIVE_TTL = 10 * 1000L;
+    private static final int DEFAULT_MAX_ENTRIES = 1024;
+    private static final String REFRESHER_NAME = "HostResolverRefresher";
+    private static final CachingHostResolver sDefault = new CachingHostResolver();
+
+    private final HostResolver mResolver;
+    private final Map<String, Lookup> mEntries;
+    private long mPositiveTtl = DEFAULT_POSITIVE_TTL;
+    private long mNegativeTtl = DEFAULT_NEGATIVE_TTL;
+    private int mMaxEntries = DEFAULT_MAX_ENTRIES;
+    private ExecutorService mRefresher;
+
+
+    private static class Lookup
+    {
+        // The result of the last lookup.
+        InetAddress[] addresses;
+        UnknownHostException exception;
+
+        // When the result expires.
+        long expirationTime;
+
+        // When the result should be refreshed.
+        long refreshTime;
+
+        // True while a lookup for this entry is in progress.
+        boolean resolving;
+
+
+        boolean isValid(long now)
+        {
+            return (addresses != null || exception != null) && now < expirationTime;
+        }
+
+
+        InetAddress[] getResult() throws UnknownHostException
+        {
+            if (addresses == null)
+            {
+                throw exception;
+            }
+
+            // Callers may sort the array.
+            return addresses.clone();
+        }
+    }
+
+
+    private static class SystemHostResolver implements HostResolver
+    {
+        public InetAddress[] resolve(String hostname) throws UnknownHostException
+        {
+            return InetAddress.getAllByName(hostname);
+        }
+    }
+
+
+    /**
+     * Constructor with the resolver which uses {@link
+     * InetAddress#getAllByName(String)}.
+     */
+    public CachingHostResolver()
+    {
+        this(new SystemHostResolver());
+    }
+
+
+    /**
+     * Constructor with a resolver whose results are cached.
+     *
+     * @param resolver
+     *         The resolver to which lookups are delegated.
+     *
+     * @throws IllegalArgumentException
+     *         The given resolver is {@code null}.
+     */
+    public CachingHostResolver(HostResolver resolver)
+    {
+        if (resolver == null)
+        {
+            throw new IllegalArgumentException("'resolver' is null.");
+        }
+
+        mResolver = resolver;
+        mEntries  = new LinkedHashMap<String, Lookup>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Lookup> eldest)
+            {
+                // Evict the least recently used entry.
+                return getMaxEntries() < size();
+            }
+        };
+    }
+
+
+    /**
+     * Get the instance shared by {@link WebSocketFactory} instances which
+     * have no {@link HostResolver} set.
+     *
+     * @return
+     *         The shared instance.
+     */
+    public static CachingHostResolver getDefault()
+    {
+        return sDefault;
+    }
+
+
+    /**
+     * Get the TTL of successful results in milliseconds.
+     * The default value is 60,000 (one minute).
+     *
+     * @return
+     *         The TTL of successful results in milliseconds.
+     */
+    public synchronized long getPositiveTtl()
+    {
+        return mPositiveTtl;
+    }
+
+
+    /**
+     * Set the TTL of successful results in milliseconds. 0 disables
+     * caching of successful results. The new value is applied to
+     * results obtained after this call.
+     *
+     * @param ttl
+     *         The TTL of successful results in milliseconds.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given TTL is negative.
+     */
+    public synchronized CachingHostResolver setPositiveTtl(long ttl)
+    {
+        if (ttl < 0)
+        {
+            throw new IllegalArgumentException("ttl must not be negative.");
+        }
+
+        mPositiveTtl = ttl;
+
+        return this;
+    }
+
+
+    /**
+     * Get the TTL of failures in milliseconds.
+     * The default value is 10,000 (10 seconds).
+     *
+     * @return
+     *         The TTL of failures in milliseconds.
+     */
+    public synchronized long getNegativeTtl()
+    {
+        return mNegativeTtl;
+    }
+
+
+    /**
+     * Set the TTL of failures in milliseconds. 0 disables caching of
+     * failures. The new value is applied to results obtained after this
+     * call.
+     *
+     * @param ttl
+     *         The TTL of failures in milliseconds.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given TTL is negative.
+     */
+    public synchronized CachingHostResolver setNegativeTtl(long ttl)
+    {
+        if (ttl < 0)
+        {
+            throw new IllegalArgumentException("ttl must not be negative.");
+        }
+
+        mNegativeTtl = ttl;
+
+        return this;
+    }
+
+
+    /**
+     * Get the maximum number of cached hostnames.
+     * The default value is 1024.
+     *
+     * @return
+     *         The maximum number of cached hostnames.
+     */
+    public synchronized int getMaxEntries()
+    {
+        return mMaxEntries;
+    }
+
+
+    /**
+     * Set the maximum number of cached hostnames. When the number
+     * exceeds the maximum, the least recently used one is removed.
+     *
+     * @param maxEntries
+     *         The maximum number of cached hostnames.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given number is less than 1.
+     */
+    public synchronized CachingHostResolver setMaxEntries(int maxEntries)
+    {
+        if (maxEntries < 1)
+        {
+            throw new IllegalArgumentException("maxEntries must be greater than 0.");
+        }
+
+        mMaxEntries = maxEntries;
+
+        return this;
+    }
+
+
+    /**
+     * Remove all the cached results.
+     */
+    public void clear()
+    {
+        synchronized (mEntries)
+        {
+            mEntries.clear();
+        }
+    }
+
+
+    public InetAddress[] resolve(String hostname) throws UnknownHostException
+    {
+        Lookup entry;
+
+        synchronized (mEntries)
+        {
+            entry = mEntries.get(hostname);
+
+            if (entry == null)
+            {
+                entry = new Lookup();
+                mEntries.put(hostname, entry);
+            }
+        }
+
+        synchronized (entry)
+        {
+            long now = System.currentTimeMillis();
+
+            // While another thread is resolving the hostname and
+            // no valid result is available.
+            while (entry.resolving && entry.isValid(now) == false)
+            {
+                try
+                {
+                    // Wait for the result of the other thread.
+                    entry.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+
+                    throw new UnknownHostException(
+                        "Interrupted while waiting for the resolution of " + hostname);
+                }
+
+                now = System.currentTimeMillis();
+            }
+
+            if (entry.isValid(now))
+            {
+                // If the successful result should be refreshed.
+                if (entry.addresses != null && entry.refreshTime <= now && entry.resolving == false)
+                {
+                    entry.resolving = true;
+                    refreshInBackground(hostname, entry);
+                }
+
+                return entry.getResult();
+            }
+
+            // This thread resolves the hostname.
+            entry.resolving = true;
+        }
+
+        lookup(hostname, entry, false);
+
+        synchronized (entry)
+        {
+            return entry.getResult();
+        }
+    }
+
+
+    private void lookup(String hostname, Lookup entry, boolean refresh)
+    {
+        InetAddress[] addresses = null;
+        UnknownHostException exception = null;
+
+        try
+        {
+            addresses = mResolver.resolve(hostname);
+
+            if (addresses == null || addresses.length == 0)
+            {
+                addresses = null;
+                exception = new UnknownHostException("No IP addresses found for " + hostname);
+            }
+        }
+        catch (UnknownHostException e)
+        {
+            exception = e;
+        }
+        finally
+        {
+            synchronized (entry)
+            {
+                store(entry, addresses, exception, refresh);
+
+                entry.resolving = false;
+                entry.notifyAll();
+            }
+        }
+    }
+
+
+    private void store(Lookup entry, InetAddress[] addresses, UnknownHostException exception, boolean refresh)
+    {
+        long now = System.currentTimeMillis();
+
+        if (addresses != null)
+        {
+            long ttl = getPositiveTtl();
+
+            entry.addresses      = addresses;
+            entry.exception      = null;
+            entry.expirationTime = now + ttl;
+            entry.refreshTime    = now + ttl / 10 * 8;
+        }
+        else if (exception != null)
+        {
+            if (refresh)
+            {
+                // Keep using the previous successful result until it expires.
+                return;
+            }
+
+            entry.addresses      = null;
+            entry.exception      = exception;
+            entry.expirationTime = now + getNegativeTtl();
+        }
+    }
+
+
+    private void refreshInBackground(final String hostname, final Lookup entry)
+    {
+        getRefresher().execute(new Runnable() {
+            public void run()
+            {
+                try
+                {
+                    lookup(hostname, entry, true);
+                }
+                catch (Throwable t)
+                {
+                    // The previous result is used until it expires.
+                }
+            }
+        });
+    }
+
+
+    private synchronized ExecutorService getRefresher()
+    {
+        if (mRefresher == null)
+        {
+            // Idle threads are terminated automatically.
+            mRefresher = Executors.newCachedThreadPool(new DaemonThreadFactory(REFRESHER_NAME));
+        }
+
+        return mRefresher;
+    }
+}
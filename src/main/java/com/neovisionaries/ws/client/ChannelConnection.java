@@ -0,0 +1,847 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+
+/**
+ * A connection over a non-blocking {@link SocketChannel} watched by a
+ * selector thread of {@link SelectorGroup}, optionally secured by an
+ * {@link SSLEngine}.
+ *
+ * <p>
+ * The streams returned by {@link #getInputStream()} and {@link
+ * #getOutputStream()} behave like those of a blocking socket: a thread
+ * which cannot read or write waits until the selector thread reports
+ * readiness. In addition, a task which has nothing to do can be {@link
+ * #park(Runnable) parked} without holding a thread, and it is resumed
+ * when data arrives.
+ * </p>
+ */
+class ChannelConnection
+{
+    // Waits are split so that closure of the channel is noticed.
+    private static final long WAIT_SLICE = 200;
+
+    // The maximum time to wait for the channel in the middle of a frame
+    // when no socket timeout is set. A waiting task holds a worker thread,
+    // so a peer which stops sending or receiving must not hold it forever.
+    static final int DEFAULT_STALL_TIMEOUT = 30 * 1000;
+    private static final int PLAIN_BUFFER_SIZE = 16 * 1024;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel mChannel;
+    private final SSLEngine mEngine;
+    private final Object mReadLock = new Object();
+    private final Object mWriteLock = new Object();
+    private final InputStream mInput = new ChannelInputStream();
+    private final OutputStream mOutput = new ChannelOutputStream();
+
+    // Bytes received from the channel. Kept in write mode.
+    private ByteBuffer mNetIn;
+
+    // Bytes to send to the channel. Kept in read mode.
+    private ByteBuffer mNetOut;
+
+    // Decrypted bytes. Kept in write mode. Same as mNetIn without TLS.
+    private ByteBuffer mAppIn;
+
+    private SelectorGroup.Loop mLoop;
+    private SelectionKey mKey;
+
+    // Readiness state. Guarded by 'this'.
+    private boolean mReadWaited;
+    private boolean mWriteWaited;
+    private boolean mReadable;
+    private boolean mWritable;
+    private boolean mClosed;
+    private Runnable mParkedTask;
+
+    // Set when the peer has closed its side. Guarded by mReadLock.
+    private boolean mEndOfStream;
+
+    // Guarded by 'this'.
+    private int mStallTimeout = DEFAULT_STALL_TIMEOUT;
+
+
+    /**
+     * Constructor. The channel is switched to the non-blocking mode.
+     *
+     * @param engine
+     *         An SSL engine in the client mode, or {@code null}.
+     */
+    ChannelConnection(SocketChannel channel, SSLEngine engine) throws IOException
+    {
+        mChannel = channel;
+        mEngine  = engine;
+
+        if (engine == null)
+        {
+            mNetIn  = ByteBuffer.allocateDirect(PLAIN_BUFFER_SIZE);
+            mNetOut = ByteBuffer.allocateDirect(PLAIN_BUFFER_SIZE);
+            mAppIn  = mNetIn;
+        }
+        else
+        {
+            SSLSession session = engine.getSession();
+            mNetIn  = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+            mNetOut = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+            mAppIn  = ByteBuffer.allocate(session.getApplicationBufferSize());
+        }
+
+        // Nothing to send.
+        mNetOut.flip();
+
+        channel.configureBlocking(false);
+    }
+
+
+    SocketChannel getChannel()
+    {
+        return mChannel;
+    }
+
+
+    SSLEngine getEngine()
+    {
+        return mEngine;
+    }
+
+
+    /**
+     * Set the maximum time in milliseconds to wait for the channel when
+     * the socket timeout is 0.
+     */
+    synchronized void setStallTimeout(int timeout)
+    {
+        mStallTimeout = timeout;
+    }
+
+
+    InputStream getInputStream()
+    {
+        return mInput;
+    }
+
+
+    OutputStream getOutputStream()
+    {
+        return mOutput;
+    }
+
+
+    void setLoop(SelectorGroup.Loop loop)
+    {
+        mLoop = loop;
+    }
+
+
+    SelectionKey getKey()
+    {
+        return mKey;
+    }
+
+
+    void setKey(SelectionKey key)
+    {
+        mKey = key;
+    }
+
+
+    /**
+     * Perform the TLS handshake. Must be called before the streams are used.
+     */
+    void handshake() throws IOException
+    {
+        mEngine.beginHandshake();
+
+        while (true)
+        {
+            switch (mEngine.getHandshakeStatus())
+            {
+                case NEED_WRAP:
+                    synchronized (mWriteLock)
+                    {
+                        wrap(EMPTY);
+                    }
+                    break;
+
+                case NEED_UNWRAP:
+                    synchronized (mReadLock)
+                    {
+                        if (unwrap() < 0)
+                        {
+                            throw new EOFException("The server closed the connection during the TLS handshake.");
+                        }
+                    }
+                    break;
+
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    break;
+
+                default:
+                    // FINISHED or NOT_HANDSHAKING
+                    return;
+            }
+        }
+    }
+
+
+    /**
+     * Get the interest set of the selection key.
+     */
+    synchronized int getInterestOps()
+    {
+        int ops = 0;
+
+        if (mReadWaited || mParkedTask != null)
+        {
+            ops |= SelectionKey.OP_READ;
+        }
+
+        if (mWriteWaited)
+        {
+            ops |= SelectionKey.OP_WRITE;
+        }
+
+        return ops;
+    }
+
+
+    /**
+     * Called by the selector thread when the channel is ready.
+     */
+    void onReady(int readyOps)
+    {
+        Runnable task = null;
+
+        synchronized (this)
+        {
+            if ((readyOps & SelectionKey.OP_READ) != 0)
+            {
+                mReadable   = true;
+                mReadWaited = false;
+                task        = mParkedTask;
+                mParkedTask = null;
+            }
+
+            if ((readyOps & SelectionKey.OP_WRITE) != 0)
+            {
+                mWritable    = true;
+                mWriteWaited = false;
+            }
+
+            notifyAll();
+        }
+
+        if (task != null)
+        {
+            task.run();
+        }
+    }
+
+
+    /**
+     * Called by the selector thread when the channel has been closed.
+     */
+    void onClosed()
+    {
+        Runnable task;
+
+        synchronized (this)
+        {
+            mClosed     = true;
+            task        = mParkedTask;
+            mParkedTask = null;
+
+            notifyAll();
+        }
+
+        if (task != null)
+        {
+            task.run();
+        }
+    }
+
+
+    /**
+     * Close the channel. The selector thread is told so that the waiting
+     * threads and the parked task see the closure.
+     */
+    void close() throws IOException
+    {
+        try
+        {
+            mChannel.close();
+        }
+        finally
+        {
+            if (mLoop != null)
+            {
+                mLoop.update(this);
+            }
+        }
+    }
+
+
+    /**
+     * Let the task be run (by the selector thread, so it should just
+     * dispatch the real work) when data arrives or the channel is closed.
+     */
+    void park(Runnable task)
+    {
+        boolean closed;
+
+        synchronized (this)
+        {
+            closed = mClosed;
+
+            if (closed == false)
+            {
+                mParkedTask = task;
+            }
+        }
+
+        if (closed)
+        {
+            task.run();
+            return;
+        }
+
+        mLoop.update(this);
+    }
+
+
+    /**
+     * Run the parked task now, if any.
+     */
+    void unpark()
+    {
+        Runnable task;
+
+        synchronized (this)
+        {
+            task        = mParkedTask;
+            mParkedTask = null;
+        }
+
+        if (task != null)
+        {
+            task.run();
+        }
+    }
+
+
+    private void awaitReadable() throws IOException
+    {
+        await(true);
+    }
+
+
+    private void awaitWritable() throws IOException
+    {
+        await(false);
+    }
+
+
+    private void await(boolean read) throws IOException
+    {
+        int timeout = mChannel.socket().getSoTimeout();
+        long startTime = System.currentTimeMillis();
+
+        synchronized (this)
+        {
+            if (timeout == 0)
+            {
+                // Wait for the rest of a frame for a limited time.
+                timeout = mStallTimeout;
+            }
+
+            while (read ? !mReadable : !mWritable)
+            {
+                if (mClosed || mChannel.isOpen() == false)
+                {
+                    throw new SocketException("Socket is closed");
+                }
+
+                if (read)
+                {
+                    mReadWaited = true;
+                }
+                else
+                {
+                    mWriteWaited = true;
+                }
+
+                mLoop.update(this);
+
+                long slice = WAIT_SLICE;
+
+                if (0 < timeout)
+                {
+                    long remaining = timeout - (System.currentTimeMillis() - startTime);
+
+                    if (remaining <= 0)
+                    {
+                        throw new SocketTimeoutException(read ? "Read timed out" : "Write timed out");
+                    }
+
+                    slice = Math.min(slice, remaining);
+                }
+
+                try
+                {
+                    wait(slice);
+                }
+                catch (InterruptedException e)
+                {
+                    // Restore the interrupted status for the caller.
+                    Thread.currentThread().interrupt();
+
+                    throw new InterruptedIOException("Interrupted while waiting for the channel.");
+                }
+            }
+
+            // Consume the readiness.
+            if (read)
+            {
+                mReadable = false;
+            }
+            else
+            {
+                mWritable = false;
+            }
+        }
+    }
+
+
+    /**
+     * Read bytes from the channel into mNetIn without blocking.
+     *
+     * @return
+     *         The number of bytes read, or -1 at the end of the stream.
+     */
+    private int fill() throws IOException
+    {
+        if (mNetIn.hasRemaining() == false)
+        {
+            // A TLS record does not fit in the buffer.
+            mNetIn = enlarge(mNetIn, mEngine.getSession().getPacketBufferSize());
+        }
+
+        return mChannel.read(mNetIn);
+    }
+
+
+    /**
+     * Decrypt bytes in mNetIn into mAppIn, reading from the channel as
+     * necessary. Must be called while holding mReadLock.
+     *
+     * @return
+     *         The number of decrypted bytes, which may be 0 during the
+     *         TLS handshake, or -1 at the end of the stream.
+     */
+    private int unwrap() throws IOException
+    {
+        while (true)
+        {
+            mNetIn.flip();
+            SSLEngineResult result;
+
+            try
+            {
+                result = mEngine.unwrap(mNetIn, mAppIn);
+            }
+            finally
+            {
+                mNetIn.compact();
+            }
+
+            switch (result.getStatus())
+            {
+                case OK:
+                    handleHandshakeStatus(result.getHandshakeStatus());
+                    return result.bytesProduced();
+
+                case BUFFER_OVERFLOW:
+                    mAppIn = enlarge(mAppIn, mEngine.getSession().getApplicationBufferSize());
+                    break;
+
+                case BUFFER_UNDERFLOW:
+                    // A whole TLS record is needed.
+                    readMore();
+                    break;
+
+                default:
+                    // CLOSED
+                    return -1;
+            }
+        }
+    }
+
+
+    /**
+     * Read at least one byte from the channel into mNetIn.
+     */
+    private void readMore() throws IOException
+    {
+        while (true)
+        {
+            int count = fill();
+
+            if (count < 0)
+            {
+                throw new EOFException("The end of the stream was reached.");
+            }
+
+            if (0 < count)
+            {
+                return;
+            }
+
+            awaitReadable();
+        }
+    }
+
+
+    /**
+     * Process the handshake status after wrap() or unwrap(). Post-handshake
+     * messages (e.g. key updates) may require a response.
+     */
+    private void handleHandshakeStatus(HandshakeStatus status) throws IOException
+    {
+        if (status == HandshakeStatus.NEED_TASK)
+        {
+            runDelegatedTasks();
+            status = mEngine.getHandshakeStatus();
+        }
+
+        if (status == HandshakeStatus.NEED_WRAP)
+        {
+            synchronized (mWriteLock)
+            {
+                wrap(EMPTY);
+            }
+        }
+    }
+
+
+    private void runDelegatedTasks()
+    {
+        Runnable task;
+
+        while ((task = mEngine.getDelegatedTask()) != null)
+        {
+            task.run();
+        }
+    }
+
+
+    /**
+     * Encrypt all the bytes of the source and send them. Must be called
+     * while holding mWriteLock.
+     */
+    private void wrap(ByteBuffer source) throws IOException
+    {
+        do
+        {
+            ByteBuffer output = mNetOut;
+            output.clear();
+
+            SSLEngineResult result = mEngine.wrap(source, output);
+            output.flip();
+
+            switch (result.getStatus())
+            {
+                case OK:
+                    flushNetOut();
+
+                    if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK)
+                    {
+                        runDelegatedTasks();
+                    }
+                    break;
+
+                case BUFFER_OVERFLOW:
+                    mNetOut = enlarge(mNetOut, mEngine.getSession().getPacketBufferSize());
+                    mNetOut.flip();
+                    break;
+
+                default:
+                    // CLOSED
+                    throw new SSLException("The SSL engine has been closed.");
+            }
+        }
+        while (source.hasRemaining());
+    }
+
+
+    /**
+     * Send all the bytes in mNetOut.
+     */
+    private void flushNetOut() throws IOException
+    {
+        while (mNetOut.hasRemaining())
+        {
+            if (mChannel.write(mNetOut) == 0)
+            {
+                awaitWritable();
+            }
+        }
+    }
+
+
+    /**
+     * Make a larger buffer which has the content of the given buffer in
+     * write mode.
+     */
+    private static ByteBuffer enlarge(ByteBuffer buffer, int size)
+    {
+        ByteBuffer larger = buffer.isDirect()
+            ? ByteBuffer.allocateDirect(Math.max(size, buffer.capacity() * 2))
+            : ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+
+        buffer.flip();
+        larger.put(buffer);
+
+        return larger;
+    }
+
+
+    private int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+
+        synchronized (mReadLock)
+        {
+            while (mAppIn.position() == 0)
+            {
+                int count = (mEngine == null) ? fill() : unwrap();
+
+                if (count < 0)
+                {
+                    return -1;
+                }
+
+                if (count == 0 && mEngine == null)
+                {
+                    awaitReadable();
+                }
+            }
+
+            mAppIn.flip();
+            int count = Math.min(len, mAppIn.remaining());
+            mAppIn.get(b, off, count);
+            mAppIn.compact();
+
+            return count;
+        }
+    }
+
+
+    /**
+     * Get the number of bytes which can be read without waiting. Bytes
+     * which have already arrived are read from the channel.
+     *
+     * <p>
+     * Unlike {@link InputStream#available()}, 1 is returned at the end of
+     * the stream, so that a caller which waits for data while this method
+     * returns 0 goes on to read and gets -1 (or an error) instead of
+     * waiting forever for a channel which will never become readable
+     * again.
+     * </p>
+     */
+    private int available() throws IOException
+    {
+        synchronized (mReadLock)
+        {
+            if (mAppIn.position() == 0 && mEndOfStream == false)
+            {
+                int count = fill();
+
+                if (count < 0)
+                {
+                    mEndOfStream = true;
+                }
+                else if (mEngine != null && (0 < count || 0 < mNetIn.position()))
+                {
+                    unwrapAvailable();
+                }
+            }
+
+            if (mAppIn.position() == 0 && mEndOfStream)
+            {
+                return 1;
+            }
+
+            return mAppIn.position();
+        }
+    }
+
+
+    /**
+     * Decrypt complete TLS records in mNetIn without reading the channel.
+     */
+    private void unwrapAvailable() throws IOException
+    {
+        while (true)
+        {
+            mNetIn.flip();
+            SSLEngineResult result;
+
+            try
+            {
+                result = mEngine.unwrap(mNetIn, mAppIn);
+            }
+            finally
+            {
+                mNetIn.compact();
+            }
+
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW)
+            {
+                mAppIn = enlarge(mAppIn, mEngine.getSession().getApplicationBufferSize());
+                continue;
+            }
+
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED)
+            {
+                // close_notify has been received.
+                mEndOfStream = true;
+                return;
+            }
+
+            if (result.getStatus() != SSLEngineResult.Status.OK)
+            {
+                // An incomplete record.
+                return;
+            }
+
+            handleHandshakeStatus(result.getHandshakeStatus());
+
+            if (0 < result.bytesProduced() || mNetIn.position() == 0)
+            {
+                return;
+            }
+        }
+    }
+
+
+    private void write(byte[] b, int off, int len) throws IOException
+    {
+        synchronized (mWriteLock)
+        {
+            if (mEngine != null)
+            {
+                wrap(ByteBuffer.wrap(b, off, len));
+                return;
+            }
+
+            while (0 < len)
+            {
+                // Copy the bytes to the direct buffer.
+                mNetOut.clear();
+                int count = Math.min(len, mNetOut.remaining());
+                mNetOut.put(b, off, count);
+                mNetOut.flip();
+
+                flushNetOut();
+
+                off += count;
+                len -= count;
+            }
+        }
+    }
+
+
+    private class ChannelInputStream extends InputStream
+    {
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+
+            int count = read(b, 0, 1);
+
+            return (count <= 0) ? -1 : (b[0] & 0xFF);
+        }
+
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            return ChannelConnection.this.read(b, off, len);
+        }
+
+
+        @Override
+        public int available() throws IOException
+        {
+            return ChannelConnection.this.available();
+        }
+
+
+        @Override
+        public void close() throws IOException
+        {
+            ChannelConnection.this.close();
+        }
+    }
+
+
+    private class ChannelOutputStream extends OutputStream
+    {
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[] { (byte)b }, 0, 1);
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            ChannelConnection.this.write(b, off, len);
+        }
+
+
+        @Override
+        public void close() throws IOException
+        {
+            ChannelConnection.this.close();
+        }
+    }
+}
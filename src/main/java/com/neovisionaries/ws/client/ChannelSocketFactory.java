@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import javax.net.SocketFactory;
+
+
+/**
+ * Socket factory which creates sockets of {@link SocketChannel}s for
+ * {@link Transport#SELECTOR}. The sockets are used in the blocking mode
+ * until the connection (and the handshake with a proxy server) has been
+ * established, so they can be connected in the same way as usual ones.
+ */
+class ChannelSocketFactory extends SocketFactory
+{
+    private static final ChannelSocketFactory sInstance = new ChannelSocketFactory();
+
+
+    static ChannelSocketFactory getInstance()
+    {
+        return sInstance;
+    }
+
+
+    @Override
+    public Socket createSocket() throws IOException
+    {
+        return SocketChannel.open().socket();
+    }
+
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException
+    {
+        return connect(new InetSocketAddress(host, port));
+    }
+
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException
+    {
+        return connect(new InetSocketAddress(host, port), new InetSocketAddress(localHost, localPort));
+    }
+
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException
+    {
+        return connect(new InetSocketAddress(host, port));
+    }
+
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException
+    {
+        return connect(new InetSocketAddress(address, port), new InetSocketAddress(localAddress, localPort));
+    }
+
+
+    private Socket connect(InetSocketAddress address) throws IOException
+    {
+        Socket socket = createSocket();
+
+        try
+        {
+            socket.connect(address);
+        }
+        catch (IOException e)
+        {
+            socket.close();
+            throw e;
+        }
+
+        return socket;
+    }
+
+
+    private Socket connect(InetSocketAddress address, InetSocketAddress localAddress) throws IOException
+    {
+        Socket socket = createSocket();
+
+        try
+        {
+            socket.bind(localAddress);
+            socket.connect(address);
+        }
+        catch (IOException e)
+        {
+            socket.close();
+            throw e;
+        }
+
+        return socket;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+/**
+ * Listener to receive the progress of connections made by a {@link
+ * ConnectScheduler}.
+ *
+ * @since 2.10
+ */
+public interface ConnectProgressListener
+{
+    /**
+     * Called when a connection attempt scheduled by a {@link
+     * ConnectScheduler} has finished. The aggregate progress can be
+     * obtained from the scheduler, e.g. by {@link
+     * ConnectScheduler#getSucceededCount()}.
+     *
+     * <p>
+     * This method is called on the thread that performed the connection
+     * attempt, so it should return quickly.
+     * </p>
+     *
+     * @param scheduler
+     *         The scheduler.
+     *
+     * @param websocket
+     *         The WebSocket whose connection attempt has finished.
+     *
+     * @param cause
+     *         {@code null} if the connection has been established.
+     *         Otherwise, the exception thrown by {@link WebSocket#connect()}.
+     */
+    void onConnectFinished(ConnectScheduler scheduler, WebSocket websocket, WebSocketException cause);
+}
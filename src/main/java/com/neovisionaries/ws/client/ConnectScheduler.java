@@ -0,0 +1,834 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+
+/**
+ * Scheduler to connect many {@link WebSocket} instances with limited
+ * concurrency.
+ *
+ * <p>
+ * Calling {@link WebSocket#connectAsynchronously()} for thousands of
+ * instances at once creates a thread for each and makes all of them
+ * perform TCP connections and SSL handshakes simultaneously, which
+ * overloads both the server and the client and results in timeouts.
+ * A {@code ConnectScheduler} queues the instances given to {@link
+ * #connect(Collection)} and starts their connections as long as the
+ * following limits allow.
+ * </p>
+ *
+ * <ul>
+ * <li>{@linkplain #setMaxConcurrency(int) The maximum number of
+ *     connection attempts in progress}.
+ * <li>{@linkplain #setMaxConcurrencyPerHost(int) The maximum number of
+ *     connection attempts in progress for the same host}.
+ * <li>{@linkplain #setRampUpRate(int) The maximum number of connection
+ *     attempts started per second}.
+ * </ul>
+ *
+ * <p>
+ * In addition, each attempt can be delayed by a random {@linkplain
+ * #setJitter(long) jitter}. Hosts are served in a round-robin manner,
+ * and instances for the same host are connected in the given order.
+ * </p>
+ *
+ * <p>
+ * The result of each connection attempt is available through the {@link
+ * Future} returned by {@code connect}, and the aggregate progress through
+ * methods such as {@link #getSucceededCount()} and {@link
+ * ConnectProgressListener}. As with {@code connectAsynchronously()},
+ * {@link WebSocketListener#onConnectError(WebSocket, WebSocketException)
+ * onConnectError} of the listeners of a {@code WebSocket} is called when
+ * its connection attempt fails.
+ * </p>
+ *
+ * <pre style="border-left: solid 5px lightgray;"> ConnectScheduler scheduler = factory.{@link
+ * WebSocketFactory#getConnectScheduler() getConnectScheduler()}
+ *     .{@link #setMaxConcurrency(int) setMaxConcurrency}(32)
+ *     .{@link #setMaxConcurrencyPerHost(int) setMaxConcurrencyPerHost}(8)
+ *     .{@link #setRampUpRate(int) setRampUpRate}(200)
+ *     .{@link #setJitter(long) setJitter}(50);
+ *
+ * List&lt;Future&lt;WebSocket&gt;&gt; futures = scheduler.{@link #connect(Collection) connect}(websockets);</pre>
+ *
+ * <p>
+ * Connection attempts are performed by daemon threads which are shared
+ * by the attempts and terminated when they have been idle for a while.
+ * </p>
+ *
+ * @since 2.10
+ */
+public class ConnectScheduler
+{
+    private static final int DEFAULT_MAX_CONCURRENCY = 16;
+    private static final String DISPATCHER_NAME = "ConnectSchedulerDispatcher";
+    private static final String WORKER_NAME = "ConnectSchedulerWorker";
+
+    private final Random mRandom = new Random();
+    private int mMaxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private int mMaxConcurrencyPerHost;
+    private int mRampUpRate;
+    private long mJitter;
+    private ConnectProgressListener mProgressListener;
+
+    // Queues of waiting attempts for each host, in round-robin order.
+    private final Map<String, HostQueue> mQueues = new LinkedHashMap<String, HostQueue>();
+
+    // When the next attempt can start (System.nanoTime()).
+    private long mNextStartTime;
+
+    private int mWaitingCount;
+    private int mConnectingCount;
+    private int mSucceededCount;
+    private int mFailedCount;
+    private int mCancelledCount;
+
+    private Thread mDispatcher;
+    private ExecutorService mWorkers;
+
+
+    private static class HostQueue
+    {
+        final LinkedList<Task> tasks = new LinkedList<Task>();
+
+        // The number of attempts in progress for the host.
+        int active;
+    }
+
+
+    private class Task extends FutureTask<WebSocket>
+    {
+        final WebSocket websocket;
+        final String host;
+
+        // True after the task has been taken out of the queue.
+        boolean dispatched;
+
+
+        Task(final WebSocket websocket, String host)
+        {
+            super(new Callable<WebSocket>() {
+                public WebSocket call() throws WebSocketException
+                {
+                    return performConnect(websocket);
+                }
+            });
+
+            this.websocket = websocket;
+            this.host      = host;
+        }
+
+
+        @Override
+        protected void set(WebSocket websocket)
+        {
+            // Count the result before the future completes.
+            onTaskFinished(this, null);
+
+            super.set(websocket);
+        }
+
+
+        @Override
+        protected void setException(Throwable cause)
+        {
+            onTaskFinished(this, toWebSocketException(cause));
+
+            super.setException(cause);
+        }
+
+
+        @Override
+        protected void done()
+        {
+            if (isCancelled())
+            {
+                onTaskCancelled(this);
+            }
+        }
+    }
+
+
+    /**
+     * The default constructor.
+     */
+    public ConnectScheduler()
+    {
+    }
+
+
+    /**
+     * Get the maximum number of connection attempts in progress.
+     * The default value is 16.
+     *
+     * @return
+     *         The maximum number of connection attempts in progress.
+     */
+    public synchronized int getMaxConcurrency()
+    {
+        return mMaxConcurrency;
+    }
+
+
+    /**
+     * Set the maximum number of connection attempts in progress.
+     *
+     * @param concurrency
+     *         The maximum number of connection attempts in progress.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given number is less than 1.
+     */
+    public synchronized ConnectScheduler setMaxConcurrency(int concurrency)
+    {
+        if (concurrency < 1)
+        {
+            throw new IllegalArgumentException("concurrency must be greater than 0.");
+        }
+
+        mMaxConcurrency = concurrency;
+
+        // The dispatcher may be able to start more attempts.
+        notifyAll();
+
+        return this;
+    }
+
+
+    /**
+     * Get the maximum number of connection attempts in progress for the
+     * same host. The default value is 0, which means that attempts are
+     * limited only by {@link #getMaxConcurrency()}.
+     *
+     * @return
+     *         The maximum number of connection attempts in progress for
+     *         the same host.
+     */
+    public synchronized int getMaxConcurrencyPerHost()
+    {
+        return mMaxConcurrencyPerHost;
+    }
+
+
+    /**
+     * Set the maximum number of connection attempts in progress for the
+     * same host. Hosts are compared by the host part of {@link
+     * WebSocket#getURI()}.
+     *
+     * @param concurrency
+     *         The maximum number of connection attempts in progress for
+     *         the same host. 0 means no limit per host.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given number is negative.
+     */
+    public synchronized ConnectScheduler setMaxConcurrencyPerHost(int concurrency)
+    {
+        if (concurrency < 0)
+        {
+            throw new IllegalArgumentException("concurrency must not be negative.");
+        }
+
+        mMaxConcurrencyPerHost = concurrency;
+
+        notifyAll();
+
+        return this;
+    }
+
+
+    /**
+     * Get the maximum number of connection attempts started per second.
+     * The default value is 0, which means no limit.
+     *
+     * @return
+     *         The maximum number of connection attempts started per second.
+     */
+    public synchronized int getRampUpRate()
+    {
+        return mRampUpRate;
+    }
+
+
+    /**
+     * Set the maximum number of connection attempts started per second.
+     * Attempts are started at even intervals, e.g. every 10 milliseconds
+     * if 100 is given.
+     *
+     * @param rate
+     *         The maximum number of connection attempts started per
+     *         second. 0 means no limit.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given number is negative.
+     */
+    public synchronized ConnectScheduler setRampUpRate(int rate)
+    {
+        if (rate < 0)
+        {
+            throw new IllegalArgumentException("rate must not be negative.");
+        }
+
+        mRampUpRate = rate;
+
+        notifyAll();
+
+        return this;
+    }
+
+
+    /**
+     * Get the maximum random delay in milliseconds before each connection
+     * attempt. The default value is 0.
+     *
+     * @return
+     *         The maximum random delay in milliseconds.
+     */
+    public synchronized long getJitter()
+    {
+        return mJitter;
+    }
+
+
+    /**
+     * Set the maximum random delay in milliseconds before each connection
+     * attempt. When an attempt is started, it waits for a random time
+     * between 0 and the given value before connecting, so that attempts
+     * do not hit the server in lockstep.
+     *
+     * @param jitter
+     *         The maximum random delay in milliseconds. 0 means no delay.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given value is negative.
+     */
+    public synchronized ConnectScheduler setJitter(long jitter)
+    {
+        if (jitter < 0)
+        {
+            throw new IllegalArgumentException("jitter must not be negative.");
+        }
+
+        mJitter = jitter;
+
+        return this;
+    }
+
+
+    /**
+     * Get the listener that receives the progress.
+     *
+     * @return
+     *         The listener, or {@code null} if not set.
+     */
+    public synchronized ConnectProgressListener getProgressListener()
+    {
+        return mProgressListener;
+    }
+
+
+    /**
+     * Set a listener that receives the progress.
+     *
+     * @param listener
+     *         The listener. {@code null} to remove the listener.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public synchronized ConnectScheduler setProgressListener(ConnectProgressListener listener)
+    {
+        mProgressListener = listener;
+
+        return this;
+    }
+
+
+    /**
+     * Get the number of connection attempts waiting for their turn.
+     *
+     * @return
+     *         The number of waiting connection attempts.
+     */
+    public synchronized int getWaitingCount()
+    {
+        return mWaitingCount;
+    }
+
+
+    /**
+     * Get the number of connection attempts in progress.
+     *
+     * @return
+     *         The number of connection attempts in progress.
+     */
+    public synchronized int getConnectingCount()
+    {
+        return mConnectingCount;
+    }
+
+
+    /**
+     * Get the number of connections which have been established.
+     *
+     * @return
+     *         The number of successful connection attempts.
+     */
+    public synchronized int getSucceededCount()
+    {
+        return mSucceededCount;
+    }
+
+
+    /**
+     * Get the number of connection attempts which have failed.
+     *
+     * @return
+     *         The number of failed connection attempts.
+     */
+    public synchronized int getFailedCount()
+    {
+        return mFailedCount;
+    }
+
+
+    /**
+     * Get the number of connection attempts which have been cancelled
+     * through their {@link Future}s.
+     *
+     * @return
+     *         The number of cancelled connection attempts.
+     */
+    public synchronized int getCancelledCount()
+    {
+        return mCancelledCount;
+    }
+
+
+    /**
+     * Schedule connections of the given WebSocket instances. This method
+     * returns immediately.
+     *
+     * <p>
+     * Each returned {@link Future} corresponds to the WebSocket at the same
+     * position. Its {@link Future#get() get()} returns the WebSocket when
+     * the connection has been established, or throws an {@link
+     * ExecutionException} whose cause is the {@link WebSocketException}
+     * thrown by {@link WebSocket#connect()}. Cancelling a future before
+     * its attempt has started removes the attempt from the queue.
+     * </p>
+     *
+     * @param websockets
+     *         WebSocket instances in the {@link WebSocketState#CREATED
+     *         CREATED} state.
+     *
+     * @return
+     *         Futures of the connection attempts.
+     *
+     * @throws IllegalArgumentException
+     *         The given collection is {@code null} or contains {@code null}.
+     */
+    public List<Future<WebSocket>> connect(Collection<WebSocket> websockets)
+    {
+        if (websockets == null)
+        {
+            throw new IllegalArgumentException("websockets is null.");
+        }
+
+        List<Task> tasks = new ArrayList<Task>(websockets.size());
+
+        for (WebSocket websocket : websockets)
+        {
+            if (websocket == null)
+            {
+                throw new IllegalArgumentException("websockets contains null.");
+            }
+
+            tasks.add(new Task(websocket, websocket.getURI().getHost()));
+        }
+
+        synchronized (this)
+        {
+            for (Task task : tasks)
+            {
+                HostQueue queue = mQueues.get(task.host);
+
+                if (queue == null)
+                {
+                    queue = new HostQueue();
+                    mQueues.put(task.host, queue);
+                }
+
+                queue.tasks.add(task);
+            }
+
+            mWaitingCount += tasks.size();
+
+            startDispatcher();
+            notifyAll();
+        }
+
+        return new ArrayList<Future<WebSocket>>(tasks);
+    }
+
+
+    /**
+     * Schedule the connection of the given WebSocket instance.
+     *
+     * @param websocket
+     *         A WebSocket instance in the {@link WebSocketState#CREATED
+     *         CREATED} state.
+     *
+     * @return
+     *         The future of the connection attempt.
+     *
+     * @throws IllegalArgumentException
+     *         The given WebSocket is {@code null}.
+     *
+     * @see #connect(Collection)
+     */
+    public Future<WebSocket> connect(WebSocket websocket)
+    {
+        List<WebSocket> websockets = new ArrayList<WebSocket>(1);
+        websockets.add(websocket);
+
+        return connect(websockets).get(0);
+    }
+
+
+    private void startDispatcher()
+    {
+        if (mDispatcher != null)
+        {
+            return;
+        }
+
+        mDispatcher = new Thread(DISPATCHER_NAME) {
+            @Override
+            public void run()
+            {
+                dispatch();
+            }
+        };
+
+        // Not to prevent the JVM from exiting.
+        mDispatcher.setDaemon(true);
+        mDispatcher.start();
+    }
+
+
+    private void dispatch()
+    {
+        while (true)
+        {
+            Task task = takeTask();
+
+            if (task == null)
+            {
+                // No more waiting attempts.
+                return;
+            }
+
+            start(task);
+        }
+    }
+
+
+    /**
+     * Wait until a waiting attempt can be started. Returns {@code null}
+     * when no attempt is waiting.
+     */
+    private synchronized Task takeTask()
+    {
+        while (true)
+        {
+            if (mWaitingCount == 0)
+            {
+                // The dispatcher thread terminates.
+                mDispatcher = null;
+                return null;
+            }
+
+            // 0 means waiting until notified.
+            long timeout = 0;
+
+            if (mConnectingCount < mMaxConcurrency)
+            {
+                long now   = System.nanoTime();
+                long delay = mNextStartTime - now;
+
+                if (0 < mRampUpRate && 0 < delay)
+                {
+                    // Wait for the next turn of the ramp-up.
+                    timeout = Math.max(1, delay / 1000000L);
+                }
+                else
+                {
+                    Task task = pollTask();
+
+                    if (task != null)
+                    {
+                        if (0 < mRampUpRate)
+                        {
+                            mNextStartTime = Math.max(now, mNextStartTime) + 1000000000L / mRampUpRate;
+                        }
+
+                        return task;
+                    }
+                }
+            }
+
+            try
+            {
+                wait(timeout);
+            }
+            catch (InterruptedException e)
+            {
+                // Never happens because the dispatcher is not exposed.
+            }
+        }
+    }
+
+
+    /**
+     * Take a task from the first host which is allowed to start one more
+     * attempt, and move the host to the end for round-robin.
+     */
+    private Task pollTask()
+    {
+        Iterator<Map.Entry<String, HostQueue>> it = mQueues.entrySet().iterator();
+
+        while (it.hasNext())
+        {
+            Map.Entry<String, HostQueue> entry = it.next();
+            HostQueue queue = entry.getValue();
+
+            if (queue.tasks.isEmpty() || (0 < mMaxConcurrencyPerHost && mMaxConcurrencyPerHost <= queue.active))
+            {
+                continue;
+            }
+
+            Task task = queue.tasks.removeFirst();
+            task.dispatched = true;
+            queue.active += 1;
+
+            mWaitingCount   -= 1;
+            mConnectingCount += 1;
+
+            // Round-robin.
+            it.remove();
+            mQueues.put(entry.getKey(), queue);
+
+            return task;
+        }
+
+        return null;
+    }
+
+
+    private void start(final Task task)
+    {
+        final long jitter = getJitter();
+
+        getWorkers().execute(new Runnable() {
+            public void run()
+            {
+                try
+                {
+                    if (0 < jitter)
+                    {
+                        sleep(nextJitter(jitter));
+                    }
+
+                    task.run();
+                }
+                finally
+                {
+                    release(task);
+                }
+            }
+        });
+    }
+
+
+    private synchronized long nextJitter(long jitter)
+    {
+        return (long)(mRandom.nextDouble() * jitter);
+    }
+
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+        }
+    }
+
+
+    private WebSocket performConnect(WebSocket websocket) throws WebSocketException
+    {
+        try
+        {
+            return websocket.connect();
+        }
+        catch (WebSocketException e)
+        {
+            // The same as connectAsynchronously().
+            ListenerManager manager = websocket.getListenerManager();
+            manager.callOnError(e);
+            manager.callOnConnectError(e);
+
+            throw e;
+        }
+    }
+
+
+    /**
+     * Release the slot of the finished attempt.
+     */
+    private synchronized void release(Task task)
+    {
+        HostQueue queue = mQueues.get(task.host);
+
+        queue.active -= 1;
+        mConnectingCount -= 1;
+
+        if (queue.active == 0 && queue.tasks.isEmpty())
+        {
+            mQueues.remove(task.host);
+        }
+
+        // The dispatcher may be able to start another attempt.
+        notifyAll();
+    }
+
+
+    private void onTaskFinished(Task task, WebSocketException cause)
+    {
+        ConnectProgressListener listener;
+
+        synchronized (this)
+        {
+            if (cause == null)
+            {
+                mSucceededCount += 1;
+            }
+            else
+            {
+                mFailedCount += 1;
+            }
+
+            listener = mProgressListener;
+        }
+
+        if (listener != null)
+        {
+            try
+            {
+                listener.onConnectFinished(this, task.websocket, cause);
+            }
+            catch (Throwable t)
+            {
+                // Ignore any error raised by the listener.
+            }
+        }
+    }
+
+
+    /**
+     * Count the cancelled task. If it has not been started yet, it is
+     * removed from the queue.
+     */
+    private synchronized void onTaskCancelled(Task task)
+    {
+        mCancelledCount += 1;
+
+        if (task.dispatched)
+        {
+            // The slot is released by the worker.
+            return;
+        }
+
+        HostQueue queue = mQueues.get(task.host);
+
+        if (queue != null && queue.tasks.remove(task))
+        {
+            mWaitingCount -= 1;
+
+            if (queue.active == 0 && queue.tasks.isEmpty())
+            {
+                mQueues.remove(task.host);
+            }
+        }
+    }
+
+
+    private static WebSocketException toWebSocketException(Throwable cause)
+    {
+        if (cause instanceof WebSocketException)
+        {
+            return (WebSocketException)cause;
+        }
+
+        // A runtime exception thrown by connect().
+        return new WebSocketException(WebSocketError.SOCKET_CONNECT_ERROR,
+                "An unexpected error occurred while connecting: " + cause.getMessage(), cause);
+    }
+
+
+    private synchronized ExecutorService getWorkers()
+    {
+        if (mWorkers == null)
+        {
+            // Idle threads are terminated automatically.
+            mWorkers = Executors.newCachedThreadPool(new DaemonThreadFactory(WORKER_NAME));
+        }
+
+        return mWorkers;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.net.InetAddress;
+import java.util.Locale;
+
+
+/**
+ * Time taken by each phase of {@link WebSocket#connect()}.
+ *
+ * <p>
+ * Times are measured by {@link System#nanoTime()} and returned in
+ * nanoseconds. A phase which has not been performed (e.g. the handshake
+ * with a proxy server when no proxy server is used, or phases after the
+ * phase that failed) is reported as -1.
+ * </p>
+ *
+ * <p>
+ * An instance is passed to {@link WebSocketListener#onConnectTimings(WebSocket,
+ * ConnectTimings) onConnectTimings} when a connection attempt has finished
+ * either successfully or not, and is available through {@link
+ * WebSocket#getConnectTimings()}.
+ * </p>
+ *
+ * @since 2.10
+ */
+public class ConnectTimings
+{
+    private long mHostResolutionTime = -1;
+    private long mSocketConnectionTime = -1;
+    private long mProxyHandshakeTime = -1;
+    private long mSSLHandshakeTime = -1;
+    private long mHostnameVerificationTime = -1;
+    private long mOpeningHandshakeTime = -1;
+    private long mTotalTime = -1;
+    private InetAddress mAddress;
+    private boolean mPreConnected;
+
+
+    ConnectTimings()
+    {
+    }
+
+
+    /**
+     * Get the time taken to resolve the hostname of the server (or the
+     * proxy server) to IP addresses.
+     *
+     * @return
+     *         The time in nanoseconds, or -1.
+     */
+    public synchronized long getHostResolutionTime()
+    {
+        return mHostResolutionTime;
+    }
+
+
+    /**
+     * Get the time taken to establish a TCP connection, including the
+     * race among the IP addresses (<i>happy eyeballs</i>).
+     *
+     * @return
+     *         The time in nanoseconds, or -1.
+     *
+     * @see #getAddress()
+     */
+    public synchronized long getSocketConnectionTime()
+    {
+        return mSocketConnectionTime;
+    }
+
+
+    /**
+     * Get the time taken by the {@code CONNECT} request to the proxy
+     * server. When {@linkplain ProxySettings#setPipelined(boolean)
+     * pipelining} is enabled, this is the time until the response to the
+     * request has been received, which overlaps the opening handshake.
+     *
+     * @return
+     *         The time in nanoseconds, or -1.
+     */
+    public synchronized long getProxyHandshakeTime()
+    {
+        return mProxyHandshakeTime;
+    }
+
+
+    /**
+     * Get the time taken by SSL handshakes. When both the proxy server
+     * and the WebSocket endpoint are connected by SSL, this is the sum
+     * of the two handshakes.
+     *
+     * @return
+     *         The time in nanoseconds, or -1.
+     */
+    public synchronized long getSSLHandshakeTime()
+    {
+        return mSSLHandshakeTime;
+    }
+
+
+    /**
+     * Get the time taken to verify that the hostname matches the
+     * certificate of the server.
+     *
+     * @return
+     *         The time in nanoseconds, or -1.
+     *
+     * @see WebSocketFactory#setVerifyHostname(boolean)
+     */
+    public synchronized long getHostnameVerificationTime()
+    {
+        return mHostnameVerificationTime;
+    }
+
+
+    /**
+     * Get the time taken to send the opening handshake request and
+     * read its response.
+     *
+     * @return
+     *         The time in nanoseconds, or -1.
+     */
+    public synchronized long getOpeningHandshakeTime()
+    {
+        return mOpeningHandshakeTime;
+    }
+
+
+    /**
+     * Get the time taken by the whole connection attempt.
+     *
+     * @return
+     *         The time in nanoseconds, or -1 if the attempt has not
+     *         finished.
+     */
+    public synchronized long getTotalTime()
+    {
+        return mTotalTime;
+    }
+
+
+    /**
+     * Get the IP address which won the race among the IP addresses of
+     * the server (or the proxy server).
+     *
+     * @return
+     *         The IP address, or {@code null} if no TCP connection has
+     *         been established.
+     */
+    public synchronized InetAddress getAddress()
+    {
+        return mAddress;
+    }
+
+
+    /**
+     * Check if a pre-connected socket was used. If {@code true}, the
+     * phases before the opening handshake were performed in advance and
+     * are reported as -1.
+     *
+     * @return
+     *         {@code true} if a pre-connected socket was used.
+     *
+     * @see WebSocketFactory#setPreConnectedSocketCount(int)
+     */
+    public synchronized boolean isPreConnected()
+    {
+        return mPreConnected;
+    }
+
+
+    synchronized void setHostResolutionTime(long time)
+    {
+        mHostResolutionTime = time;
+    }
+
+
+    synchronized void setSocketConnectionTime(long time, InetAddress address)
+    {
+        mSocketConnectionTime = time;
+        mAddress              = address;
+    }
+
+
+    synchronized void setProxyHandshakeTime(long time)
+    {
+        mProxyHandshakeTime = time;
+    }
+
+
+    synchronized void addSSLHandshakeTime(long time)
+    {
+        mSSLHandshakeTime = (mSSLHandshakeTime < 0) ? time : mSSLHandshakeTime + time;
+    }
+
+
+    synchronized void addHostnameVerificationTime(long time)
+    {
+        mHostnameVerificationTime = (mHostnameVerificationTime < 0) ? time : mHostnameVerificationTime + time;
+    }
+
+
+    synchronized void setOpeningHandshakeTime(long time)
+    {
+        mOpeningHandshakeTime = time;
+    }
+
+
+    synchronized void setTotalTime(long time)
+    {
+        mTotalTime = time;
+    }
+
+
+    synchronized void setPreConnected(InetAddress address)
+    {
+        mPreConnected = true;
+        mAddress      = address;
+    }
+
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format(
+            "ConnectTimings(address=%s, preConnected=%s, hostResolution=%s, socketConnection=%s, " +
+            "proxyHandshake=%s, sslHandshake=%s, hostnameVerification=%s, openingHandshake=%s, total=%s)",
+            (mAddress == null ? null : mAddress.getHostAddress()), mPreConnected,
+            format(mHostResolutionTime), format(mSocketConnectionTime), format(mProxyHandshakeTime),
+            format(mSSLHandshakeTime), format(mHostnameVerificationTime), format(mOpeningHandshakeTime),
+            format(mTotalTime));
+    }
+
+
+    private static String format(long time)
+    {
+        if (time < 0)
+        {
+            return "-";
+        }
+
+        // Milliseconds with a fraction.
+        return String.format(Locale.US, "%.3fms", time / 1000000.0);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * A thread factory which creates daemon threads with the given name.
+ */
+class DaemonThreadFactory implements ThreadFactory
+{
+    private final String mName;
+
+
+    DaemonThreadFactory(String name)
+    {
+        mName = name;
+    }
+
+
+    public Thread newThread(Runnable runnable)
+    {
+        Thread thread = new Thread(runnable, mName);
+
+        // Not to prevent the JVM from exiting.
+        thread.setDaemon(true);
+
+        return thread;
+    }
+}
@@ -33,31 +33,30 @@ class DeflateCompressor
         // Destination where compressed data will be stored.
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
-        // Create a compressor.
-        Deflater deflater = createDeflater();
-        DeflaterOutputStream dos = new DeflaterOutputStream(baos, deflater);
-
-        // Compress the data.
-        //
-        // Some other implementations such as Jetty and Tyrus use
-        // Deflater.deflate(byte[], int, int, int) with Deflate.SYNC_FLUSH,
-        // but this implementation does not do it intentionally because the
-        // method and the constant value are not available before Java 7.
-        dos.write(input, 0, input.length);
-        dos.close();
-
-        // Release the resources held by the compressor.
-        deflater.end();
+        // Get a compressor from the pool.
+        DeflateContextPool pool = DeflateContextPool.getDefault();
+        Deflater deflater = pool.acquireDeflater();
+
+        try
+        {
+            DeflaterOutputStream dos = new DeflaterOutputStream(baos, deflater);
+
+            // Compress the data.
+            //
+            // Some other implementations such as Jetty and Tyrus use
+            // Deflater.deflate(byte[], int, int, int) with Deflate.SYNC_FLUSH,
+            // but this implementation does not do it intentionally because the
+            // method and the constant value are not available before Java 7.
+            dos.write(input, 0, input.length);
+            dos.close();
+        }
+        finally
+        {
+            // Return the compressor to the pool. It is reset there.
+            pool.releaseDeflater(deflater);
+        }
 
         // Retrieve the compressed data.
         return baos.toByteArray();
     }
-
-
-    private static Deflater createDeflater()
-    {
-        // The second argument (nowrap) is true to get only DEFLATE
-        // blocks without the ZLIB header and checksum fields.
-        return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
-    }
 }
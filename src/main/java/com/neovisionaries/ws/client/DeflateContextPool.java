@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.zip.Deflater;
+
+
+/**
+ * JVM-wide pool of compression contexts used by the implementation of
+ * <a href="https://tools.ietf.org/html/rfc7692">permessage-deflate</a>.
+ *
+ * <p>
+ * When {@code server_no_context_takeover} has been agreed, the sliding
+ * window to decompress a message is needed only while the message is
+ * being decompressed. Such windows are borrowed from this pool at the
+ * beginning of a message and returned to this pool at the end of the
+ * message, so idle connections do not hold windows. In addition, native
+ * {@link Deflater} instances used to compress messages are reused.
+ * </p>
+ *
+ * <p>
+ * Pooled entries which have not been used for longer than {@linkplain
+ * #setIdleTimeout(long) the idle timeout} are released by a background
+ * daemon thread which is running only while the pool is not empty.
+ * </p>
+ *
+ * <p>
+ * Note that sliding windows of connections with context takeover are
+ * not pooled because they carry the data of the previous messages.
+ * </p>
+ *
+ * @since 2.10
+ */
+public class DeflateContextPool
+{
+    private static final int DEFAULT_MAX_SIZE = 64;
+    private static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000L;
+    private static final String TIMER_NAME = "DeflateContextPoolTrimmer";
+    private static final DeflateContextPool sDefault = new DeflateContextPool();
+
+    private final LinkedList<Entry<Deflater>> mDeflaters = new LinkedList<Entry<Deflater>>();
+    private final LinkedList<Entry<ByteArray>> mWindows = new LinkedList<Entry<ByteArray>>();
+    private int mMaxSize = DEFAULT_MAX_SIZE;
+    private long mIdleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private Timer mTimer;
+
+
+    private static class Entry<T>
+    {
+        final T value;
+        final long releaseTime;
+
+
+        Entry(T value, long releaseTime)
+        {
+            this.value       = value;
+            this.releaseTime = releaseTime;
+        }
+    }
+
+
+    DeflateContextPool()
+    {
+    }
+
+
+    /**
+     * Get the JVM-wide pool.
+     *
+     * @return
+     *         The JVM-wide pool.
+     */
+    public static DeflateContextPool getDefault()
+    {
+        return sDefault;
+    }
+
+
+    /**
+     * Get the maximum number of entries of each kind (native compressors
+     * and sliding windows) kept in this pool. The default value is 64.
+     *
+     * @return
+     *         The maximum number of entries of each kind.
+     */
+    public synchronized int getMaxSize()
+    {
+        return mMaxSize;
+    }
+
+
+    /**
+     * Set the maximum number of entries of each kind (native compressors
+     * and sliding windows) kept in this pool. 0 disables pooling.
+     *
+     * @param size
+     *         The maximum number of entries of each kind.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given size is negative.
+     */
+    public DeflateContextPool setMaxSize(int size)
+    {
+        if (size < 0)
+        {
+            throw new IllegalArgumentException("size must not be negative.");
+        }
+
+        synchronized (this)
+        {
+            mMaxSize = size;
+
+            // Release the entries beyond the new limit.
+            while (size < mDeflaters.size())
+            {
+                mDeflaters.removeLast().value.end();
+            }
+
+            while (size < mWindows.size())
+            {
+                mWindows.removeLast();
+            }
+
+            stopTimerIfEmpty();
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Get the idle timeout in milliseconds. Entries that have not been
+     * used for longer than the timeout are released. The default value
+     * is 60,000 (one minute).
+     *
+     * @return
+     *         The idle timeout in milliseconds.
+     */
+    public synchronized long getIdleTimeout()
+    {
+        return mIdleTimeout;
+    }
+
+
+    /**
+     * Set the idle timeout in milliseconds. Entries that have not been
+     * used for longer than the timeout are released. 0 means that idle
+     * entries are not released automatically.
+     *
+     * @param timeout
+     *         The idle timeout in milliseconds.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given timeout is negative.
+     */
+    public DeflateContextPool setIdleTimeout(long timeout)
+    {
+        if (timeout < 0)
+        {
+            throw new IllegalArgumentException("timeout must not be negative.");
+        }
+
+        synchronized (this)
+        {
+            mIdleTimeout = timeout;
+
+            // Reschedule the trimming with the new timeout.
+            stopTimer();
+            startTimerIfNecessary();
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Get the number of the pooled entries.
+     *
+     * @return
+     *         The number of the pooled native compressors and
+     *         sliding windows.
+     */
+    public synchronized int size()
+    {
+        return mDeflaters.size() + mWindows.size();
+    }
+
+
+    /**
+     * Release entries that have not been used for longer than the idle
+     * timeout. This method is called periodically by the background
+     * thread, so applications usually do not have to call it.
+     */
+    public synchronized void trim()
+    {
+        if (mIdleTimeout == 0)
+        {
+            return;
+        }
+
+        long threshold = System.currentTimeMillis() - mIdleTimeout;
+
+        for (Iterator<Entry<Deflater>> it = mDeflaters.iterator(); it.hasNext(); )
+        {
+            Entry<Deflater> entry = it.next();
+
+            if (entry.releaseTime <= threshold)
+            {
+                it.remove();
+                entry.value.end();
+            }
+        }
+
+        for (Iterator<Entry<ByteArray>> it = mWindows.iterator(); it.hasNext(); )
+        {
+            if (it.next().releaseTime <= threshold)
+            {
+                it.remove();
+            }
+        }
+
+        stopTimerIfEmpty();
+    }
+
+
+    /**
+     * Release all the pooled entries.
+     */
+    public synchronized void clear()
+    {
+        for (Entry<Deflater> entry : mDeflaters)
+        {
+            entry.value.end();
+        }
+
+        mDeflaters.clear();
+        mWindows.clear();
+
+        stopTimer();
+    }
+
+
+    /**
+     * Get a native compressor which generates raw DEFLATE blocks.
+     * It has to be returned by {@link #releaseDeflater(Deflater)}.
+     */
+    Deflater acquireDeflater()
+    {
+        synchronized (this)
+        {
+            if (mDeflaters.size() != 0)
+            {
+                // The most recently used one.
+                return mDeflaters.removeFirst().value;
+            }
+        }
+
+        // The second argument (nowrap) is true to get only DEFLATE
+        // blocks without the ZLIB header and checksum fields.
+        return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+
+    /**
+     * Return a native compressor obtained by {@link #acquireDeflater()}.
+     */
+    void releaseDeflater(Deflater deflater)
+    {
+        // Make it ready for the next message.
+        deflater.reset();
+
+        synchronized (this)
+        {
+            if (mDeflaters.size() < mMaxSize)
+            {
+                mDeflaters.addFirst(new Entry<Deflater>(deflater, System.currentTimeMillis()));
+                startTimerIfNecessary();
+                return;
+            }
+        }
+
+        // The pool is full. Release the native resources.
+        deflater.end();
+    }
+
+
+    /**
+     * Get an empty buffer for a sliding window whose capacity is equal
+     * to or larger than the given one. It should be returned by
+     * {@link #releaseWindow(ByteArray)}.
+     */
+    ByteArray acquireWindow(int capacity)
+    {
+        synchronized (this)
+        {
+            for (Iterator<Entry<ByteArray>> it = mWindows.iterator(); it.hasNext(); )
+            {
+                ByteArray window = it.next().value;
+
+                if (capacity <= window.capacity())
+                {
+                    it.remove();
+                    return window;
+                }
+            }
+        }
+
+        return new ByteArray(capacity);
+    }
+
+
+    /**
+     * Return a buffer obtained by {@link #acquireWindow(int)}.
+     */
+    void releaseWindow(ByteArray window)
+    {
+        // The content must not be passed to another connection.
+        window.clear();
+
+        synchronized (this)
+        {
+            if (mWindows.size() < mMaxSize)
+            {
+                mWindows.addFirst(new Entry<ByteArray>(window, System.currentTimeMillis()));
+                startTimerIfNecessary();
+            }
+        }
+    }
+
+
+    private void startTimerIfNecessary()
+    {
+        if (mTimer != null || mIdleTimeout == 0 || size() == 0)
+        {
+            return;
+        }
+
+        // A daemon thread not to prevent the JVM from exiting.
+        mTimer = new Timer(TIMER_NAME, true);
+        mTimer.schedule(new TrimTask(), mIdleTimeout, mIdleTimeout);
+    }
+
+
+    private void stopTimerIfEmpty()
+    {
+        if (size() == 0)
+        {
+            stopTimer();
+        }
+    }
+
+
+    private void stopTimer()
+    {
+        if (mTimer != null)
+        {
+            mTimer.cancel();
+            mTimer = null;
+        }
+    }
+
+
+    private class TrimTask extends TimerTask
+    {
+        @Override
+        public void run()
+        {
+            trim();
+        }
+    }
+}
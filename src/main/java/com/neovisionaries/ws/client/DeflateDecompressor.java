@@ -24,24 +24,97 @@ class DeflateDecompressor
 {
     public static void decompress(ByteArray input, ByteArray output) throws FormatException
     {
-        decompress(input, 0, output);
+        try
+        {
+            decompress(input, 0, output, 0, true);
+        }
+        catch (TooLongMessageException e)
+        {
+            // Never happens because the maximum length is not specified.
+        }
     }
 
 
-    private static void decompress(ByteArray input, int index, ByteArray output) throws FormatException
+    /**
+     * Decompress blocks in the input.
+     *
+     * @param input
+     *         Compressed data.
+     *
+     * @param bitIndex
+     *         The bit index in the input from which decompression starts.
+     *
+     * @param output
+     *         The output to which decompressed data are appended.
+     *
+     * @param maxLength
+     *         The maximum length of the output. 0 means no limit.
+     *
+     * @param complete
+     *         {@code true} if the input contains the entire compressed data.
+     *         If {@code false} is given, a block which lacks its tail in the
+     *         input is not decompressed, and its bit index is returned so
+     *         that the block can be decompressed again after more compressed
+     *         data are appended to the input.
+     *
+     * @return
+     *         The bit index next to the last decompressed block. -1 if the
+     *         last block (BFINAL=1) has been decompressed.
+     *
+     * @throws TooLongMessageException
+     *         The length of the output exceeded the maximum length.
+     */
+    public static int decompress(
+            ByteArray input, int bitIndex, ByteArray output, int maxLength,
+            boolean complete) throws FormatException, TooLongMessageException
     {
         // The data is compressed on a bit basis, so use a bit index.
-        int[] bitIndex = new int[1];
-        bitIndex[0] = index * 8;
+        int[] index = new int[] { bitIndex };
 
         // Process all blocks one by one until the end.
-        // inflateBlock() returns false if no more block exists.
-        while (inflateBlock(input, bitIndex, output)) {}
+        while (index[0] < input.length() * 8)
+        {
+            // The positions before the block is decompressed.
+            int blockIndex   = index[0];
+            int outputLength = output.length();
+
+            boolean more;
+
+            try
+            {
+                // inflateBlock() returns false if no more block exists.
+                more = inflateBlock(input, index, output, maxLength);
+            }
+            catch (IndexOutOfBoundsException e)
+            {
+                if (complete)
+                {
+                    // The compressed data are broken.
+                    throw new FormatException(String.format(
+                            "[%s] Broken data at the bit index '%d'.",
+                            DeflateDecompressor.class.getSimpleName(), blockIndex));
+                }
+
+                // The block lacks its tail. Discard the partial result.
+                output.truncate(outputLength);
+
+                return blockIndex;
+            }
+
+            if (more == false && index[0] < input.length() * 8)
+            {
+                // BFINAL=1. The remaining data (if any) are ignored.
+                return -1;
+            }
+        }
+
+        return index[0];
     }
 
 
     private static boolean inflateBlock(
-            ByteArray input, int[] bitIndex, ByteArray output) throws FormatException
+            ByteArray input, int[] bitIndex, ByteArray output, int maxLength)
+                    throws FormatException, TooLongMessageException
     {
         // Each block has a block header which consists of 3 bits.
         // See 3.2.3. of RFC 1951.
@@ -63,17 +136,17 @@ class DeflateDecompressor
         {
             // No compression
             case 0:
-                inflatePlainBlock(input, bitIndex, output);
+                inflatePlainBlock(input, bitIndex, output, maxLength);
                 break;
 
             // Compressed with fixed Huffman codes
             case 1:
-                inflateFixedBlock(input, bitIndex, output);
+                inflateFixedBlock(input, bitIndex, output, maxLength);
                 break;
 
             // Compressed with dynamic Huffman codes
             case 2:
-                inflateDynamicBlock(input, bitIndex, output);
+                inflateDynamicBlock(input, bitIndex, output, maxLength);
                 break;
 
             // Bad format
@@ -98,7 +171,8 @@ class DeflateDecompressor
     }
 
 
-    private static void inflatePlainBlock(ByteArray input, int[] bitIndex, ByteArray output)
+    private static void inflatePlainBlock(
+            ByteArray input, int[] bitIndex, ByteArray output, int maxLength) throws TooLongMessageException
     {
         // 3.2.4 Non-compressed blocks (BTYPE=00)
 
@@ -117,6 +191,14 @@ class DeflateDecompressor
         // Skip LEN and NLEN.
         index += 4;
 
+        // If the input lacks the tail of the data.
+        if (input.length() < index + len)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+
+        checkLength(output.length() + len, maxLength);
+
         // Copy the data to the output.
         output.put(input, index, len);
 
@@ -127,7 +209,8 @@ class DeflateDecompressor
 
 
     private static void inflateFixedBlock(
-            ByteArray input, int[] bitIndex, ByteArray output) throws FormatException
+            ByteArray input, int[] bitIndex, ByteArray output, int maxLength)
+                    throws FormatException, TooLongMessageException
     {
         // 3.2.6 Compression with fixed Huffman codes (BTYPE=01)
 
@@ -141,14 +224,15 @@ class DeflateDecompressor
         //
         // The "two compressed cases" in the above sentence are
         // "fixed Huffman codes" and "dynamic Huffman codes".
-        inflateData(input, bitIndex, output,
+        inflateData(input, bitIndex, output, maxLength,
                 FixedLiteralLengthHuffman.getInstance(),
                 FixedDistanceHuffman.getInstance());
     }
 
 
     private static void inflateDynamicBlock(
-            ByteArray input, int[] bitIndex, ByteArray output) throws FormatException
+            ByteArray input, int[] bitIndex, ByteArray output, int maxLength)
+                    throws FormatException, TooLongMessageException
     {
         // 3.2.7 Compression with dynamic Huffman codes (BTYPE=10)
 
@@ -160,13 +244,14 @@ class DeflateDecompressor
 
         // The actual compressed data of this block. The data are encoded using
         // the literal/length and distance Huffman codes that were parsed above.
-        inflateData(input, bitIndex, output, tables[0], tables[1]);
+        inflateData(input, bitIndex, output, maxLength, tables[0], tables[1]);
     }
 
 
     private static void inflateData(
-            ByteArray input, int[] bitIndex, ByteArray output,
-            Huffman literalLengthHuffman, Huffman distanceHuffman) throws FormatException
+            ByteArray input, int[] bitIndex, ByteArray output, int maxLength,
+            Huffman literalLengthHuffman, Huffman distanceHuffman)
+                    throws FormatException, TooLongMessageException
     {
         // 3.2.5 Compressed blocks (length and distance codes)
 
@@ -185,6 +270,8 @@ class DeflateDecompressor
             // Symbol values from 0 to 255 represent literal values.
             if (0 <= literalLength && literalLength <= 255)
             {
+                checkLength(output.length() + 1, maxLength);
+
                 // Output as is.
                 output.put(literalLength);
                 continue;
@@ -198,6 +285,8 @@ class DeflateDecompressor
             // Read the distance from the input.
             int distance = DeflateUtil.readDistance(input, bitIndex, distanceHuffman);
 
+            checkLength(output.length() + length, maxLength);
+
             // Extract some data from the output buffer and copy them.
             duplicate(length, distance, output);
         }
@@ -240,4 +329,14 @@ class DeflateDecompressor
         // Append the duplicated bytes to the output.
         output.put(target);
     }
+
+
+    private static void checkLength(int length, int maxLength) throws TooLongMessageException
+    {
+        // If the output is going to exceed the maximum length.
+        if (0 < maxLength && maxLength < length)
+        {
+            throw new TooLongMessageException(maxLength);
+        }
+    }
 }
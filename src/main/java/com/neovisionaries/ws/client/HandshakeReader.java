@@ -22,7 +22,6 @@ import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 
 /**
@@ -44,11 +43,15 @@ class HandshakeReader
 
     public Map<String, List<String>> readHandshake(WebSocketInputStream input, String key) throws WebSocketException
     {
-        // Read the status line.
-        StatusLine statusLine = readStatusLine(input);
+        // Read the status line and HTTP headers. Bytes after the header
+        // section (if any) are left in the stream for the frame reader.
+        HttpHeadReader head = readHead(input);
 
-        // Read HTTP headers.
-        Map<String, List<String>> headers = readHttpHeaders(input);
+        // Parse the status line.
+        StatusLine statusLine = parseStatusLine(head.getStatusLine());
+
+        // HTTP headers.
+        Map<String, List<String>> headers = head.getHeaders();
 
         // Validate the status line.
         validateStatusLine(statusLine, headers, input);
@@ -74,25 +77,41 @@ class HandshakeReader
 
 
     /**
-     * Read a status line from an HTTP server.
+     * Read the status line and the header section from an HTTP server.
      */
-    private StatusLine readStatusLine(WebSocketInputStream input) throws WebSocketException
+    private HttpHeadReader readHead(WebSocketInputStream input) throws WebSocketException
     {
-        String line;
+        HttpHeadReader head = new HttpHeadReader(input);
 
         try
         {
-            // Read the status line.
-            line = input.readLine();
+            head.read();
         }
         catch (IOException e)
         {
+            if (head.hasStatusLine())
+            {
+                // An error occurred while HTTP header section was being read.
+                throw new WebSocketException(
+                    WebSocketError.HTTP_HEADER_FAILURE,
+                    "An error occurred while HTTP header section was being read: " + e.getMessage(), e);
+            }
+
             // Failed to read an opening handshake response from the server.
             throw new WebSocketException(
                 WebSocketError.OPENING_HANDSHAKE_RESPONSE_FAILURE,
                 "Failed to read an opening handshake response from the server: " + e.getMessage(), e);
         }
 
+        return head;
+    }
+
+
+    /**
+     * Parse a status line from an HTTP server.
+     */
+    private StatusLine parseStatusLine(String line) throws WebSocketException
+    {
         if (line == null || line.length() == 0)
         {
             // The status line of the opening handshake response is empty.
@@ -116,103 +135,6 @@ class HandshakeReader
     }
 
 
-    private Map<String, List<String>> readHttpHeaders(WebSocketInputStream input) throws WebSocketException
-    {
-        // Create a map of HTTP headers. Keys are case-insensitive.
-        Map<String, List<String>> headers =
-            new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
-
-        StringBuilder builder = null;
-        String line;
-
-        while (true)
-        {
-            try
-            {
-                line = input.readLine();
-            }
-            catch (IOException e)
-            {
-                // An error occurred while HTTP header section was being read.
-                throw new WebSocketException(
-                    WebSocketError.HTTP_HEADER_FAILURE,
-                    "An error occurred while HTTP header section was being read: " + e.getMessage(), e);
-            }
-
-            // If the end of the header section was reached.
-            if (line == null || line.length() == 0)
-            {
-                if (builder != null)
-                {
-                    parseHttpHeader(headers, builder.toString());
-                }
-
-                // The end of the header section.
-                break;
-            }
-
-            // The first line of the line.
-            char ch = line.charAt(0);
-
-            // If the first char is SP or HT.
-            if (ch == ' ' || ch == '\t')
-            {
-                if (builder == null)
-                {
-                    // Weird. No preceding "field-name:field-value" line. Ignore this line.
-                    continue;
-                }
-
-                // Replacing the leading 1*(SP|HT) to a single SP.
-                line = line.replaceAll("^[ \t]+", " ");
-
-                // Concatenate
-                builder.append(line);
-
-                continue;
-            }
-
-            if (builder != null)
-            {
-                parseHttpHeader(headers, builder.toString());
-            }
-
-            builder = new StringBuilder(line);
-        }
-
-        return headers;
-    }
-
-
-    private void parseHttpHeader(Map<String, List<String>> headers, String header)
-    {
-        // Split 'header' to name & value.
-        String[] pair = header.split(":", 2);
-
-        if (pair.length < 2)
-        {
-            // Weird. Ignore this header.
-            return;
-        }
-
-        // Name. (Remove leading and trailing spaces)
-        String name = pair[0].trim();
-
-        // Value. (Remove leading and trailing spaces)
-        String value = pair[1].trim();
-
-        List<String> list = headers.get(name);
-
-        if (list == null)
-        {
-            list = new ArrayList<String>();
-            headers.put(name, list);
-        }
-
-        list.add(value);
-    }
-
-
     /**
      * Validate the status line. {@code "101 Switching Protocols"} is expected.
      */
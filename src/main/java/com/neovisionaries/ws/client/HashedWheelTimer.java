@@ -0,0 +1,473 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A timer which runs delayed tasks of many {@link WebSocket} instances
+ * on one thread.
+ *
+ * <p>
+ * Ping frames, pong frames and the delayed closure of a socket after
+ * {@link WebSocket#disconnect(int, String, long) disconnect()} are
+ * scheduled on this timer. Scheduled tasks are kept in a hashed wheel,
+ * so scheduling and cancelling a task cost a few objects and constant
+ * time regardless of the number of tasks, and no thread is created per
+ * connection.
+ * </p>
+ *
+ * <p>
+ * The wheel advances by one tick every <i>tick duration</i>, and a task
+ * runs at the first tick on or after its deadline. Therefore, the tick
+ * duration is the accuracy of the timer. The thread of the timer is
+ * started when a task is scheduled and terminates when no task remains.
+ * </p>
+ *
+ * <p>
+ * Tasks are executed on the thread of the timer, so they should finish
+ * quickly. {@link WebSocketFactory#setTimer(HashedWheelTimer)} can be
+ * used to give a separate timer to a group of connections. Work of the
+ * library which may block, such as the closure of a socket, is handed
+ * from the thread of the timer to a pool of threads of the timer.
+ * </p>
+ *
+ * @since 2.10
+ */
+public class HashedWheelTimer
+{
+    /**
+     * The default tick duration in milliseconds ({@value}).
+     */
+    public static final long DEFAULT_TICK_DURATION = 100;
+
+    /**
+     * The default number of buckets of a wheel ({@value}).
+     */
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    private static final String DEFAULT_NAME = "WebSocketTimer";
+    private static final String OFFLOADER_SUFFIX = "Offloader";
+
+    private static final HashedWheelTimer sDefault = new HashedWheelTimer(
+            DEFAULT_NAME, DEFAULT_TICK_DURATION, DEFAULT_TICKS_PER_WHEEL);
+
+    private final String mName;
+    private final long mTickDuration;
+    private final Timeout[] mWheel;
+    private final int mMask;
+    private Thread mThread;
+    private long mStartTime;
+    private long mTick;
+    private int mCount;
+    private ExecutorService mOffloader;
+
+
+    /**
+     * Constructor with the default tick duration and the default number
+     * of buckets.
+     *
+     * @param name
+     *         The name of the thread of the timer.
+     */
+    public HashedWheelTimer(String name)
+    {
+        this(name, DEFAULT_TICK_DURATION, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param name
+     *         The name of the thread of the timer.
+     *
+     * @param tickDuration
+     *         The tick duration in milliseconds. The value must be positive.
+     *
+     * @param ticksPerWheel
+     *         The number of buckets of the wheel. The value is rounded up
+     *         to a power of two. It must be positive.
+     *
+     * @throws IllegalArgumentException
+     *         {@code tickDuration} or {@code ticksPerWheel} is not positive.
+     */
+    public HashedWheelTimer(String name, long tickDuration, int ticksPerWheel)
+    {
+        if (tickDuration <= 0)
+        {
+            throw new IllegalArgumentException("tickDuration must be positive.");
+        }
+
+        if (ticksPerWheel <= 0 || (1 << 30) < ticksPerWheel)
+        {
+            throw new IllegalArgumentException("ticksPerWheel is out of range.");
+        }
+
+        int size = 1;
+
+        while (size < ticksPerWheel)
+        {
+            size <<= 1;
+        }
+
+        mName         = name;
+        mTickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+        mWheel        = new Timeout[size];
+        mMask         = size - 1;
+    }
+
+
+    /**
+     * Get the timer shared by {@link WebSocketFactory} instances whose
+     * timer has not been changed.
+     *
+     * @return
+     *         The shared timer.
+     */
+    public static HashedWheelTimer getDefault()
+    {
+        return sDefault;
+    }
+
+
+    /**
+     * Get the number of scheduled tasks which have not run or been
+     * cancelled yet.
+     *
+     * @return
+     *         The number of pending tasks.
+     */
+    public synchronized int getPendingCount()
+    {
+        return mCount;
+    }
+
+
+    /**
+     * Schedule a task.
+     *
+     * @param task
+     *         The task to run.
+     *
+     * @param delay
+     *         The delay in milliseconds. A negative value is treated as 0.
+     *
+     * @return
+     *         A handle to cancel the task.
+     *
+     * @throws IllegalArgumentException
+     *         {@code task} is {@code null}.
+     */
+    public Timeout schedule(Runnable task, long delay)
+    {
+        if (task == null)
+        {
+            throw new IllegalArgumentException("task must not be null.");
+        }
+
+        long now = System.nanoTime();
+
+        synchronized (this)
+        {
+            if (mThread == null)
+            {
+                // The wheel is empty, so the ticks can be counted from now.
+                mStartTime = now;
+                mTick      = 0;
+                mThread    = new Worker(mName);
+                mThread.start();
+            }
+
+            // The tick at which the task should run.
+            long tick = (now - mStartTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay))) / mTickDuration;
+
+            // Not to put the task into a tick which has passed.
+            tick = Math.max(tick, mTick);
+
+            Timeout timeout = new Timeout(this, task);
+            timeout.mRounds = (tick - mTick) / mWheel.length;
+            link(timeout, (int)(tick & mMask));
+
+            ++mCount;
+
+            return timeout;
+        }
+    }
+
+
+    /**
+     * Run a task which may block on another thread, so that it does not
+     * delay the other tasks of this timer. Tasks running on the thread of
+     * this timer use this method to hand over blocking work.
+     */
+    void offload(Runnable task)
+    {
+        getOffloader().execute(task);
+    }
+
+
+    private synchronized ExecutorService getOffloader()
+    {
+        if (mOffloader == null)
+        {
+            // Idle threads are terminated automatically.
+            mOffloader = Executors.newCachedThreadPool(
+                    new DaemonThreadFactory(mName + OFFLOADER_SUFFIX));
+        }
+
+        return mOffloader;
+    }
+
+
+    private synchronized boolean cancel(Timeout timeout)
+    {
+        if (timeout.mState != Timeout.PENDING)
+        {
+            return false;
+        }
+
+        timeout.mState = Timeout.CANCELLED;
+        unlink(timeout);
+        --mCount;
+
+        return true;
+    }
+
+
+    private void link(Timeout timeout, int bucket)
+    {
+        Timeout head = mWheel[bucket];
+
+        timeout.mBucket = bucket;
+        timeout.mNext   = head;
+
+        if (head != null)
+        {
+            head.mPrev = timeout;
+        }
+
+        mWheel[bucket] = timeout;
+    }
+
+
+    private void unlink(Timeout timeout)
+    {
+        if (timeout.mPrev == null)
+        {
+            mWheel[timeout.mBucket] = timeout.mNext;
+        }
+        else
+        {
+            timeout.mPrev.mNext = timeout.mNext;
+        }
+
+        if (timeout.mNext != null)
+        {
+            timeout.mNext.mPrev = timeout.mPrev;
+        }
+
+        timeout.mPrev = null;
+        timeout.mNext = null;
+    }
+
+
+    /**
+     * Wait for the next tick and take out the tasks to run at the tick.
+     *
+     * @return
+     *         The expired tasks, or {@code null} if no task remains and
+     *         the thread should terminate.
+     */
+    private List<Timeout> nextTick() throws InterruptedException
+    {
+        long deadline;
+
+        synchronized (this)
+        {
+            if (mCount == 0)
+            {
+                mThread = null;
+                return null;
+            }
+
+            deadline = mStartTime + (mTick + 1) * mTickDuration;
+        }
+
+        long wait;
+
+        while (0 < (wait = deadline - System.nanoTime()))
+        {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+
+        List<Timeout> expired = new ArrayList<Timeout>();
+
+        synchronized (this)
+        {
+            Timeout timeout = mWheel[(int)(mTick & mMask)];
+
+            while (timeout != null)
+            {
+                Timeout next = timeout.mNext;
+
+                if (timeout.mRounds <= 0)
+                {
+                    timeout.mState = Timeout.EXPIRED;
+                    unlink(timeout);
+                    --mCount;
+                    expired.add(timeout);
+                }
+                else
+                {
+                    --timeout.mRounds;
+                }
+
+                timeout = next;
+            }
+
+            ++mTick;
+        }
+
+        return expired;
+    }
+
+
+    private class Worker extends Thread
+    {
+        Worker(String name)
+        {
+            super(name);
+
+            // Not to prevent the JVM from exiting.
+            setDaemon(true);
+        }
+
+
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                List<Timeout> expired;
+
+                try
+                {
+                    expired = nextTick();
+                }
+                catch (InterruptedException e)
+                {
+                    // Should not happen. Keep going.
+                    continue;
+                }
+
+                if (expired == null)
+                {
+                    return;
+                }
+
+                for (Timeout timeout : expired)
+                {
+                    try
+                    {
+                        timeout.mTask.run();
+                    }
+                    catch (Throwable t)
+                    {
+                        // Not to stop the other tasks.
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * A handle of a task scheduled on a {@link HashedWheelTimer}.
+     *
+     * @since 2.10
+     */
+    public static final class Timeout
+    {
+        private static final int PENDING   = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED   = 2;
+
+        private final HashedWheelTimer mTimer;
+        private final Runnable mTask;
+        private int mState;
+        private int mBucket;
+        private long mRounds;
+        private Timeout mPrev;
+        private Timeout mNext;
+
+
+        private Timeout(HashedWheelTimer timer, Runnable task)
+        {
+            mTimer = timer;
+            mTask  = task;
+        }
+
+
+        /**
+         * Cancel the task.
+         *
+         * @return
+         *         {@code true} if the task was cancelled. {@code false}
+         *         if it has already run or been cancelled.
+         */
+        public boolean cancel()
+        {
+            return mTimer.cancel(this);
+        }
+
+
+        /**
+         * Check if the task has been cancelled.
+         *
+         * @return
+         *         {@code true} if the task has been cancelled.
+         */
+        public boolean isCancelled()
+        {
+            synchronized (mTimer)
+            {
+                return mState == CANCELLED;
+            }
+        }
+
+
+        /**
+         * Check if the task has run or is running.
+         *
+         * @return
+         *         {@code true} if the deadline of the task has come.
+         */
+        public boolean isExpired()
+        {
+            synchronized (mTimer)
+            {
+                return mState == EXPIRED;
+            }
+        }
+    }
+}
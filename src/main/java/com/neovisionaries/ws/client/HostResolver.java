@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+
+/**
+ * Resolver of hostnames to IP addresses.
+ *
+ * <p>
+ * An implementation can be set to a {@link WebSocketFactory} by {@link
+ * WebSocketFactory#setHostResolver(HostResolver) setHostResolver()}. It
+ * is used to resolve the hostname of the WebSocket endpoint (or the proxy
+ * server) every time a {@link WebSocket} created by the factory connects.
+ * By default, {@link CachingHostResolver#getDefault()} is used.
+ * </p>
+ *
+ * @since 2.10
+ *
+ * @see CachingHostResolver
+ */
+public interface HostResolver
+{
+    /**
+     * Resolve the hostname to IP addresses.
+     *
+     * @param hostname
+     *         The hostname to resolve.
+     *
+     * @return
+     *         The IP addresses of the host. The caller may modify the
+     *         returned array.
+     *
+     * @throws UnknownHostException
+     *         No IP address was found for the host.
+     */
+    InetAddress[] resolve(String hostname) throws UnknownHostException;
+}
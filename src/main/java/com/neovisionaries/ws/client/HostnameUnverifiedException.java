@@ -16,6 +16,7 @@
 package com.neovisionaries.ws.client;
 
 
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 
 
@@ -63,11 +64,33 @@ public class HostnameUnverifiedException extends WebSocketException
     }
 
 
+    /**
+     * Constructor with the SSL session and the expected hostname, used
+     * when the session has been established by an {@link
+     * javax.net.ssl.SSLEngine SSLEngine} ({@link Transport#SELECTOR}).
+     */
+    HostnameUnverifiedException(SSLSession session, String hostname)
+    {
+        super(WebSocketError.HOSTNAME_UNVERIFIED,
+                String.format("The certificate of the peer%s does not match the expected hostname (%s)",
+                        stringifyPrincipal(session), hostname));
+
+        mSSLSocket = null;
+        mHostname  = hostname;
+    }
+
+
     private static String stringifyPrincipal(SSLSocket socket)
+    {
+        return stringifyPrincipal(socket.getSession());
+    }
+
+
+    private static String stringifyPrincipal(SSLSession session)
     {
         try
         {
-            return String.format(" (%s)", socket.getSession().getPeerPrincipal().toString());
+            return String.format(" (%s)", session.getPeerPrincipal().toString());
         }
         catch (Exception e)
         {
@@ -81,7 +104,8 @@ public class HostnameUnverifiedException extends WebSocketException
      * Get the SSL socket against which the hostname verification failed.
      *
      * @return
-     *         The SSL socket.
+     *         The SSL socket. {@code null} if the connection was made
+     *         with {@link Transport#SELECTOR}.
      */
     public SSLSocket getSSLSocket()
     {
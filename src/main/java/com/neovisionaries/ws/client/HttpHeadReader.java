@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Reader for the head (the status line and the header section) of an
+ * HTTP/1.1 response.
+ *
+ * <p>
+ * Instead of reading the response byte by byte, this reader reads it in
+ * chunks into a buffer and scans the chunks for line breaks. The status
+ * line and header fields are decoded directly from the buffer, so no
+ * string is created for each line.
+ * </p>
+ *
+ * <p>
+ * The given stream must support {@link InputStream#mark(int) mark}. When
+ * {@link #read()} returns, the stream is positioned right after the empty
+ * line which terminates the head, so bytes which have arrived together
+ * with the head (e.g. WebSocket frames sent immediately after the opening
+ * handshake response) remain in the stream for the next reader.
+ * </p>
+ */
+class HttpHeadReader
+{
+    private static final int CHUNK_SIZE = 1024;
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private final InputStream mInput;
+    private byte[] mBuffer = new byte[INITIAL_BUFFER_SIZE];
+    private int mLength;
+
+    // Line boundaries in mBuffer. Each pair is (start, end) where 'end'
+    // excludes the line terminator.
+    private int[] mLines = new int[32];
+    private int mLineCount;
+
+    // True if the empty line terminating the head has been found.
+    private boolean mComplete;
+
+
+    public HttpHeadReader(InputStream input)
+    {
+        if (input.markSupported() == false)
+        {
+            throw new IllegalArgumentException("The input stream does not support mark.");
+        }
+
+        mInput = input;
+    }
+
+
+    /**
+     * Read the head until the empty line or the end of the stream.
+     */
+    public void read() throws IOException
+    {
+        // The start of the current line in mBuffer.
+        int lineStart = 0;
+
+        while (true)
+        {
+            ensureCapacity(mLength + CHUNK_SIZE);
+
+            // Remember the position so that bytes read beyond
+            // the head can be pushed back.
+            mInput.mark(CHUNK_SIZE);
+
+            int chunkStart = mLength;
+            int count = mInput.read(mBuffer, chunkStart, CHUNK_SIZE);
+
+            if (count == -1)
+            {
+                // The end of the stream. A partial line counts as a line.
+                if (lineStart < mLength)
+                {
+                    addLine(lineStart, mLength);
+                }
+
+                return;
+            }
+
+            mLength += count;
+
+            for (int i = chunkStart; i < mLength; ++i)
+            {
+                if (mBuffer[i] != '\n')
+                {
+                    continue;
+                }
+
+                // Exclude CR of CRLF.
+                int lineEnd = (lineStart < i && mBuffer[i - 1] == '\r') ? i - 1 : i;
+
+                if (lineStart == lineEnd)
+                {
+                    // The empty line terminates the head. If the status
+                    // line is empty, it is kept as an empty status line.
+                    if (mLineCount == 0)
+                    {
+                        addLine(lineStart, lineEnd);
+                    }
+
+                    // Push back the bytes after the empty line.
+                    mComplete = true;
+                    mLength   = i + 1;
+                    unread(mLength - chunkStart);
+                    return;
+                }
+
+                addLine(lineStart, lineEnd);
+                lineStart = i + 1;
+            }
+        }
+    }
+
+
+    private void unread(int consumed) throws IOException
+    {
+        mInput.reset();
+
+        while (0 < consumed)
+        {
+            long skipped = mInput.skip(consumed);
+
+            if (skipped <= 0)
+            {
+                // This never happens because the bytes have been read once.
+                throw new IOException("Failed to skip the bytes of the HTTP head.");
+            }
+
+            consumed -= skipped;
+        }
+    }
+
+
+    private void ensureCapacity(int capacity)
+    {
+        if (mBuffer.length < capacity)
+        {
+            byte[] buffer = new byte[Math.max(capacity, mBuffer.length * 2)];
+            System.arraycopy(mBuffer, 0, buffer, 0, mLength);
+            mBuffer = buffer;
+        }
+    }
+
+
+    private void addLine(int start, int end)
+    {
+        if (mLines.length < (mLineCount + 1) * 2)
+        {
+            int[] lines = new int[mLines.length * 2];
+            System.arraycopy(mLines, 0, lines, 0, mLineCount * 2);
+            mLines = lines;
+        }
+
+        mLines[mLineCount * 2]     = start;
+        mLines[mLineCount * 2 + 1] = end;
+        ++mLineCount;
+    }
+
+
+    /**
+     * Check if the empty line terminating the head was found.
+     * {@code false} means that the stream ended before the empty line.
+     */
+    public boolean isComplete()
+    {
+        return mComplete;
+    }
+
+
+    /**
+     * Check if the whole status line has been read. When {@link #read()}
+     * fails, this tells whether it failed in the header section.
+     */
+    public boolean hasStatusLine()
+    {
+        return 0 < mLineCount;
+    }
+
+
+    /**
+     * Get the status line. {@code null} is returned if no byte was read.
+     */
+    public String getStatusLine()
+    {
+        if (mLineCount == 0)
+        {
+            return null;
+        }
+
+        return Misc.toStringUTF8(mBuffer, mLines[0], mLines[1] - mLines[0]);
+    }
+
+
+    /**
+     * Get the header fields. Keys of the returned map are case-insensitive.
+     * Obsolete line folding is replaced with a single SP.
+     */
+    public Map<String, List<String>> getHeaders()
+    {
+        // Create a map of HTTP headers. Keys are case-insensitive.
+        Map<String, List<String>> headers =
+            new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+
+        // The values of the last header field.
+        List<String> values = null;
+
+        for (int i = 1; i < mLineCount; ++i)
+        {
+            int start = mLines[i * 2];
+            int end   = mLines[i * 2 + 1];
+
+            // If the first char is SP or HT.
+            if (mBuffer[start] == ' ' || mBuffer[start] == '\t')
+            {
+                if (values == null)
+                {
+                    // Weird. No preceding "field-name:field-value" line. Ignore this line.
+                    continue;
+                }
+
+                // Concatenate with a single SP.
+                String value = decode(start, end);
+
+                int last = values.size() - 1;
+                String previous = values.get(last);
+
+                if (previous.length() == 0)
+                {
+                    values.set(last, value);
+                }
+                else if (value.length() != 0)
+                {
+                    values.set(last, previous + " " + value);
+                }
+
+                continue;
+            }
+
+            values = parseHeader(headers, start, end);
+        }
+
+        return headers;
+    }
+
+
+    private List<String> parseHeader(Map<String, List<String>> headers, int start, int end)
+    {
+        int colon = indexOf(':', start, end);
+
+        if (colon < 0)
+        {
+            // Weird. Ignore this header.
+            return null;
+        }
+
+        String name  = decode(start, colon);
+        String value = decode(colon + 1, end);
+
+        List<String> list = headers.get(name);
+
+        if (list == null)
+        {
+            list = new ArrayList<String>();
+            headers.put(name, list);
+        }
+
+        list.add(value);
+
+        return list;
+    }
+
+
+    private int indexOf(int ch, int start, int end)
+    {
+        for (int i = start; i < end; ++i)
+        {
+            if (mBuffer[i] == ch)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Decode the bytes in the range with leading and trailing
+     * whitespaces removed.
+     */
+    private String decode(int start, int end)
+    {
+        while (start < end && (mBuffer[start] & 0xFF) <= ' ')
+        {
+            ++start;
+        }
+
+        while (start < end && (mBuffer[end - 1] & 0xFF) <= ' ')
+        {
+            --end;
+        }
+
+        return Misc.toStringUTF8(mBuffer, start, end - start);
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static com.neovisionaries.ws.client.WebSocketOpcode.TEXT;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A listener which queues received messages and pauses reading while
+ * the queue is full.
+ *
+ * <p>
+ * When the number of queued messages reaches the capacity, {@link
+ * WebSocket#pauseReading()} is called on the web socket which delivered
+ * the last message. When the application has taken messages out of the
+ * queue and the number of queued messages has dropped to half of the
+ * capacity, {@link WebSocket#resumeReading()} is called.
+ * </p>
+ *
+ * <blockquote>
+ * <pre style="border-left: solid 5px lightgray;"> InboundMessageQueue queue = new InboundMessageQueue(<span style="color: darkgreen;">100</span>);
+ *
+ * ws.addListener(queue);
+ *
+ * <span style="color: green;">// Process messages at the application's own pace.</span>
+ * while (true)
+ * {
+ *     WebSocketFrame message = queue.take();
+ *     ......
+ * }</pre>
+ * </blockquote>
+ *
+ * <p>
+ * Messages are queued as unfragmented text or binary frames. The
+ * capacity is not a hard limit. Messages which the reading thread
+ * delivers when it stops are queued even if the queue is full.
+ * </p>
+ *
+ * @since 2.10
+ */
+public class InboundMessageQueue extends WebSocketAdapter
+{
+    private final int mCapacity;
+    private final int mLowWatermark;
+    private final LinkedList<WebSocketFrame> mMessages = new LinkedList<WebSocketFrame>();
+    private final Set<WebSocket> mPausedSockets = new LinkedHashSet<WebSocket>();
+
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *         The number of queued messages at which reading is paused.
+     *
+     * @throws IllegalArgumentException
+     *         {@code capacity} is less than 1.
+     */
+    public InboundMessageQueue(int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("capacity must be at least 1.");
+        }
+
+        mCapacity     = capacity;
+        mLowWatermark = capacity / 2;
+    }
+
+
+    /**
+     * Get the number of queued messages at which reading is paused.
+     *
+     * @return
+     *         The capacity.
+     */
+    public int getCapacity()
+    {
+        return mCapacity;
+    }
+
+
+    /**
+     * Get the number of queued messages.
+     *
+     * @return
+     *         The number of queued messages.
+     */
+    public synchronized int getSize()
+    {
+        return mMessages.size();
+    }
+
+
+    /**
+     * Take the oldest message out of the queue without waiting.
+     *
+     * @return
+     *         The oldest message, or {@code null} if the queue is empty.
+     */
+    public WebSocketFrame poll()
+    {
+        WebSocketFrame message;
+
+        synchronized (this)
+        {
+            message = mMessages.poll();
+        }
+
+        resumeIfDrained();
+
+        return message;
+    }
+
+
+    /**
+     * Take the oldest message out of the queue, waiting up to the specified
+     * time for a message to arrive.
+     *
+     * @param timeout
+     *         The maximum time to wait.
+     *
+     * @param unit
+     *         The unit of {@code timeout}.
+     *
+     * @return
+     *         The oldest message, or {@code null} if no message has arrived
+     *         within the timeout.
+     *
+     * @throws InterruptedException
+     *         The current thread has been interrupted while waiting.
+     */
+    public WebSocketFrame poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        WebSocketFrame message;
+
+        synchronized (this)
+        {
+            while (mMessages.isEmpty())
+            {
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining <= 0)
+                {
+                    return null;
+                }
+
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+
+            message = mMessages.removeFirst();
+        }
+
+        resumeIfDrained();
+
+        return message;
+    }
+
+
+    /**
+     * Take the oldest message out of the queue, waiting for a message to
+     * arrive if the queue is empty.
+     *
+     * @return
+     *         The oldest message.
+     *
+     * @throws InterruptedException
+     *         The current thread has been interrupted while waiting.
+     */
+    public WebSocketFrame take() throws InterruptedException
+    {
+        WebSocketFrame message;
+
+        synchronized (this)
+        {
+            while (mMessages.isEmpty())
+            {
+                wait();
+            }
+
+            message = mMessages.removeFirst();
+        }
+
+        resumeIfDrained();
+
+        return message;
+    }
+
+
+    @Override
+    public void onTextMessage(WebSocket websocket, String text) throws Exception
+    {
+        add(websocket, WebSocketFrame.createTextFrame(text));
+    }
+
+
+    @Override
+    public void onTextMessage(WebSocket websocket, byte[] data) throws Exception
+    {
+        // Called instead of onTextMessage(WebSocket, String) when
+        // WebSocket.setDirectTextMessage(true) has been set.
+        add(websocket, new WebSocketFrame().setFin(true).setOpcode(TEXT).setPayload(data));
+    }
+
+
+    @Override
+    public void onBinaryMessage(WebSocket websocket, byte[] binary) throws Exception
+    {
+        add(websocket, WebSocketFrame.createBinaryFrame(binary));
+    }
+
+
+    private synchronized void add(WebSocket websocket, WebSocketFrame message)
+    {
+        mMessages.add(message);
+        notifyAll();
+
+        if (mMessages.size() < mCapacity)
+        {
+            return;
+        }
+
+        // Paused under the lock so that resumeIfDrained() cannot resume
+        // the web socket before it is paused. This is called on the
+        // reading thread of the web socket, so the following messages
+        // are held until reading is resumed.
+        mPausedSockets.add(websocket);
+        websocket.pauseReading();
+    }
+
+
+    private synchronized void resumeIfDrained()
+    {
+        if (mLowWatermark < mMessages.size())
+        {
+            return;
+        }
+
+        for (WebSocket websocket : mPausedSockets)
+        {
+            websocket.resumeReading();
+        }
+
+        mPausedSockets.clear();
+    }
+}
@@ -626,4 +626,20 @@ class ListenerManager
             }
         }
     }
+
+
+    public void callOnConnectTimings(ConnectTimings timings)
+    {
+        for (WebSocketListener listener : getSynchronizedListeners())
+        {
+            try
+            {
+                listener.onConnectTimings(mWebSocket, timings);
+            }
+            catch (Throwable t)
+            {
+                callHandleCallbackError(listener, t);
+            }
+        }
+    }
 }
@@ -19,16 +19,53 @@ package com.neovisionaries.ws.client;
 /**
  * Per-Message Compression Extension (<a href="https://tools.ietf.org/html/rfc7692">RFC 7692</a>).
  *
+ * <p>
+ * Applications can implement their own per-message compression extensions
+ * by extending this class and registering a factory with {@link
+ * WebSocketExtension#registerPerMessageCompressionExtension(String,
+ * PerMessageCompressionExtensionFactory)
+ * WebSocketExtension.registerPerMessageCompressionExtension()}. When the
+ * extension has been agreed, the payloads of data frames are given to
+ * {@link #compress(byte[])} before they are sent and to {@link
+ * #decompressFragment(byte[], boolean, int)} after they are received,
+ * and the RSV1 bit of the first frame of each message marks compression.
+ * An instance is used by a single connection, but its methods may be
+ * called from the reading thread and the writing thread concurrently.
+ * </p>
+ *
  * @see <a href="https://tools.ietf.org/html/rfc7692">RFC 7692</a>
+ *
+ * @since 2.10 (package-private before 2.10)
  */
-abstract class PerMessageCompressionExtension extends WebSocketExtension
+public abstract class PerMessageCompressionExtension extends WebSocketExtension
 {
+    private ByteArray mFragments;
+
+
+    /**
+     * Constructor with an extension name.
+     *
+     * @param name
+     *         The extension name.
+     *
+     * @throws IllegalArgumentException
+     *         The given name is not a valid token.
+     */
     public PerMessageCompressionExtension(String name)
     {
         super(name);
     }
 
 
+    /**
+     * Copy constructor.
+     *
+     * @param source
+     *         A source extension. Must not be {@code null}.
+     *
+     * @throws IllegalArgumentException
+     *         The given argument is {@code null}.
+     */
     public PerMessageCompressionExtension(WebSocketExtension source)
     {
         super(source);
@@ -37,12 +74,135 @@ abstract class PerMessageCompressionExtension extends WebSocketExtension
 
     /**
      * Decompress the compressed message.
+     *
+     * @param compressed
+     *         The compressed message.
+     *
+     * @return
+     *         The decompressed message.
+     *
+     * @throws WebSocketException
+     *         Decompression failed. The error should be {@link
+     *         WebSocketError#DECOMPRESSION_ERROR DECOMPRESSION_ERROR}.
      */
     protected abstract byte[] decompress(byte[] compressed) throws WebSocketException;
 
 
+    /**
+     * Decompress a fragment of the compressed message.
+     *
+     * <p>
+     * This method is called for the payloads of the first frame and the
+     * subsequent continuation frames of a compressed message in order.
+     * An unfragmented message is given as a single fragment whose {@code
+     * fin} is {@code true}.
+     * </p>
+     *
+     * <p>
+     * The default implementation accumulates the fragments and calls
+     * {@link #decompress(byte[])} when the last fragment is given.
+     * Subclasses are expected to override this method to decompress
+     * fragments as they arrive and to stop decompression as soon as
+     * the decompressed data exceed {@code maxLength}.
+     * </p>
+     *
+     * @param compressed
+     *         A fragment of the compressed message.
+     *
+     * @param fin
+     *         {@code true} if the fragment is the last one.
+     *
+     * @param maxLength
+     *         The maximum length of the decompressed message.
+     *         0 means no limit.
+     *
+     * @return
+     *         The decompressed message if {@code fin} is {@code true}.
+     *         Otherwise, {@code null}.
+     *
+     * @throws WebSocketException
+     *         Decompression failed. If the decompressed message is too
+     *         long, the error is {@link
+     *         WebSocketError#TOO_LONG_DECOMPRESSED_MESSAGE
+     *         TOO_LONG_DECOMPRESSED_MESSAGE}.
+     */
+    protected byte[] decompressFragment(
+            byte[] compressed, boolean fin, int maxLength) throws WebSocketException
+    {
+        if (mFragments == null)
+        {
+            mFragments = new ByteArray(compressed.length);
+        }
+
+        mFragments.put(compressed);
+
+        if (fin == false)
+        {
+            return null;
+        }
+
+        byte[] data = mFragments.toBytes();
+        mFragments = null;
+
+        byte[] plain = decompress(data);
+
+        if (0 < maxLength && maxLength < plain.length)
+        {
+            throw new TooLongMessageException(maxLength);
+        }
+
+        return plain;
+    }
+
+
     /**
      * Compress the plain message.
+     *
+     * @param plain
+     *         The plain message.
+     *
+     * @return
+     *         The compressed message.
+     *
+     * @throws WebSocketException
+     *         Compression failed. The error should be {@link
+     *         WebSocketError#COMPRESSION_ERROR COMPRESSION_ERROR}.
      */
     protected abstract byte[] compress(byte[] plain) throws WebSocketException;
+
+
+    /**
+     * Compress a fragment of the plain message.
+     *
+     * <p>
+     * This method is called for the payloads of the first frame and the
+     * subsequent continuation frames of a fragmented message in order.
+     * {@code fin} is {@code true} for the last fragment. Concatenation
+     * of the returned data must be the compressed message.
+     * </p>
+     *
+     * <p>
+     * The default implementation returns {@code null}, which means that
+     * streaming compression is not supported and fragmented messages are
+     * sent without compression.
+     * </p>
+     *
+     * @param plain
+     *         A fragment of the plain message.
+     *
+     * @param fin
+     *         {@code true} if the fragment is the last one.
+     *
+     * @return
+     *         The compressed fragment, or {@code null} if streaming
+     *         compression is not supported.
+     *
+     * @throws WebSocketException
+     *         Compression failed. The error should be {@link
+     *         WebSocketError#COMPRESSION_ERROR COMPRESSION_ERROR}.
+     */
+    protected byte[] compressFragment(byte[] plain, boolean fin) throws WebSocketException
+    {
+        return null;
+    }
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+/**
+ * Factory of {@link PerMessageCompressionExtension} instances.
+ *
+ * <p>
+ * An implementation registered by {@link
+ * WebSocketExtension#registerPerMessageCompressionExtension(String,
+ * PerMessageCompressionExtensionFactory)
+ * WebSocketExtension.registerPerMessageCompressionExtension()} is used
+ * to create an extension instance for each opening handshake whose
+ * response contains the registered extension name.
+ * </p>
+ *
+ * @since 2.10
+ */
+public interface PerMessageCompressionExtensionFactory
+{
+    /**
+     * Create a new instance of the per-message compression extension.
+     * Parameters in the {@code Sec-WebSocket-Extensions} header are set
+     * to the returned instance after this method returns, and then its
+     * {@link WebSocketExtension#validate() validate()} method is called.
+     *
+     * @param name
+     *         The extension name. The returned instance must have
+     *         this name.
+     *
+     * @return
+     *         A new instance. A connection uses its own instance, so
+     *         the instance can hold per-connection state such as a
+     *         sliding window.
+     */
+    PerMessageCompressionExtension create(String name);
+}
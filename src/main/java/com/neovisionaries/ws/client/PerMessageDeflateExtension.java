@@ -16,7 +16,10 @@
 package com.neovisionaries.ws.client;
 
 
+import java.io.IOException;
+import java.lang.reflect.Method;
 import java.util.Map;
+import java.util.zip.Deflater;
 
 
 /**
@@ -40,6 +43,13 @@ class PerMessageDeflateExtension extends PerMessageCompressionExtension
     private static final int MIN_WINDOW_SIZE = 256;
     private static final int MAX_WINDOW_SIZE = 32768;
     private static final int INCOMING_SLIDING_WINDOW_MARGIN = 1024;
+    private static final int FLUSH_BUFFER_SIZE = 8192;
+
+    // Deflater.deflate(byte[], int, int, int) and Deflater.SYNC_FLUSH,
+    // which are available since Java 7 / Android API Level 19.
+    private static final Method DEFLATE_WITH_FLUSH = Misc.getMethod("java.util.zip.Deflater",
+            "deflate", new Class<?>[] { byte[].class, int.class, int.class, int.class });
+    private static final Integer SYNC_FLUSH = Integer.valueOf(2);
 
     private boolean mServerNoContextTakeover;
     private boolean mClientNoContextTakeover;
@@ -47,6 +57,12 @@ class PerMessageDeflateExtension extends PerMessageCompressionExtension
     private int mClientWindowSize = MAX_WINDOW_SIZE;
     private int mIncomingSlidingWindowBufferSize;
     private ByteArray mIncomingSlidingWindow;
+    private int mIncomingMessageStart;
+    private ByteArray mIncomingFragments;
+    private int mIncomingBitIndex;
+    private int mIncomingRetryLength;
+    private WindowedDeflateCompressor mCompressor;
+    private Deflater mFragmentDeflater;
 
 
     public PerMessageDeflateExtension()
@@ -62,7 +78,7 @@ class PerMessageDeflateExtension extends PerMessageCompressionExtension
 
 
     @Override
-    void validate() throws WebSocketException
+    protected void validate() throws WebSocketException
     {
         // For each parameter
         for (Map.Entry<String, String> entry : getParameters().entrySet())
@@ -188,60 +204,169 @@ class PerMessageDeflateExtension extends PerMessageCompressionExtension
     @Override
     protected byte[] decompress(byte[] compressed) throws WebSocketException
     {
-        // Append 0x00, 0x00, 0xFF and 0xFF.
-        //
-        //   From RFC 7692, 7.2.2. Decompression
-        //
-        //     An endpoint uses the following algorithm to decompress a message.
-        //
-        //     1.  Append 4 octets of 0x00 0x00 0xff 0xff to the tail end of
-        //         the payload of the message.
-        //
-        //     2.  Decompress the resulting data using DEFLATE.
-        //
-        //
-        //   From RFC 1979, 2.1. Packet Format, Data, The 3rd paragraph:
-        //
-        //     The basic format of the compressed data is precisely described by
-        //     the 'Deflate' Compressed Data Format Specification[3].  Each
-        //     transmitted packet must begin at a 'deflate' block boundary, to
-        //     ensure synchronization when incompressible data resets the
-        //     transmitter's state; to ensure this, each transmitted packet must
-        //     be terminated with a zero-length 'deflate' non-compressed block
-        //     (BTYPE of 00).  This means that the last four bytes of the
-        //     compressed format must be 0x00 0x00 0xFF 0xFF.  These bytes MUST
-        //     be removed before transmission; the receiver can reinsert them if
-        //     required by the implementation.
-        //
-        int inputLen = compressed.length + COMPRESSION_TERMINATOR.length;
+        return decompressFragment(compressed, true, 0);
+    }
 
-        // Wrap the compressed byte array with ByteArray.
-        ByteArray input = new ByteArray(inputLen);
-        input.put(compressed);
-        input.put(COMPRESSION_TERMINATOR);
 
-        if (mIncomingSlidingWindow == null)
+    @Override
+    protected synchronized byte[] decompressFragment(
+            byte[] compressed, boolean fin, int maxLength) throws WebSocketException
+    {
+        // If this is the first fragment of a message.
+        if (mIncomingFragments == null && mIncomingBitIndex == 0)
         {
-            mIncomingSlidingWindow = new ByteArray(mIncomingSlidingWindowBufferSize);
+            startDecompression();
         }
 
-        // The size of the sliding window before decompression.
-        int outPos = mIncomingSlidingWindow.length();
+        // If the last block (BFINAL=1) has already been decompressed.
+        if (mIncomingBitIndex < 0)
+        {
+            // The rest of the message is ignored.
+            return fin ? finishMessage() : null;
+        }
+
+        if (compressed != null)
+        {
+            mIncomingFragments.put(compressed);
+        }
+
+        if (fin)
+        {
+            // Append 0x00, 0x00, 0xFF and 0xFF.
+            //
+            //   From RFC 7692, 7.2.2. Decompression
+            //
+            //     An endpoint uses the following algorithm to decompress a message.
+            //
+            //     1.  Append 4 octets of 0x00 0x00 0xff 0xff to the tail end of
+            //         the payload of the message.
+            //
+            //     2.  Decompress the resulting data using DEFLATE.
+            //
+            //
+            //   From RFC 1979, 2.1. Packet Format, Data, The 3rd paragraph:
+            //
+            //     The basic format of the compressed data is precisely described by
+            //     the 'Deflate' Compressed Data Format Specification[3].  Each
+            //     transmitted packet must begin at a 'deflate' block boundary, to
+            //     ensure synchronization when incompressible data resets the
+            //     transmitter's state; to ensure this, each transmitted packet must
+            //     be terminated with a zero-length 'deflate' non-compressed block
+            //     (BTYPE of 00).  This means that the last four bytes of the
+            //     compressed format must be 0x00 0x00 0xFF 0xFF.  These bytes MUST
+            //     be removed before transmission; the receiver can reinsert them if
+            //     required by the implementation.
+            //
+            mIncomingFragments.put(COMPRESSION_TERMINATOR);
+        }
+        else if (mIncomingFragments.length() < mIncomingRetryLength)
+        {
+            // Wait for more fragments. Retrying decompression of a block
+            // which lacks its tail for every small fragment is costly.
+            return null;
+        }
 
         try
         {
-            // Decompress.
-            DeflateDecompressor.decompress(input, mIncomingSlidingWindow);
+            // Decompress blocks available so far into the sliding window.
+            inflateFragments(fin, maxLength);
+        }
+        catch (WebSocketException e)
+        {
+            finishDecompression();
+
+            // The decompressed message is too long.
+            throw e;
         }
         catch (Exception e)
         {
+            finishDecompression();
+
             // Failed to decompress the message.
             throw new WebSocketException(
                     WebSocketError.DECOMPRESSION_ERROR,
                     String.format("Failed to decompress the message: %s", e.getMessage()), e);
         }
 
-        byte[] output = mIncomingSlidingWindow.toBytes(outPos);
+        if (fin == false)
+        {
+            // More fragments are needed.
+            return null;
+        }
+
+        return finishMessage();
+    }
+
+
+    private byte[] finishMessage()
+    {
+        byte[] output = mIncomingSlidingWindow.toBytes(mIncomingMessageStart);
+
+        finishDecompression();
+
+        return output;
+    }
+
+
+    private void startDecompression()
+    {
+        if (mIncomingSlidingWindow == null)
+        {
+            // Without server_no_context_takeover, the window is kept
+            // until the connection is closed. Otherwise, it is borrowed
+            // from the pool only while a message is decompressed.
+            mIncomingSlidingWindow = DeflateContextPool.getDefault()
+                    .acquireWindow(mIncomingSlidingWindowBufferSize);
+        }
+
+        // The size of the sliding window before decompression.
+        mIncomingMessageStart = mIncomingSlidingWindow.length();
+        mIncomingFragments    = new ByteArray(INCOMING_SLIDING_WINDOW_MARGIN);
+        mIncomingBitIndex     = 0;
+        mIncomingRetryLength  = 0;
+    }
+
+
+    private void inflateFragments(boolean fin, int maxLength) throws FormatException, TooLongMessageException
+    {
+        // The maximum length of the sliding window which contains
+        // the decompressed message after the previous messages.
+        int maxOutputLength = (maxLength == 0) ? 0 : mIncomingMessageStart + maxLength;
+
+        // Decompress.
+        int bitIndex = DeflateDecompressor.decompress(
+                mIncomingFragments, mIncomingBitIndex, mIncomingSlidingWindow, maxOutputLength, fin);
+
+        if (fin)
+        {
+            return;
+        }
+
+        if (bitIndex < 0)
+        {
+            // The last block (BFINAL=1) has been decompressed. The rest
+            // of the message is ignored.
+            mIncomingFragments = null;
+            mIncomingBitIndex  = -1;
+            return;
+        }
+
+        // Release the compressed data which have been decompressed.
+        // The remaining data are the head of the next block.
+        byte[] remaining   = mIncomingFragments.toBytes(bitIndex / 8);
+        mIncomingFragments = new ByteArray(remaining.length + INCOMING_SLIDING_WINDOW_MARGIN);
+        mIncomingFragments.put(remaining);
+        mIncomingBitIndex  = bitIndex % 8;
+
+        // Retry after the size of the compressed data doubles.
+        mIncomingRetryLength = remaining.length * 2;
+    }
+
+
+    private void finishDecompression()
+    {
+        mIncomingFragments = null;
+        mIncomingBitIndex  = 0;
 
         // Shrink the size of the incoming sliding window.
         mIncomingSlidingWindow.shrink(mIncomingSlidingWindowBufferSize);
@@ -249,22 +374,17 @@ class PerMessageDeflateExtension extends PerMessageCompressionExtension
         if (mServerNoContextTakeover)
         {
             // No need to remember the message for the next decompression.
-            mIncomingSlidingWindow.clear();
+            // Return the window to the pool so that idle connections do
+            // not hold windows.
+            DeflateContextPool.getDefault().releaseWindow(mIncomingSlidingWindow);
+            mIncomingSlidingWindow = null;
         }
-
-        return output;
     }
 
 
     @Override
     protected byte[] compress(byte[] plain) throws WebSocketException
     {
-        if (canCompress(plain) == false)
-        {
-            // Compression should not be performed.
-            return plain;
-        }
-
         // From RFC 7692, 7.2.1. Compression
         //
         //   An endpoint uses the following algorithm to compress a message.
@@ -283,9 +403,22 @@ class PerMessageDeflateExtension extends PerMessageCompressionExtension
 
         try
         {
+            // If the sliding window on the client side has to be limited.
+            if (mClientWindowSize < MAX_WINDOW_SIZE)
+            {
+                // Compress with the compressor which can control the size
+                // of the sliding window. Its output complies with RFC 7692.
+                return compressWithWindow(plain);
+            }
+
             // Compress.
             byte[] compressed = DeflateCompressor.compress(plain);
 
+            // The server's sliding window now contains the message which
+            // the compressors for fragmented messages do not know.
+            // Therefore, they must not refer to their own history.
+            resetCompressor();
+
             // Adjust the compressed data to comply with RFC 7692.
             return adjustCompressedData(compressed);
         }
@@ -299,16 +432,120 @@ class PerMessageDeflateExtension extends PerMessageCompressionExtension
     }
 
 
-    private boolean canCompress(byte[] plain)
+    @Override
+    protected synchronized byte[] compressFragment(byte[] plain, boolean fin) throws WebSocketException
     {
-        // The current compression implementation (DeflateCompressor)
-        // cannot control the size of the internal sliding window on
-        // the client side.
-        //
-        // Therefore, compression should not be performed if there is
-        // a possibility that Huffman codes in compressed data may
-        // refer to bigger distances than the agreed sliding window
-        // size (which is computed based on client_max_window_bits).
+        try
+        {
+            // java.util.zip.Deflater can flush compressed data without
+            // finishing the stream since Java 7. Its sliding window is
+            // always 32 KB, so it cannot be used when the window has to
+            // be limited.
+            if (DEFLATE_WITH_FLUSH != null && mClientWindowSize == MAX_WINDOW_SIZE)
+            {
+                return deflateFragment(plain, fin);
+            }
+
+            return getCompressor().compress(plain, fin);
+        }
+        catch (Exception e)
+        {
+            // Failed to compress the fragment.
+            throw new WebSocketException(
+                    WebSocketError.COMPRESSION_ERROR,
+                    String.format("Failed to compress the message: %s", e.getMessage()), e);
+        }
+    }
+
+
+    private byte[] deflateFragment(byte[] plain, boolean fin) throws IOException
+    {
+        if (mFragmentDeflater == null)
+        {
+            mFragmentDeflater = DeflateContextPool.getDefault().acquireDeflater();
+        }
+
+        ByteArray output = new ByteArray(plain.length / 2 + 16);
+        byte[] buffer    = new byte[FLUSH_BUFFER_SIZE];
+        int length;
+
+        mFragmentDeflater.setInput(plain);
+
+        // Compress the fragment with SYNC_FLUSH, which makes the output
+        // end with an empty non-compressed block (0x00 0x00 0xFF 0xFF).
+        // The output is complete when it does not fill the buffer.
+        do
+        {
+            Integer result = (Integer)Misc.invoke(DEFLATE_WITH_FLUSH,
+                    mFragmentDeflater, buffer, 0, buffer.length, SYNC_FLUSH);
+
+            if (result == null)
+            {
+                throw new IOException("Deflater.deflate() with SYNC_FLUSH failed.");
+            }
+
+            length = result.intValue();
+            output.put(buffer, 0, length);
+        }
+        while (length == buffer.length);
+
+        if (!fin)
+        {
+            return output.toBytes();
+        }
+
+        if (mClientNoContextTakeover)
+        {
+            // The next message must not refer to this one. The pool
+            // resets the compressor.
+            DeflateContextPool.getDefault().releaseDeflater(mFragmentDeflater);
+            mFragmentDeflater = null;
+        }
+
+        // Nothing is output when no data has been given since the last
+        // flush. In that case, an empty non-compressed block (BFINAL=0,
+        // BTYPE=00) whose LEN and NLEN are omitted is sent.
+        if (output.length() < COMPRESSION_TERMINATOR.length)
+        {
+            return new byte[] { 0 };
+        }
+
+        // Remove 0x00 0x00 0xFF 0xFF from the tail end (RFC 7692, 7.2.1.).
+        return output.toBytes(0, output.length() - COMPRESSION_TERMINATOR.length);
+    }
+
+
+    private WindowedDeflateCompressor getCompressor()
+    {
+        if (mCompressor == null)
+        {
+            // Context takeover is available unless client_no_context_takeover
+            // has been agreed.
+            mCompressor = new WindowedDeflateCompressor(mClientWindowSize, !mClientNoContextTakeover);
+        }
+
+        return mCompressor;
+    }
+
+
+    private synchronized void resetCompressor()
+    {
+        if (mCompressor != null)
+        {
+            mCompressor.reset();
+        }
+
+        if (mFragmentDeflater != null)
+        {
+            mFragmentDeflater.reset();
+        }
+    }
+
+
+    private synchronized byte[] compressWithWindow(byte[] plain)
+    {
+        // java.util.zip.Deflater cannot control the size of its internal
+        // sliding window, so it cannot be used here.
         //
         //   From RFC 7692, 7.2.1. Compression
         //
@@ -317,32 +554,20 @@ class PerMessageDeflateExtension extends PerMessageCompressionExtension
         //     an LZ77 sliding window longer than the w-th power of 2 bytes
         //     to compress messages to send.
         //
+        byte[] compressed = getCompressor().compress(plain);
 
-        // If the agreed sliding window size is the maximum value allowed
-        // by the DEFLATE specification, the size of the internal sliding
-        // window of the compressor does not have to be cared about.
-        if (mClientWindowSize == MAX_WINDOW_SIZE)
+        // If the compression does not reduce the size, the plain data
+        // will be sent instead. In that case, the data must not remain
+        // in the sliding window because the server never sees it as a
+        // part of the compressed data.
+        if (plain.length <= compressed.length)
         {
-            // Can be compressed.
-            return true;
-        }
+            mCompressor.rollback();
 
-        // Otherwise, considering the fact that the current implementation
-        // does not support context takeover on the client side, it can be
-        // said that Huffman codes in compressed data will not refer to
-        // bigger distances than the agreed sliding window size if the size
-        // of the original plain data is less than the agreed sliding window
-        // size.
-        if (plain.length < mClientWindowSize)
-        {
-            // Can be compressed.
-            return true;
+            return plain;
         }
 
-        // Cannot exclude the possibility that Huffman codes in compressed
-        // data may refer to bigger distances than the agreed sliding window
-        // size. Therefore, compression should not be performed.
-        return false;
+        return compressed;
     }
 
 
@@ -16,15 +16,12 @@
 package com.neovisionaries.ws.client;
 
 
-import java.util.Timer;
-import java.util.TimerTask;
-
-
 abstract class PeriodicalFrameSender
 {
     private final WebSocket mWebSocket;
     private String mTimerName;
-    private Timer mTimer;
+    private HashedWheelTimer.Timeout mTimeout;
+    private boolean mStopped;
     private boolean mScheduled;
     private long mInterval;
     private PayloadGenerator mGenerator;
@@ -49,13 +46,14 @@ abstract class PeriodicalFrameSender
     {
         synchronized (this)
         {
-            if (mTimer == null)
+            mStopped   = true;
+            mScheduled = false;
+
+            if (mTimeout != null)
             {
-                return;
+                mTimeout.cancel();
+                mTimeout = null;
             }
-
-            mScheduled = false;
-            mTimer.cancel();
         }
     }
 
@@ -93,21 +91,9 @@ abstract class PeriodicalFrameSender
 
         synchronized (this)
         {
-            if (mTimer == null)
+            if (mScheduled == false && mStopped == false)
             {
-                if (mTimerName == null)
-                {
-                    mTimer = new Timer();
-                }
-                else
-                {
-                    mTimer = new Timer(mTimerName);
-                }
-            }
-
-            if (mScheduled == false)
-            {
-                mScheduled = schedule(mTimer, new Task(), interval);
+                schedule(interval);
             }
         }
     }
@@ -146,9 +132,8 @@ abstract class PeriodicalFrameSender
     }
 
 
-    private final class Task extends TimerTask
+    private final class Task implements Runnable
     {
-        @Override
         public void run()
         {
             doTask();
@@ -160,7 +145,7 @@ abstract class PeriodicalFrameSender
     {
         synchronized (this)
         {
-            if (mInterval == 0 || mWebSocket.isOpen() == false)
+            if (mStopped || mInterval == 0 || mWebSocket.isOpen() == false)
             {
                 mScheduled = false;
 
@@ -168,11 +153,22 @@ abstract class PeriodicalFrameSender
                 return;
             }
 
-            // Create a frame and send it to the server.
-            mWebSocket.sendFrame(createFrame());
+            // Let the subclass postpone the frame.
+            long delay = getRemainingDelay(mInterval);
+
+            if (0 < delay)
+            {
+                schedule(delay);
+                return;
+            }
+
+            // Create a frame and send it to the server. The frame is
+            // never written on this thread not to block the timer shared
+            // by connections. null is ignored.
+            mWebSocket.sendFrameWithoutBlocking(createFrame());
 
             // Schedule a new task.
-            mScheduled = schedule(mTimer, new Task(), mInterval);
+            schedule(mInterval);
         }
     }
 
@@ -207,37 +203,37 @@ abstract class PeriodicalFrameSender
     }
 
 
-    private static boolean schedule(Timer timer, Task task, long interval)
+    private void schedule(long interval)
     {
-        try
-        {
-            // Schedule the task.
-            timer.schedule(task, interval);
+        // The timer shared by connections. The timer name is not used
+        // as the name of a thread any more.
+        mTimeout   = mWebSocket.getTimer().schedule(new Task(), interval);
+        mScheduled = true;
+    }
 
-            // Successfully scheduled the task.
-            return true;
-        }
-        catch (RuntimeException e)
-        {
-            // Failed to schedule the task. Probably, the exception is
-            // an IllegalStateException which is raised due to one of
-            // the following reasons (according to the Javadoc):
-            //
-            //   (1) if task was already scheduled or cancelled,
-            //   (2) timer was cancelled, or
-            //   (3) timer thread terminated.
-            //
-            // Because a new task is created every time this method is
-            // called and there is no code to call TimerTask.cancel(),
-            // (1) cannot be a reason.
-            //
-            // In either case of (2) and (3), we don't have to retry to
-            // schedule the task, because the timer that is expected to
-            // host the task will stop or has stopped anyway.
-            return false;
-        }
+
+    protected WebSocket getWebSocket()
+    {
+        return mWebSocket;
+    }
+
+
+    /**
+     * Get the time to wait before the frame is sent. This method is
+     * called with the lock of this object held.
+     *
+     * @return
+     *         0 to send the frame now.
+     */
+    protected long getRemainingDelay(long interval)
+    {
+        return 0;
     }
 
 
+    /**
+     * Create a frame. This method is called with the lock of this object
+     * held. {@code null} can be returned not to send a frame.
+     */
     protected abstract WebSocketFrame createFrame(byte[] payload);
 }
@@ -16,10 +16,44 @@
 package com.neovisionaries.ws.client;
 
 
+import java.util.Arrays;
+import java.util.LinkedList;
+
+
 class PingSender extends PeriodicalFrameSender
 {
     private static final String TIMER_NAME = "PingSender";
 
+    // The number of unanswered ping frames remembered when the detection
+    // of missed pong frames is disabled.
+    private static final int MAX_OUTSTANDING_PINGS = 16;
+
+
+    /**
+     * A ping frame waiting for its pong frame.
+     */
+    private static class Ping
+    {
+        final byte[] payload;
+
+        // The time when the frame was written, or -1 while it is queued.
+        long sentAt = -1;
+
+
+        Ping(byte[] payload)
+        {
+            this.payload = (payload != null) ? payload : new byte[0];
+        }
+    }
+
+
+    private final LinkedList<Ping> mOutstandingPings = new LinkedList<Ping>();
+    private volatile long mLastReceived = System.currentTimeMillis();
+    private boolean mAdaptive;
+    private int mMaxMissedPongs;
+    private long mRoundTripTime = -1;
+    private boolean mReadingPaused;
+
 
     public PingSender(WebSocket webSocket, PayloadGenerator generator)
     {
@@ -27,9 +61,236 @@ class PingSender extends PeriodicalFrameSender
     }
 
 
+    @Override
+    public void start()
+    {
+        synchronized (this)
+        {
+            mOutstandingPings.clear();
+        }
+
+        mLastReceived = System.currentTimeMillis();
+
+        super.start();
+    }
+
+
+    public boolean isAdaptive()
+    {
+        synchronized (this)
+        {
+            return mAdaptive;
+        }
+    }
+
+
+    public void setAdaptive(boolean adaptive)
+    {
+        synchronized (this)
+        {
+            mAdaptive = adaptive;
+        }
+    }
+
+
+    public int getMaxMissedPongs()
+    {
+        synchronized (this)
+        {
+            return mMaxMissedPongs;
+        }
+    }
+
+
+    public void setMaxMissedPongs(int count)
+    {
+        synchronized (this)
+        {
+            mMaxMissedPongs = count;
+        }
+    }
+
+
+    public long getRoundTripTime()
+    {
+        synchronized (this)
+        {
+            return mRoundTripTime;
+        }
+    }
+
+
+    /**
+     * Called when reading is paused or resumed. While reading is paused,
+     * pong frames cannot arrive, so ping frames are not counted as
+     * missed. The ping frames sent before resumption are forgotten.
+     */
+    public void setReadingPaused(boolean paused)
+    {
+        synchronized (this)
+        {
+            mReadingPaused = paused;
+
+            if (paused == false)
+            {
+                mOutstandingPings.clear();
+            }
+        }
+
+        if (paused == false)
+        {
+            // Wait for a full interval before the next adaptive ping.
+            mLastReceived = System.currentTimeMillis();
+        }
+    }
+
+
+    /**
+     * Called by the writer when a ping frame has been written.
+     */
+    public void onPingSent(byte[] payload)
+    {
+        long now = System.currentTimeMillis();
+
+        if (payload == null)
+        {
+            payload = new byte[0];
+        }
+
+        synchronized (this)
+        {
+            for (Ping ping : mOutstandingPings)
+            {
+                if (ping.sentAt < 0 && Arrays.equals(ping.payload, payload))
+                {
+                    // The round trip is measured from now, not from the
+                    // time when the frame was queued.
+                    ping.sentAt = now;
+                    break;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Called by the reading thread whenever a frame has been received.
+     */
+    public void onFrameReceived()
+    {
+        // A volatile write only, because this is called for every frame.
+        mLastReceived = System.currentTimeMillis();
+    }
+
+
+    /**
+     * Called by the reading thread when a pong frame has been received.
+     */
+    public void onPong(byte[] payload)
+    {
+        long now = System.currentTimeMillis();
+
+        if (payload == null)
+        {
+            payload = new byte[0];
+        }
+
+        synchronized (this)
+        {
+            // Look for the ping frame which has the same payload.
+            for (int i = 0; i < mOutstandingPings.size(); ++i)
+            {
+                Ping ping = mOutstandingPings.get(i);
+
+                if (Arrays.equals(ping.payload, payload))
+                {
+                    if (0 <= ping.sentAt)
+                    {
+                        mRoundTripTime = now - ping.sentAt;
+                    }
+
+                    break;
+                }
+            }
+
+            // The peer is alive. The older ping frames may have been
+            // answered by one pong frame (RFC 6455, 5.5.3).
+            mOutstandingPings.clear();
+        }
+    }
+
+
+    @Override
+    protected long getRemainingDelay(long interval)
+    {
+        if (mAdaptive == false)
+        {
+            return 0;
+        }
+
+        // Send a ping frame only after the interval has passed without
+        // any frame received.
+        long idle = System.currentTimeMillis() - mLastReceived;
+
+        return (idle < interval) ? interval - idle : 0;
+    }
+
+
     @Override
     protected WebSocketFrame createFrame(byte[] payload)
     {
+        if (mReadingPaused)
+        {
+            // Keep the connection alive, but don't expect a pong frame.
+            return WebSocketFrame.createPingFrame(payload);
+        }
+
+        int missed = mOutstandingPings.size();
+
+        if (0 < mMaxMissedPongs && mMaxMissedPongs <= missed)
+        {
+            // Not called under the lock of this object, nor on the thread
+            // of the timer because listeners are called and the close frame
+            // is written on the caller's thread in the synchronous mode.
+            getWebSocket().getTimer().offload(new Runnable() {
+                public void run()
+                {
+                    onPongTimeout();
+                }
+            });
+
+            return null;
+        }
+
+        if (MAX_OUTSTANDING_PINGS <= missed)
+        {
+            mOutstandingPings.removeFirst();
+        }
+
+        mOutstandingPings.add(new Ping(payload));
+
         return WebSocketFrame.createPingFrame(payload);
     }
+
+
+    private void onPongTimeout()
+    {
+        WebSocket websocket = getWebSocket();
+
+        if (websocket.isOpen() == false)
+        {
+            return;
+        }
+
+        int missed = getMaxMissedPongs();
+
+        WebSocketException cause = new WebSocketException(
+            WebSocketError.PONG_TIMEOUT,
+            "No pong frame has been received for the last " + missed + " ping frames.");
+
+        websocket.getListenerManager().callOnError(cause);
+
+        // The peer is regarded as dead, so don't wait for its close frame.
+        websocket.disconnect(WebSocketCloseCode.AWAY, "No pong frame.", 0);
+    }
 }
@@ -16,6 +16,7 @@
 package com.neovisionaries.ws.client;
 
 
+import java.io.BufferedInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -51,7 +52,11 @@ class ProxyHandshaker
     }
 
 
-    private void sendRequest(Socket socket) throws IOException
+    /**
+     * Send a CONNECT request without reading the response. Used when
+     * the opening handshake is pipelined after the request.
+     */
+    void sendRequest(Socket socket) throws IOException
     {
         // Build a CONNECT request.
         String request = buildRequest();
@@ -141,22 +146,45 @@ class ProxyHandshaker
     private void receiveResponse(Socket socket) throws IOException
     {
         // Get the stream to read data from the proxy server.
-        InputStream input = socket.getInputStream();
+        ResponseInputStream input = new ResponseInputStream(socket.getInputStream());
 
-        // Read the status line.
-        readStatusLine(input);
+        // Read the response from the proxy server.
+        receiveResponse(input);
 
-        // Skip HTTP headers, including an empty line (= the separator
-        // between the header part and the body part).
-        skipHeaders(input);
+        // The buffer of 'input' is discarded. Nothing should be sent
+        // from the proxy server until the tunnel is used.
+        if (input.getBufferedCount() != 0)
+        {
+            throw new IOException("The proxy server sent unexpected data after the response.");
+        }
     }
 
 
-    private void readStatusLine(InputStream input) throws IOException
+    /**
+     * Read the response to the CONNECT request from the stream, which
+     * must support mark. Bytes following the response are left in the
+     * stream.
+     */
+    void receiveResponse(InputStream input) throws IOException
     {
-        // Read the status line.
-        String statusLine = Misc.readLine(input, "UTF-8");
+        // Read the status line and HTTP headers, including an empty line
+        // (= the separator between the header part and the body part).
+        HttpHeadReader head = new HttpHeadReader(input);
+        head.read();
+
+        // Validate the status line.
+        validateStatusLine(head.getStatusLine());
+
+        if (head.isComplete() == false)
+        {
+            // Unexpected EOF.
+            throw new EOFException("The end of the stream from the proxy server was reached unexpectedly.");
+        }
+    }
+
 
+    private void validateStatusLine(String statusLine) throws IOException
+    {
         // If the response from the proxy server does not contain a status line.
         if (statusLine == null || statusLine.length() == 0)
         {
@@ -185,74 +213,20 @@ class ProxyHandshaker
     }
 
 
-    private void skipHeaders(InputStream input) throws IOException
+    /**
+     * Buffered stream which tells the number of bytes left in its buffer.
+     */
+    private static class ResponseInputStream extends BufferedInputStream
     {
-        // The number of normal letters in a line.
-        int count = 0;
-
-        while (true)
+        ResponseInputStream(InputStream in)
         {
-            // Read a byte from the stream.
-            int ch = input.read();
-
-            // If the end of the stream was reached.
-            if (ch == -1)
-            {
-                // Unexpected EOF.
-                throw new EOFException("The end of the stream from the proxy server was reached unexpectedly.");
-            }
-
-            // If the end of the line was reached.
-            if (ch == '\n')
-            {
-                // If there is no normal byte in the line.
-                if (count == 0)
-                {
-                    // An empty line (the separator) was found.
-                    return;
-                }
-
-                // Reset the counter and go to the next line.
-                count = 0;
-                continue;
-            }
-
-            // If the read byte is not a carriage return.
-            if (ch != '\r')
-            {
-                // Increment the number of normal bytes on the line.
-                ++count;
-                continue;
-            }
-
-            // Read the next byte.
-            ch = input.read();
-
-            // If the end of the stream was reached.
-            if (ch == -1)
-            {
-                // Unexpected EOF.
-                throw new EOFException("The end of the stream from the proxy server was reached unexpectedly after a carriage return.");
-            }
-
-            if (ch != '\n')
-            {
-                // Regard the last '\r' as a normal byte as well as the current 'ch'.
-                count += 2;
-                continue;
-            }
+            super(in, 1024);
+        }
 
-            // '\r\n' was detected.
 
-            // If there is no normal byte in the line.
-            if (count == 0)
-            {
-                // An empty line (the separator) was found.
-                return;
-            }
-
-            // Reset the counter and go to the next line.
-            count = 0;
+        int getBufferedCount()
+        {
+            return count - pos;
         }
     }
 
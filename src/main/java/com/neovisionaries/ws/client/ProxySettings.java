@@ -89,6 +89,7 @@ public class ProxySettings
     private String mId;
     private String mPassword;
     private String[] mServerNames;
+    private boolean mPipelined;
 
 
     ProxySettings(WebSocketFactory factory)
@@ -159,6 +160,11 @@ public class ProxySettings
      *       <td>{@code null}</td>
      *       <td>Server names for SNI (Server Name Indication).</td>
      *     </tr>
+     *     <tr>
+     *       <td>Pipelined</td>
+     *       <td>{@code false}</td>
+     *       <td>Send the opening handshake without waiting for the proxy response.</td>
+     *     </tr>
      *   </tbody>
      * </table>
      * </blockquote>
@@ -175,6 +181,7 @@ public class ProxySettings
         mPassword = null;
         mHeaders.clear();
         mServerNames = null;
+        mPipelined = false;
 
         return this;
     }
@@ -761,4 +768,62 @@ public class ProxySettings
     {
         return setServerNames(new String[] { serverName });
     }
+
+
+    /**
+     * Check whether the opening handshake is sent without waiting for
+     * the response to the {@code CONNECT} request.
+     *
+     * @return
+     *         {@code true} if the requests are pipelined.
+     *
+     * @see #setPipelined(boolean)
+     *
+     * @since 2.10
+     */
+    public boolean isPipelined()
+    {
+        return mPipelined;
+    }
+
+
+    /**
+     * Enable or disable pipelining of the {@code CONNECT} request and the
+     * opening handshake.
+     *
+     * <p>
+     * By default, the {@code CONNECT} request is sent to the proxy server
+     * and the opening handshake is sent to the WebSocket endpoint after
+     * the response from the proxy server has been received. If pipelining
+     * is enabled, the opening handshake is sent right after the {@code
+     * CONNECT} request, and both responses are read afterwards. This saves
+     * a round trip to the proxy server per connection.
+     * </p>
+     *
+     * <p>
+     * Pipelining is applied only to plain WebSocket endpoints ({@code
+     * ws://}), because the TLS handshake with a {@code wss://} endpoint
+     * cannot start before the tunnel has been established. Enable this
+     * only for proxy servers which forward data sent before the response
+     * to the {@code CONNECT} request. If the proxy server rejects the
+     * {@code CONNECT} request, the connection fails with {@link
+     * WebSocketError#PROXY_HANDSHAKE_ERROR PROXY_HANDSHAKE_ERROR} just as
+     * it does without pipelining, and the opening handshake is discarded
+     * with the socket.
+     * </p>
+     *
+     * @param pipelined
+     *         {@code true} to pipeline the requests.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.10
+     */
+    public ProxySettings setPipelined(boolean pipelined)
+    {
+        mPipelined = pipelined;
+
+        return this;
+    }
 }
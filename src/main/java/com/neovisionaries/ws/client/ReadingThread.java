@@ -28,24 +28,46 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import com.neovisionaries.ws.client.StateManager.CloseInitiator;
 
 
 class ReadingThread extends WebSocketThread
 {
+    // The total payload size of data frames read ahead while paused.
+    private static final long PAUSED_READ_LIMIT = 64 * 1024;
+
+    // How often a paused reading thread checks if it has been resumed
+    // while it waits for a control frame.
+    private static final int PAUSED_CHECK_INTERVAL = 100;
+
+    // Results of checkPaused().
+    private static final int SHOULD_READ    = 0;
+    private static final int SHOULD_CHECK   = 1;
+    private static final int SHOULD_SUSPEND = 2;
+
     private boolean mStopRequested;
     private WebSocketFrame mCloseFrame;
     private List<WebSocketFrame> mContinuation = new ArrayList<WebSocketFrame>();
     private final PerMessageCompressionExtension mPMCE;
     private Object mCloseLock = new Object();
-    private Timer mCloseTimer;
-    private CloseTask mCloseTask;
+    private HashedWheelTimer.Timeout mCloseTask;
     private long mCloseDelay;
     private boolean mNotWaitForCloseFrame;
+    private final ChannelConnection mConnection;
+    private boolean mMainStarted;
+    private boolean mPaused;
+    private final LinkedList<WebSocketFrame> mHeldFrames = new LinkedList<WebSocketFrame>();
+    private long mHeldBytes;
+    private final Runnable mResumer = new Runnable() {
+        public void run()
+        {
+            resume();
+        }
+    };
 
 
     public ReadingThread(WebSocket websocket)
@@ -53,6 +75,9 @@ class ReadingThread extends WebSocketThread
         super("ReadingThread", websocket, ThreadType.READING_THREAD);
 
         mPMCE = websocket.getPerMessageCompressionExtension();
+
+        // Not null if the selector transport is used.
+        mConnection = websocket.getSocketConnector().getChannelConnection();
     }
 
 
@@ -61,7 +86,11 @@ class ReadingThread extends WebSocketThread
     {
         try
         {
-            main();
+            if (main() == false)
+            {
+                // Parked until data arrives.
+                return;
+            }
         }
         catch (Throwable t)
         {
@@ -81,9 +110,17 @@ class ReadingThread extends WebSocketThread
     }
 
 
-    private void main()
+    /**
+     * @return
+     *         {@code false} if this task has been parked.
+     */
+    private boolean main()
     {
-        mWebSocket.onReadingThreadStarted();
+        if (mMainStarted == false)
+        {
+            mMainStarted = true;
+            mWebSocket.onReadingThreadStarted();
+        }
 
         while (true)
         {
@@ -95,6 +132,32 @@ class ReadingThread extends WebSocketThread
                 }
             }
 
+            // Deliver the frames held while reading was paused.
+            if (deliverHeldFrames(false) == false)
+            {
+                break;
+            }
+
+            // Stop reading while paused and enough frames are held.
+            // Reading may have been paused again during the delivery.
+            int action = checkPaused();
+
+            if (action == SHOULD_SUSPEND)
+            {
+                // Suspended until resumeReading() is called.
+                return false;
+            }
+            else if (action == SHOULD_CHECK)
+            {
+                continue;
+            }
+
+            // Release the thread while no data is arriving.
+            if (park())
+            {
+                return false;
+            }
+
             // Receive a frame from the server.
             WebSocketFrame frame = readFrame();
 
@@ -104,6 +167,21 @@ class ReadingThread extends WebSocketThread
                 break;
             }
 
+            // The connection is alive. See WebSocket.setAdaptivePing().
+            mWebSocket.getPingSender().onFrameReceived();
+
+            // Hold data frames while reading is paused.
+            if (holdFrame(frame))
+            {
+                continue;
+            }
+
+            if (frame.isCloseFrame())
+            {
+                // Deliver the held messages before the closure.
+                deliverHeldFrames(true);
+            }
+
             // Handle the frame.
             boolean keepReading = handleFrame(frame);
 
@@ -113,11 +191,243 @@ class ReadingThread extends WebSocketThread
             }
         }
 
+        // Messages which have been received are delivered anyway.
+        deliverHeldFrames(true);
+
         // Wait for a close frame if one has not been received yet.
         waitForCloseFrame();
 
         // Cancel a task which calls Socket.close() if running.
         cancelClose();
+
+        return true;
+    }
+
+
+    /**
+     * Suspend this task until data arrives if the selector transport is
+     * used and no data is available now.
+     */
+    private boolean park()
+    {
+        if (mConnection == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            if (mWebSocket.getInput().available() != 0)
+            {
+                return false;
+            }
+        }
+        catch (IOException e)
+        {
+            // readFrame() will report the error.
+            return false;
+        }
+
+        suspend();
+        mConnection.park(mResumer);
+
+        synchronized (this)
+        {
+            if (mStopRequested)
+            {
+                // requestStop() may have been called before park().
+                mConnection.unpark();
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Pause or resume reading. See {@link WebSocket#pauseReading()}.
+     */
+    void setPaused(boolean paused)
+    {
+        synchronized (this)
+        {
+            mPaused = paused;
+
+            // Wake up this thread waiting in checkPaused().
+            notifyAll();
+        }
+
+        if (paused == false)
+        {
+            // Resume this task if suspended in checkPaused().
+            resume();
+        }
+    }
+
+
+    /**
+     * Decide whether to read the next frame while reading is paused.
+     */
+    private int checkPaused()
+    {
+        synchronized (this)
+        {
+            if (mPaused == false || mStopRequested)
+            {
+                return SHOULD_READ;
+            }
+
+            if (PAUSED_READ_LIMIT <= mHeldBytes)
+            {
+                // Stop reading from the socket so that TCP flow control
+                // pushes back on the server.
+                if (mConnection != null)
+                {
+                    // setPaused(false) resumes this task.
+                    suspend();
+                    return SHOULD_SUSPEND;
+                }
+
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                }
+
+                return SHOULD_CHECK;
+            }
+        }
+
+        // Control frames are still read and handled while the held
+        // frames are below the limit. With the selector transport, park()
+        // waits for data and setPaused(false) resumes this task.
+        if (mConnection != null)
+        {
+            return SHOULD_READ;
+        }
+
+        // Wait for data in short slices to notice setPaused(false) soon.
+        return awaitData() ? SHOULD_READ : SHOULD_CHECK;
+    }
+
+
+    /**
+     * Wait for the first byte of the next frame for a short time.
+     *
+     * @return
+     *         {@code true} if data is available or the wait failed, in
+     *         which case readFrame() will report the error.
+     */
+    private boolean awaitData()
+    {
+        WebSocketInputStream input = mWebSocket.getInput();
+
+        try
+        {
+            if (input.available() != 0)
+            {
+                return true;
+            }
+
+            Socket socket = mWebSocket.getSocket();
+            int original = socket.getSoTimeout();
+
+            socket.setSoTimeout(PAUSED_CHECK_INTERVAL);
+
+            try
+            {
+                // Peek the first byte. Nothing is consumed even if the
+                // read times out.
+                input.mark(1);
+                input.read();
+                input.reset();
+            }
+            finally
+            {
+                socket.setSoTimeout(original);
+            }
+        }
+        catch (SocketTimeoutException e)
+        {
+            return false;
+        }
+        catch (IOException e)
+        {
+            // readFrame() will report the error.
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Hold the frame if it is a data frame and reading is paused, or if
+     * held frames remain.
+     *
+     * @return
+     *         {@code true} if the frame has been held.
+     */
+    private boolean holdFrame(WebSocketFrame frame)
+    {
+        // Control frames are handled even while reading is paused.
+        if (frame.isControlFrame())
+        {
+            return false;
+        }
+
+        synchronized (this)
+        {
+            if (mPaused == false && mHeldFrames.isEmpty())
+            {
+                return false;
+            }
+
+            mHeldFrames.add(frame);
+            mHeldBytes += frame.getPayloadLength();
+
+            return true;
+        }
+    }
+
+
+    /**
+     * Handle the frames held while reading was paused.
+     *
+     * @param force
+     *         {@code true} to deliver the frames even if reading is paused.
+     *
+     * @return
+     *         {@code false} if reading should stop.
+     */
+    private boolean deliverHeldFrames(boolean force)
+    {
+        boolean keepReading = true;
+
+        while (true)
+        {
+            WebSocketFrame frame;
+
+            synchronized (this)
+            {
+                // A listener may pause reading again during the delivery.
+                if (mHeldFrames.isEmpty() || (mPaused && force == false))
+                {
+                    break;
+                }
+
+                frame = mHeldFrames.removeFirst();
+                mHeldBytes -= frame.getPayloadLength();
+            }
+
+            if (handleFrame(frame) == false)
+            {
+                keepReading = false;
+            }
+        }
+
+        return keepReading;
     }
 
 
@@ -131,6 +441,9 @@ class ReadingThread extends WebSocketThread
             }
 
             mStopRequested = true;
+
+            // Wake up this thread waiting in checkPaused().
+            notifyAll();
         }
 
         // interrupt() may not interrupt a blocking socket read(), so calling
@@ -149,6 +462,15 @@ class ReadingThread extends WebSocketThread
         // before the task calls Socket.close().
         mCloseDelay = closeDelay;
         scheduleClose();
+
+        if (mConnection != null)
+        {
+            // Resume this task if parked, to wait for a close frame.
+            mConnection.unpark();
+        }
+
+        // Resume this task if suspended while reading is paused.
+        resume();
     }
 
 
@@ -775,6 +1097,12 @@ class ReadingThread extends WebSocketThread
         // Notify the listeners that a continuation frame was received.
         callOnContinuationFrame(frame);
 
+        // If the continuation forms a compressed message.
+        if (isCompressedContinuation())
+        {
+            return handleCompressedContinuationFrame(frame);
+        }
+
         // Append the continuation frame to the existing continuation sequence.
         mContinuation.add(frame);
 
@@ -816,6 +1144,102 @@ class ReadingThread extends WebSocketThread
     }
 
 
+    private boolean isCompressedContinuation()
+    {
+        // If a per-message compression extension is enabled and
+        // the Per-Message Compressed bit of the first frame is set.
+        return (mPMCE != null && mContinuation.size() != 0 && mContinuation.get(0).getRsv1());
+    }
+
+
+    private boolean startContinuation(WebSocketFrame frame)
+    {
+        // If a per-message compression extension is enabled and
+        // the Per-Message Compressed bit of the frame is set.
+        if (mPMCE != null && frame.getRsv1())
+        {
+            // The payload is decompressed incrementally, so only the
+            // information to identify the message is kept. Compressed
+            // payloads are released as soon as they are decompressed.
+            mContinuation.add(new WebSocketFrame()
+                .setFin(false).setRsv1(true).setOpcode(frame.getOpcode()));
+
+            // Decompress the payload as far as possible.
+            handleCompressedFragment(frame);
+
+            // If the decompression failed, stop reading.
+            return (mContinuation.size() != 0);
+        }
+
+        mContinuation.add(frame);
+
+        // Keep reading.
+        return true;
+    }
+
+
+    private boolean handleCompressedContinuationFrame(WebSocketFrame frame)
+    {
+        // Decompress the payload. If the frame is the last one, the whole
+        // decompressed message is returned.
+        byte[] data = handleCompressedFragment(frame);
+
+        // If the decompression failed.
+        if (data == null && mContinuation.size() == 0)
+        {
+            // Stop reading.
+            return false;
+        }
+
+        // If the frame is not the last one for the continuation.
+        if (frame.getFin() == false)
+        {
+            // Keep reading.
+            return true;
+        }
+
+        // If the continuation forms a text message.
+        if (mContinuation.get(0).isTextFrame())
+        {
+            // Notify the listeners that a text message was received.
+            callOnTextMessage(data);
+        }
+        else
+        {
+            // Notify the listeners that a binary message was received.
+            callOnBinaryMessage(data);
+        }
+
+        // Clear the continuation.
+        mContinuation.clear();
+
+        // Keep reading.
+        return true;
+    }
+
+
+    private byte[] handleCompressedFragment(WebSocketFrame frame)
+    {
+        byte[] payload = frame.getPayload();
+
+        try
+        {
+            // Decompress the payload of the frame incrementally.
+            return mPMCE.decompressFragment(
+                    payload, frame.getFin(), mWebSocket.getMaxDecompressedMessageSize());
+        }
+        catch (WebSocketException e)
+        {
+            // The message is discarded.
+            mContinuation.clear();
+
+            onDecompressionError(e, payload);
+
+            return null;
+        }
+    }
+
+
     private byte[] getMessage(List<WebSocketFrame> frames)
     {
         // Concatenate payloads of the frames.
@@ -922,27 +1346,43 @@ class ReadingThread extends WebSocketThread
         try
         {
             // Decompress the message.
-            return mPMCE.decompress(input);
+            return mPMCE.decompressFragment(input, true, mWebSocket.getMaxDecompressedMessageSize());
         }
         catch (WebSocketException e)
         {
             wse = e;
         }
 
+        onDecompressionError(wse, input);
+
+        // Failed to construct a message.
+        return null;
+    }
+
+
+    private void onDecompressionError(WebSocketException wse, byte[] input)
+    {
         // Notify the listeners that decompression failed.
         callOnError(wse);
         callOnMessageDecompressionError(wse, input);
 
-        // Create a close frame with a close code of 1003 which
-        // indicates that the message cannot be accepted.
-        WebSocketFrame frame = WebSocketFrame
-            .createCloseFrame(WebSocketCloseCode.UNACCEPTABLE, wse.getMessage());
+        int closeCode;
 
-        // Send the close frame.
-        mWebSocket.sendFrame(frame);
+        if (wse.getError() == WebSocketError.TOO_LONG_DECOMPRESSED_MESSAGE)
+        {
+            // A close code of 1009 which indicates that the message
+            // is too big to process.
+            closeCode = WebSocketCloseCode.OVERSIZE;
+        }
+        else
+        {
+            // A close code of 1003 which indicates that the message
+            // cannot be accepted.
+            closeCode = WebSocketCloseCode.UNACCEPTABLE;
+        }
 
-        // Failed to construct a message.
-        return null;
+        // Send the close frame.
+        mWebSocket.sendFrame(WebSocketFrame.createCloseFrame(closeCode, wse.getMessage()));
     }
 
 
@@ -954,11 +1394,9 @@ class ReadingThread extends WebSocketThread
         // If the frame indicates the start of fragmentation.
         if (frame.getFin() == false)
         {
-            // Start a continuation sequence.
-            mContinuation.add(frame);
-
-            // Keep reading.
-            return true;
+            // Start a continuation sequence. false is returned if
+            // decompression of the payload failed.
+            return startContinuation(frame);
         }
 
         // Get the payload of the frame. Decompression is performed
@@ -981,11 +1419,9 @@ class ReadingThread extends WebSocketThread
         // If the frame indicates the start of fragmentation.
         if (frame.getFin() == false)
         {
-            // Start a continuation sequence.
-            mContinuation.add(frame);
-
-            // Keep reading.
-            return true;
+            // Start a continuation sequence. false is returned if
+            // decompression of the payload failed.
+            return startContinuation(frame);
         }
 
         // Get the payload of the frame. Decompression is performed
@@ -1077,6 +1513,9 @@ class ReadingThread extends WebSocketThread
 
     private boolean handlePongFrame(WebSocketFrame frame)
     {
+        // Measure the round-trip time of the ping frame.
+        mWebSocket.getPingSender().onPong(frame.getPayload());
+
         // Notify the listeners that a pong frame was received.
         callOnPongFrame(frame);
 
@@ -1151,9 +1590,7 @@ class ReadingThread extends WebSocketThread
 
     private void scheduleCloseTask()
     {
-        mCloseTask  = new CloseTask();
-        mCloseTimer = new Timer("ReadingThreadCloseTimer");
-        mCloseTimer.schedule(mCloseTask, mCloseDelay);
+        mCloseTask = mWebSocket.getTimer().schedule(new CloseTask(), mCloseDelay);
     }
 
 
@@ -1168,12 +1605,6 @@ class ReadingThread extends WebSocketThread
 
     private void cancelCloseTask()
     {
-        if (mCloseTimer != null)
-        {
-            mCloseTimer.cancel();
-            mCloseTimer = null;
-        }
-
         if (mCloseTask != null)
         {
             mCloseTask.cancel();
@@ -1182,23 +1613,18 @@ class ReadingThread extends WebSocketThread
     }
 
 
-    private class CloseTask extends TimerTask
+    private class CloseTask implements Runnable
     {
-        @Override
         public void run()
         {
-            try
-            {
-                Socket socket = mWebSocket.getSocket();
-                if (socket != null)
+            // Socket.close() may block (e.g. SO_LINGER or a TLS close_notify),
+            // so it is not called on the thread of the timer.
+            mWebSocket.getTimer().offload(new Runnable() {
+                public void run()
                 {
-                    socket.close();
+                    mWebSocket.getSocketConnector().closeSilently();
                 }
-            }
-            catch (Throwable t)
-            {
-                // Ignore.
-            }
+            });
         }
     }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+/**
+ * An empty implementation of {@link ReconnectListener} interface.
+ *
+ * @see ReconnectListener
+ *
+ * @since 2.10
+ */
+public class ReconnectAdapter implements ReconnectListener
+{
+    @Override
+    public void onReconnecting(ReconnectManager manager, WebSocket websocket, int attempt, long delay) throws Exception
+    {
+    }
+
+
+    @Override
+    public void onReconnected(ReconnectManager manager, WebSocket previous, WebSocket current) throws Exception
+    {
+    }
+
+
+    @Override
+    public void onReconnectError(ReconnectManager manager, WebSocket websocket, WebSocketException cause, boolean retrying) throws Exception
+    {
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+/**
+ * Listener interface to receive events of reconnection performed by
+ * {@link ReconnectManager}.
+ *
+ * @see ReconnectAdapter
+ *
+ * @since 2.10
+ */
+public interface ReconnectListener
+{
+    /**
+     * Called when a reconnection attempt has been scheduled.
+     *
+     * @param manager
+     *         The reconnect manager.
+     *
+     * @param websocket
+     *         The WebSocket that has been disconnected or has failed to
+     *         connect.
+     *
+     * @param attempt
+     *         The number of the attempt. 1 for the first attempt after
+     *         a disconnection.
+     *
+     * @param delay
+     *         The delay in milliseconds before the attempt.
+     *
+     * @throws Exception
+     *         An exception thrown by an implementation of this method.
+     *         The exception is just ignored.
+     */
+    void onReconnecting(ReconnectManager manager, WebSocket websocket, int attempt, long delay) throws Exception;
+
+
+    /**
+     * Called when a reconnection attempt has succeeded. This is the hook
+     * to restore the application state on the server side, e.g. to send
+     * subscription requests again through {@code current}.
+     *
+     * <p>
+     * Listeners and settings of {@code previous} have been copied to
+     * {@code current} by {@link WebSocket#recreate()}, so {@link
+     * WebSocketListener#onConnected(WebSocket, java.util.Map) onConnected}
+     * of the copied listeners is called, too.
+     * </p>
+     *
+     * @param manager
+     *         The reconnect manager.
+     *
+     * @param previous
+     *         The WebSocket that was disconnected.
+     *
+     * @param current
+     *         The new WebSocket connected to the server.
+     *
+     * @throws Exception
+     *         An exception thrown by an implementation of this method.
+     *         The exception is just ignored.
+     */
+    void onReconnected(ReconnectManager manager, WebSocket previous, WebSocket current) throws Exception;
+
+
+    /**
+     * Called when a reconnection attempt has failed.
+     *
+     * @param manager
+     *         The reconnect manager.
+     *
+     * @param websocket
+     *         The WebSocket that failed to connect.
+     *
+     * @param cause
+     *         The cause of the failure.
+     *
+     * @param retrying
+     *         {@code true} if the next attempt has been scheduled.
+     *         {@code false} if the manager has given up reconnecting
+     *         because {@linkplain ReconnectPolicy#getMaxAttempts() the
+     *         maximum number of attempts} has been reached.
+     *
+     * @throws Exception
+     *         An exception thrown by an implementation of this method.
+     *         The exception is just ignored.
+     */
+    void onReconnectError(ReconnectManager manager, WebSocket websocket, WebSocketException cause, boolean retrying) throws Exception;
+}
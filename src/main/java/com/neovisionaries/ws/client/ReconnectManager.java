@@ -0,0 +1,647 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Manager which reconnects {@link WebSocket} instances automatically.
+ *
+ * <p>
+ * When a managed WebSocket is disconnected, the manager creates a new
+ * instance by {@link WebSocket#recreate()}, which copies the settings,
+ * the opening handshake (e.g. custom headers and the requested protocols
+ * and extensions) and the listeners, and connects it after a delay given
+ * by {@link ReconnectPolicy}. Failed attempts are retried with growing,
+ * randomized delays. Register a {@link ReconnectListener} to obtain the
+ * new instance and to restore the application state (e.g. subscriptions)
+ * on it.
+ * </p>
+ *
+ * <pre style="border-left: solid 5px lightgray;"> ReconnectManager manager = new ReconnectManager(
+ *     new {@link ReconnectPolicy}().{@link ReconnectPolicy#setMaxReconnectRatePerHost(int)
+ *     setMaxReconnectRatePerHost}(50));
+ *
+ * manager.{@link #addListener(ReconnectListener) addListener}(new {@link ReconnectAdapter}() {
+ *     public void onReconnected(ReconnectManager manager, WebSocket previous, WebSocket current) {
+ *         <span style="color: green;">// Subscribe again.</span>
+ *         current.sendText(subscription);
+ *     }
+ * });
+ *
+ * manager.{@link #manage(WebSocket) manage}(ws);
+ * ws.connect();</pre>
+ *
+ * <p>
+ * Reconnection is triggered when a managed WebSocket is disconnected
+ * unless this client closed the connection with the close code 1000
+ * ({@link WebSocketCloseCode#NORMAL NORMAL}), which is the default of
+ * {@link WebSocket#disconnect()}. It is also triggered when {@link
+ * WebSocket#connectAsynchronously()} fails. Call {@link
+ * #unmanage(WebSocket)} to stop reconnecting.
+ * </p>
+ *
+ * <p>
+ * Delays are measured by a daemon thread of the manager, and connection
+ * attempts are performed by daemon threads which are terminated when they
+ * have been idle for a while.
+ * </p>
+ *
+ * @since 2.10
+ */
+public class ReconnectManager
+{
+    private static final String TIMER_NAME = "ReconnectTimer";
+    private static final String CONNECTOR_NAME = "Reconnector";
+
+    private final ReconnectPolicy mPolicy;
+    private final Random mRandom = new Random();
+    private final List<ReconnectListener> mListeners = new ArrayList<ReconnectListener>();
+
+    // Managed connections keyed by their current WebSocket instances.
+    private final Map<WebSocket, Managed> mManaged = new HashMap<WebSocket, Managed>();
+
+    // When the next attempt to each host can start (System.nanoTime()).
+    private final Map<String, Long> mNextAttemptTimes = new HashMap<String, Long>();
+
+    private ScheduledExecutorService mTimer;
+    private ExecutorService mConnector;
+
+
+    /**
+     * A chain of WebSocket instances created for the same connection.
+     */
+    private class Managed extends WebSocketAdapter
+    {
+        WebSocket current;
+        int attempt;
+        long previousDelay;
+        InetAddress lastAddress;
+        ScheduledFuture<?> pending;
+
+
+        Managed(WebSocket websocket)
+        {
+            current = websocket;
+        }
+
+
+        @Override
+        public void onConnected(WebSocket websocket, Map<String, List<String>> headers)
+        {
+            synchronized (ReconnectManager.this)
+            {
+                if (websocket == current)
+                {
+                    // The IP address which may be reused.
+                    lastAddress = websocket.getConnectTimings().getAddress();
+                }
+            }
+        }
+
+
+        @Override
+        public void onConnectError(WebSocket websocket, WebSocketException cause)
+        {
+            // connectAsynchronously() failed.
+            scheduleReconnect(this, websocket);
+        }
+
+
+        @Override
+        public void onDisconnected(WebSocket websocket,
+            WebSocketFrame serverCloseFrame, WebSocketFrame clientCloseFrame, boolean closedByServer)
+        {
+            if (closedByServer == false && clientCloseFrame != null &&
+                clientCloseFrame.getCloseCode() == WebSocketCloseCode.NORMAL)
+            {
+                // The application closed the connection intentionally.
+                return;
+            }
+
+            scheduleReconnect(this, websocket);
+        }
+    }
+
+
+    /**
+     * Constructor with the default {@link ReconnectPolicy}.
+     */
+    public ReconnectManager()
+    {
+        this(new ReconnectPolicy());
+    }
+
+
+    /**
+     * Constructor with a reconnect policy.
+     *
+     * @param policy
+     *         The reconnect policy. Changes made to the policy later
+     *         are applied to the subsequent attempts.
+     *
+     * @throws IllegalArgumentException
+     *         The given policy is {@code null}.
+     */
+    public ReconnectManager(ReconnectPolicy policy)
+    {
+        if (policy == null)
+        {
+            throw new IllegalArgumentException("policy is null.");
+        }
+
+        mPolicy = policy;
+    }
+
+
+    /**
+     * Get the reconnect policy.
+     *
+     * @return
+     *         The reconnect policy.
+     */
+    public ReconnectPolicy getPolicy()
+    {
+        return mPolicy;
+    }
+
+
+    /**
+     * Add a listener.
+     *
+     * @param listener
+     *         A listener to add. {@code null} is silently ignored.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ReconnectManager addListener(ReconnectListener listener)
+    {
+        if (listener != null)
+        {
+            synchronized (mListeners)
+            {
+                mListeners.add(listener);
+            }
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Remove a listener.
+     *
+     * @param listener
+     *         A listener to remove. {@code null} is silently ignored.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ReconnectManager removeListener(ReconnectListener listener)
+    {
+        if (listener != null)
+        {
+            synchronized (mListeners)
+            {
+                mListeners.remove(listener);
+            }
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Start reconnecting the WebSocket when it is disconnected.
+     *
+     * @param websocket
+     *         A WebSocket to manage.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given WebSocket is {@code null}.
+     */
+    public ReconnectManager manage(WebSocket websocket)
+    {
+        if (websocket == null)
+        {
+            throw new IllegalArgumentException("websocket is null.");
+        }
+
+        synchronized (this)
+        {
+            if (mManaged.containsKey(websocket))
+            {
+                return this;
+            }
+
+            Managed managed = new Managed(websocket);
+            mManaged.put(websocket, managed);
+
+            // The listener is copied to new instances by recreate().
+            websocket.addListener(managed);
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Stop reconnecting the WebSocket. A scheduled attempt is cancelled.
+     *
+     * @param websocket
+     *         The WebSocket to stop managing. Because the manager replaces
+     *         the instance on reconnection, pass the current instance,
+     *         e.g. the one given to {@link ReconnectListener#onReconnected(
+     *         ReconnectManager, WebSocket, WebSocket) onReconnected}.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ReconnectManager unmanage(WebSocket websocket)
+    {
+        Managed managed;
+
+        synchronized (this)
+        {
+            managed = mManaged.remove(websocket);
+
+            if (managed == null)
+            {
+                return this;
+            }
+
+            if (managed.pending != null)
+            {
+                managed.pending.cancel(false);
+                managed.pending = null;
+            }
+        }
+
+        websocket.removeListener(managed);
+
+        return this;
+    }
+
+
+    /**
+     * Get the current WebSocket instances managed by this manager.
+     *
+     * @return
+     *         The managed WebSocket instances.
+     */
+    public synchronized List<WebSocket> getWebSockets()
+    {
+        return new ArrayList<WebSocket>(mManaged.keySet());
+    }
+
+
+    /**
+     * Stop managing all the WebSocket instances and release the threads
+     * of this manager. The manager can be used again after this call.
+     */
+    public void close()
+    {
+        for (WebSocket websocket : getWebSockets())
+        {
+            unmanage(websocket);
+        }
+
+        synchronized (this)
+        {
+            if (mTimer != null)
+            {
+                mTimer.shutdownNow();
+                mTimer = null;
+            }
+
+            if (mConnector != null)
+            {
+                mConnector.shutdown();
+                mConnector = null;
+            }
+
+            mNextAttemptTimes.clear();
+        }
+    }
+
+
+    private void scheduleReconnect(final Managed managed, final WebSocket websocket)
+    {
+        int attempt;
+        long delay;
+
+        synchronized (this)
+        {
+            // If the event is for an old instance or the instance is no
+            // longer managed, or an attempt has already been scheduled.
+            if (managed.current != websocket || mManaged.get(websocket) != managed || managed.pending != null)
+            {
+                return;
+            }
+
+            attempt = managed.attempt + 1;
+            delay   = mPolicy.nextDelay(managed.previousDelay, mRandom);
+
+            managed.attempt       = attempt;
+            managed.previousDelay = delay;
+
+            // Respect the maximum rate of attempts to the host.
+            delay = reserveAttempt(websocket.getURI().getHost(), delay);
+
+            managed.pending = getTimer().schedule(new Runnable() {
+                public void run()
+                {
+                    getConnector().execute(new Runnable() {
+                        public void run()
+                        {
+                            reconnect(managed, websocket);
+                        }
+                    });
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        callOnReconnecting(websocket, attempt, delay);
+    }
+
+
+    /**
+     * Reserve a slot for an attempt to the host after the delay, and
+     * return the actual delay. Must be called while holding the lock of
+     * this object.
+     */
+    private long reserveAttempt(String host, long delay)
+    {
+        int rate = mPolicy.getMaxReconnectRatePerHost();
+
+        if (rate == 0)
+        {
+            return delay;
+        }
+
+        long now      = System.nanoTime();
+        long interval = 1000000000L / rate;
+        long time     = now + delay * 1000000L;
+        Long next     = mNextAttemptTimes.get(host);
+
+        if (next != null && time < next.longValue())
+        {
+            // Wait for the turn of this attempt.
+            time = next.longValue();
+        }
+
+        mNextAttemptTimes.put(host, time + interval);
+
+        // Forget hosts whose slots have passed.
+        if (256 < mNextAttemptTimes.size())
+        {
+            for (Map.Entry<String, Long> entry : new ArrayList<Map.Entry<String, Long>>(mNextAttemptTimes.entrySet()))
+            {
+                if (entry.getValue().longValue() < now)
+                {
+                    mNextAttemptTimes.remove(entry.getKey());
+                }
+            }
+        }
+
+        return (time - now) / 1000000L;
+    }
+
+
+    private void reconnect(Managed managed, WebSocket websocket)
+    {
+        InetAddress address = null;
+
+        synchronized (this)
+        {
+            managed.pending = null;
+
+            if (mManaged.get(websocket) != managed)
+            {
+                // Unmanaged.
+                return;
+            }
+
+            if (managed.attempt == 1 && mPolicy.isAddressReused())
+            {
+                address = managed.lastAddress;
+            }
+        }
+
+        WebSocket instance = null;
+        WebSocketException cause = null;
+
+        try
+        {
+            // Settings, the handshake and listeners are copied.
+            instance = websocket.recreate();
+
+            if (address != null)
+            {
+                // Connect to the same IP address without resolving the hostname.
+                instance.getSocketConnector().setHostResolver(new FixedHostResolver(address));
+            }
+        }
+        catch (IOException e)
+        {
+            cause = new WebSocketException(WebSocketError.SOCKET_CONNECT_ERROR,
+                    "Failed to recreate the WebSocket: " + e.getMessage(), e);
+        }
+
+        if (instance != null)
+        {
+            synchronized (this)
+            {
+                if (mManaged.get(websocket) != managed)
+                {
+                    // Unmanaged while recreating.
+                    instance.removeListener(managed);
+                    return;
+                }
+
+                // Events of the new instance are handled from now on.
+                mManaged.remove(websocket);
+                mManaged.put(instance, managed);
+                managed.current = instance;
+            }
+
+            try
+            {
+                instance.connect();
+            }
+            catch (WebSocketException e)
+            {
+                cause = e;
+            }
+        }
+
+        if (cause == null)
+        {
+            synchronized (this)
+            {
+                managed.attempt       = 0;
+                managed.previousDelay = 0;
+            }
+
+            callOnReconnected(websocket, instance);
+            return;
+        }
+
+        onReconnectFailed(managed, (instance != null) ? instance : websocket, cause);
+    }
+
+
+    private void onReconnectFailed(Managed managed, WebSocket websocket, WebSocketException cause)
+    {
+        int maxAttempts = mPolicy.getMaxAttempts();
+        boolean retrying;
+
+        synchronized (this)
+        {
+            retrying = (maxAttempts == 0 || managed.attempt < maxAttempts) &&
+                       mManaged.get(websocket) == managed;
+        }
+
+        if (retrying == false)
+        {
+            // Give up.
+            unmanage(websocket);
+        }
+
+        callOnReconnectError(websocket, cause, retrying);
+
+        if (retrying)
+        {
+            scheduleReconnect(managed, websocket);
+        }
+    }
+
+
+    private List<ReconnectListener> getListeners()
+    {
+        synchronized (mListeners)
+        {
+            return new ArrayList<ReconnectListener>(mListeners);
+        }
+    }
+
+
+    private void callOnReconnecting(WebSocket websocket, int attempt, long delay)
+    {
+        for (ReconnectListener listener : getListeners())
+        {
+            try
+            {
+                listener.onReconnecting(this, websocket, attempt, delay);
+            }
+            catch (Throwable t)
+            {
+                // Ignored.
+            }
+        }
+    }
+
+
+    private void callOnReconnected(WebSocket previous, WebSocket current)
+    {
+        for (ReconnectListener listener : getListeners())
+        {
+            try
+            {
+                listener.onReconnected(this, previous, current);
+            }
+            catch (Throwable t)
+            {
+                // Ignored.
+            }
+        }
+    }
+
+
+    private void callOnReconnectError(WebSocket websocket, WebSocketException cause, boolean retrying)
+    {
+        for (ReconnectListener listener : getListeners())
+        {
+            try
+            {
+                listener.onReconnectError(this, websocket, cause, retrying);
+            }
+            catch (Throwable t)
+            {
+                // Ignored.
+            }
+        }
+    }
+
+
+    private synchronized ScheduledExecutorService getTimer()
+    {
+        if (mTimer == null)
+        {
+            mTimer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(TIMER_NAME));
+        }
+
+        return mTimer;
+    }
+
+
+    private synchronized ExecutorService getConnector()
+    {
+        if (mConnector == null)
+        {
+            // Idle threads are terminated automatically.
+            mConnector = Executors.newCachedThreadPool(new DaemonThreadFactory(CONNECTOR_NAME));
+        }
+
+        return mConnector;
+    }
+
+
+    private static class FixedHostResolver implements HostResolver
+    {
+        private final InetAddress mAddress;
+
+
+        FixedHostResolver(InetAddress address)
+        {
+            mAddress = address;
+        }
+
+
+        public InetAddress[] resolve(String hostname) throws UnknownHostException
+        {
+            return new InetAddress[] { mAddress };
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.util.Random;
+
+
+/**
+ * Policy of reconnection performed by {@link ReconnectManager}.
+ *
+ * <p>
+ * Delays between reconnection attempts grow exponentially with
+ * <i>decorrelated jitter</i>. The delay before an attempt is a random
+ * value between {@linkplain #getMinDelay() the minimum delay} and three
+ * times the previous delay, capped by {@linkplain #getMaxDelay() the
+ * maximum delay}. Because each client picks its own random delays, many
+ * clients disconnected at the same time (e.g. by a restart of the server)
+ * do not reconnect in lockstep.
+ * </p>
+ *
+ * <p>
+ * In addition, {@linkplain #setMaxReconnectRatePerHost(int) the number of
+ * reconnection attempts per second to the same host} can be limited.
+ * </p>
+ *
+ * @since 2.10
+ */
+public class ReconnectPolicy
+{
+    private long mMinDelay = 1000L;
+    private long mMaxDelay = 60 * 1000L;
+    private int mMaxAttempts;
+    private int mMaxReconnectRatePerHost;
+    private boolean mAddressReused;
+
+
+    /**
+     * Get the minimum delay in milliseconds before a reconnection
+     * attempt. The default value is 1,000 (one second).
+     *
+     * @return
+     *         The minimum delay in milliseconds.
+     */
+    public synchronized long getMinDelay()
+    {
+        return mMinDelay;
+    }
+
+
+    /**
+     * Set the minimum delay in milliseconds before a reconnection attempt.
+     * This is also the base of the exponential growth of delays.
+     *
+     * @param delay
+     *         The minimum delay in milliseconds.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given delay is not positive.
+     */
+    public synchronized ReconnectPolicy setMinDelay(long delay)
+    {
+        if (delay <= 0)
+        {
+            throw new IllegalArgumentException("delay must be positive.");
+        }
+
+        mMinDelay = delay;
+
+        return this;
+    }
+
+
+    /**
+     * Get the maximum delay in milliseconds before a reconnection
+     * attempt. The default value is 60,000 (one minute).
+     *
+     * @return
+     *         The maximum delay in milliseconds.
+     */
+    public synchronized long getMaxDelay()
+    {
+        return mMaxDelay;
+    }
+
+
+    /**
+     * Set the maximum delay in milliseconds before a reconnection attempt.
+     * If the given value is less than {@linkplain #getMinDelay() the
+     * minimum delay}, the minimum delay is used.
+     *
+     * @param delay
+     *         The maximum delay in milliseconds.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given delay is not positive.
+     */
+    public synchronized ReconnectPolicy setMaxDelay(long delay)
+    {
+        if (delay <= 0)
+        {
+            throw new IllegalArgumentException("delay must be positive.");
+        }
+
+        mMaxDelay = delay;
+
+        return this;
+    }
+
+
+    /**
+     * Get the maximum number of consecutive failed reconnection attempts.
+     * The default value is 0, which means no limit.
+     *
+     * @return
+     *         The maximum number of consecutive failed attempts.
+     */
+    public synchronized int getMaxAttempts()
+    {
+        return mMaxAttempts;
+    }
+
+
+    /**
+     * Set the maximum number of consecutive failed reconnection attempts.
+     * After the number of attempts have failed, {@link ReconnectManager}
+     * gives up reconnecting.
+     *
+     * @param attempts
+     *         The maximum number of consecutive failed attempts.
+     *         0 means no limit.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given number is negative.
+     */
+    public synchronized ReconnectPolicy setMaxAttempts(int attempts)
+    {
+        if (attempts < 0)
+        {
+            throw new IllegalArgumentException("attempts must not be negative.");
+        }
+
+        mMaxAttempts = attempts;
+
+        return this;
+    }
+
+
+    /**
+     * Get the maximum number of reconnection attempts per second to the
+     * same host. The default value is 0, which means no limit.
+     *
+     * @return
+     *         The maximum number of reconnection attempts per second to
+     *         the same host.
+     */
+    public synchronized int getMaxReconnectRatePerHost()
+    {
+        return mMaxReconnectRatePerHost;
+    }
+
+
+    /**
+     * Set the maximum number of reconnection attempts per second to the
+     * same host. Attempts to the same host made by a {@link
+     * ReconnectManager} are spread at even intervals so that the rate is
+     * not exceeded, e.g. 10 milliseconds apart if 100 is given.
+     *
+     * @param rate
+     *         The maximum number of reconnection attempts per second to
+     *         the same host. 0 means no limit.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given number is negative.
+     */
+    public synchronized ReconnectPolicy setMaxReconnectRatePerHost(int rate)
+    {
+        if (rate < 0)
+        {
+            throw new IllegalArgumentException("rate must not be negative.");
+        }
+
+        mMaxReconnectRatePerHost = rate;
+
+        return this;
+    }
+
+
+    /**
+     * Check if the IP address of the last connection is reused.
+     * The default value is {@code false}.
+     *
+     * @return
+     *         {@code true} if the IP address of the last connection is
+     *         reused.
+     */
+    public synchronized boolean isAddressReused()
+    {
+        return mAddressReused;
+    }
+
+
+    /**
+     * Set whether the first reconnection attempt after a disconnection
+     * connects to the IP address of the last connection without resolving
+     * the hostname. If the attempt fails, the following attempts resolve
+     * the hostname as usual.
+     *
+     * @param reused
+     *         {@code true} to reuse the IP address of the last connection.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public synchronized ReconnectPolicy setAddressReused(boolean reused)
+    {
+        mAddressReused = reused;
+
+        return this;
+    }
+
+
+    /**
+     * Compute the delay before the next attempt from the previous delay
+     * (0 for the first attempt).
+     */
+    synchronized long nextDelay(long previousDelay, Random random)
+    {
+        long min = mMinDelay;
+        long max = Math.max(mMinDelay, mMaxDelay);
+
+        // Decorrelated jitter: random between min and previous * 3.
+        long upper = Math.max(min, Math.min(max, Math.max(previousDelay, min) * 3));
+        long delay = min + (long)(random.nextDouble() * (upper - min));
+
+        return Math.min(delay, max);
+    }
+}
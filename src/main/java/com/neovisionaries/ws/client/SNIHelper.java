@@ -21,6 +21,7 @@ import java.lang.reflect.Method;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSocket;
 
@@ -108,4 +109,25 @@ class SNIHelper
         // Call SSLParameters.setServerNames(List<SNIServerName>) method.
         setServerNames(parameters, hostnames);
     }
+
+
+    static void setServerNames(SSLEngine engine, String[] hostnames)
+    {
+        if (hostnames == null)
+        {
+            return;
+        }
+
+        SSLParameters parameters = engine.getSSLParameters();
+        if (parameters == null)
+        {
+            return;
+        }
+
+        // Call SSLParameters.setServerNames(List<SNIServerName>) method.
+        setServerNames(parameters, hostnames);
+
+        // Apply the parameters to the engine.
+        engine.setSSLParameters(parameters);
+    }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.SSLSession;
+
+
+/**
+ * Counters of full SSL handshakes and resumed ones.
+ */
+class SSLHandshakeCounter
+{
+    // The cipher suite of the session returned when a handshake has failed.
+    private static final String NULL_CIPHER_SUITE = "SSL_NULL_WITH_NULL_NULL";
+
+    private final AtomicLong mFullCount = new AtomicLong();
+    private final AtomicLong mResumedCount = new AtomicLong();
+
+
+    /**
+     * Count the handshake which has established the session.
+     *
+     * @param session
+     *         The session obtained after the handshake.
+     *
+     * @param startTime
+     *         The time in milliseconds when the handshake started.
+     */
+    void count(SSLSession session, long startTime)
+    {
+        if (session == null || NULL_CIPHER_SUITE.equals(session.getCipherSuite()))
+        {
+            // The handshake failed.
+            return;
+        }
+
+        // A resumed session keeps the creation time of the session that
+        // was established by the full handshake, while the session ID may
+        // change (e.g. TLS 1.3 resumption with a pre-shared key).
+        if (session.getCreationTime() < startTime)
+        {
+            mResumedCount.incrementAndGet();
+        }
+        else
+        {
+            mFullCount.incrementAndGet();
+        }
+    }
+
+
+    long getFullCount()
+    {
+        return mFullCount.get();
+    }
+
+
+    long getResumedCount()
+    {
+        return mResumedCount.get();
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Selector threads which watch the channels of {@link ChannelConnection}s
+ * for {@link Transport#SELECTOR}, and worker threads which run the tasks
+ * resumed by readiness events.
+ *
+ * <p>
+ * The number of selector threads is the number of available processors.
+ * Each connection is assigned to one of them in turn.
+ * </p>
+ */
+class SelectorGroup
+{
+    private static final String LOOP_NAME = "SelectorLoop";
+    private static final String WORKER_NAME = "SelectorWorker";
+
+    // The maximum number of worker threads per selector thread.
+    private static final int WORKERS_PER_LOOP = 16;
+
+    private static final SelectorGroup sDefault =
+        new SelectorGroup(Runtime.getRuntime().availableProcessors());
+
+    private final Loop[] mLoops;
+    private int mNext;
+    private ExecutorService mWorkers;
+
+
+    SelectorGroup(int count)
+    {
+        mLoops = new Loop[Math.max(1, count)];
+    }
+
+
+    /**
+     * Get the instance shared in the JVM.
+     */
+    static SelectorGroup getDefault()
+    {
+        return sDefault;
+    }
+
+
+    /**
+     * Get the executor which runs tasks resumed by readiness events.
+     */
+    synchronized Executor getWorkers()
+    {
+        if (mWorkers == null)
+        {
+            // Tasks wait in the queue while all the workers are busy. See
+            // the description of Transport.SELECTOR for the limitations.
+            int max = mLoops.length * WORKERS_PER_LOOP;
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    max, max, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory(WORKER_NAME));
+
+            // Let idle threads terminate. ThreadPoolExecutor.allowCoreThreadTimeOut(boolean)
+            // is available since Java 1.6 / Android API Level 9.
+            Method method = Misc.getMethod("java.util.concurrent.ThreadPoolExecutor",
+                    "allowCoreThreadTimeOut", new Class<?>[] { boolean.class });
+            Misc.invoke(method, executor, Boolean.TRUE);
+
+            mWorkers = executor;
+        }
+
+        return mWorkers;
+    }
+
+
+    /**
+     * Start watching the channel of the connection.
+     */
+    void register(ChannelConnection connection) throws IOException
+    {
+        Loop loop;
+
+        synchronized (this)
+        {
+            int index = mNext;
+            mNext = (mNext + 1) % mLoops.length;
+
+            if (mLoops[index] == null)
+            {
+                // Selector threads are started lazily.
+                mLoops[index] = new Loop(Selector.open());
+                mLoops[index].start();
+            }
+
+            loop = mLoops[index];
+        }
+
+        connection.setLoop(loop);
+        loop.update(connection);
+    }
+
+
+    /**
+     * A selector thread.
+     */
+    static class Loop extends Thread
+    {
+        private final Selector mSelector;
+
+        // Connections whose interest has changed or which have been closed.
+        private final LinkedList<ChannelConnection> mUpdates = new LinkedList<ChannelConnection>();
+
+
+        Loop(Selector selector)
+        {
+            super(LOOP_NAME);
+
+            mSelector = selector;
+
+            // Not to prevent the JVM from exiting.
+            setDaemon(true);
+        }
+
+
+        /**
+         * Apply the current interest of the connection to its selection
+         * key in this thread. If the channel has been closed, the waiting
+         * threads and the parked task of the connection are notified.
+         */
+        void update(ChannelConnection connection)
+        {
+            synchronized (mUpdates)
+            {
+                mUpdates.add(connection);
+            }
+
+            mSelector.wakeup();
+        }
+
+
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                try
+                {
+                    mSelector.select();
+                }
+                catch (IOException e)
+                {
+                    // Should not happen. Keep going.
+                }
+
+                applyUpdates();
+                dispatch();
+            }
+        }
+
+
+        private void applyUpdates()
+        {
+            List<ChannelConnection> updates;
+
+            synchronized (mUpdates)
+            {
+                if (mUpdates.isEmpty())
+                {
+                    return;
+                }
+
+                updates = new ArrayList<ChannelConnection>(mUpdates);
+                mUpdates.clear();
+            }
+
+            for (ChannelConnection connection : updates)
+            {
+                SelectionKey key = connection.getKey();
+
+                try
+                {
+                    if (key == null)
+                    {
+                        // The first update registers the channel.
+                        key = connection.getChannel().register(mSelector, 0, connection);
+                        connection.setKey(key);
+                    }
+
+                    // Throws CancelledKeyException if the channel has been
+                    // closed (see ChannelConnection.close()).
+                    key.interestOps(connection.getInterestOps());
+                }
+                catch (Exception e)
+                {
+                    // The channel has been closed.
+                    connection.onClosed();
+                }
+            }
+        }
+
+
+        private void dispatch()
+        {
+            Iterator<SelectionKey> it = mSelector.selectedKeys().iterator();
+
+            while (it.hasNext())
+            {
+                SelectionKey key = it.next();
+                it.remove();
+
+                ChannelConnection connection = (ChannelConnection)key.attachment();
+
+                try
+                {
+                    // Wake up the waiting threads and resume the parked task.
+                    connection.onReady(key.readyOps());
+                    key.interestOps(connection.getInterestOps());
+                }
+                catch (CancelledKeyException e)
+                {
+                    // The channel has been closed.
+                    connection.onClosed();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,674 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A facade of several web socket connections to the same endpoint.
+ *
+ * <p>
+ * A single {@link WebSocket} is limited by the congestion window of one
+ * TCP stream and by one writing thread. {@code ShardedWebSocket} opens
+ * some connections (<i>shards</i>) in parallel and spreads messages
+ * across them.
+ * </p>
+ *
+ * <blockquote>
+ * <pre style="border-left: solid 5px lightgray;"> ShardedWebSocket ws = new ShardedWebSocket(factory, <span style="color: darkred;">"wss://localhost/telemetry"</span>, <span style="color: darkgreen;">4</span>)
+ *     .setStrategy(ShardingStrategy.LEAST_QUEUED)
+ *     .addListener(listener)
+ *     .connect();
+ *
+ * <span style="color: green;">// Spread across the shards.</span>
+ * ws.sendText(<span style="color: darkred;">"sample"</span>);
+ *
+ * <span style="color: green;">// Messages with the same key go through the same shard in order.</span>
+ * ws.sendText(deviceId, <span style="color: darkred;">"sample"</span>);</pre>
+ * </blockquote>
+ *
+ * <p>
+ * Listeners are registered to all the shards, so they receive the
+ * messages of all the shards as one stream. Note that the callback
+ * methods may be called on the reading threads of several shards at the
+ * same time. The first argument of the callback methods tells which
+ * shard the event belongs to.
+ * </p>
+ *
+ * <p>
+ * When a shard is disconnected without {@link #disconnect()}, it is
+ * replaced by a new connection created by {@link WebSocket#recreate()}
+ * after the {@linkplain #setReconnectDelay(long) reconnect delay}, and
+ * the attempt is repeated until it succeeds. While a shard is being
+ * replaced, messages go through the other open shards. Messages with a
+ * key move to the next open shard, so their order is kept only while
+ * their shard is open. Frames queued in a shard that died are lost.
+ * </p>
+ *
+ * <p>
+ * Fragmented messages should be sent with a key, because the fragments
+ * of a message must go through the same connection.
+ * </p>
+ *
+ * @since 2.10
+ */
+public class ShardedWebSocket
+{
+    private static final long DEFAULT_RECONNECT_DELAY = 1000;
+
+
+    private final WebSocket[] mShards;
+    private final ShardListener mShardListener = new ShardListener();
+    private ShardingStrategy mStrategy = ShardingStrategy.ROUND_ROBIN;
+    private long mReconnectDelay = DEFAULT_RECONNECT_DELAY;
+    private int mNext;
+    private boolean mConnected;
+    private boolean mClosed;
+
+
+    /**
+     * Constructor. The shards are created by {@link
+     * WebSocketFactory#createSocket(String) createSocket(uri)} of the
+     * factory, but they are not connected until {@link #connect()} is
+     * called.
+     *
+     * @param factory
+     *         The factory to create the shards.
+     *
+     * @param uri
+     *         The URI of the endpoint.
+     *
+     * @param shardCount
+     *         The number of connections.
+     *
+     * @throws IllegalArgumentException
+     *         {@code factory} is {@code null}, {@code uri} is {@code null}
+     *         or invalid, or {@code shardCount} is less than 1.
+     *
+     * @throws IOException
+     *         Failed to create a socket.
+     */
+    public ShardedWebSocket(WebSocketFactory factory, String uri, int shardCount) throws IOException
+    {
+        if (factory == null)
+        {
+            throw new IllegalArgumentException("factory must not be null.");
+        }
+
+        if (shardCount < 1)
+        {
+            throw new IllegalArgumentException("shardCount must be at least 1.");
+        }
+
+        mShards = new WebSocket[shardCount];
+
+        for (int i = 0; i < shardCount; ++i)
+        {
+            mShards[i] = factory.createSocket(uri).addListener(mShardListener);
+        }
+    }
+
+
+    /**
+     * Get the number of shards.
+     *
+     * @return
+     *         The number of shards.
+     */
+    public int getShardCount()
+    {
+        return mShards.length;
+    }
+
+
+    /**
+     * Get the current shards. Shards that have died are replaced by new
+     * {@link WebSocket} instances.
+     *
+     * @return
+     *         The current shards.
+     */
+    public synchronized List<WebSocket> getShards()
+    {
+        return new ArrayList<WebSocket>(Arrays.asList(mShards));
+    }
+
+
+    /**
+     * Get the number of shards that are open.
+     *
+     * @return
+     *         The number of open shards.
+     */
+    public int getOpenShardCount()
+    {
+        int count = 0;
+
+        for (WebSocket shard : getShards())
+        {
+            if (shard.isOpen())
+            {
+                ++count;
+            }
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Get the strategy to choose a shard for a message sent without a key.
+     *
+     * @return
+     *         The strategy. The default value is {@link
+     *         ShardingStrategy#ROUND_ROBIN ROUND_ROBIN}.
+     */
+    public synchronized ShardingStrategy getStrategy()
+    {
+        return mStrategy;
+    }
+
+
+    /**
+     * Set the strategy to choose a shard for a message sent without a key.
+     *
+     * @param strategy
+     *         The strategy. {@code null} is regarded as {@link
+     *         ShardingStrategy#ROUND_ROBIN ROUND_ROBIN}.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public synchronized ShardedWebSocket setStrategy(ShardingStrategy strategy)
+    {
+        mStrategy = (strategy != null) ? strategy : ShardingStrategy.ROUND_ROBIN;
+
+        return this;
+    }
+
+
+    /**
+     * Get the delay before a dead shard is reconnected.
+     *
+     * @return
+     *         The delay in milliseconds. The default value is 1000.
+     */
+    public synchronized long getReconnectDelay()
+    {
+        return mReconnectDelay;
+    }
+
+
+    /**
+     * Set the delay before a dead shard is reconnected. The delay also
+     * applies between failed attempts to reconnect.
+     *
+     * @param delay
+     *         The delay in milliseconds.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code delay} is negative.
+     */
+    public synchronized ShardedWebSocket setReconnectDelay(long delay)
+    {
+        if (delay < 0)
+        {
+            throw new IllegalArgumentException("delay must not be negative.");
+        }
+
+        mReconnectDelay = delay;
+
+        return this;
+    }
+
+
+    /**
+     * Add a listener to all the shards.
+     *
+     * @param listener
+     *         A listener to add.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public synchronized ShardedWebSocket addListener(WebSocketListener listener)
+    {
+        // Replacements inherit the listeners by recreate().
+        for (WebSocket shard : mShards)
+        {
+            shard.addListener(listener);
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Remove a listener from all the shards.
+     *
+     * @param listener
+     *         A listener to remove.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public synchronized ShardedWebSocket removeListener(WebSocketListener listener)
+    {
+        for (WebSocket shard : mShards)
+        {
+            shard.removeListener(listener);
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Connect all the shards to the endpoint.
+     *
+     * <p>
+     * If any of the shards fails to connect, the other shards are
+     * disconnected and the exception is thrown. This method can be
+     * called only once.
+     * </p>
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws WebSocketException
+     *         A shard failed to connect.
+     *
+     * @throws IllegalStateException
+     *         This method has already been called.
+     */
+    public ShardedWebSocket connect() throws WebSocketException
+    {
+        synchronized (this)
+        {
+            if (mConnected || mClosed)
+            {
+                throw new IllegalStateException("connect() has already been called.");
+            }
+
+            mConnected = true;
+        }
+
+        try
+        {
+            for (WebSocket shard : getShards())
+            {
+                // Skip a shard which has died and been replaced meanwhile.
+                if (shard.getState() == WebSocketState.CREATED)
+                {
+                    shard.connect();
+                }
+            }
+        }
+        catch (WebSocketException e)
+        {
+            disconnect();
+            throw e;
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Disconnect all the shards. Shards are no longer replaced after
+     * this method is called.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ShardedWebSocket disconnect()
+    {
+        return disconnect(WebSocketCloseCode.NORMAL, null);
+    }
+
+
+    /**
+     * Disconnect all the shards with the close code and the reason.
+     * Shards are no longer replaced after this method is called.
+     *
+     * @param closeCode
+     *         The close code embedded in the close frames.
+     *
+     * @param reason
+     *         The reason embedded in the close frames.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ShardedWebSocket disconnect(int closeCode, String reason)
+    {
+        synchronized (this)
+        {
+            mClosed = true;
+        }
+
+        for (WebSocket shard : getShards())
+        {
+            shard.disconnect(closeCode, reason);
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Send a text message through a shard chosen by the {@linkplain
+     * #setStrategy(ShardingStrategy) strategy}.
+     *
+     * @param message
+     *         A text message.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ShardedWebSocket sendText(String message)
+    {
+        return sendFrame(null, WebSocketFrame.createTextFrame(message));
+    }
+
+
+    /**
+     * Send a text message through the shard chosen by the key.
+     *
+     * @param key
+     *         A key whose messages keep their order.
+     *
+     * @param message
+     *         A text message.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ShardedWebSocket sendText(Object key, String message)
+    {
+        return sendFrame(key, WebSocketFrame.createTextFrame(message));
+    }
+
+
+    /**
+     * Send a binary message through a shard chosen by the {@linkplain
+     * #setStrategy(ShardingStrategy) strategy}.
+     *
+     * @param message
+     *         A binary message.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ShardedWebSocket sendBinary(byte[] message)
+    {
+        return sendFrame(null, WebSocketFrame.createBinaryFrame(message));
+    }
+
+
+    /**
+     * Send a binary message through the shard chosen by the key.
+     *
+     * @param key
+     *         A key whose messages keep their order.
+     *
+     * @param message
+     *         A binary message.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ShardedWebSocket sendBinary(Object key, byte[] message)
+    {
+        return sendFrame(key, WebSocketFrame.createBinaryFrame(message));
+    }
+
+
+    /**
+     * Send a frame through a shard chosen by the {@linkplain
+     * #setStrategy(ShardingStrategy) strategy}.
+     *
+     * @param frame
+     *         A frame to send.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ShardedWebSocket sendFrame(WebSocketFrame frame)
+    {
+        return sendFrame(null, frame);
+    }
+
+
+    /**
+     * Send a frame through the shard chosen by the key. If {@code key}
+     * is {@code null}, the shard is chosen by the {@linkplain
+     * #setStrategy(ShardingStrategy) strategy}.
+     *
+     * <p>
+     * If no shard is open, the frame is discarded as {@link
+     * WebSocket#sendFrame(WebSocketFrame)} does when the web socket is
+     * not open.
+     * </p>
+     *
+     * @param key
+     *         A key whose frames keep their order, or {@code null}.
+     *
+     * @param frame
+     *         A frame to send.
+     *
+     * @return
+     *         {@code this} object.
+     */
+    public ShardedWebSocket sendFrame(Object key, WebSocketFrame frame)
+    {
+        WebSocket shard = selectShard(key);
+
+        if (shard != null)
+        {
+            shard.sendFrame(frame);
+        }
+
+        return this;
+    }
+
+
+    private WebSocket selectShard(Object key)
+    {
+        WebSocket[] shards;
+        ShardingStrategy strategy;
+        int start;
+
+        synchronized (this)
+        {
+            shards   = mShards.clone();
+            strategy = mStrategy;
+            start    = mNext;
+
+            if (key == null && strategy == ShardingStrategy.ROUND_ROBIN)
+            {
+                mNext = (mNext + 1) % shards.length;
+            }
+        }
+
+        if (key != null)
+        {
+            // Spread the bits of hash codes which differ only in
+            // higher bits.
+            int hash = key.hashCode();
+            hash ^= (hash >>> 16);
+
+            start = (hash & 0x7FFFFFFF) % shards.length;
+        }
+        else if (strategy == ShardingStrategy.LEAST_QUEUED)
+        {
+            return selectLeastQueued(shards);
+        }
+
+        // The first open shard from the start position.
+        for (int i = 0; i < shards.length; ++i)
+        {
+            WebSocket shard = shards[(start + i) % shards.length];
+
+            if (shard.isOpen())
+            {
+                return shard;
+            }
+        }
+
+        return null;
+    }
+
+
+    private static WebSocket selectLeastQueued(WebSocket[] shards)
+    {
+        WebSocket selected = null;
+        int min = Integer.MAX_VALUE;
+
+        for (WebSocket shard : shards)
+        {
+            if (shard.isOpen() == false)
+            {
+                continue;
+            }
+
+            int count = shard.getQueuedFrameCount();
+
+            if (count < min)
+            {
+                selected = shard;
+                min      = count;
+            }
+        }
+
+        return selected;
+    }
+
+
+    /**
+     * Replace the dead shard with a new connection.
+     */
+    private void replace(WebSocket dead)
+    {
+        final WebSocket replacement;
+        long delay;
+
+        synchronized (this)
+        {
+            if (mClosed)
+            {
+                return;
+            }
+
+            int index = Arrays.asList(mShards).indexOf(dead);
+
+            if (index < 0)
+            {
+                // Already replaced.
+                return;
+            }
+
+            try
+            {
+                // The settings and the listeners are copied.
+                replacement = dead.recreate();
+            }
+            catch (IOException e)
+            {
+                // Try again after the delay.
+                retry(dead);
+                return;
+            }
+
+            mShards[index] = replacement;
+            delay = mReconnectDelay;
+        }
+
+        replacement.getTimer().schedule(new Runnable() {
+            public void run()
+            {
+                synchronized (ShardedWebSocket.this)
+                {
+                    if (mClosed)
+                    {
+                        return;
+                    }
+                }
+
+                // onConnectError() is called if this fails.
+                replacement.connectAsynchronously();
+            }
+        }, delay);
+    }
+
+
+    private void retry(final WebSocket dead)
+    {
+        dead.getTimer().schedule(new Runnable() {
+            public void run()
+            {
+                replace(dead);
+            }
+        }, mReconnectDelay);
+    }
+
+
+    private class ShardListener extends WebSocketAdapter
+    {
+        @Override
+        public void onConnected(WebSocket websocket, Map<String, List<String>> headers)
+        {
+            boolean closed;
+
+            synchronized (ShardedWebSocket.this)
+            {
+                closed = mClosed;
+            }
+
+            // disconnect() may have been called while connecting.
+            if (closed)
+            {
+                websocket.disconnect();
+            }
+        }
+
+
+        @Override
+        public void onConnectError(WebSocket websocket, WebSocketException exception)
+        {
+            // Only replacements connect asynchronously.
+            replace(websocket);
+        }
+
+
+        @Override
+        public void onDisconnected(WebSocket websocket,
+                WebSocketFrame serverCloseFrame, WebSocketFrame clientCloseFrame,
+                boolean closedByServer)
+        {
+            replace(websocket);
+        }
+    }
+}
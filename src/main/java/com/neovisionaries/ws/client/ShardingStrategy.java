@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+/**
+ * Strategies of {@link ShardedWebSocket} to choose a connection for a
+ * message sent without a key.
+ *
+ * <p>
+ * Messages sent with a key always go through the connection chosen by
+ * the hash code of the key, so that messages with the same key keep
+ * their order.
+ * </p>
+ *
+ * @see ShardedWebSocket#setStrategy(ShardingStrategy)
+ *
+ * @since 2.10
+ */
+public enum ShardingStrategy
+{
+    /**
+     * Use the open connections in turn. This is the default.
+     */
+    ROUND_ROBIN,
+
+
+    /**
+     * Use the open connection with the fewest frames waiting to be
+     * written. This avoids a connection whose TCP stream is slow.
+     */
+    LEAST_QUEUED,
+}
@@ -17,14 +17,18 @@ package com.neovisionaries.ws.client;
 
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.concurrent.Executor;
 
 import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
@@ -49,7 +53,20 @@ class SocketConnector
     private final int mPort;
     private DualStackMode mDualStackMode = DualStackMode.BOTH;
     private int mDualStackFallbackDelay = 250;
+    private boolean mAdaptiveDualStackFallbackDelay;
+    private Executor mDualStackExecutor;
     private boolean mVerifyHostname;
+    private HostResolver mHostResolver = CachingHostResolver.getDefault();
+    private SSLHandshakeCounter mSSLHandshakeCounter;
+    private SocketPool mSocketPool;
+    private String mSocketPoolKey;
+    private boolean mProxyPipelined;
+    private boolean mProxyResponsePending;
+    private long mProxyHandshakeStartTime;
+    private boolean mChannelTransport;
+    private SSLContext mEngineContext;
+    private ChannelConnection mChannelConnection;
+    private final ConnectTimings mTimings = new ConnectTimings();
     private Socket mSocket;
 
     SocketConnector(SocketFactory socketFactory, Address address, int timeout, String[] serverNames)
@@ -86,6 +103,22 @@ class SocketConnector
     }
 
 
+    public ConnectTimings getTimings()
+    {
+        return mTimings;
+    }
+
+
+    /**
+     * Get the connection over the channel of the socket when {@link
+     * Transport#SELECTOR} is used, otherwise {@code null}.
+     */
+    public ChannelConnection getChannelConnection()
+    {
+        return mChannelConnection;
+    }
+
+
     public Socket getConnectedSocket() throws WebSocketException
     {
         // Connect lazily.
@@ -103,16 +136,21 @@ class SocketConnector
         // Create socket initiator.
         SocketInitiator socketInitiator = new SocketInitiator(
                 mSocketFactory, mAddress, mConnectionTimeout, mServerNames,
-                mDualStackMode, mDualStackFallbackDelay);
+                mDualStackMode, mDualStackFallbackDelay, mAdaptiveDualStackFallbackDelay,
+                AddressScoreboard.getInstance(), mDualStackExecutor);
 
         // Resolve hostname to IP addresses
+        long startTime = System.nanoTime();
         InetAddress[] addresses = resolveHostname();
+        mTimings.setHostResolutionTime(System.nanoTime() - startTime);
 
         // Let the sockets race until one has been established, following
         // RFC 6555 (*happy eyeballs*).
         try
         {
+            startTime = System.nanoTime();
             mSocket = socketInitiator.establish(addresses);
+            mTimings.setSocketConnectionTime(System.nanoTime() - startTime, mSocket.getInetAddress());
         }
         catch (Exception e)
         {
@@ -137,7 +175,7 @@ class SocketConnector
         try
         {
             // Resolve hostname to IP addresses.
-            addresses = InetAddress.getAllByName(mAddress.getHostname());
+            addresses = mHostResolver.resolve(mAddress.getHostname());
 
             // Sort addresses: IPv6 first, then IPv4.
             Arrays.sort(addresses, new Comparator<InetAddress>() {
@@ -184,6 +222,20 @@ class SocketConnector
 
     public Socket connect() throws WebSocketException
     {
+        // If a socket has not been connected by getConnectedSocket().
+        if (mSocket == null && mSocketPool != null)
+        {
+            // Use a pre-connected socket on which the handshakes with
+            // the proxy server and the SSL handshake have been done.
+            mSocket = mSocketPool.claim(mSocketPoolKey);
+
+            if (mSocket != null)
+            {
+                mTimings.setPreConnected(mSocket.getInetAddress());
+                return mSocket;
+            }
+        }
+
         try
         {
             // Connect to the server (either a proxy or a WebSocket endpoint).
@@ -195,28 +247,21 @@ class SocketConnector
         {
             // Failed to connect the server.
 
-            if (mSocket != null)
-            {
-                try
-                {
-                    // Close the socket.
-                    mSocket.close();
-                }
-                catch (IOException ioe)
-                {
-                    // Ignore any error raised by close().
-                }
-            }
+            // Close the socket.
+            closeSilently();
 
             throw e;
         }
     }
 
 
-    SocketConnector setDualStackSettings(DualStackMode mode, int fallbackDelay)
+    SocketConnector setDualStackSettings(
+            DualStackMode mode, int fallbackDelay, boolean adaptive, Executor executor)
     {
-        mDualStackMode          = mode;
-        mDualStackFallbackDelay = fallbackDelay;
+        mDualStackMode                  = mode;
+        mDualStackFallbackDelay         = fallbackDelay;
+        mAdaptiveDualStackFallbackDelay = adaptive;
+        mDualStackExecutor              = executor;
 
         return this;
     }
@@ -230,6 +275,110 @@ class SocketConnector
     }
 
 
+    SocketConnector setSSLHandshakeCounter(SSLHandshakeCounter counter)
+    {
+        mSSLHandshakeCounter = counter;
+
+        return this;
+    }
+
+
+    SocketConnector setSocketPool(SocketPool pool, String key)
+    {
+        mSocketPool    = pool;
+        mSocketPoolKey = key;
+
+        return this;
+    }
+
+
+    /**
+     * Use {@link Transport#SELECTOR}. The socket factory must be {@link
+     * ChannelSocketFactory}.
+     *
+     * @param context
+     *         The SSL context to create an SSL engine for the WebSocket
+     *         endpoint, or {@code null} if the endpoint is not secure.
+     */
+    SocketConnector setChannelTransport(SSLContext context)
+    {
+        mChannelTransport = true;
+        mEngineContext    = context;
+
+        return this;
+    }
+
+
+    boolean isChannelTransport()
+    {
+        return mChannelTransport;
+    }
+
+
+    SocketConnector setProxyPipelined(boolean pipelined)
+    {
+        mProxyPipelined = pipelined;
+
+        return this;
+    }
+
+
+    /**
+     * Check if the response to the CONNECT request has not been read yet
+     * because the opening handshake is pipelined after the request.
+     */
+    boolean isProxyResponsePending()
+    {
+        return mProxyResponsePending;
+    }
+
+
+    /**
+     * Read the pending response to the CONNECT request from the input
+     * stream of the socket. The response to the opening handshake, which
+     * may have been received together, is left in the stream.
+     */
+    void receiveProxyResponse(InputStream input) throws WebSocketException
+    {
+        try
+        {
+            // Read the response from the proxy server.
+            mProxyHandshaker.receiveResponse(input);
+            mTimings.setProxyHandshakeTime(System.nanoTime() - mProxyHandshakeStartTime);
+        }
+        catch (IOException e)
+        {
+            // The proxy server rejected the CONNECT request. The opening
+            // handshake sent after the request is discarded with the socket.
+            throw proxyHandshakeError(e);
+        }
+
+        mProxyResponsePending = false;
+    }
+
+
+    private WebSocketException proxyHandshakeError(IOException e)
+    {
+        // Handshake with the proxy server failed.
+        String message = String.format(
+            "Handshake with the proxy server (%s) failed: %s", mAddress, e.getMessage());
+
+        // Raise an exception with PROXY_HANDSHAKE_ERROR.
+        return new WebSocketException(WebSocketError.PROXY_HANDSHAKE_ERROR, message, e);
+    }
+
+
+    SocketConnector setHostResolver(HostResolver resolver)
+    {
+        if (resolver != null)
+        {
+            mHostResolver = resolver;
+        }
+
+        return this;
+    }
+
+
     private void doConnect() throws WebSocketException
     {
         // True if a proxy server is set.
@@ -241,6 +390,9 @@ class SocketConnector
 
         if (mSocket instanceof SSLSocket)
         {
+            // Perform the SSL handshake with the server.
+            startHandshake((SSLSocket)mSocket, mAddress.getHostname());
+
             // Verify that the hostname matches the certificate here since
             // this is not automatically done by the SSLSocket.
             verifyHostname((SSLSocket)mSocket, mAddress.getHostname());
@@ -253,6 +405,120 @@ class SocketConnector
             // SSL handshake is performed as necessary, too.
             handshake();
         }
+
+        if (mChannelTransport)
+        {
+            // Switch to the non-blocking channel.
+            openChannelConnection();
+        }
+    }
+
+
+    private void openChannelConnection() throws WebSocketException
+    {
+        // True if a proxy server is set.
+        boolean proxied = mProxyHandshaker != null;
+
+        // The WebSocket endpoint.
+        String host = proxied ? mHost : mAddress.getHostname();
+        int    port = proxied ? mPort : mAddress.getPort();
+
+        SSLEngine engine = null;
+
+        if (mEngineContext != null)
+        {
+            engine = mEngineContext.createSSLEngine(host, port);
+            engine.setUseClientMode(true);
+
+            if (proxied == false)
+            {
+                // Set up server names for SNI as necessary.
+                SNIHelper.setServerNames(engine, mServerNames);
+            }
+        }
+
+        try
+        {
+            // Let one of the selector threads watch the channel.
+            mChannelConnection = new ChannelConnection(mSocket.getChannel(), engine);
+            SelectorGroup.getDefault().register(mChannelConnection);
+        }
+        catch (IOException e)
+        {
+            // Failed to set up the channel.
+            String message = "Failed to set up the channel of the socket: " + e.getMessage();
+
+            // Raise an exception with SOCKET_CONNECT_ERROR.
+            throw new WebSocketException(WebSocketError.SOCKET_CONNECT_ERROR, message, e);
+        }
+
+        if (engine == null)
+        {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        long startNanoTime = System.nanoTime();
+
+        try
+        {
+            // Perform the SSL handshake with the WebSocket endpoint.
+            mChannelConnection.handshake();
+            mTimings.addSSLHandshakeTime(System.nanoTime() - startNanoTime);
+        }
+        catch (IOException e)
+        {
+            // SSL handshake with the server failed.
+            String message = String.format(
+                "SSL handshake with the server (%s) failed: %s", host, e.getMessage());
+
+            // Raise an exception with SSL_HANDSHAKE_ERROR.
+            throw new WebSocketException(WebSocketError.SSL_HANDSHAKE_ERROR, message, e);
+        }
+
+        SSLSession session = engine.getSession();
+
+        if (mSSLHandshakeCounter != null)
+        {
+            // Count the handshake as either a full one or a resumed one.
+            mSSLHandshakeCounter.count(session, startTime);
+        }
+
+        if (mVerifyHostname && verifyHostname(session, host) == false)
+        {
+            // The certificate of the peer does not match the expected hostname.
+            throw new HostnameUnverifiedException(session, host);
+        }
+    }
+
+
+    private void startHandshake(SSLSocket socket, String hostname) throws WebSocketException
+    {
+        long startTime = System.currentTimeMillis();
+        long startNanoTime = System.nanoTime();
+
+        try
+        {
+            // The session is resumed if the SSL context has cached a session
+            // for the host and the port and the server accepts it.
+            socket.startHandshake();
+            mTimings.addSSLHandshakeTime(System.nanoTime() - startNanoTime);
+        }
+        catch (IOException e)
+        {
+            // SSL handshake with the server failed.
+            String message = String.format(
+                "SSL handshake with the server (%s) failed: %s", hostname, e.getMessage());
+
+            // Raise an exception with SSL_HANDSHAKE_ERROR.
+            throw new WebSocketException(WebSocketError.SSL_HANDSHAKE_ERROR, message, e);
+        }
+
+        if (mSSLHandshakeCounter != null)
+        {
+            // Count the handshake as either a full one or a resumed one.
+            mSSLHandshakeCounter.count(socket.getSession(), startTime);
+        }
     }
 
 
@@ -264,14 +530,8 @@ class SocketConnector
             return;
         }
 
-        // Hostname verifier.
-        OkHostnameVerifier verifier = OkHostnameVerifier.INSTANCE;
-
-        // The SSL session.
-        SSLSession session = socket.getSession();
-
-        // Verify the hostname.
-        if (verifier.verify(hostname, session))
+        // Verify the hostname against the certificate in the SSL session.
+        if (verifyHostname(socket.getSession(), hostname))
         {
             // Verified. No problem.
             return;
@@ -282,6 +542,20 @@ class SocketConnector
     }
 
 
+    private boolean verifyHostname(SSLSession session, String hostname)
+    {
+        // Hostname verifier.
+        OkHostnameVerifier verifier = OkHostnameVerifier.INSTANCE;
+
+        // Verify the hostname.
+        long startTime = System.nanoTime();
+        boolean verified = verifier.verify(hostname, session);
+        mTimings.addHostnameVerificationTime(System.nanoTime() - startTime);
+
+        return verified;
+    }
+
+
     /**
      * Perform proxy handshake and optionally SSL handshake.
      */
@@ -290,19 +564,31 @@ class SocketConnector
         // Sanity check
         assert mSocket != null;
 
+        // If the opening handshake can be sent without waiting for the
+        // response from the proxy server. The TLS handshake with a wss
+        // endpoint must wait until the tunnel has been established.
+        boolean pipelined = mProxyPipelined && mSSLSocketFactory == null && mEngineContext == null;
+
         try
         {
+            mProxyHandshakeStartTime = System.nanoTime();
+
+            if (pipelined)
+            {
+                // Send a CONNECT request only. The response is read
+                // before the response to the opening handshake.
+                mProxyHandshaker.sendRequest(mSocket);
+                mProxyResponsePending = true;
+                return;
+            }
+
             // Perform handshake with the proxy server.
             mProxyHandshaker.perform(mSocket);
+            mTimings.setProxyHandshakeTime(System.nanoTime() - mProxyHandshakeStartTime);
         }
         catch (IOException e)
         {
-            // Handshake with the proxy server failed.
-            String message = String.format(
-                "Handshake with the proxy server (%s) failed: %s", mAddress, e.getMessage());
-
-            // Raise an exception with PROXY_HANDSHAKE_ERROR.
-            throw new WebSocketException(WebSocketError.PROXY_HANDSHAKE_ERROR, message, e);
+            throw proxyHandshakeError(e);
         }
 
         if (mSSLSocketFactory == null)
@@ -329,7 +615,16 @@ class SocketConnector
         {
             // Start the SSL handshake manually. As for the reason, see
             // http://docs.oracle.com/javase/7/docs/technotes/guides/security/jsse/samples/sockets/client/SSLSocketClient.java
+            long startTime = System.currentTimeMillis();
+            long startNanoTime = System.nanoTime();
             ((SSLSocket)mSocket).startHandshake();
+            mTimings.addSSLHandshakeTime(System.nanoTime() - startNanoTime);
+
+            if (mSSLHandshakeCounter != null)
+            {
+                // Count the handshake as either a full one or a resumed one.
+                mSSLHandshakeCounter.count(((SSLSocket)mSocket).getSession(), startTime);
+            }
 
             // Verify that the proxied hostname matches the certificate here since
             // this is not automatically done by the SSLSocket.
@@ -347,13 +642,25 @@ class SocketConnector
     }
 
 
+    /**
+     * Close the socket. With {@link Transport#SELECTOR}, the channel is
+     * closed through the {@link ChannelConnection} so that the selector
+     * thread notices the closure.
+     */
     void closeSilently()
     {
         if (mSocket != null)
         {
             try
             {
-                mSocket.close();
+                if (mChannelConnection != null)
+                {
+                    mChannelConnection.close();
+                }
+                else
+                {
+                    mSocket.close();
+                }
             }
             catch (Throwable t)
             {
@@ -6,10 +6,14 @@ import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.SocketAddress;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.SocketFactory;
@@ -22,52 +26,34 @@ import javax.net.SocketFactory;
  * This follows <a href="https://tools.ietf.org/html/rfc6555">RFC 6555 (Happy
  * Eyeballs)</a>.
  *
+ * Racers are executed by an {@link Executor} instead of dedicated threads. A
+ * racer is not submitted to the executor until its turn comes, i.e. until the
+ * preceding racer has failed or the fallback delay has elapsed, so no thread
+ * is occupied by a racer waiting for its turn.
+ *
  * @author Lennart Grahl
  */
 public class SocketInitiator {
     /**
-     * A <i>wait</i> signal will be awaited by a {@link SocketRacer} before it
-     * starts to connect.
-     *
-     * When a {@link SocketRacer} <i>A</i> is done, it will unblock the
-     * following racer <i>B</i> by marking <i>B's</i> signal as <i>done</i>.
+     * The maximum number of pooled threads of the executor shared by all
+     * instances which have no executor given. Racers beyond this number
+     * run on dedicated threads.
      */
-    private class Signal
-    {
-        private final CountDownLatch mLatch;
-        private final int mMaxDelay;
+    private static final int MAX_SHARED_THREADS = 64;
 
 
-        Signal(int maxDelay)
-        {
-            mLatch    = new CountDownLatch(1);
-            mMaxDelay = maxDelay;
-        }
+    private static final String RACER_NAME = "SocketRacer";
 
 
-        boolean isDone()
-        {
-            return mLatch.getCount() == 0;
-        }
-
-
-        void await() throws InterruptedException
-        {
-            mLatch.await(mMaxDelay, TimeUnit.MILLISECONDS);
-        }
-
-
-        void done()
-        {
-            mLatch.countDown();
-        }
-    }
+    /**
+     * The executor shared by all instances which have no executor given.
+     */
+    private static Executor sSharedExecutor;
 
 
     /**
-     * This thread connects to a socket and notifies a {@link SocketFuture}
-     * shared across all racer threads when it is done. A racer thread is done
-     * when...
+     * This task connects to a socket and notifies a {@link SocketFuture}
+     * shared across all racers when it is done. A racer is done when...
      *
      * <ul>
      * <li>it has established a connection, or</li>
@@ -75,125 +61,94 @@ public class SocketInitiator {
      * <li>another racer established a connection.</li>
      * </ul>
      */
-    private class SocketRacer extends Thread
+    private class SocketRacer implements Runnable
     {
         private final SocketFuture mFuture;
         private final SocketFactory mSocketFactory;
-        private final SocketAddress mSocketAddress;
+        private final InetSocketAddress mSocketAddress;
         private String[] mServerNames;
         private final int mConnectTimeout;
-        private final Signal mStartSignal;
-        private final Signal mDoneSignal;
+
+        // The socket being connected. Guarded by mFuture.
+        private Socket mSocket;
+
+        // True when this racer is done. Guarded by mFuture.
+        private boolean mDone;
 
 
         SocketRacer(
-                SocketFuture future, SocketFactory socketFactory, SocketAddress socketAddress,
-                String[] serverNames, int connectTimeout, Signal startSignal, Signal doneSignal)
+                SocketFuture future, SocketFactory socketFactory, InetSocketAddress socketAddress,
+                String[] serverNames, int connectTimeout)
         {
             mFuture         = future;
             mSocketFactory  = socketFactory;
             mSocketAddress  = socketAddress;
             mServerNames    = serverNames;
             mConnectTimeout = connectTimeout;
-            mStartSignal    = startSignal;
-            mDoneSignal     = doneSignal;
         }
 
 
         public void run() {
             Socket socket = null;
+            long startTime = 0;
             try
             {
-                // Await start signal.
-                if (mStartSignal != null)
-                {
-                    mStartSignal.await();
-                }
+                // Let the socket factory create a socket.
+                socket = mSocketFactory.createSocket();
 
-                // Check if a socket has already been established.
-                if (mFuture.hasSocket())
+                // Check if a socket has already been established. If not,
+                // the socket can be closed by the winner from now on.
+                if (mFuture.register(this, socket) == false)
                 {
+                    mFuture.setException(this, new InterruptedException());
+                    close(socket);
                     return;
                 }
 
-                // Let the socket factory create a socket.
-                socket = mSocketFactory.createSocket();
-
                 // Set up server names for SNI as necessary if possible.
                 SNIHelper.setServerNames(socket, mServerNames);
 
                 // Connect to the server (either a proxy or a WebSocket endpoint).
+                startTime = System.nanoTime();
                 socket.connect(mSocketAddress, mConnectTimeout);
 
+                // Record the time taken to connect. A racer which has lost
+                // the race has measured the RTT correctly, too.
+                mScoreboard.recordSuccess(mSocketAddress.getAddress(),
+                        (System.nanoTime() - startTime) / 1000000L);
+
                 // Socket established.
-                complete(socket);
+                mFuture.setSocket(this, socket);
             }
             catch (Exception e)
             {
-                abort(e);
-
-                if (socket != null)
+                // If connecting failed for a reason other than losing the race.
+                if (startTime != 0 && mFuture.hasSocket() == false)
                 {
-                    try
-                    {
-                        socket.close();
-                    }
-                    catch (IOException ioe)
-                    {
-                        // ignored
-                    }
-                }
-            }
-        }
-
-
-        private void complete(Socket socket)
-        {
-            synchronized (mFuture)
-            {
-                // Check if already completed or aborted.
-                if (mDoneSignal.isDone()) {
-                    return;
+                    // Demote the address temporarily.
+                    mScoreboard.recordFailure(mSocketAddress.getAddress());
                 }
 
-                // Socket established.
-                mFuture.setSocket(this, socket);
+                mFuture.setException(this, e);
 
-                // Socket racer complete.
-                mDoneSignal.done();
-            }
-        }
-
-
-        void abort(Exception exception)
-        {
-            synchronized (mFuture)
-            {
-                // Check if already completed or aborted.
-                if (mDoneSignal.isDone())
+                if (socket != null)
                 {
-                    return;
+                    close(socket);
                 }
-
-                // Socket not established.
-                mFuture.setException(exception);
-
-                // Socket racer complete.
-                mDoneSignal.done();
             }
         }
     }
 
 
     /**
-     * The socket future is shared across all {@link SocketRacer} threads and
+     * The socket future is shared across all {@link SocketRacer}s and
      * aggregates the results. A socket future is considered fulfilled when...
      *
      * <ul>
-     * <li>any racer thread has established a socket in which case all
-     *     other racers will be stopped, or</li>
-     * <li>all racer threads returned with an exception, or</li>
-     * <li>there was no racer thread (e.g. in case there is no network
+     * <li>any racer has established a socket in which case the sockets
+     *     of all other racers will be closed, or</li>
+     * <li>all racers returned with an exception, or</li>
+     * <li>there was no racer (e.g. in case there is no network
      *     interface).</li>
      * </ul>
      *
@@ -202,8 +157,9 @@ public class SocketInitiator {
      */
     private class SocketFuture
     {
-        private CountDownLatch mLatch;
-        private List<SocketRacer> mRacers;
+        private final List<SocketRacer> mRacers = new ArrayList<SocketRacer>();
+        private int mDoneCount;
+        private boolean mCancelled;
         private Socket mSocket;
         private Exception mException;
 
@@ -214,83 +170,118 @@ public class SocketInitiator {
         }
 
 
-        synchronized void setSocket(SocketRacer current, Socket socket)
+        synchronized void start(SocketRacer racer)
         {
-            // Sanity check.
-            if (mLatch == null || mRacers == null)
+            mRacers.add(racer);
+        }
+
+
+        synchronized boolean register(SocketRacer racer, Socket socket)
+        {
+            if (mSocket != null || mCancelled)
             {
-                throw new IllegalStateException("Cannot set socket before awaiting!");
+                return false;
             }
 
+            racer.mSocket = socket;
+
+            return true;
+        }
+
+
+        synchronized void setSocket(SocketRacer current, Socket socket)
+        {
+            done(current);
+
             // Set socket if not already set, otherwise close socket.
-            if (mSocket == null)
+            if (mSocket == null && mCancelled == false)
             {
                 mSocket = socket;
 
-                // Stop all other racers.
-                for (SocketRacer racer: mRacers)
-                {
-                    // Skip instance that is setting the socket.
-                    if (racer == current)
-                    {
-                        continue;
-                    }
-                    racer.abort(new InterruptedException());
-                    racer.interrupt();
-                }
+                // Stop all other racers. Closing their sockets makes their
+                // pending connect() calls fail and release their threads.
+                closeSockets();
             }
             else
             {
-                try
-                {
-                    socket.close();
-                }
-                catch (IOException e)
-                {
-                    // ignored
-                }
+                close(socket);
             }
-
-            // Racer complete.
-            mLatch.countDown();
         }
 
 
-        synchronized void setException(Exception exception)
+        synchronized void setException(SocketRacer current, Exception exception)
         {
-            // Sanity check.
-            if (mLatch == null || mRacers == null)
-            {
-                throw new IllegalStateException("Cannot set exception before awaiting!");
-            }
+            done(current);
 
             // Set exception if not already set.
             if (mException == null)
             {
                 mException = exception;
             }
+        }
+
+
+        private void done(SocketRacer racer)
+        {
+            racer.mSocket = null;
+            racer.mDone   = true;
+
+            ++mDoneCount;
 
-            // Racer complete.
-            mLatch.countDown();
+            notifyAll();
+        }
+
+
+        private void closeSockets()
+        {
+            for (SocketRacer racer : mRacers)
+            {
+                if (racer.mSocket != null)
+                {
+                    close(racer.mSocket);
+                }
+            }
         }
 
 
-        Socket await(List<SocketRacer> racers) throws Exception
+        synchronized void cancel()
         {
-            // Store racers.
-            mRacers = racers;
+            mCancelled = true;
+
+            closeSockets();
+        }
 
-            // Create new latch.
-            mLatch = new CountDownLatch(mRacers.size());
 
-            // Start each racer.
-            for (SocketRacer racer: mRacers)
+        /**
+         * Wait until the racer is done, a socket has been established
+         * or the deadline (in milliseconds) has come.
+         */
+        synchronized void await(SocketRacer racer, long deadline) throws InterruptedException
+        {
+            while (mSocket == null && racer.mDone == false)
             {
-                racer.start();
+                long timeout = deadline - System.currentTimeMillis();
+
+                if (timeout <= 0)
+                {
+                    return;
+                }
+
+                wait(timeout);
             }
+        }
+
 
-            // Wait until all racers complete.
-            mLatch.await();
+        /**
+         * Wait until a socket has been established or all the racers
+         * started so far are done.
+         */
+        synchronized Socket await() throws Exception
+        {
+            while (mSocket == null && mDoneCount < mRacers.size())
+            {
+                wait();
+            }
 
             // Return the socket, if any, otherwise the first exception raised
             if (mSocket != null)
@@ -316,18 +307,107 @@ public class SocketInitiator {
     private final String[] mServerNames;
     private final DualStackMode mMode;
     private final int mFallbackDelay;
+    private final boolean mAdaptiveFallbackDelay;
+    private final AddressScoreboard mScoreboard;
+    private final Executor mExecutor;
 
 
     public SocketInitiator(
             SocketFactory socketFactory, Address address, int connectTimeout, String[] serverNames,
             DualStackMode mode, int fallbackDelay)
     {
-        mSocketFactory  = socketFactory;
-        mAddress        = address;
-        mConnectTimeout = connectTimeout;
-        mServerNames    = serverNames;
-        mMode           = mode;
-        mFallbackDelay  = fallbackDelay;
+        this(socketFactory, address, connectTimeout, serverNames, mode, fallbackDelay, false);
+    }
+
+
+    public SocketInitiator(
+            SocketFactory socketFactory, Address address, int connectTimeout, String[] serverNames,
+            DualStackMode mode, int fallbackDelay, boolean adaptiveFallbackDelay)
+    {
+        this(socketFactory, address, connectTimeout, serverNames, mode, fallbackDelay,
+                adaptiveFallbackDelay, AddressScoreboard.getInstance(), null);
+    }
+
+
+    SocketInitiator(
+            SocketFactory socketFactory, Address address, int connectTimeout, String[] serverNames,
+            DualStackMode mode, int fallbackDelay, boolean adaptiveFallbackDelay,
+            AddressScoreboard scoreboard, Executor executor)
+    {
+        mSocketFactory         = socketFactory;
+        mAddress               = address;
+        mConnectTimeout        = connectTimeout;
+        mServerNames           = serverNames;
+        mMode                  = mode;
+        mFallbackDelay         = fallbackDelay;
+        mAdaptiveFallbackDelay = adaptiveFallbackDelay;
+        mScoreboard            = scoreboard;
+        mExecutor              = (executor != null) ? executor : getSharedExecutor();
+    }
+
+
+    private static synchronized Executor getSharedExecutor()
+    {
+        if (sSharedExecutor == null)
+        {
+            // Racers are handed over to threads directly and never queued.
+            // A racer queued behind connect() calls hanging on an unreachable
+            // address would be delayed for as long as the connect timeout,
+            // which is infinite by default. When all the pooled threads are
+            // busy, the racer runs on a dedicated thread instead.
+            // Idle threads are terminated automatically.
+            sSharedExecutor = new ThreadPoolExecutor(
+                    0, MAX_SHARED_THREADS, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new DaemonThreadFactory(RACER_NAME),
+                    new RejectedExecutionHandler() {
+                        public void rejectedExecution(Runnable racer, ThreadPoolExecutor executor)
+                        {
+                            new DaemonThreadFactory(RACER_NAME).newThread(racer).start();
+                        }
+                    });
+        }
+
+        return sSharedExecutor;
+    }
+
+
+    /**
+     * Attach the hostname to the IP address. SSL implementations look up
+     * a cached session to resume by the hostname (if available) and the
+     * port, so sessions can be resumed even if the next connection goes
+     * to another IP address of the same host.
+     */
+    private InetAddress withHostname(InetAddress address)
+    {
+        try
+        {
+            if (address instanceof Inet6Address && ((Inet6Address)address).getScopeId() != 0)
+            {
+                // Keep the scope ID of the link-local address.
+                return Inet6Address.getByAddress(mAddress.getHostname(),
+                        address.getAddress(), ((Inet6Address)address).getScopeId());
+            }
+
+            return InetAddress.getByAddress(mAddress.getHostname(), address.getAddress());
+        }
+        catch (UnknownHostException e)
+        {
+            // Not expected to happen.
+            return address;
+        }
+    }
+
+
+    private static void close(Socket socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (IOException e)
+        {
+            // ignored
+        }
     }
 
 
@@ -336,10 +416,13 @@ public class SocketInitiator {
         // Create socket future.
         SocketFuture future = new SocketFuture();
 
+        // Let the historically fastest healthy address race first and
+        // the addresses which have failed recently race last.
+        addresses = mScoreboard.sort(addresses);
+
         // Create socket racer for each IP address.
         List<SocketRacer> racers = new ArrayList<SocketRacer>(addresses.length);
-        int delay = 0;
-        Signal startSignal = null;
+        List<Integer> delays = new ArrayList<Integer>(addresses.length);
         for (InetAddress address: addresses)
         {
             // Check if the mode requires us to skip this address.
@@ -349,24 +432,67 @@ public class SocketInitiator {
                 continue;
             }
 
-            // Increase the *happy eyeballs* delay (see RFC 6555, sec 5.5).
-            delay += mFallbackDelay;
-
-            // Create the *done* signal which acts as a *start* signal for the subsequent racer.
-            Signal doneSignal = new Signal(delay);
-
             // Create racer to establish the socket.
-            SocketAddress socketAddress = new InetSocketAddress(address, mAddress.getPort());
+            InetSocketAddress socketAddress = new InetSocketAddress(withHostname(address), mAddress.getPort());
             SocketRacer racer = new SocketRacer(
-                    future, mSocketFactory, socketAddress, mServerNames, mConnectTimeout,
-                    startSignal, doneSignal);
+                    future, mSocketFactory, socketAddress, mServerNames, mConnectTimeout);
             racers.add(racer);
 
-            // Replace *start* signal with this racer's *done* signal.
-            startSignal = doneSignal;
+            // The *happy eyeballs* delay before the subsequent racer starts (see RFC 6555, sec 5.5).
+            delays.add(mAdaptiveFallbackDelay
+                    ? mScoreboard.getFallbackDelay(address, mFallbackDelay) : mFallbackDelay);
         }
 
-        // Wait until one of the sockets has been established, or all failed with an exception.
-        return future.await(racers);
+        try
+        {
+            // Start the racers one by one.
+            start(future, racers, delays);
+
+            // Wait until one of the sockets has been established, or all failed with an exception.
+            return future.await();
+        }
+        catch (InterruptedException e)
+        {
+            // Stop the racers.
+            future.cancel();
+            throw e;
+        }
+    }
+
+
+    private void start(SocketFuture future, List<SocketRacer> racers, List<Integer> delays) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis();
+
+        for (int i = 0; i < racers.size(); ++i)
+        {
+            SocketRacer racer = racers.get(i);
+
+            // Let the racer connect.
+            future.start(racer);
+
+            try
+            {
+                mExecutor.execute(racer);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // The racer has failed without connecting.
+                future.setException(racer, e);
+                continue;
+            }
+
+            // Increase the *happy eyeballs* delay.
+            deadline += delays.get(i);
+
+            // Wait until the racer fails or the delay elapses.
+            future.await(racer, deadline);
+
+            // Check if a socket has already been established.
+            if (future.hasSocket())
+            {
+                return;
+            }
+        }
     }
 }
@@ -0,0 +1,509 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Pool of pre-connected sockets of a {@link WebSocketFactory}.
+ *
+ * <p>
+ * For each registered endpoint, the pool keeps a configured number of
+ * sockets on which the TCP connection, the handshake with the proxy
+ * server and the SSL handshake have been completed. A {@link
+ * SocketConnector} claims one of them instead of connecting, so the
+ * opening handshake can be sent immediately.
+ * </p>
+ *
+ * <p>
+ * A background daemon thread periodically closes sockets which have
+ * been closed by the peer or have reached their lifetime, and connects
+ * new ones to keep the configured number of sockets.
+ * </p>
+ */
+class SocketPool
+{
+    private static final long MAINTENANCE_INTERVAL = 1000L;
+    private static final int PROBE_TIMEOUT = 1;
+    private static final String MAINTAINER_NAME = "SocketPoolMaintainer";
+    private static final String CONNECTOR_NAME = "SocketPoolConnector";
+
+    private final WebSocketFactory mFactory;
+    private final Map<String, Endpoint> mEndpoints = new HashMap<String, Endpoint>();
+    private int mSize;
+    private long mLifetime = 20 * 1000L;
+    private ScheduledExecutorService mMaintainer;
+    private ExecutorService mConnector;
+
+
+    private static class Endpoint
+    {
+        final String host;
+        final int port;
+        final boolean secure;
+        final int timeout;
+
+        // Idle sockets. The last one is the newest.
+        final LinkedList<Entry> entries = new LinkedList<Entry>();
+
+        // The number of connection attempts in progress.
+        int connecting;
+
+
+        Endpoint(String host, int port, boolean secure, int timeout)
+        {
+            this.host    = host;
+            this.port    = port;
+            this.secure  = secure;
+            this.timeout = timeout;
+        }
+    }
+
+
+    private static class Entry
+    {
+        final Socket socket;
+        final long creationTime;
+
+
+        Entry(Socket socket, long creationTime)
+        {
+            this.socket       = socket;
+            this.creationTime = creationTime;
+        }
+    }
+
+
+    SocketPool(WebSocketFactory factory)
+    {
+        mFactory = factory;
+    }
+
+
+    static String key(String host, int port, boolean secure)
+    {
+        return (secure ? "wss://" : "ws://") + host + ":" + port;
+    }
+
+
+    synchronized int getSize()
+    {
+        return mSize;
+    }
+
+
+    /**
+     * Set the number of sockets kept for each endpoint. 0 closes all
+     * the pooled sockets and stops the background threads.
+     */
+    void setSize(int size)
+    {
+        synchronized (this)
+        {
+            mSize = size;
+
+            if (size != 0)
+            {
+                // Connect or close sockets as necessary.
+                for (Endpoint endpoint : mEndpoints.values())
+                {
+                    trim(endpoint);
+                    fill(endpoint);
+                }
+
+                return;
+            }
+        }
+
+        close();
+    }
+
+
+    synchronized long getLifetime()
+    {
+        return mLifetime;
+    }
+
+
+    synchronized void setLifetime(long lifetime)
+    {
+        mLifetime = lifetime;
+    }
+
+
+    /**
+     * Start keeping sockets for the endpoint if the pool is enabled.
+     * The port must have been determined (not -1).
+     */
+    synchronized void register(String host, int port, boolean secure, int timeout)
+    {
+        if (mSize == 0)
+        {
+            return;
+        }
+
+        String key = key(host, port, secure);
+
+        if (mEndpoints.containsKey(key))
+        {
+            return;
+        }
+
+        mEndpoints.put(key, new Endpoint(host, port, secure, timeout));
+
+        fill(mEndpoints.get(key));
+        scheduleMaintenance();
+    }
+
+
+    /**
+     * Take a pre-connected socket for the endpoint. {@code null} is
+     * returned if no socket is available.
+     */
+    Socket claim(String key)
+    {
+        Socket socket = null;
+
+        synchronized (this)
+        {
+            Endpoint endpoint = mEndpoints.get(key);
+
+            if (endpoint == null)
+            {
+                return null;
+            }
+
+            long now = System.currentTimeMillis();
+
+            while (socket == null && endpoint.entries.size() != 0)
+            {
+                // The newest socket has the longest remaining lifetime.
+                Entry entry = endpoint.entries.removeLast();
+
+                if (entry.socket.isClosed() == false && now < entry.creationTime + mLifetime)
+                {
+                    socket = entry.socket;
+                }
+                else
+                {
+                    closeSilently(entry.socket);
+                }
+            }
+
+            // Replace the claimed socket.
+            fill(endpoint);
+        }
+
+        return socket;
+    }
+
+
+    /**
+     * Close all the pooled sockets, forget the registered endpoints and
+     * stop the background threads.
+     */
+    void close()
+    {
+        List<Entry> entries = new ArrayList<Entry>();
+
+        synchronized (this)
+        {
+            for (Endpoint endpoint : mEndpoints.values())
+            {
+                entries.addAll(endpoint.entries);
+            }
+
+            mEndpoints.clear();
+
+            if (mMaintainer != null)
+            {
+                mMaintainer.shutdownNow();
+                mMaintainer = null;
+            }
+
+            if (mConnector != null)
+            {
+                // Sockets being connected are closed when they are added.
+                mConnector.shutdown();
+                mConnector = null;
+            }
+        }
+
+        for (Entry entry : entries)
+        {
+            closeSilently(entry.socket);
+        }
+    }
+
+
+    private void scheduleMaintenance()
+    {
+        if (mMaintainer != null)
+        {
+            return;
+        }
+
+        mMaintainer = Executors.newSingleThreadScheduledExecutor(
+                new DaemonThreadFactory(MAINTAINER_NAME));
+
+        mMaintainer.scheduleWithFixedDelay(new Runnable() {
+            public void run()
+            {
+                try
+                {
+                    maintain();
+                }
+                catch (Throwable t)
+                {
+                    // Not to cancel the subsequent maintenance.
+                }
+            }
+        }, MAINTENANCE_INTERVAL, MAINTENANCE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+
+    private void maintain()
+    {
+        List<Endpoint> endpoints;
+
+        synchronized (this)
+        {
+            endpoints = new ArrayList<Endpoint>(mEndpoints.values());
+        }
+
+        for (Endpoint endpoint : endpoints)
+        {
+            validate(endpoint);
+
+            synchronized (this)
+            {
+                fill(endpoint);
+            }
+        }
+    }
+
+
+    /**
+     * Close the sockets of the endpoint which are no longer usable.
+     */
+    private void validate(Endpoint endpoint)
+    {
+        int count;
+
+        synchronized (this)
+        {
+            count = endpoint.entries.size();
+        }
+
+        // Check each socket once. The oldest one comes first.
+        for (int i = 0; i < count; ++i)
+        {
+            Entry entry;
+            long lifetime;
+
+            synchronized (this)
+            {
+                if (endpoint.entries.size() == 0)
+                {
+                    return;
+                }
+
+                // The socket cannot be claimed while it is checked.
+                entry    = endpoint.entries.removeFirst();
+                lifetime = mLifetime;
+            }
+
+            if (entry.creationTime + lifetime <= System.currentTimeMillis() || isAlive(entry.socket) == false)
+            {
+                closeSilently(entry.socket);
+                continue;
+            }
+
+            synchronized (this)
+            {
+                if (mEndpoints.get(key(endpoint.host, endpoint.port, endpoint.secure)) == endpoint)
+                {
+                    endpoint.entries.addLast(entry);
+                    continue;
+                }
+            }
+
+            // The pool has been closed.
+            closeSilently(entry.socket);
+        }
+    }
+
+
+    /**
+     * Check if the peer has not closed the socket. Because the client
+     * speaks first in the WebSocket opening handshake, any data received
+     * at this point makes the socket unusable, too.
+     */
+    private static boolean isAlive(Socket socket)
+    {
+        if (socket.isClosed() || socket.isInputShutdown())
+        {
+            return false;
+        }
+
+        try
+        {
+            int timeout = socket.getSoTimeout();
+
+            try
+            {
+                // Wait for data or EOF only for a moment.
+                socket.setSoTimeout(PROBE_TIMEOUT);
+
+                InputStream in = socket.getInputStream();
+
+                in.read();
+
+                // EOF or unexpected data.
+                return false;
+            }
+            catch (SocketTimeoutException e)
+            {
+                // Nothing has been received. The connection is alive.
+                return true;
+            }
+            finally
+            {
+                socket.setSoTimeout(timeout);
+            }
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+
+    /**
+     * Close the oldest sockets of the endpoint exceeding the pool size.
+     * Must be called while holding the lock of this object.
+     */
+    private void trim(Endpoint endpoint)
+    {
+        while (mSize < endpoint.entries.size())
+        {
+            closeSilently(endpoint.entries.removeFirst().socket);
+        }
+    }
+
+
+    /**
+     * Start connection attempts for the missing sockets of the endpoint.
+     * Must be called while holding the lock of this object.
+     */
+    private void fill(final Endpoint endpoint)
+    {
+        int missing = mSize - endpoint.entries.size() - endpoint.connecting;
+
+        for (int i = 0; i < missing; ++i)
+        {
+            endpoint.connecting += 1;
+
+            getConnector().execute(new Runnable() {
+                public void run()
+                {
+                    connect(endpoint);
+                }
+            });
+        }
+    }
+
+
+    private void connect(Endpoint endpoint)
+    {
+        Socket socket = null;
+
+        try
+        {
+            // Perform the TCP connection, the handshake with the proxy
+            // server and the SSL handshake in the same way as WebSocket.
+            // The tunnel must be established before the socket is pooled,
+            // so the CONNECT request is never pipelined here. Pooled sockets
+            // are blocking ones.
+            socket = mFactory.createRawSocket(
+                    endpoint.host, endpoint.port, endpoint.secure, endpoint.timeout, Transport.SOCKET)
+                    .setProxyPipelined(false).connect();
+        }
+        catch (Throwable t)
+        {
+            // Retried at the next maintenance.
+        }
+
+        synchronized (this)
+        {
+            endpoint.connecting -= 1;
+
+            if (socket == null)
+            {
+                return;
+            }
+
+            // If the endpoint is still registered and has room.
+            if (mEndpoints.get(key(endpoint.host, endpoint.port, endpoint.secure)) == endpoint &&
+                endpoint.entries.size() < mSize)
+            {
+                endpoint.entries.addLast(new Entry(socket, System.currentTimeMillis()));
+                return;
+            }
+        }
+
+        closeSilently(socket);
+    }
+
+
+    private ExecutorService getConnector()
+    {
+        if (mConnector == null)
+        {
+            // Idle threads are terminated automatically.
+            mConnector = Executors.newCachedThreadPool(new DaemonThreadFactory(CONNECTOR_NAME));
+        }
+
+        return mConnector;
+    }
+
+
+    private static void closeSilently(Socket socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (Throwable t)
+        {
+            // Ignored.
+        }
+    }
+}
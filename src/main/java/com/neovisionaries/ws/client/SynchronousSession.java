@@ -0,0 +1,646 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static com.neovisionaries.ws.client.WebSocketOpcode.BINARY;
+import static com.neovisionaries.ws.client.WebSocketOpcode.CLOSE;
+import static com.neovisionaries.ws.client.WebSocketOpcode.CONTINUATION;
+import static com.neovisionaries.ws.client.WebSocketOpcode.PING;
+import static com.neovisionaries.ws.client.WebSocketOpcode.PONG;
+import static com.neovisionaries.ws.client.WebSocketOpcode.TEXT;
+import static com.neovisionaries.ws.client.WebSocketState.CLOSED;
+import static com.neovisionaries.ws.client.WebSocketState.CLOSING;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import com.neovisionaries.ws.client.StateManager.CloseInitiator;
+
+
+/**
+ * Frame I/O on the caller's thread for the synchronous mode, in which
+ * neither the reading thread nor the writing thread is started.
+ *
+ * @see WebSocket#setSynchronous(boolean)
+ */
+class SynchronousSession
+{
+    /**
+     * The value returned by {@link #receive(ByteBuffer, int)} when no
+     * message arrived within the timeout.
+     */
+    static final int TIMEOUT = -1;
+
+    private static final int SKIP_BUFFER_SIZE = 1024;
+
+    private final WebSocket mWebSocket;
+    private final WebSocketInputStream mInput;
+    private final PerMessageCompressionExtension mPMCE;
+
+    // Never started. Used to write frames on the caller's thread.
+    private final WritingThread mWriter;
+
+    private final Object mReceiveLock = new Object();
+    private HashedWheelTimer.Timeout mCloseTask;
+    private boolean mFinished;
+
+
+    SynchronousSession(WebSocket websocket)
+    {
+        mWebSocket = websocket;
+        mInput     = websocket.getInput();
+        mPMCE      = websocket.getPerMessageCompressionExtension();
+        mWriter    = new WritingThread(websocket);
+    }
+
+
+    /**
+     * Write the frame on the caller's thread.
+     */
+    void send(WebSocketFrame frame)
+    {
+        try
+        {
+            mWriter.writeFrame(frame);
+        }
+        catch (WebSocketException e)
+        {
+            // The listeners have been notified of the error. Close the
+            // socket so that the next receive() reports the closure.
+            closeSocket();
+        }
+    }
+
+
+    void flush()
+    {
+        try
+        {
+            mWriter.flushFrames();
+        }
+        catch (WebSocketException e)
+        {
+            closeSocket();
+        }
+    }
+
+
+    /**
+     * Close the socket after the delay unless the server closes the
+     * connection before that.
+     */
+    void scheduleClose(long closeDelay)
+    {
+        synchronized (this)
+        {
+            if (mFinished || mCloseTask != null)
+            {
+                return;
+            }
+
+            final HashedWheelTimer timer = mWebSocket.getTimer();
+
+            mCloseTask = timer.schedule(new Runnable() {
+                public void run()
+                {
+                    // Not to block the thread of the timer.
+                    timer.offload(new Runnable() {
+                        public void run()
+                        {
+                            closeSocket();
+                        }
+                    });
+                }
+            }, closeDelay);
+        }
+    }
+
+
+    /**
+     * Receive the next data message into the buffer.
+     *
+     * @return
+     *         {@link WebSocketOpcode#TEXT TEXT} or {@link WebSocketOpcode#BINARY
+     *         BINARY} when a message was received, {@link WebSocketOpcode#CLOSE
+     *         CLOSE} when the connection has been closed, or {@link #TIMEOUT}.
+     */
+    int receive(ByteBuffer buffer, int timeout) throws WebSocketException
+    {
+        synchronized (mReceiveLock)
+        {
+            if (isFinished())
+            {
+                return CLOSE;
+            }
+
+            // 0 means no deadline.
+            long deadline = (timeout == 0) ? 0 : System.currentTimeMillis() + timeout;
+
+            try
+            {
+                return receiveMessage(buffer, deadline);
+            }
+            catch (IOException e)
+            {
+                return onIOException(e);
+            }
+            catch (NoMoreFrameException e)
+            {
+                return onNoMoreFrame(e);
+            }
+            catch (WebSocketException e)
+            {
+                if (e.getError() == WebSocketError.BUFFER_OVERFLOW)
+                {
+                    // The connection is still usable.
+                    throw e;
+                }
+
+                return onProtocolError(e);
+            }
+        }
+    }
+
+
+    private int receiveMessage(ByteBuffer buffer, long deadline) throws IOException, WebSocketException
+    {
+        // The opcode of the message being received, or -1 before the
+        // first frame of a message.
+        int opcode = -1;
+        boolean compressed = false;
+        boolean overflow = false;
+        int start = buffer.position();
+
+        while (true)
+        {
+            // The timeout applies only to the wait for a new message, so
+            // that a timeout never leaves a partially read message.
+            if (opcode < 0 && awaitFrame(deadline) == false)
+            {
+                return TIMEOUT;
+            }
+
+            WebSocketFrame frame = new WebSocketFrame();
+            long length = mInput.readFrameHeader(frame);
+
+            // The connection is alive. See WebSocket.setAdaptivePing().
+            mWebSocket.getPingSender().onFrameReceived();
+
+            verifyFrame(frame, length, 0 <= opcode);
+
+            if (frame.isControlFrame())
+            {
+                frame.setPayload(readPayload((int)length));
+
+                if (handleControlFrame(frame) == false)
+                {
+                    // The closing handshake has finished.
+                    return CLOSE;
+                }
+
+                continue;
+            }
+
+            if (isKnownDataFrame(frame) == false)
+            {
+                // An unknown opcode allowed by WebSocket.setExtended(true).
+                skip(length);
+                continue;
+            }
+
+            if (opcode < 0)
+            {
+                opcode     = frame.getOpcode();
+                compressed = (mPMCE != null && frame.getRsv1());
+            }
+
+            if (compressed)
+            {
+                // The inflater must see all the fragments even after an
+                // overflow to keep its context for the next messages.
+                byte[] data = mPMCE.decompressFragment(
+                        readPayload((int)length), frame.getFin(),
+                        mWebSocket.getMaxDecompressedMessageSize());
+
+                overflow = overflow || put(buffer, data) == false;
+            }
+            else if (overflow || buffer.remaining() < length)
+            {
+                overflow = true;
+                skip(length);
+            }
+            else
+            {
+                read(buffer, (int)length);
+            }
+
+            if (frame.getFin() == false)
+            {
+                // Continuation frames follow.
+                continue;
+            }
+
+            if (overflow)
+            {
+                // Discard the partially stored message.
+                buffer.position(start);
+
+                throw new WebSocketException(
+                    WebSocketError.BUFFER_OVERFLOW,
+                    "A received message does not fit in the given buffer.");
+            }
+
+            return opcode;
+        }
+    }
+
+
+    /**
+     * Wait until the first byte of the next frame arrives.
+     *
+     * @return
+     *         {@code false} if the deadline has passed.
+     */
+    private boolean awaitFrame(long deadline) throws IOException
+    {
+        int timeout = 0;
+
+        if (deadline != 0)
+        {
+            long remaining = deadline - System.currentTimeMillis();
+
+            if (remaining <= 0)
+            {
+                return false;
+            }
+
+            timeout = (int)Math.min(remaining, Integer.MAX_VALUE);
+        }
+
+        Socket socket = mWebSocket.getSocket();
+        int original = socket.getSoTimeout();
+
+        socket.setSoTimeout(timeout);
+
+        try
+        {
+            // Peek the first byte. Nothing is consumed even if the read
+            // times out.
+            mInput.mark(1);
+            mInput.read();
+            mInput.reset();
+
+            return true;
+        }
+        catch (SocketTimeoutException e)
+        {
+            return false;
+        }
+        finally
+        {
+            socket.setSoTimeout(original);
+        }
+    }
+
+
+    private void verifyFrame(WebSocketFrame frame, long length, boolean continuing) throws WebSocketException
+    {
+        boolean extended = mWebSocket.isExtended();
+
+        if (extended == false)
+        {
+            // RSV1 is the "Per-Message Compressed" bit of the first frame
+            // of a message when a per-message compression extension has
+            // been agreed (RFC 7692).
+            boolean rsv1Allowed = (mPMCE != null) && (frame.isTextFrame() || frame.isBinaryFrame());
+
+            if ((frame.getRsv1() && rsv1Allowed == false) || frame.getRsv2() || frame.getRsv3())
+            {
+                throw new WebSocketException(
+                    WebSocketError.UNEXPECTED_RESERVED_BIT, "A reserved bit of a frame is set unexpectedly.");
+            }
+
+            if (frame.isControlFrame() == false && isKnownDataFrame(frame) == false)
+            {
+                throw new WebSocketException(
+                    WebSocketError.UNKNOWN_OPCODE,
+                    "A frame has an unknown opcode: 0x" + Integer.toHexString(frame.getOpcode()));
+            }
+        }
+
+        if (frame.getMask())
+        {
+            throw new WebSocketException(
+                WebSocketError.FRAME_MASKED,
+                "A frame from the server is masked.");
+        }
+
+        if (frame.isControlFrame())
+        {
+            if (frame.getFin() == false)
+            {
+                throw new WebSocketException(
+                    WebSocketError.FRAGMENTED_CONTROL_FRAME,
+                    "A control frame is fragmented.");
+            }
+
+            if (125 < length)
+            {
+                throw new WebSocketException(
+                    WebSocketError.TOO_LONG_CONTROL_FRAME_PAYLOAD,
+                    "The payload size of a control frame exceeds the maximum size (125 bytes): " + length);
+            }
+
+            return;
+        }
+
+        if (frame.isContinuationFrame() && continuing == false)
+        {
+            throw new WebSocketException(
+                WebSocketError.UNEXPECTED_CONTINUATION_FRAME,
+                "A continuation frame was detected although a continuation had not started.");
+        }
+
+        if ((frame.isTextFrame() || frame.isBinaryFrame()) && continuing)
+        {
+            throw new WebSocketException(
+                WebSocketError.CONTINUATION_NOT_CLOSED,
+                "A non-control frame was detected although the existing continuation had not been closed.");
+        }
+
+        if (Integer.MAX_VALUE < length)
+        {
+            throw new WebSocketException(
+                WebSocketError.TOO_LONG_PAYLOAD,
+                "The payload length of a frame exceeds the maximum array size in Java.");
+        }
+    }
+
+
+    private static boolean isKnownDataFrame(WebSocketFrame frame)
+    {
+        switch (frame.getOpcode())
+        {
+            case CONTINUATION:
+            case TEXT:
+            case BINARY:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+
+    /**
+     * @return
+     *         {@code false} if the connection has been closed.
+     */
+    private boolean handleControlFrame(WebSocketFrame frame)
+    {
+        ListenerManager listenerManager = mWebSocket.getListenerManager();
+
+        switch (frame.getOpcode())
+        {
+            case PING:
+                listenerManager.callOnPingFrame(frame);
+
+                // Reply on this thread with the same payload (RFC 6455, 5.5.3).
+                send(WebSocketFrame.createPongFrame(frame.getPayload()));
+                return true;
+
+            case PONG:
+                mWebSocket.getPingSender().onPong(frame.getPayload());
+                listenerManager.callOnPongFrame(frame);
+                return true;
+
+            case CLOSE:
+                handleCloseFrame(frame);
+                return false;
+
+            default:
+                // An unknown control frame allowed by WebSocket.setExtended(true).
+                return true;
+        }
+    }
+
+
+    private void handleCloseFrame(WebSocketFrame frame)
+    {
+        StateManager manager = mWebSocket.getStateManager();
+
+        boolean stateChanged = false;
+
+        synchronized (manager)
+        {
+            WebSocketState state = manager.getState();
+
+            if (state != CLOSING && state != CLOSED)
+            {
+                manager.changeToClosing(CloseInitiator.SERVER);
+
+                // Echo the close frame (RFC 6455, 5.5.1).
+                send(frame);
+
+                stateChanged = true;
+            }
+        }
+
+        if (stateChanged)
+        {
+            mWebSocket.getListenerManager().callOnStateChanged(CLOSING);
+        }
+
+        mWebSocket.getListenerManager().callOnCloseFrame(frame);
+
+        finish(frame);
+    }
+
+
+    private int onIOException(IOException e) throws WebSocketException
+    {
+        if (isClosing())
+        {
+            // The socket has been closed after the close frame.
+            finish(null);
+            return CLOSE;
+        }
+
+        WebSocketException cause = new WebSocketException(
+            WebSocketError.IO_ERROR_IN_READING,
+            "An I/O error occurred while a frame was being read from the web socket: " + e.getMessage(), e);
+
+        mWebSocket.getListenerManager().callOnError(cause);
+        finish(null);
+
+        throw cause;
+    }
+
+
+    private int onNoMoreFrame(WebSocketException e) throws WebSocketException
+    {
+        // The server closed the connection without a close frame.
+        if (isClosing() || mWebSocket.isMissingCloseFrameAllowed())
+        {
+            finish(null);
+            return CLOSE;
+        }
+
+        mWebSocket.getListenerManager().callOnError(e);
+        finish(null);
+
+        throw e;
+    }
+
+
+    private int onProtocolError(WebSocketException e) throws WebSocketException
+    {
+        mWebSocket.getListenerManager().callOnError(e);
+
+        int closeCode;
+
+        switch (e.getError())
+        {
+            case TOO_LONG_PAYLOAD:
+            case TOO_LONG_DECOMPRESSED_MESSAGE:
+                closeCode = WebSocketCloseCode.OVERSIZE;
+                break;
+
+            default:
+                closeCode = WebSocketCloseCode.UNCONFORMED;
+                break;
+        }
+
+        // Fail the connection without waiting for the server's close frame.
+        send(WebSocketFrame.createCloseFrame(closeCode, e.getMessage()));
+        finish(null);
+
+        throw e;
+    }
+
+
+    private boolean isClosing()
+    {
+        StateManager manager = mWebSocket.getStateManager();
+
+        synchronized (manager)
+        {
+            return manager.getState() != WebSocketState.OPEN;
+        }
+    }
+
+
+    private synchronized boolean isFinished()
+    {
+        return mFinished;
+    }
+
+
+    private void finish(WebSocketFrame serverCloseFrame)
+    {
+        synchronized (this)
+        {
+            if (mFinished)
+            {
+                return;
+            }
+
+            mFinished = true;
+
+            if (mCloseTask != null)
+            {
+                mCloseTask.cancel();
+                mCloseTask = null;
+            }
+        }
+
+        mWebSocket.onSynchronousSessionFinished(serverCloseFrame, mWriter.getCloseFrame());
+    }
+
+
+    private void closeSocket()
+    {
+        mWebSocket.getSocketConnector().closeSilently();
+    }
+
+
+    private byte[] readPayload(int length) throws IOException, WebSocketException
+    {
+        if (length == 0)
+        {
+            return null;
+        }
+
+        byte[] payload = new byte[length];
+        mInput.readBytes(payload, length);
+
+        return payload;
+    }
+
+
+    private void read(ByteBuffer buffer, int length) throws IOException, WebSocketException
+    {
+        if (buffer.hasArray())
+        {
+            // Read the payload straight into the buffer.
+            mInput.readBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            return;
+        }
+
+        byte[] chunk = new byte[Math.min(length, SKIP_BUFFER_SIZE)];
+
+        while (0 < length)
+        {
+            int size = Math.min(length, chunk.length);
+            mInput.readBytes(chunk, size);
+            buffer.put(chunk, 0, size);
+            length -= size;
+        }
+    }
+
+
+    private static boolean put(ByteBuffer buffer, byte[] data)
+    {
+        if (data == null)
+        {
+            return true;
+        }
+
+        if (buffer.remaining() < data.length)
+        {
+            return false;
+        }
+
+        buffer.put(data);
+
+        return true;
+    }
+
+
+    private void skip(long length) throws IOException, WebSocketException
+    {
+        byte[] chunk = new byte[(int)Math.min(length, SKIP_BUFFER_SIZE)];
+
+        while (0 < length)
+        {
+            int size = (int)Math.min(length, chunk.length);
+            mInput.readBytes(chunk, size);
+            length -= size;
+        }
+    }
+}
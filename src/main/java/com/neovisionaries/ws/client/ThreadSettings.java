@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Thread factories and executors which run the internal threads of
+ * each {@link ThreadType}. For each type, either a thread factory or
+ * an executor is held.
+ */
+class ThreadSettings
+{
+    private final Map<ThreadType, ThreadFactory> mThreadFactories =
+        new EnumMap<ThreadType, ThreadFactory>(ThreadType.class);
+    private final Map<ThreadType, Executor> mExecutors =
+        new EnumMap<ThreadType, Executor>(ThreadType.class);
+
+
+    public ThreadSettings()
+    {
+    }
+
+
+    public ThreadSettings(ThreadSettings settings)
+    {
+        synchronized (settings)
+        {
+            mThreadFactories.putAll(settings.mThreadFactories);
+            mExecutors.putAll(settings.mExecutors);
+        }
+    }
+
+
+    public synchronized ThreadFactory getThreadFactory(ThreadType type)
+    {
+        return mThreadFactories.get(type);
+    }
+
+
+    public synchronized void setThreadFactory(ThreadType type, ThreadFactory factory)
+    {
+        checkType(type);
+
+        mExecutors.remove(type);
+
+        if (factory == null)
+        {
+            mThreadFactories.remove(type);
+        }
+        else
+        {
+            mThreadFactories.put(type, factory);
+        }
+    }
+
+
+    public synchronized Executor getExecutor(ThreadType type)
+    {
+        return mExecutors.get(type);
+    }
+
+
+    public synchronized void setExecutor(ThreadType type, Executor executor)
+    {
+        checkType(type);
+
+        mThreadFactories.remove(type);
+
+        if (executor == null)
+        {
+            mExecutors.remove(type);
+        }
+        else
+        {
+            mExecutors.put(type, executor);
+        }
+    }
+
+
+    private static void checkType(ThreadType type)
+    {
+        if (type == null)
+        {
+            throw new IllegalArgumentException("type is null.");
+        }
+    }
+}
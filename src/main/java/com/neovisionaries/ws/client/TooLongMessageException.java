@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+class TooLongMessageException extends WebSocketException
+{
+    private static final long serialVersionUID = 1L;
+
+
+    private final int mMaxLength;
+
+
+    public TooLongMessageException(int maxLength)
+    {
+        super(WebSocketError.TOO_LONG_DECOMPRESSED_MESSAGE,
+              "The length of the decompressed message exceeds the maximum length: " + maxLength);
+
+        mMaxLength = maxLength;
+    }
+
+
+    public int getMaxLength()
+    {
+        return mMaxLength;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+/**
+ * Transports which carry WebSocket connections.
+ *
+ * @see WebSocketFactory#setTransport(Transport)
+ *
+ * @since 2.10
+ */
+public enum Transport
+{
+    /**
+     * Blocking {@link java.net.Socket}s. Each open connection occupies a
+     * reading thread and a writing thread. This is the default.
+     */
+    SOCKET,
+
+
+    /**
+     * Non-blocking {@link java.nio.channels.SocketChannel}s watched by a
+     * small number of selector threads shared in the JVM.
+     *
+     * <p>
+     * TLS is performed by {@link javax.net.ssl.SSLEngine}. While no frame
+     * is arriving and no frame is queued, the reading task and the writing
+     * task of a connection hold no thread. They are resumed on a shared
+     * pool of worker threads (or on the executors set by {@link
+     * WebSocketFactory#setExecutor(ThreadType, java.util.concurrent.Executor)
+     * setExecutor}) when data arrives or a frame is queued. A task holds a
+     * thread while a frame is being received or sent, and while listeners
+     * are called.
+     * </p>
+     *
+     * <p>
+     * Frames are not decoded incrementally, so the number of connections
+     * that this transport can serve at a time is limited by the number of
+     * worker threads, not by the number of open connections. The limits
+     * are as follows.
+     * </p>
+     *
+     * <ul>
+     *   <li>The shared pool has at most 16 worker threads per available
+     *       processor. Resumed tasks wait in the queue of the pool while
+     *       all the workers are busy.
+     *   <li>When the timeout of the socket ({@link
+     *       java.net.Socket#setSoTimeout(int)}) is 0, which is the default,
+     *       a task waits at most 30 seconds for the rest of a frame to
+     *       arrive or for the peer to accept more data. The connection
+     *       fails with a {@link java.net.SocketTimeoutException} after
+     *       that. Otherwise, the timeout of the socket is used.
+     *   <li>A listener which blocks keeps its worker thread. Blocked
+     *       listeners can use up all the workers, including a listener
+     *       waiting for the writing task because of {@link
+     *       WebSocket#setFrameQueueSize(int) setFrameQueueSize}. Listeners
+     *       must not block, or executors have to be set by {@link
+     *       WebSocketFactory#setExecutor(ThreadType, java.util.concurrent.Executor)
+     *       setExecutor}.
+     * </ul>
+     *
+     * <p>
+     * {@link WebSocketListener#onThreadStarted(WebSocket, ThreadType, Thread)
+     * onThreadStarted} is called when a task starts for the first time, and
+     * {@link WebSocketListener#onThreadStopping(WebSocket, ThreadType, Thread)
+     * onThreadStopping} when it finishes. Because a resumed task may run in
+     * a different thread, listener callbacks of a connection are not always
+     * called in the same thread.
+     * </p>
+     *
+     * <p>
+     * The following settings are not supported by this transport. A
+     * connection which requires any of them falls back to {@link #SOCKET}.
+     * </p>
+     *
+     * <ul>
+     *   <li>A proxy server connected by TLS ({@link ProxySettings#setSecure(boolean)}).
+     *   <li>A custom {@link javax.net.SocketFactory} or {@link
+     *       javax.net.ssl.SSLSocketFactory} without an {@link
+     *       javax.net.ssl.SSLContext}.
+     *   <li>Pre-connected sockets ({@link WebSocketFactory#setPreConnectedSocketCount(int)}).
+     * </ul>
+     */
+    SELECTOR,
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Access to virtual threads of Java 21 and later.
+ *
+ * <p>
+ * A virtual thread is much cheaper than a platform thread, so a JVM can
+ * hold far more mostly idle connections when the reading threads and
+ * the writing threads are virtual threads. The API of virtual threads is
+ * looked up by reflection, so this library still runs on older Java
+ * runtimes, where {@link #isAvailable()} returns {@code false}.
+ * </p>
+ *
+ * <pre style="border-left: solid 5px lightgray;"> WebSocketFactory factory = new WebSocketFactory();
+ *
+ * if (VirtualThreads.{@link #isAvailable()})
+ * {
+ *     factory.{@link WebSocketFactory#useVirtualThreads() useVirtualThreads}();
+ * }</pre>
+ *
+ * @see WebSocketFactory#setThreadFactory(ThreadType, ThreadFactory)
+ *
+ * @since 2.10
+ */
+public class VirtualThreads
+{
+    // Thread.ofVirtual(), Thread.Builder.name(String) and
+    // Thread.Builder.factory(). null if virtual threads are not available.
+    private static final Method sOfVirtual;
+    private static final Method sName;
+    private static final Method sFactory;
+
+
+    static
+    {
+        Method ofVirtual = null;
+        Method name      = null;
+        Method factory   = null;
+
+        try
+        {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+
+            name      = builderClass.getMethod("name", String.class);
+            factory   = builderClass.getMethod("factory");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+        }
+        catch (Throwable t)
+        {
+            // Virtual threads are not available on this runtime.
+            ofVirtual = null;
+        }
+
+        sOfVirtual = ofVirtual;
+        sName      = name;
+        sFactory   = factory;
+    }
+
+
+    private VirtualThreads()
+    {
+    }
+
+
+    /**
+     * Check if virtual threads are available on this runtime.
+     *
+     * @return
+     *         {@code true} if virtual threads are available.
+     */
+    public static boolean isAvailable()
+    {
+        return sOfVirtual != null;
+    }
+
+
+    /**
+     * Create a thread factory which creates virtual threads.
+     *
+     * @param name
+     *         The name of the threads. {@code null} to leave threads
+     *         unnamed.
+     *
+     * @return
+     *         A thread factory which creates virtual threads.
+     *
+     * @throws UnsupportedOperationException
+     *         Virtual threads are not available on this runtime.
+     */
+    public static ThreadFactory newThreadFactory(String name)
+    {
+        if (sOfVirtual == null)
+        {
+            throw new UnsupportedOperationException("Virtual threads are not available on this runtime.");
+        }
+
+        try
+        {
+            // Thread.ofVirtual().name(name).factory()
+            Object builder = sOfVirtual.invoke(null);
+
+            if (name != null)
+            {
+                builder = sName.invoke(builder, name);
+            }
+
+            return (ThreadFactory)sFactory.invoke(builder);
+        }
+        catch (Exception e)
+        {
+            throw new UnsupportedOperationException(
+                "Failed to create a factory of virtual threads: " + e.getMessage(), e);
+        }
+    }
+}
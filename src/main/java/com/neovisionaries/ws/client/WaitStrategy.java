@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+/**
+ * Strategies of the writing thread to wait for frames to be queued.
+ *
+ * <p>
+ * The strategies other than {@link #BLOCKING} trade CPU time for the
+ * latency between queueing a frame and writing it to the socket. They
+ * are not applied to connections of {@link Transport#SELECTOR}, whose
+ * writing tasks release their threads while no frame is queued.
+ * </p>
+ *
+ * @see WebSocket#setWaitStrategy(WaitStrategy)
+ *
+ * @since 2.10
+ */
+public enum WaitStrategy
+{
+    /**
+     * Block until a frame is queued. This costs no CPU time while the
+     * connection is idle, but waking up the writing thread takes a
+     * context switch. This is the default.
+     */
+    BLOCKING,
+
+
+    /**
+     * Keep yielding the processor until a frame is queued. The writing
+     * thread stays runnable and reacts quickly, but it keeps a processor
+     * busy while no other thread is runnable.
+     */
+    YIELDING,
+
+
+    /**
+     * Spin for a short while and then block as {@link #BLOCKING} does.
+     * Frames queued soon after the previous ones are picked up without
+     * a context switch, and an idle connection costs no CPU time.
+     */
+    BUSY_SPIN_THEN_PARK,
+
+
+    /**
+     * Sleep for a very short time repeatedly until a frame is queued.
+     * The latency is bounded by the sleep time and the CPU usage is
+     * lower than {@link #YIELDING}.
+     */
+    TIMED_PARK,
+}
@@ -26,12 +26,15 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import com.neovisionaries.ws.client.StateManager.CloseInitiator;
 
 
@@ -436,6 +439,10 @@ import com.neovisionaries.ws.client.StateManager.CloseInitiator;
  *       <td>Set the <a href="#maximum_payload_size">maximum payload size</a>.</td>
  *     </tr>
  *     <tr>
+ *       <td>{@link #setMaxDecompressedMessageSize(int) setMaxDecompressedMessageSize}</td>
+ *       <td>Set the maximum size of decompressed messages.</td>
+ *     </tr>
+ *     <tr>
  *       <td>{@link #setMissingCloseFrameAllowed(boolean) setMissingCloseFrameAllowed}</td>
  *       <td>Set whether to allow the server to close the connection without sending a close frame.</td>
  *     </tr>
@@ -723,17 +730,16 @@ import com.neovisionaries.ws.client.StateManager.CloseInitiator;
  * </p>
  *
  * <p>
- * You can change the names of the {@link java.util.Timer Timer}s that send ping/pong
- * frames periodically by using {@link #setPingSenderName(String)} and
- * {@link #setPongSenderName(String)} methods.
+ * Ping/pong frames are sent by a {@link HashedWheelTimer} shared by
+ * connections, so periodical frames do not cost a thread per connection.
+ * A separate timer can be given by {@link WebSocketFactory#setTimer(HashedWheelTimer)
+ * WebSocketFactory.setTimer}{@code (HashedWheelTimer)} method.
  * </p>
  *
  * <blockquote>
- * <pre style="border-left: solid 5px lightgray;"> <span style="color: green;">// Change the Timers' names.</span>
- * ws.{@link #setPingSenderName(String)
- * setPingSenderName}(<span style="color: darkred;">"PING_SENDER"</span>);
- * ws.{@link #setPongSenderName(String)
- * setPongSenderName}(<span style="color: darkred;">"PONG_SENDER"</span>);
+ * <pre style="border-left: solid 5px lightgray;"> <span style="color: green;">// Use a dedicated timer.</span>
+ * factory.{@link WebSocketFactory#setTimer(HashedWheelTimer)
+ * setTimer}(<span style="color: blue;">new</span> {@link HashedWheelTimer}(<span style="color: darkred;">"MyTimer"</span>));
  * </blockquote>
  *
  * <h3>Auto Flush</h3>
@@ -831,6 +837,28 @@ import com.neovisionaries.ws.client.StateManager.CloseInitiator;
  * ws.{@link #addExtension(String) addExtension}({@link WebSocketExtension#PERMESSAGE_DEFLATE});</pre>
  * </blockquote>
  *
+ * <p>
+ * Fragmented messages (e.g. sent by {@link #sendText(String, boolean)
+ * sendText(payload, false)} and {@link #sendContinuation(String, boolean)
+ * sendContinuation}) are compressed, too. The first frame has the RSV1 bit
+ * set and the payloads of the continuation frames are compressed incrementally
+ * by the same compression context.
+ * </p>
+ *
+ * <p>
+ * Other per-message compression extensions can be plugged in by registering
+ * a subclass of {@link PerMessageCompressionExtension} for its extension name.
+ * </p>
+ *
+ * <blockquote>
+ * <pre style="border-left: solid 5px lightgray;"><span style="color: green;"> // Register a custom per-message compression extension (JVM-wide).</span>
+ * WebSocketExtension.{@link WebSocketExtension#registerPerMessageCompressionExtension(String, PerMessageCompressionExtensionFactory)
+ * registerPerMessageCompressionExtension}(<span style="color: darkred;">"x-my-codec"</span>, factory);
+ *
+ * <span style="color: green;"> // Offer the extension to the server.</span>
+ * ws.{@link #addExtension(String) addExtension}(<span style="color: darkred;">"x-my-codec"</span>);</pre>
+ * </blockquote>
+ *
  * <h3>Missing Close Frame</h3>
  *
  * <p>
@@ -1108,6 +1136,8 @@ public class WebSocket
     private final StateManager mStateManager;
     private HandshakeBuilder mHandshakeBuilder;
     private final ListenerManager mListenerManager;
+    private ThreadSettings mThreadSettings;
+    private HashedWheelTimer mTimer;
     private final PingSender mPingSender;
     private final PongSender mPongSender;
     private final Object mThreadsLock = new Object();
@@ -1122,8 +1152,14 @@ public class WebSocket
     private boolean mAutoFlush = true;
     private boolean mMissingCloseFrameAllowed = true;
     private boolean mDirectTextMessage;
+    private boolean mDirectWrite;
+    private WaitStrategy mWaitStrategy = WaitStrategy.BLOCKING;
+    private boolean mSynchronous;
+    private volatile SynchronousSession mSynchronousSession;
+    private boolean mReadingPaused;
     private int mFrameQueueSize;
     private int mMaxPayloadSize;
+    private int mMaxDecompressedMessageSize;
     private boolean mOnConnectedCalled;
     private Object mOnConnectedCalledLock = new Object();
     private boolean mReadingThreadStarted;
@@ -1143,6 +1179,8 @@ public class WebSocket
         mStateManager      = new StateManager();
         mHandshakeBuilder  = new HandshakeBuilder(secure, userInfo, host, path);
         mListenerManager   = new ListenerManager(this);
+        mThreadSettings    = new ThreadSettings(factory.getThreadSettings());
+        mTimer             = factory.getTimer();
         mPingSender        = new PingSender(this, new CounterPayloadGenerator());
         mPongSender        = new PongSender(this, new CounterPayloadGenerator());
     }
@@ -1218,12 +1256,21 @@ public class WebSocket
         instance.setPingInterval(getPingInterval());
         instance.setPongInterval(getPongInterval());
         instance.setPingPayloadGenerator(getPingPayloadGenerator());
+        instance.setAdaptivePing(isAdaptivePing());
+        instance.setMaxMissedPongs(getMaxMissedPongs());
         instance.setPongPayloadGenerator(getPongPayloadGenerator());
         instance.mExtended = mExtended;
         instance.mAutoFlush = mAutoFlush;
         instance.mMissingCloseFrameAllowed = mMissingCloseFrameAllowed;
         instance.mDirectTextMessage = mDirectTextMessage;
+        instance.mDirectWrite = mDirectWrite;
+        instance.mWaitStrategy = mWaitStrategy;
+        instance.mSynchronous = mSynchronous;
         instance.mFrameQueueSize = mFrameQueueSize;
+        instance.mMaxPayloadSize = mMaxPayloadSize;
+        instance.mMaxDecompressedMessageSize = mMaxDecompressedMessageSize;
+        instance.mThreadSettings = new ThreadSettings(mThreadSettings);
+        instance.mTimer = mTimer;
 
         // Copy listeners.
         List<WebSocketListener> listeners = mListenerManager.getListeners();
@@ -1753,6 +1800,333 @@ public class WebSocket
     }
 
 
+    /**
+     * Check if frames may be written on the thread which calls
+     * {@link #sendFrame(WebSocketFrame) sendFrame} method. See {@link
+     * #setDirectWrite(boolean)} for details.
+     *
+     * @return
+     *         {@code true} if frames may be written on the caller's thread.
+     *         The default value is {@code false}.
+     *
+     * @since 2.10
+     */
+    public boolean isDirectWrite()
+    {
+        return mDirectWrite;
+    }
+
+
+    /**
+     * Set whether frames may be written on the thread which calls
+     * {@link #sendFrame(WebSocketFrame) sendFrame} method.
+     *
+     * <p>
+     * By default, frames are queued and the writing thread writes them
+     * to the socket, so a frame sent on an idle connection waits for the
+     * writing thread to wake up. If {@code true} is set to this property,
+     * a frame is written on the caller's thread when no frame is queued
+     * and the writing thread is not writing. Otherwise, the frame is
+     * queued as usual, so the order of frames and the priority of ping
+     * and pong frames are kept. Close frames are always queued.
+     * </p>
+     *
+     * <p>
+     * When a frame is written directly, the caller's thread blocks until
+     * the frame has been written to the socket, and listener methods such
+     * as {@link WebSocketListener#onFrameSent(WebSocket, WebSocketFrame)
+     * onFrameSent} are called on the caller's thread. Ping and pong frames
+     * sent periodically are always queued.
+     * </p>
+     *
+     * @param direct
+     *         {@code true} to write frames on the caller's thread when
+     *         possible.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.10
+     */
+    public WebSocket setDirectWrite(boolean direct)
+    {
+        mDirectWrite = direct;
+
+        return this;
+    }
+
+
+    /**
+     * Get the strategy of the writing thread to wait for frames to be
+     * queued.
+     *
+     * @return
+     *         The wait strategy. The default value is {@link
+     *         WaitStrategy#BLOCKING}.
+     *
+     * @since 2.10
+     */
+    public WaitStrategy getWaitStrategy()
+    {
+        return mWaitStrategy;
+    }
+
+
+    /**
+     * Set the strategy of the writing thread to wait for frames to be
+     * queued.
+     *
+     * <p>
+     * The default strategy, {@link WaitStrategy#BLOCKING}, costs no CPU
+     * time while the connection is idle. For a connection which needs the
+     * lowest latency between {@link #sendFrame(WebSocketFrame) sendFrame}
+     * and the socket, the other strategies keep the writing thread ready
+     * at the cost of CPU time. A change takes effect the next time the
+     * writing thread starts to wait.
+     * </p>
+     *
+     * @param strategy
+     *         The wait strategy. {@code null} to use the default.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.10
+     */
+    public WebSocket setWaitStrategy(WaitStrategy strategy)
+    {
+        mWaitStrategy = (strategy == null) ? WaitStrategy.BLOCKING : strategy;
+
+        return this;
+    }
+
+
+    /**
+     * Check if the synchronous mode is enabled. See {@link
+     * #setSynchronous(boolean)} for details.
+     *
+     * @return
+     *         {@code true} if the synchronous mode is enabled.
+     *         The default value is {@code false}.
+     *
+     * @since 2.10
+     */
+    public boolean isSynchronous()
+    {
+        return mSynchronous;
+    }
+
+
+    /**
+     * Enable or disable the synchronous mode. This must be set before
+     * {@link #connect()} is called.
+     *
+     * <p>
+     * In the synchronous mode, neither the reading thread nor the writing
+     * thread is started. The application reads messages by calling {@link
+     * #receive(ByteBuffer, int)}, which decodes frames from the socket on
+     * the caller's thread, and {@link #sendFrame(WebSocketFrame) sendFrame}
+     * and its variants write frames on the caller's thread before they
+     * return. This suits single-threaded event loops and avoids hand-offs
+     * between threads.
+     * </p>
+     *
+     * <p>
+     * Control frames are handled in {@link #receive(ByteBuffer, int)
+     * receive()}: a pong frame is sent back for a ping frame, and a close
+     * frame from the server finishes the closing handshake. After
+     * {@link #disconnect()}, call {@code receive()} until it returns
+     * {@link WebSocketOpcode#CLOSE CLOSE}; the socket is closed anyway
+     * after the close delay.
+     * </p>
+     *
+     * <p>
+     * Note the following differences from the default mode.
+     * </p>
+     *
+     * <ul>
+     *   <li>Received messages are not passed to listener methods such as
+     *       {@link WebSocketListener#onTextMessage(WebSocket, String)
+     *       onTextMessage}. Listener methods for the connection state,
+     *       control frames, sent frames and errors are called on the
+     *       threads which call {@code connect()}, {@code receive()} and
+     *       {@code sendFrame()}.
+     *   <li>Ping/pong frames sent periodically ({@link #setPingInterval(long)}
+     *       and {@link #setPongInterval(long)}) are written on a thread of
+     *       the pool of the timer ({@link WebSocketFactory#setTimer(HashedWheelTimer)}),
+     *       not on the thread of the timer, which is shared by connections.
+     *   <li>The payloads of text messages are not validated as UTF-8.
+     * </ul>
+     *
+     * @param synchronous
+     *         {@code true} to enable the synchronous mode.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.10
+     */
+    public WebSocket setSynchronous(boolean synchronous)
+    {
+        mSynchronous = synchronous;
+
+        return this;
+    }
+
+
+    /**
+     * Receive the next message in the synchronous mode.
+     *
+     * <p>
+     * The payload of the message is put into {@code buffer} from its
+     * current position, and the position is advanced by the length of
+     * the payload. Fragmented messages are reassembled, and compressed
+     * messages are decompressed. Control frames which arrive before the
+     * message are handled as described in {@link #setSynchronous(boolean)}.
+     * </p>
+     *
+     * <p>
+     * The timeout applies to the wait for the first frame of a message.
+     * Once a message has started to arrive, this method reads the whole
+     * message.
+     * </p>
+     *
+     * @param buffer
+     *         A buffer to put the payload of the message into.
+     *
+     * @param timeout
+     *         The timeout in milliseconds. 0 means no timeout.
+     *
+     * @return
+     *         {@link WebSocketOpcode#TEXT TEXT} or {@link WebSocketOpcode#BINARY
+     *         BINARY} if a message has been received. {@link WebSocketOpcode#CLOSE
+     *         CLOSE} if the connection has been closed. -1 if no message has
+     *         arrived within the timeout.
+     *
+     * @throws WebSocketException
+     *         The message does not fit in the remaining space of the buffer
+     *         ({@link WebSocketError#BUFFER_OVERFLOW BUFFER_OVERFLOW}). In
+     *         this case, the message is discarded and the connection is
+     *         still open. Otherwise, an I/O error or a protocol error has
+     *         occurred and the connection has been closed.
+     *
+     * @throws IllegalArgumentException
+     *         {@code buffer} is {@code null} or {@code timeout} is negative.
+     *
+     * @throws IllegalStateException
+     *         The synchronous mode is not enabled or the connection has
+     *         not been established.
+     *
+     * @since 2.10
+     */
+    public int receive(ByteBuffer buffer, int timeout) throws WebSocketException
+    {
+        if (buffer == null)
+        {
+            throw new IllegalArgumentException("buffer must not be null.");
+        }
+
+        if (timeout < 0)
+        {
+            throw new IllegalArgumentException("timeout must not be negative.");
+        }
+
+        SynchronousSession session = mSynchronousSession;
+
+        if (session == null)
+        {
+            throw new IllegalStateException("The synchronous mode has not started.");
+        }
+
+        return session.receive(buffer, timeout);
+    }
+
+
+    /**
+     * Check if reading messages has been paused by {@link #pauseReading()}.
+     *
+     * @return
+     *         {@code true} if reading is paused.
+     *
+     * @since 2.10
+     */
+    public boolean isReadingPaused()
+    {
+        synchronized (mThreadsLock)
+        {
+            return mReadingPaused;
+        }
+    }
+
+
+    /**
+     * Pause reading messages from the server.
+     *
+     * <p>
+     * While reading is paused, {@code onTextMessage}, {@code onBinaryMessage}
+     * and the other callback methods for data frames of the listeners are not
+     * called. The reading thread holds data frames which have already arrived,
+     * up to 64 KiB of payload, and then stops reading from the socket so that
+     * TCP flow control pushes back on the server. Until then, ping frames are
+     * still answered and pong frames are still reported, which keeps the
+     * connection from timing out for a while.
+     * </p>
+     *
+     * <p>
+     * Held messages are delivered in the order they arrived when {@link
+     * #resumeReading()} is called, before a close frame from the server is
+     * handled, or when the reading thread stops. This method can be called
+     * before the connection is established, and it does not affect the
+     * {@link #setSynchronous(boolean) synchronous mode}, in which messages
+     * are read only by {@link #receive(ByteBuffer, int)}.
+     * </p>
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @see InboundMessageQueue
+     *
+     * @since 2.10
+     */
+    public WebSocket pauseReading()
+    {
+        return setReadingPaused(true);
+    }
+
+
+    /**
+     * Resume reading messages paused by {@link #pauseReading()}.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.10
+     */
+    public WebSocket resumeReading()
+    {
+        return setReadingPaused(false);
+    }
+
+
+    private WebSocket setReadingPaused(boolean paused)
+    {
+        synchronized (mThreadsLock)
+        {
+            mReadingPaused = paused;
+
+            if (mReadingThread != null)
+            {
+                mReadingThread.setPaused(paused);
+            }
+        }
+
+        // Pong frames are not read while reading is paused.
+        mPingSender.setReadingPaused(paused);
+
+        return this;
+    }
+
+
     /**
      * Flush frames to the server. Flush is performed asynchronously.
      *
@@ -1773,6 +2147,15 @@ public class WebSocket
             }
         }
 
+        // In the synchronous mode, flush on this thread.
+        SynchronousSession session = mSynchronousSession;
+
+        if (session != null)
+        {
+            session.flush();
+            return this;
+        }
+
         // Get the reference to the instance of WritingThread.
         WritingThread wt = mWritingThread;
 
@@ -1897,6 +2280,159 @@ public class WebSocket
     }
 
 
+    /**
+     * Get the maximum size of decompressed messages. The default value
+     * is 0 which means that the maximum size is not set.
+     *
+     * @return
+     *         The maximum size of decompressed messages. 0 means that
+     *         the maximum size is not set.
+     *
+     * @since 2.10
+     */
+    public int getMaxDecompressedMessageSize()
+    {
+        return mMaxDecompressedMessageSize;
+    }
+
+
+    /**
+     * Set the maximum size of decompressed messages.
+     *
+     * <p>
+     * When a per-message compression extension such as permessage-deflate
+     * is enabled, compressed messages from the server are decompressed
+     * frame by frame as they arrive. If the size of the decompressed data
+     * exceeds the maximum size, the decompression is stopped at the point,
+     * {@link WebSocketListener#onMessageDecompressionError(WebSocket,
+     * WebSocketException, byte[]) onMessageDecompressionError} is called
+     * with {@link WebSocketError#TOO_LONG_DECOMPRESSED_MESSAGE
+     * TOO_LONG_DECOMPRESSED_MESSAGE}, and the connection is closed with
+     * the close code {@link WebSocketCloseCode#OVERSIZE OVERSIZE} (1009).
+     * It protects the client from compressed data which would be expanded
+     * to a huge size (so-called "compression bomb").
+     * </p>
+     *
+     * @param size
+     *         The maximum size of decompressed messages. 0 to unset
+     *         the maximum size.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code size} is negative.
+     *
+     * @since 2.10
+     */
+    public WebSocket setMaxDecompressedMessageSize(int size) throws IllegalArgumentException
+    {
+        if (size < 0)
+        {
+            throw new IllegalArgumentException("size must not be negative.");
+        }
+
+        mMaxDecompressedMessageSize = size;
+
+        return this;
+    }
+
+
+    /**
+     * Get the thread factory for the thread type.
+     *
+     * @param type
+     *         The thread type.
+     *
+     * @return
+     *         The thread factory, or {@code null} if it is not set.
+     *
+     * @since 2.10
+     */
+    public ThreadFactory getThreadFactory(ThreadType type)
+    {
+        return mThreadSettings.getThreadFactory(type);
+    }
+
+
+    /**
+     * Set the thread factory which creates threads of the thread type.
+     * The initial value is copied from the {@link WebSocketFactory}.
+     * See {@link WebSocketFactory#setThreadFactory(ThreadType,
+     * ThreadFactory)} for details.
+     *
+     * <p>
+     * The reading thread and the writing thread are created by {@link
+     * #connect()}, so set their factories before calling it.
+     * </p>
+     *
+     * @param type
+     *         The thread type.
+     *
+     * @param factory
+     *         The thread factory. {@code null} to use the default.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code type} is {@code null}.
+     *
+     * @since 2.10
+     */
+    public WebSocket setThreadFactory(ThreadType type, ThreadFactory factory)
+    {
+        mThreadSettings.setThreadFactory(type, factory);
+
+        return this;
+    }
+
+
+    /**
+     * Get the executor for the thread type.
+     *
+     * @param type
+     *         The thread type.
+     *
+     * @return
+     *         The executor, or {@code null} if it is not set.
+     *
+     * @since 2.10
+     */
+    public Executor getExecutor(ThreadType type)
+    {
+        return mThreadSettings.getExecutor(type);
+    }
+
+
+    /**
+     * Set the executor which runs the tasks of the thread type.
+     * The initial value is copied from the {@link WebSocketFactory}.
+     * See {@link WebSocketFactory#setExecutor(ThreadType, Executor)}
+     * for details.
+     *
+     * @param type
+     *         The thread type.
+     *
+     * @param executor
+     *         The executor. {@code null} to use the default.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code type} is {@code null}.
+     *
+     * @since 2.10
+     */
+    public WebSocket setExecutor(ThreadType type, Executor executor)
+    {
+        mThreadSettings.setExecutor(type, executor);
+
+        return this;
+    }
+
+
     /**
      * Get the interval of periodical
      * <a href="https://tools.ietf.org/html/rfc6455#section-5.5.2">ping</a>
@@ -1941,6 +2477,134 @@ public class WebSocket
     }
 
 
+    /**
+     * Check if the adaptive ping is enabled. See {@link
+     * #setAdaptivePing(boolean)} for details.
+     *
+     * @return
+     *         {@code true} if the adaptive ping is enabled.
+     *         The default value is {@code false}.
+     *
+     * @since 2.10
+     */
+    public boolean isAdaptivePing()
+    {
+        return mPingSender.isAdaptive();
+    }
+
+
+    /**
+     * Enable or disable the adaptive ping.
+     *
+     * <p>
+     * By default, ping frames are sent every {@link #setPingInterval(long)
+     * ping interval} even while frames keep arriving from the server. When
+     * the adaptive ping is enabled, the ping interval is regarded as idle
+     * time, and a ping frame is sent only when no frame has been received
+     * for the interval. Busy connections send almost no ping frames, and
+     * a pong frame from the server counts as a received frame.
+     * </p>
+     *
+     * <p>
+     * Combined with {@link #setMaxMissedPongs(int)}, a dead peer is
+     * detected after about (the maximum number of missed pong frames + 1)
+     * times the ping interval of silence.
+     * </p>
+     *
+     * @param adaptive
+     *         {@code true} to enable the adaptive ping.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.10
+     */
+    public WebSocket setAdaptivePing(boolean adaptive)
+    {
+        mPingSender.setAdaptive(adaptive);
+
+        return this;
+    }
+
+
+    /**
+     * Get the maximum number of ping frames which may remain unanswered.
+     * See {@link #setMaxMissedPongs(int)} for details.
+     *
+     * @return
+     *         The maximum number of missed pong frames. 0 means that
+     *         missed pong frames are not detected. The default value is 0.
+     *
+     * @since 2.10
+     */
+    public int getMaxMissedPongs()
+    {
+        return mPingSender.getMaxMissedPongs();
+    }
+
+
+    /**
+     * Set the maximum number of ping frames which may remain unanswered.
+     *
+     * <p>
+     * When this many ping frames sent by the {@linkplain
+     * #setPingInterval(long) periodical ping} have not been answered by
+     * any pong frame and the next ping frame is due, the peer is regarded
+     * as dead. Then, {@link WebSocketListener#onError(WebSocket,
+     * WebSocketException) onError()} is called with {@link
+     * WebSocketError#PONG_TIMEOUT PONG_TIMEOUT} and the connection is
+     * closed without waiting for a close frame from the server.
+     * </p>
+     *
+     * @param count
+     *         The maximum number of missed pong frames. 0 disables the
+     *         detection.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code count} is negative.
+     *
+     * @since 2.10
+     */
+    public WebSocket setMaxMissedPongs(int count)
+    {
+        if (count < 0)
+        {
+            throw new IllegalArgumentException("count must not be negative.");
+        }
+
+        mPingSender.setMaxMissedPongs(count);
+
+        return this;
+    }
+
+
+    /**
+     * Get the round-trip time of the latest ping frame sent by the
+     * {@linkplain #setPingInterval(long) periodical ping}.
+     *
+     * <p>
+     * The time is measured from when a ping frame is queued until the
+     * pong frame with the same payload is received. Payloads generated
+     * by the {@linkplain #setPingPayloadGenerator(PayloadGenerator) ping
+     * payload generator} should differ from each other, as the default
+     * generator's do, so that a pong frame is matched with its ping frame.
+     * </p>
+     *
+     * @return
+     *         The round-trip time in milliseconds, or -1 if it has not
+     *         been measured yet.
+     *
+     * @since 2.10
+     */
+    public long getPingRoundTripTime()
+    {
+        return mPingSender.getRoundTripTime();
+    }
+
+
     /**
      * Get the interval of periodical
      * <a href="https://tools.ietf.org/html/rfc6455#section-5.5.3">pong</a>
@@ -2065,6 +2729,11 @@ public class WebSocket
     /**
      * Get the name of the {@code Timer} that sends ping frames periodically.
      *
+     * <p>
+     * Since 2.10, ping frames are sent by a shared {@link HashedWheelTimer}
+     * and this name is no longer used as the name of a thread.
+     * </p>
+     *
      * @return
      *         The {@code Timer}'s name.
      *
@@ -2079,6 +2748,11 @@ public class WebSocket
     /**
      * Set the name of the {@code Timer} that sends ping frames periodically.
      *
+     * <p>
+     * Since 2.10, ping frames are sent by a shared {@link HashedWheelTimer}
+     * and this name is no longer used as the name of a thread.
+     * </p>
+     *
      * @param name
      *         A name for the {@code Timer}.
      *
@@ -2098,6 +2772,11 @@ public class WebSocket
     /**
      * Get the name of the {@code Timer} that sends pong frames periodically.
      *
+     * <p>
+     * Since 2.10, pong frames are sent by a shared {@link HashedWheelTimer}
+     * and this name is no longer used as the name of a thread.
+     * </p>
+     *
      * @return
      *         The {@code Timer}'s name.
      *
@@ -2112,6 +2791,11 @@ public class WebSocket
     /**
      * Set the name of the {@code Timer} that sends pong frames periodically.
      *
+     * <p>
+     * Since 2.10, pong frames are sent by a shared {@link HashedWheelTimer}
+     * and this name is no longer used as the name of a thread.
+     * </p>
+     *
      * @param name
      *         A name for the {@code Timer}.
      *
@@ -2258,6 +2942,25 @@ public class WebSocket
     }
 
 
+    /**
+     * Get the time taken by each phase of {@link #connect()}, e.g. the
+     * resolution of the hostname, the TCP connection, the SSL handshake
+     * and the opening handshake. Values are available after {@code
+     * connect()} has finished either successfully or not. They are passed
+     * to {@link WebSocketListener#onConnectTimings(WebSocket, ConnectTimings)
+     * onConnectTimings} of listeners, too.
+     *
+     * @return
+     *         The time taken by each phase of the connection attempt.
+     *
+     * @since 2.10
+     */
+    public ConnectTimings getConnectTimings()
+    {
+        return mSocketConnector.getTimings();
+    }
+
+
     /**
      * Get the URI of the WebSocket endpoint. The scheme part is either
      * {@code "ws"} or {@code "wss"}. The authority part is always empty.
@@ -2345,19 +3048,29 @@ public class WebSocket
         // HTTP headers from the server.
         Map<String, List<String>> headers;
 
+        // Time taken by each phase.
+        ConnectTimings timings = mSocketConnector.getTimings();
+        long startTime = System.nanoTime();
+
         try
         {
             // Connect to the server.
             Socket socket = mSocketConnector.connect();
 
             // Perform WebSocket handshake.
+            long handshakeStartTime = System.nanoTime();
             headers = shakeHands(socket);
+            timings.setOpeningHandshakeTime(System.nanoTime() - handshakeStartTime);
         }
         catch (WebSocketException e)
         {
             // Close the socket.
             mSocketConnector.closeSilently();
 
+            // Notify the listeners of the time taken by the attempt.
+            timings.setTotalTime(System.nanoTime() - startTime);
+            mListenerManager.callOnConnectTimings(timings);
+
             // Change the state to CLOSED.
             mStateManager.setState(CLOSED);
 
@@ -2368,6 +3081,10 @@ public class WebSocket
             throw e;
         }
 
+        // Notify the listeners of the time taken by the connection.
+        timings.setTotalTime(System.nanoTime() - startTime);
+        mListenerManager.callOnConnectTimings(timings);
+
         // HTTP headers in the response from the server.
         mServerHeaders = headers;
 
@@ -2380,8 +3097,17 @@ public class WebSocket
         // Notify the listener of the state change.
         mListenerManager.callOnStateChanged(OPEN);
 
-        // Start threads that communicate with the server.
-        startThreads();
+        if (mSynchronous)
+        {
+            // Frames are read and written by the threads which call
+            // receive() and sendFrame().
+            startSynchronousSession();
+        }
+        else
+        {
+            // Start threads that communicate with the server.
+            startThreads();
+        }
 
         return this;
     }
@@ -2451,17 +3177,8 @@ public class WebSocket
      */
     public WebSocket connectAsynchronously()
     {
-        Thread thread = new ConnectThread(this);
-
-        // Get the reference (just in case)
-        ListenerManager lm = mListenerManager;
-
-        if (lm != null)
-        {
-            lm.callOnThreadCreated(ThreadType.CONNECT_THREAD, thread);
-        }
-
-        thread.start();
+        // onThreadCreated() of the listeners is called, too.
+        new ConnectThread(this).start();
 
         return this;
     }
@@ -2707,7 +3424,9 @@ public class WebSocket
      *
      * <p>
      * This method just queues the given frame. Actual transmission
-     * is performed asynchronously.
+     * is performed asynchronously. If {@link #setDirectWrite(boolean)
+     * direct write} is enabled, the frame may be written on the caller's
+     * thread instead.
      * </p>
      *
      * <p>
@@ -2739,6 +3458,49 @@ public class WebSocket
      *         {@code this} object.
      */
     public WebSocket sendFrame(WebSocketFrame frame)
+    {
+        return sendFrame(frame, mDirectWrite);
+    }
+
+
+    /**
+     * Send a frame to the server without blocking the caller. This is
+     * used by tasks running on the thread of the timer, which is shared
+     * by connections.
+     */
+    WebSocket sendFrameWithoutBlocking(final WebSocketFrame frame)
+    {
+        if (frame == null)
+        {
+            return this;
+        }
+
+        if (mSynchronousSession == null)
+        {
+            // Queue the frame for the writing thread.
+            return sendFrame(frame, false);
+        }
+
+        // In the synchronous mode, there is no writing thread and
+        // sendFrame() writes the frame on the caller's thread.
+        getTimer().offload(new Runnable() {
+            public void run()
+            {
+                sendFrame(frame, false);
+            }
+        });
+
+        return this;
+    }
+
+
+    /**
+     * Send a frame to the server, writing it on the caller's thread if
+     * {@code direct} is {@code true} and the writing thread is idle.
+     * In the synchronous mode, the frame is always written on the
+     * caller's thread.
+     */
+    WebSocket sendFrame(WebSocketFrame frame, boolean direct)
     {
         if (frame == null)
         {
@@ -2757,6 +3519,15 @@ public class WebSocket
 
         // The current state is either OPEN or CLOSING. Or, CLOSED.
 
+        // In the synchronous mode, write the frame on this thread.
+        SynchronousSession session = mSynchronousSession;
+
+        if (session != null)
+        {
+            session.send(frame);
+            return this;
+        }
+
         // Get the reference to the writing thread.
         WritingThread wt = mWritingThread;
 
@@ -2772,34 +3543,22 @@ public class WebSocket
             return this;
         }
 
-        // Split the frame into multiple frames if necessary.
-        List<WebSocketFrame> frames = splitIfNecessary(frame);
-
-        // Queue the frame or the frames. Even if the current state is
-        // CLOSED, queueing won't be a big issue.
-
-        // If the frame was not split.
-        if (frames == null)
+        // Write the frame on this thread if possible.
+        if (direct && wt.sendFrameDirectly(frame))
         {
-            // Queue the frame.
-            wt.queueFrame(frame);
-        }
-        else
-        {
-            for (WebSocketFrame f : frames)
-            {
-                // Queue the frame.
-                wt.queueFrame(f);
-            }
+            return this;
         }
 
-        return this;
-    }
-
+        // Queue the frame. Even if the current state is CLOSED,
+        // queueing won't be a big issue.
+        //
+        // Compression and splitting (if necessary) are performed by the
+        // writing thread so that messages are compressed in the same order
+        // as they are sent. It is required for the compression context
+        // (sliding window) shared across messages.
+        wt.queueFrame(frame);
 
-    private List<WebSocketFrame> splitIfNecessary(WebSocketFrame frame)
-    {
-        return WebSocketFrame.splitIfNecessary(frame, mMaxPayloadSize, mPerMessageCompressionExtension);
+        return this;
     }
 
 
@@ -3315,6 +4074,13 @@ public class WebSocket
         // Send an opening handshake to the server.
         writeHandshake(output, key);
 
+        // If the opening handshake has been pipelined after the CONNECT
+        // request, the response from the proxy server comes first.
+        if (mSocketConnector.isProxyResponsePending())
+        {
+            mSocketConnector.receiveProxyResponse(input);
+        }
+
         // Read the response from the server.
         Map<String, List<String>> headers = readHandshake(input, key);
 
@@ -3334,12 +4100,17 @@ public class WebSocket
      */
     private WebSocketInputStream openInputStream(Socket socket) throws WebSocketException
     {
+        // The connection over the channel of the socket if the selector
+        // transport is used.
+        ChannelConnection connection = mSocketConnector.getChannelConnection();
+
         try
         {
             // Get the input stream of the raw socket through which
             // this client receives data from the server.
             return new WebSocketInputStream(
-                new BufferedInputStream(socket.getInputStream()));
+                new BufferedInputStream((connection != null)
+                    ? connection.getInputStream() : socket.getInputStream()));
         }
         catch (IOException e)
         {
@@ -3357,12 +4128,17 @@ public class WebSocket
      */
     private WebSocketOutputStream openOutputStream(Socket socket) throws WebSocketException
     {
+        // The connection over the channel of the socket if the selector
+        // transport is used.
+        ChannelConnection connection = mSocketConnector.getChannelConnection();
+
         try
         {
             // Get the output stream of the socket through which
             // this client sends data to the server.
             return new WebSocketOutputStream(
-                new BufferedOutputStream(socket.getOutputStream()));
+                new BufferedOutputStream((connection != null)
+                    ? connection.getOutputStream() : socket.getOutputStream()));
         }
         catch (IOException e)
         {
@@ -3461,17 +4237,49 @@ public class WebSocket
         {
             mReadingThread = readingThread;
             mWritingThread = writingThread;
-        }
 
-        // Execute onThreadCreated of the listeners.
-        readingThread.callOnThreadCreated();
-        writingThread.callOnThreadCreated();
+            if (mReadingPaused)
+            {
+                readingThread.setPaused(true);
+            }
+        }
 
+        // onThreadCreated() of the listeners is called, too.
         readingThread.start();
         writingThread.start();
     }
 
 
+    private void startSynchronousSession()
+    {
+        mSynchronousSession = new SynchronousSession(this);
+
+        // Neither the reading thread nor the writing thread will call
+        // onConnected(), so call it here.
+        callOnConnectedIfNotYet();
+
+        // The frames are written off the thread of the timer.
+        // See sendFrameWithoutBlocking().
+        mPingSender.start();
+        mPongSender.start();
+    }
+
+
+    /**
+     * Called when the connection in the synchronous mode has been closed.
+     */
+    void onSynchronousSessionFinished(WebSocketFrame serverCloseFrame, WebSocketFrame clientCloseFrame)
+    {
+        synchronized (mThreadsLock)
+        {
+            mServerCloseFrame = serverCloseFrame;
+            mClientCloseFrame = clientCloseFrame;
+        }
+
+        finish();
+    }
+
+
     /**
      * Stop both the reading thread and the writing thread.
      *
@@ -3506,6 +4314,15 @@ public class WebSocket
         {
             writingThread.requestStop();
         }
+
+        SynchronousSession session = mSynchronousSession;
+
+        if (session != null)
+        {
+            // Close the socket after the delay unless receive() finishes
+            // the closing handshake before that.
+            session.scheduleClose(closeDelay);
+        }
     }
 
 
@@ -3536,6 +4353,47 @@ public class WebSocket
     }
 
 
+    /**
+     * Get the connector that connects to the server.
+     */
+    SocketConnector getSocketConnector()
+    {
+        return mSocketConnector;
+    }
+
+
+    /**
+     * Get the thread factories and the executors for the internal threads.
+     */
+    ThreadSettings getThreadSettings()
+    {
+        return mThreadSettings;
+    }
+
+
+    HashedWheelTimer getTimer()
+    {
+        return mTimer;
+    }
+
+
+    PingSender getPingSender()
+    {
+        return mPingSender;
+    }
+
+
+    /**
+     * Get the number of frames waiting for the writing thread.
+     */
+    int getQueuedFrameCount()
+    {
+        WritingThread wt = mWritingThread;
+
+        return (wt == null) ? 0 : wt.getQueuedFrameCount();
+    }
+
+
     /**
      * Get the manager that manages registered listeners.
      */
@@ -3732,18 +4590,7 @@ public class WebSocket
         mPongSender.stop();
 
         // Close the raw socket.
-        Socket socket = mSocketConnector.getSocket();
-        if (socket != null)
-        {
-            try
-            {
-                socket.close();
-            }
-            catch (Throwable t)
-            {
-                // Ignore any error raised by close().
-            }
-        }
+        mSocketConnector.closeSilently();
 
         synchronized (mStateManager)
         {
@@ -3765,12 +4612,8 @@ public class WebSocket
      */
     private void finishAsynchronously()
     {
-        WebSocketThread thread = new FinishThread(this);
-
-        // Execute onThreadCreated() of the listeners.
-        thread.callOnThreadCreated();
-
-        thread.start();
+        // onThreadCreated() of the listeners is called, too.
+        new FinishThread(this).start();
     }
 
 
@@ -201,4 +201,10 @@ public class WebSocketAdapter implements WebSocketListener
     public void onThreadStopping(WebSocket websocket, ThreadType threadType, Thread thread) throws Exception
     {
     }
+
+
+    @Override
+    public void onConnectTimings(WebSocket websocket, ConnectTimings timings) throws Exception
+    {
+    }
 }
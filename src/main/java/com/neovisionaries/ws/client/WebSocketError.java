@@ -384,6 +384,16 @@ public enum WebSocketError
     DECOMPRESSION_ERROR,
 
 
+    /**
+     * The length of a decompressed message exceeds the maximum length.
+     *
+     * @see WebSocket#setMaxDecompressedMessageSize(int)
+     *
+     * @since 2.10
+     */
+    TOO_LONG_DECOMPRESSED_MESSAGE,
+
+
     /**
      * {@link java.net.Socket#connect(java.net.SocketAddress, int)
      * Socket.connect()} failed.
@@ -451,5 +461,25 @@ public enum WebSocketError
      * @since 2.1
      */
     HOSTNAME_UNVERIFIED,
+
+
+    /**
+     * A received message does not fit in the buffer given to {@link
+     * WebSocket#receive(java.nio.ByteBuffer, int) WebSocket.receive()}.
+     * The message has been discarded.
+     *
+     * @since 2.10
+     */
+    BUFFER_OVERFLOW,
+
+
+    /**
+     * No pong frame has been received for as many ping frames as {@link
+     * WebSocket#setMaxMissedPongs(int)} allows. The connection is closed
+     * because the peer is regarded as dead.
+     *
+     * @since 2.10
+     */
+    PONG_TIMEOUT,
     ;
 }
@@ -18,6 +18,7 @@ package com.neovisionaries.ws.client;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -37,6 +38,10 @@ public class WebSocketExtension
     public static final String PERMESSAGE_DEFLATE = "permessage-deflate";
 
 
+    private static final Map<String, PerMessageCompressionExtensionFactory> sPerMessageCompressionExtensionFactories
+        = new ConcurrentHashMap<String, PerMessageCompressionExtensionFactory>();
+
+
     private final String mName;
     private final Map<String, String> mParameters;
 
@@ -218,8 +223,20 @@ public class WebSocketExtension
 
     /**
      * Validate this instance. This method is expected to be overridden.
+     *
+     * <p>
+     * This method is called during the opening handshake for each
+     * extension contained in the {@code Sec-WebSocket-Extensions} header
+     * of the response from the server. If this method throws an
+     * exception, the opening handshake fails.
+     * </p>
+     *
+     * @throws WebSocketException
+     *         The parameters given by the server are not acceptable.
+     *
+     * @since 2.10 (package-private before 2.10)
      */
-    void validate() throws WebSocketException
+    protected void validate() throws WebSocketException
     {
     }
 
@@ -322,8 +339,90 @@ public class WebSocketExtension
     }
 
 
+    /**
+     * Register a factory of a per-message compression extension.
+     *
+     * <p>
+     * After registration, {@link #parse(String)} uses the factory to
+     * create an instance for the extension name. As a result, the
+     * extension takes part in the negotiation during opening handshakes
+     * (via {@link #validate()}) and compresses and decompresses messages
+     * of connections where the extension has been agreed. Note that the
+     * extension has to be {@linkplain WebSocket#addExtension(String)
+     * added} to a {@link WebSocket} instance to be offered to servers.
+     * </p>
+     *
+     * <p>
+     * A factory registered for {@link #PERMESSAGE_DEFLATE} replaces
+     * the built-in implementation. Registration is JVM-wide.
+     * </p>
+     *
+     * @param name
+     *         The extension name.
+     *
+     * @param factory
+     *         The factory to create instances of the extension.
+     *
+     * @throws IllegalArgumentException
+     *         The given name is not a valid token, or the given factory
+     *         is {@code null}.
+     *
+     * @since 2.10
+     */
+    public static void registerPerMessageCompressionExtension(
+            String name, PerMessageCompressionExtensionFactory factory)
+    {
+        if (Token.isValid(name) == false)
+        {
+            // The name is not a valid token.
+            throw new IllegalArgumentException("'name' is not a valid token.");
+        }
+
+        if (factory == null)
+        {
+            throw new IllegalArgumentException("'factory' is null.");
+        }
+
+        sPerMessageCompressionExtensionFactories.put(name, factory);
+    }
+
+
+    /**
+     * Unregister the factory of a per-message compression extension
+     * registered by {@link #registerPerMessageCompressionExtension(String,
+     * PerMessageCompressionExtensionFactory)
+     * registerPerMessageCompressionExtension()}.
+     *
+     * @param name
+     *         The extension name.
+     *
+     * @since 2.10
+     */
+    public static void unregisterPerMessageCompressionExtension(String name)
+    {
+        if (name != null)
+        {
+            sPerMessageCompressionExtensionFactories.remove(name);
+        }
+    }
+
+
     private static WebSocketExtension createInstance(String name)
     {
+        // A factory registered by the application.
+        PerMessageCompressionExtensionFactory factory =
+            sPerMessageCompressionExtensionFactories.get(name);
+
+        if (factory != null)
+        {
+            WebSocketExtension extension = factory.create(name);
+
+            if (extension != null)
+            {
+                return extension;
+            }
+        }
+
         if (PERMESSAGE_DEFLATE.equals(name))
         {
             return new PerMessageDeflateExtension(name);
@@ -21,8 +21,11 @@ import java.net.Socket;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
 import javax.net.SocketFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocketFactory;
 
 
@@ -36,8 +39,19 @@ public class WebSocketFactory
     private int mConnectionTimeout;
     private DualStackMode mDualStackMode = DualStackMode.BOTH;
     private int mDualStackFallbackDelay = 250;
+    private boolean mAdaptiveDualStackFallbackDelay;
+    private Executor mDualStackExecutor;
     private boolean mVerifyHostname = true;
     private String[] mServerNames;
+    private HostResolver mHostResolver;
+    private final ThreadSettings mThreadSettings = new ThreadSettings();
+    private int mSSLSessionCacheSize = -1;
+    private int mSSLSessionTimeout = -1;
+    private final SSLHandshakeCounter mSSLHandshakeCounter = new SSLHandshakeCounter();
+    private final SocketPool mSocketPool = new SocketPool(this);
+    private ConnectScheduler mConnectScheduler;
+    private Transport mTransport = Transport.SOCKET;
+    private HashedWheelTimer mTimer = HashedWheelTimer.getDefault();
 
 
     public WebSocketFactory()
@@ -286,6 +300,107 @@ public class WebSocketFactory
     }
 
 
+    /**
+     * Check if the dual stack fallback delay is derived from connect RTTs
+     * observed in the past. The default value is {@code false}.
+     *
+     * <p>
+     * See the description of {@link #setAdaptiveDualStackFallbackDelay(boolean)}.
+     * </p>
+     *
+     * @return
+     *         {@code true} if the dual stack fallback delay is adaptive.
+     *
+     * @since 2.10
+     */
+    public boolean isAdaptiveDualStackFallbackDelay()
+    {
+        return mAdaptiveDualStackFallbackDelay;
+    }
+
+
+    /**
+     * Set whether the dual stack fallback delay is derived from connect
+     * RTTs observed in the past.
+     *
+     * <p>
+     * Connect RTTs and failures of each IP address are recorded JVM-wide.
+     * Regardless of this setting, the historically fastest healthy address
+     * races first and addresses that have failed recently race last. If
+     * this setting is enabled, the delay before the next address starts
+     * racing is the 90th percentile of the recent RTTs of the preceding
+     * address (between 100 and 2,000 milliseconds) instead of {@link
+     * #getDualStackFallbackDelay()}. The fixed delay is still used for
+     * addresses without records.
+     * </p>
+     *
+     * @param adaptive
+     *         {@code true} to derive the delay from observed RTTs.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.10
+     */
+    public WebSocketFactory setAdaptiveDualStackFallbackDelay(boolean adaptive)
+    {
+        mAdaptiveDualStackFallbackDelay = adaptive;
+
+        return this;
+    }
+
+
+    /**
+     * Get the executor that runs the tasks connecting to IP addresses
+     * of the server. See {@link #setDualStackExecutor(Executor)}.
+     *
+     * @return
+     *         The executor. {@code null} means that the executor shared
+     *         by all factories is used.
+     *
+     * @since 2.10
+     */
+    public Executor getDualStackExecutor()
+    {
+        return mDualStackExecutor;
+    }
+
+
+    /**
+     * Set the executor that runs the tasks connecting to IP addresses
+     * of the server.
+     *
+     * <p>
+     * A task per IP address is submitted to the executor when its turn
+     * comes, i.e. when the connection attempt to the preceding address
+     * has failed or the {@linkplain #getDualStackFallbackDelay() dual stack
+     * fallback delay} has elapsed. Each task blocks until the connection
+     * attempt completes. When a connection has been established, the
+     * sockets of the other tasks are closed.
+     * </p>
+     *
+     * <p>
+     * By default ({@code null}), a thread pool of up to 64 daemon threads
+     * shared by all factories is used, so that a burst of connections does
+     * not create a thread per IP address of each connection.
+     * </p>
+     *
+     * @param executor
+     *         The executor. {@code null} to use the shared thread pool.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.10
+     */
+    public WebSocketFactory setDualStackExecutor(Executor executor)
+    {
+        mDualStackExecutor = executor;
+
+        return this;
+    }
+
+
     /**
      * Get the flag which indicates whether the hostname in the
      * server's certificate should be verified or not. The default
@@ -294,110 +409,784 @@ public class WebSocketFactory
      * flag means.
      *
      * @return
-     *         {@code true} if hostname verification is enabled.
+     *         {@code true} if hostname verification is enabled.
+     *
+     * @since 2.3
+     */
+    public boolean getVerifyHostname()
+    {
+        return mVerifyHostname;
+    }
+
+
+    /**
+     * Set the flag which indicates whether the hostname in the
+     * server's certificate should be verified or not. The default
+     * value is {@code true}.
+     *
+     * <p>
+     * Manual hostname verification has been enabled since the version
+     * 2.1. Because the verification is executed manually after {@code
+     * Socket.}{@link java.net.Socket#connect(java.net.SocketAddress, int)
+     * connect(SocketAddress, int)}
+     * succeeds, the hostname verification is always executed even if
+     * you has passed an {@link SSLContext} which naively accepts any
+     * server certificate (e.g. <code><a href=
+     * "https://gist.github.com/TakahikoKawasaki/d07de2218b4b81bf65ac"
+     * >NaiveSSLContext</a></code>). However, this behavior is not
+     * desirable in some cases and you may want to disable the hostname
+     * verification. This setter method exists for the purpose and you
+     * can disable hostname verification by passing {@code false} to
+     * this method.
+     * </p>
+     *
+     * @param verifyHostname
+     *         {@code true} to enable hostname verification.
+     *         {@code false} to disable hostname verification.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.3
+     */
+    public WebSocketFactory setVerifyHostname(boolean verifyHostname)
+    {
+        mVerifyHostname = verifyHostname;
+
+        return this;
+    }
+
+
+    /**
+     * Get server names for SNI (Server Name Indication).
+     *
+     * @return
+     *         List of host names.
+     *
+     * @since 2.4
+     */
+    public String[] getServerNames()
+    {
+        return mServerNames;
+    }
+
+
+    /**
+     * Set server names for SNI (Server Name Indication).
+     *
+     * If {@code setServerNames(List<SNIServerName>)} method of
+     * {@link javax.net.ssl.SSLParameters SSLParameters} class is available
+     * in the underlying system, the method is called to set up server names
+     * for SNI (Server Name Indication).
+     *
+     * @param serverNames
+     *         List of host names.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.4
+     */
+    public WebSocketFactory setServerNames(String[] serverNames)
+    {
+        mServerNames = serverNames;
+
+        return this;
+    }
+
+
+    /**
+     * Set a server name for SNI (Server Name Indication).
+     *
+     * This method internally creates a String array of size 1 which
+     * contains the given {@code serverName} and calls {@link
+     * #setServerNames(String[])}.
+     *
+     * @param serverName
+     *         A host name.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.4
+     */
+    public WebSocketFactory setServerName(String serverName)
+    {
+        return setServerNames(new String[] { serverName });
+    }
+
+
+    /**
+     * Get the maximum number of SSL sessions cached to resume sessions
+     * with servers. See {@link #setSSLSessionCacheSize(int)}.
+     *
+     * @return
+     *         The maximum number of cached SSL sessions. -1 means that
+     *         the setting of the SSL context is not changed.
+     *
+     * @since 2.10
+     */
+    public int getSSLSessionCacheSize()
+    {
+        return mSSLSessionCacheSize;
+    }
+
+
+    /**
+     * Set the maximum number of SSL sessions cached to resume sessions
+     * with servers.
+     *
+     * <p>
+     * When a {@link WebSocket} created by this factory (including ones
+     * created by {@link WebSocket#recreate()}) connects to a server again,
+     * the SSL session established by the previous connection is resumed
+     * if it is in the cache of the SSL context and the server accepts it.
+     * A resumed handshake saves a round trip and the asymmetric crypto.
+     * Sessions are looked up by the hostname and the port, so they can be
+     * resumed even if the hostname resolves to another IP address. TLS 1.3
+     * session tickets are used as well if the SSL implementation supports
+     * them (e.g. by default since Java 13).
+     * </p>
+     *
+     * <p>
+     * The setting is applied to the client session context of the {@link
+     * SSLContext} set by {@link #setSSLContext(SSLContext)} when a secure
+     * {@link WebSocket} is created. It is not applied when no SSL context
+     * is set; in that case, the settings of the SSL implementation are used.
+     * </p>
+     *
+     * @param size
+     *         The maximum number of cached SSL sessions. 0 means no limit.
+     *         -1 not to change the setting of the SSL context.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given size is less than -1.
+     *
+     * @see SSLSessionContext#setSessionCacheSize(int)
+     *
+     * @since 2.10
+     */
+    public WebSocketFactory setSSLSessionCacheSize(int size)
+    {
+        if (size < -1)
+        {
+            throw new IllegalArgumentException("size must not be less than -1.");
+        }
+
+        mSSLSessionCacheSize = size;
+
+        return this;
+    }
+
+
+    /**
+     * Get the timeout in seconds of cached SSL sessions.
+     * See {@link #setSSLSessionTimeout(int)}.
+     *
+     * @return
+     *         The timeout in seconds. -1 means that the setting of the
+     *         SSL context is not changed.
+     *
+     * @since 2.10
+     */
+    public int getSSLSessionTimeout()
+    {
+        return mSSLSessionTimeout;
+    }
+
+
+    /**
+     * Set the timeout in seconds of cached SSL sessions. A session cached
+     * longer than the timeout is not resumed. The setting is applied in
+     * the same way as {@link #setSSLSessionCacheSize(int)}.
+     *
+     * @param timeout
+     *         The timeout in seconds. 0 means no limit. -1 not to change
+     *         the setting of the SSL context.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given timeout is less than -1.
+     *
+     * @see SSLSessionContext#setSessionTimeout(int)
+     *
+     * @since 2.10
+     */
+    public WebSocketFactory setSSLSessionTimeout(int timeout)
+    {
+        if (timeout < -1)
+        {
+            throw new IllegalArgumentException("timeout must not be less than -1.");
+        }
+
+        mSSLSessionTimeout = timeout;
+
+        return this;
+    }
+
+
+    /**
+     * Get the number of full SSL handshakes performed by {@link WebSocket}
+     * instances created by this factory.
+     *
+     * @return
+     *         The number of full SSL handshakes.
+     *
+     * @see #getResumedSSLHandshakeCount()
+     *
+     * @since 2.10
+     */
+    public long getFullSSLHandshakeCount()
+    {
+        return mSSLHandshakeCounter.getFullCount();
+    }
+
+
+    /**
+     * Get the number of SSL handshakes that resumed cached sessions,
+     * performed by {@link WebSocket} instances created by this factory.
+     *
+     * @return
+     *         The number of resumed SSL handshakes.
+     *
+     * @see #getFullSSLHandshakeCount()
+     * @see #setSSLSessionCacheSize(int)
+     *
+     * @since 2.10
+     */
+    public long getResumedSSLHandshakeCount()
+    {
+        return mSSLHandshakeCounter.getResumedCount();
+    }
+
+
+    /**
+     * Get the resolver of hostnames that has been set by {@link
+     * #setHostResolver(HostResolver)}.
+     *
+     * @return
+     *         The resolver of hostnames. {@code null} means that
+     *         {@link CachingHostResolver#getDefault()} is used.
+     *
+     * @since 2.10
+     */
+    public HostResolver getHostResolver()
+    {
+        return mHostResolver;
+    }
+
+
+    /**
+     * Set a resolver of hostnames.
+     *
+     * <p>
+     * The resolver is used every time a {@link WebSocket} created by this
+     * factory connects to the server (or the proxy server). By default
+     * ({@code null}), the JVM-wide cache returned by {@link
+     * CachingHostResolver#getDefault()} is used so that many connections
+     * to the same host do not look up the hostname one by one.
+     * </p>
+     *
+     * @param resolver
+     *         A resolver of hostnames. {@code null} to use the default.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.10
+     */
+    public WebSocketFactory setHostResolver(HostResolver resolver)
+    {
+        mHostResolver = resolver;
+
+        return this;
+    }
+
+
+    /**
+     * Get the thread factory for the thread type.
+     *
+     * @param type
+     *         The thread type.
+     *
+     * @return
+     *         The thread factory, or {@code null} if it is not set.
+     *
+     * @since 2.10
+     */
+    public ThreadFactory getThreadFactory(ThreadType type)
+    {
+        return mThreadSettings.getThreadFactory(type);
+    }
+
+
+    /**
+     * Set the thread factory which creates threads of the thread type
+     * for {@link WebSocket} instances created by this factory.
+     *
+     * <p>
+     * By default ({@code null}), a new platform thread is created for
+     * each task, e.g. two threads (the reading thread and the writing
+     * thread) per connection. A factory of virtual threads (see {@link
+     * VirtualThreads}) makes mostly idle connections much cheaper.
+     * </p>
+     *
+     * <p>
+     * {@link WebSocketListener#onThreadCreated(WebSocket, ThreadType, Thread)
+     * onThreadCreated}, {@link WebSocketListener#onThreadStarted(WebSocket,
+     * ThreadType, Thread) onThreadStarted} and {@link
+     * WebSocketListener#onThreadStopping(WebSocket, ThreadType, Thread)
+     * onThreadStopping} are called for threads created by the factory as
+     * usual. Setting a thread factory for a type removes the executor set
+     * for the type by {@link #setExecutor(ThreadType, Executor)}.
+     * </p>
+     *
+     * @param type
+     *         The thread type.
+     *
+     * @param factory
+     *         The thread factory. {@code null} to use the default.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code type} is {@code null}.
+     *
+     * @since 2.10
+     */
+    public WebSocketFactory setThreadFactory(ThreadType type, ThreadFactory factory)
+    {
+        mThreadSettings.setThreadFactory(type, factory);
+
+        return this;
+    }
+
+
+    /**
+     * Get the executor for the thread type.
+     *
+     * @param type
+     *         The thread type.
+     *
+     * @return
+     *         The executor, or {@code null} if it is not set.
+     *
+     * @since 2.10
+     */
+    public Executor getExecutor(ThreadType type)
+    {
+        return mThreadSettings.getExecutor(type);
+    }
+
+
+    /**
+     * Set the executor which runs the tasks of the thread type for
+     * {@link WebSocket} instances created by this factory.
+     *
+     * <p>
+     * A task of the reading thread or the writing thread runs as long
+     * as the connection is open, so an executor for them must be able
+     * to run as many tasks concurrently as there are connections, e.g.
+     * {@link java.util.concurrent.Executors#newCachedThreadPool()}.
+     * </p>
+     *
+     * <p>
+     * Because the thread which runs a task is not known until the task
+     * starts, {@link WebSocketListener#onThreadCreated(WebSocket,
+     * ThreadType, Thread) onThreadCreated} is called in the thread of the
+     * executor right before {@link WebSocketListener#onThreadStarted(
+     * WebSocket, ThreadType, Thread) onThreadStarted}. Setting an executor
+     * for a type removes the thread factory set for the type by {@link
+     * #setThreadFactory(ThreadType, ThreadFactory)}.
+     * </p>
+     *
+     * @param type
+     *         The thread type.
+     *
+     * @param executor
+     *         The executor. {@code null} to use the default.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         {@code type} is {@code null}.
+     *
+     * @since 2.10
+     */
+    public WebSocketFactory setExecutor(ThreadType type, Executor executor)
+    {
+        mThreadSettings.setExecutor(type, executor);
+
+        return this;
+    }
+
+
+    /**
+     * Run all the internal threads of {@link WebSocket} instances created
+     * by this factory as virtual threads. This is a shortcut to call
+     * {@link #setThreadFactory(ThreadType, ThreadFactory)} with {@link
+     * VirtualThreads#newThreadFactory(String)} for each {@link ThreadType}.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws UnsupportedOperationException
+     *         Virtual threads are not available on this runtime (Java 20
+     *         or older). See {@link VirtualThreads#isAvailable()}.
+     *
+     * @since 2.10
+     */
+    public WebSocketFactory useVirtualThreads()
+    {
+        setThreadFactory(ThreadType.READING_THREAD, VirtualThreads.newThreadFactory("ReadingThread"));
+        setThreadFactory(ThreadType.WRITING_THREAD, VirtualThreads.newThreadFactory("WritingThread"));
+        setThreadFactory(ThreadType.CONNECT_THREAD, VirtualThreads.newThreadFactory("ConnectThread"));
+        setThreadFactory(ThreadType.FINISH_THREAD,  VirtualThreads.newThreadFactory("FinishThread"));
+
+        return this;
+    }
+
+
+    ThreadSettings getThreadSettings()
+    {
+        return mThreadSettings;
+    }
+
+
+    /**
+     * Get the transport of connections. The default value is {@link
+     * Transport#SOCKET}.
+     *
+     * @return
+     *         The transport of connections.
+     *
+     * @since 2.10
+     */
+    public synchronized Transport getTransport()
+    {
+        return mTransport;
+    }
+
+
+    /**
+     * Set the transport of connections made by {@link WebSocket} instances
+     * created by this factory from now on.
+     *
+     * <p>
+     * {@link Transport#SELECTOR} multiplexes connections on a few selector
+     * threads and a bounded pool of worker threads. See its description
+     * for the details and the limitations.
+     * </p>
+     *
+     * @param transport
+     *         The transport. {@code null} to use the default.
+     *
+     * @return
+     *         {@code this} object.
      *
-     * @since 2.3
+     * @since 2.10
      */
-    public boolean getVerifyHostname()
+    public synchronized WebSocketFactory setTransport(Transport transport)
     {
-        return mVerifyHostname;
+        mTransport = (transport == null) ? Transport.SOCKET : transport;
+
+        return this;
     }
 
 
     /**
-     * Set the flag which indicates whether the hostname in the
-     * server's certificate should be verified or not. The default
-     * value is {@code true}.
+     * Get the timer which sends ping/pong frames periodically and closes
+     * sockets which the server does not close after a close frame.
+     * The default value is {@link HashedWheelTimer#getDefault()}.
+     *
+     * @return
+     *         The timer.
+     *
+     * @since 2.10
+     */
+    public synchronized HashedWheelTimer getTimer()
+    {
+        return mTimer;
+    }
+
+
+    /**
+     * Set the timer which {@link WebSocket} instances created by this
+     * factory from now on use to send ping/pong frames periodically and
+     * to close sockets which the server does not close after a close
+     * frame.
      *
      * <p>
-     * Manual hostname verification has been enabled since the version
-     * 2.1. Because the verification is executed manually after {@code
-     * Socket.}{@link java.net.Socket#connect(java.net.SocketAddress, int)
-     * connect(SocketAddress, int)}
-     * succeeds, the hostname verification is always executed even if
-     * you has passed an {@link SSLContext} which naively accepts any
-     * server certificate (e.g. <code><a href=
-     * "https://gist.github.com/TakahikoKawasaki/d07de2218b4b81bf65ac"
-     * >NaiveSSLContext</a></code>). However, this behavior is not
-     * desirable in some cases and you may want to disable the hostname
-     * verification. This setter method exists for the purpose and you
-     * can disable hostname verification by passing {@code false} to
-     * this method.
+     * Connections share the timer, so no thread is created per connection
+     * for these tasks.
      * </p>
      *
-     * @param verifyHostname
-     *         {@code true} to enable hostname verification.
-     *         {@code false} to disable hostname verification.
+     * @param timer
+     *         The timer. {@code null} to use the default.
      *
      * @return
      *         {@code this} object.
      *
-     * @since 2.3
+     * @since 2.10
      */
-    public WebSocketFactory setVerifyHostname(boolean verifyHostname)
+    public synchronized WebSocketFactory setTimer(HashedWheelTimer timer)
     {
-        mVerifyHostname = verifyHostname;
+        mTimer = (timer == null) ? HashedWheelTimer.getDefault() : timer;
 
         return this;
     }
 
 
     /**
-     * Get server names for SNI (Server Name Indication).
+     * Get the number of pre-connected sockets kept for each endpoint.
+     * See {@link #setPreConnectedSocketCount(int)} for details.
      *
      * @return
-     *         List of host names.
+     *         The number of pre-connected sockets kept for each endpoint.
+     *         The default value is 0, which means that the pool of
+     *         pre-connected sockets is disabled.
      *
-     * @since 2.4
+     * @since 2.10
      */
-    public String[] getServerNames()
+    public int getPreConnectedSocketCount()
     {
-        return mServerNames;
+        return mSocketPool.getSize();
     }
 
 
     /**
-     * Set server names for SNI (Server Name Indication).
+     * Set the number of pre-connected sockets kept for each endpoint.
      *
-     * If {@code setServerNames(List<SNIServerName>)} method of
-     * {@link javax.net.ssl.SSLParameters SSLParameters} class is available
-     * in the underlying system, the method is called to set up server names
-     * for SNI (Server Name Indication).
+     * <p>
+     * Normally, {@link WebSocket#connect()} resolves the hostname, connects
+     * to the server, performs the handshake with the proxy server (if any)
+     * and the SSL handshake (if necessary) one after another before sending
+     * the opening handshake. When a positive number is set, this factory
+     * keeps that many sockets per endpoint on which those steps have been
+     * completed, and {@code connect()} of a {@code WebSocket} created by
+     * {@code createSocket} (including {@link WebSocket#recreate()}) takes
+     * one of them if available. The taken socket is replaced in the
+     * background.
+     * </p>
      *
-     * @param serverNames
-     *         List of host names.
+     * <p>
+     * An endpoint is registered by {@link #preConnect(URI)} or when a
+     * {@code WebSocket} for it is created while the pool is enabled. A
+     * background daemon thread checks the pooled sockets every second and
+     * replaces sockets which have been closed by the server or have been
+     * kept longer than {@linkplain #setPreConnectedSocketLifetime(long)
+     * the lifetime}. Note that pooled sockets are connected with the
+     * settings of this factory at that time. Call {@link
+     * #closePreConnectedSockets()} after changing settings such as the
+     * proxy settings or the SSL context.
+     * </p>
+     *
+     * <p>
+     * If {@link WebSocket#getConnectedSocket()} has been called before
+     * {@code connect()}, the socket connected by the method is used and
+     * the pool is not consulted.
+     * </p>
+     *
+     * @param count
+     *         The number of pre-connected sockets kept for each endpoint.
+     *         0 disables the pool and closes the pooled sockets.
      *
      * @return
      *         {@code this} object.
      *
-     * @since 2.4
+     * @throws IllegalArgumentException
+     *         The given number is negative.
+     *
+     * @since 2.10
      */
-    public WebSocketFactory setServerNames(String[] serverNames)
+    public WebSocketFactory setPreConnectedSocketCount(int count)
     {
-        mServerNames = serverNames;
+        if (count < 0)
+        {
+            throw new IllegalArgumentException("count must not be negative.");
+        }
+
+        mSocketPool.setSize(count);
 
         return this;
     }
 
 
     /**
-     * Set a server name for SNI (Server Name Indication).
+     * Get the lifetime of pre-connected sockets in milliseconds.
+     * The default value is 20,000 (20 seconds).
      *
-     * This method internally creates a String array of size 1 which
-     * contains the given {@code serverName} and calls {@link
-     * #setServerNames(String[])}.
+     * @return
+     *         The lifetime of pre-connected sockets in milliseconds.
      *
-     * @param serverName
-     *         A host name.
+     * @since 2.10
+     */
+    public long getPreConnectedSocketLifetime()
+    {
+        return mSocketPool.getLifetime();
+    }
+
+
+    /**
+     * Set the lifetime of pre-connected sockets in milliseconds. Pooled
+     * sockets are closed and replaced when they have been kept for the
+     * lifetime. The value should be shorter than the time after which
+     * servers close connections on which no request has been sent.
+     *
+     * @param lifetime
+     *         The lifetime of pre-connected sockets in milliseconds.
      *
      * @return
      *         {@code this} object.
      *
-     * @since 2.4
+     * @throws IllegalArgumentException
+     *         The given lifetime is not positive.
+     *
+     * @since 2.10
      */
-    public WebSocketFactory setServerName(String serverName)
+    public WebSocketFactory setPreConnectedSocketLifetime(long lifetime)
     {
-        return setServerNames(new String[] { serverName });
+        if (lifetime <= 0)
+        {
+            throw new IllegalArgumentException("lifetime must be positive.");
+        }
+
+        mSocketPool.setLifetime(lifetime);
+
+        return this;
+    }
+
+
+    /**
+     * Start keeping pre-connected sockets for the endpoint.
+     *
+     * <p>
+     * This method is an alias of {@link #preConnect(URI) preConnect}{@code
+     * (}{@link URI#create(String) URI.create}{@code (uri))}.
+     * </p>
+     *
+     * @param uri
+     *         The URI of the WebSocket endpoint on the server side.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given URI is {@code null} or violates RFC 2396.
+     *
+     * @since 2.10
+     */
+    public WebSocketFactory preConnect(String uri)
+    {
+        if (uri == null)
+        {
+            throw new IllegalArgumentException("The given URI is null.");
+        }
+
+        return preConnect(URI.create(uri));
+    }
+
+
+    /**
+     * Start keeping pre-connected sockets for the endpoint. The sockets
+     * are connected in the background. This method does nothing if
+     * {@linkplain #setPreConnectedSocketCount(int) the number of
+     * pre-connected sockets} is 0 or the endpoint has been registered.
+     *
+     * @param uri
+     *         The URI of the WebSocket endpoint on the server side.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @throws IllegalArgumentException
+     *         The given URI is {@code null} or its scheme or host is
+     *         invalid.
+     *
+     * @since 2.10
+     */
+    public WebSocketFactory preConnect(URI uri)
+    {
+        if (uri == null)
+        {
+            throw new IllegalArgumentException("The given URI is null.");
+        }
+
+        boolean secure = isSecureConnectionRequired(uri.getScheme());
+        String host    = Misc.extractHost(uri);
+
+        if (host == null || host.length() == 0)
+        {
+            throw new IllegalArgumentException("The host part is empty.");
+        }
+
+        if (secure)
+        {
+            // Apply the settings of the SSL session cache.
+            configureSSLSessionContext();
+        }
+
+        mSocketPool.register(host, determinePort(uri.getPort(), secure), secure, getConnectionTimeout());
+
+        return this;
+    }
+
+
+    /**
+     * Close all the pre-connected sockets and forget the endpoints for
+     * which sockets have been kept. The number of pre-connected sockets
+     * is not changed, so endpoints are registered again as {@code
+     * WebSocket} instances are created.
+     *
+     * @return
+     *         {@code this} object.
+     *
+     * @since 2.10
+     */
+    public WebSocketFactory closePreConnectedSockets()
+    {
+        int size = mSocketPool.getSize();
+
+        mSocketPool.close();
+        mSocketPool.setSize(size);
+
+        return this;
+    }
+
+
+    /**
+     * Get the scheduler to connect many {@link WebSocket} instances with
+     * limited concurrency. The scheduler is created when this method is
+     * called for the first time, and the same instance is returned after
+     * that. It can connect WebSocket instances created by any factory.
+     *
+     * <pre style="border-left: solid 5px lightgray;"> List&lt;WebSocket&gt; websockets = ...;
+     *
+     * List&lt;Future&lt;WebSocket&gt;&gt; futures = factory.getConnectScheduler()
+     *     .{@link ConnectScheduler#setMaxConcurrency(int) setMaxConcurrency}(32)
+     *     .{@link ConnectScheduler#setMaxConcurrencyPerHost(int) setMaxConcurrencyPerHost}(8)
+     *     .{@link ConnectScheduler#connect(java.util.Collection) connect}(websockets);</pre>
+     *
+     * @return
+     *         The connect scheduler of this factory.
+     *
+     * @since 2.10
+     */
+    public synchronized ConnectScheduler getConnectScheduler()
+    {
+        if (mConnectScheduler == null)
+        {
+            mConnectScheduler = new ConnectScheduler();
+        }
+
+        return mConnectScheduler;
     }
 
 
@@ -704,14 +1493,68 @@ public class WebSocketFactory
         // Determine the path.
         path = determinePath(path);
 
+        if (secure)
+        {
+            // Apply the settings of the SSL session cache.
+            configureSSLSessionContext();
+        }
+
         // Create a Socket instance and a connector to connect to the server.
         SocketConnector connector = createRawSocket(host, port, secure, timeout);
 
+        // Let the connector use a pre-connected socket if available.
+        usePreConnectedSocket(connector, host, determinePort(port, secure), secure, timeout);
+
         // Create a WebSocket instance.
         return createWebSocket(secure, userInfo, host, port, path, query, connector);
     }
 
 
+    private void usePreConnectedSocket(
+            SocketConnector connector, String host, int port, boolean secure, int timeout)
+    {
+        if (mSocketPool.getSize() == 0 || connector.isChannelTransport())
+        {
+            // Pre-connected sockets are not used by the selector transport.
+            return;
+        }
+
+        // Keep sockets for the endpoint from now on.
+        mSocketPool.register(host, port, secure, timeout);
+
+        connector.setSocketPool(mSocketPool, SocketPool.key(host, port, secure));
+    }
+
+
+    private void configureSSLSessionContext()
+    {
+        SSLContext context = getSSLContext();
+
+        if (context == null)
+        {
+            return;
+        }
+
+        // The cache of sessions used to resume sessions with servers.
+        SSLSessionContext sessionContext = context.getClientSessionContext();
+
+        if (sessionContext == null)
+        {
+            return;
+        }
+
+        if (0 <= mSSLSessionCacheSize)
+        {
+            sessionContext.setSessionCacheSize(mSSLSessionCacheSize);
+        }
+
+        if (0 <= mSSLSessionTimeout)
+        {
+            sessionContext.setSessionTimeout(mSSLSessionTimeout);
+        }
+    }
+
+
     private static boolean isSecureConnectionRequired(String scheme)
     {
         if (scheme == null || scheme.length() == 0)
@@ -751,8 +1594,15 @@ public class WebSocketFactory
     }
 
 
-    private SocketConnector createRawSocket(
+    SocketConnector createRawSocket(
             String host, int port, boolean secure, int timeout) throws IOException
+    {
+        return createRawSocket(host, port, secure, timeout, getTransport());
+    }
+
+
+    SocketConnector createRawSocket(
+            String host, int port, boolean secure, int timeout, Transport transport) throws IOException
     {
         // Determine the port number. Especially, if 'port' is -1,
         // it is converted to 80 or 443.
@@ -767,18 +1617,18 @@ public class WebSocketFactory
         if (proxied)
         {
             // Create a connector to connect to the proxy server.
-            return createProxiedRawSocket(host, port, secure, timeout);
+            return createProxiedRawSocket(host, port, secure, timeout, transport);
         }
         else
         {
             // Create a connector to connect to the WebSocket endpoint directly.
-            return createDirectRawSocket(host, port, secure, timeout);
+            return createDirectRawSocket(host, port, secure, timeout, transport);
         }
     }
 
 
     private SocketConnector createProxiedRawSocket(
-            String host, int port, boolean secure, int timeout)
+            String host, int port, boolean secure, int timeout, Transport transport)
     {
         // Determine the port number of the proxy server.
         // Especially, if getPort() returns -1, the value
@@ -798,16 +1648,47 @@ public class WebSocketFactory
         SSLSocketFactory sslSocketFactory = secure ?
                 (SSLSocketFactory)mSocketFactorySettings.selectSocketFactory(secure) : null;
 
+        // SSLContext for the SSL engine if the selector transport is used.
+        SSLContext engineContext = null;
+
+        // The selector transport does not support TLS with the proxy server.
+        boolean channel = transport == Transport.SELECTOR &&
+            mProxySettings.isSecure() == false && mProxySettings.getSocketFactory() == null;
+
+        if (channel && secure)
+        {
+            engineContext = selectEngineContext();
+            channel = (engineContext != null);
+        }
+
+        if (channel)
+        {
+            factory          = ChannelSocketFactory.getInstance();
+            sslSocketFactory = null;
+        }
+
         // Create an instance that will execute the task to connect to the server later.
-        return new SocketConnector(
+        SocketConnector connector = new SocketConnector(
                 factory, address, timeout, mProxySettings.getServerNames(), handshaker,
-                sslSocketFactory, host, port)
-                .setDualStackSettings(mDualStackMode, mDualStackFallbackDelay)
-                .setVerifyHostname(mVerifyHostname);
+                sslSocketFactory, host, port);
+
+        if (channel)
+        {
+            connector.setChannelTransport(engineContext);
+        }
+
+        return connector
+                .setProxyPipelined(mProxySettings.isPipelined())
+                .setDualStackSettings(mDualStackMode, mDualStackFallbackDelay,
+                        mAdaptiveDualStackFallbackDelay, mDualStackExecutor)
+                .setVerifyHostname(mVerifyHostname)
+                .setHostResolver(mHostResolver)
+                .setSSLHandshakeCounter(mSSLHandshakeCounter);
     }
 
 
-    private SocketConnector createDirectRawSocket(String host, int port, boolean secure, int timeout)
+    private SocketConnector createDirectRawSocket(
+            String host, int port, boolean secure, int timeout, Transport transport)
     {
         // Select a socket factory.
         SocketFactory factory = mSocketFactorySettings.selectSocketFactory(secure);
@@ -815,10 +1696,69 @@ public class WebSocketFactory
         // The address to connect to.
         Address address = new Address(host, port);
 
+        // SSLContext for the SSL engine if the selector transport is used.
+        SSLContext engineContext = null;
+
+        // The selector transport cannot use a custom socket factory.
+        boolean channel = transport == Transport.SELECTOR &&
+            (secure || mSocketFactorySettings.getSocketFactory() == null);
+
+        if (channel && secure)
+        {
+            engineContext = selectEngineContext();
+            channel = (engineContext != null);
+        }
+
+        if (channel)
+        {
+            // TLS is performed by an SSL engine after the connection.
+            factory = ChannelSocketFactory.getInstance();
+        }
+
         // Create an instance that will execute the task to connect to the server later.
-        return new SocketConnector(factory, address, timeout, mServerNames)
-                .setDualStackSettings(mDualStackMode, mDualStackFallbackDelay)
-                .setVerifyHostname(mVerifyHostname);
+        SocketConnector connector = new SocketConnector(factory, address, timeout, mServerNames);
+
+        if (channel)
+        {
+            connector.setChannelTransport(engineContext);
+        }
+
+        return connector
+                .setDualStackSettings(mDualStackMode, mDualStackFallbackDelay,
+                        mAdaptiveDualStackFallbackDelay, mDualStackExecutor)
+                .setVerifyHostname(mVerifyHostname)
+                .setHostResolver(mHostResolver)
+                .setSSLHandshakeCounter(mSSLHandshakeCounter);
+    }
+
+
+    /**
+     * Select an SSL context for SSL engines of the selector transport.
+     * {@code null} is returned if only an SSL socket factory is available.
+     */
+    private SSLContext selectEngineContext()
+    {
+        SSLContext context = getSSLContext();
+
+        if (context != null)
+        {
+            return context;
+        }
+
+        if (getSSLSocketFactory() != null)
+        {
+            // An SSL engine cannot be created from a socket factory.
+            return null;
+        }
+
+        try
+        {
+            return SSLContext.getDefault();
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
     }
 
 
@@ -1080,8 +1080,8 @@ public class WebSocketFrame
         if (frame.getFin() == false)
         {
             // The compression must be applied to this frame and
-            // all the subsequent continuation frames, but the
-            // current implementation does not support the behavior.
+            // all the subsequent continuation frames. It is done
+            // by compressFragment().
             return frame;
         }
 
@@ -1126,6 +1126,50 @@ public class WebSocketFrame
     }
 
 
+    /**
+     * Compress the payload of a frame of a fragmented message. The first
+     * frame (text or binary) and the subsequent continuation frames have
+     * to be given in order.
+     *
+     * @return
+     *         {@code true} if the payload was compressed. {@code false}
+     *         if the extension does not support streaming compression.
+     */
+    static boolean compressFragment(
+            WebSocketFrame frame, PerMessageCompressionExtension pmce) throws WebSocketException
+    {
+        // The plain payload before compression.
+        byte[] payload = frame.getPayload();
+
+        if (payload == null)
+        {
+            payload = new byte[0];
+        }
+
+        // Compress the payload. The compression context is shared by
+        // all the frames of the message.
+        byte[] compressed = pmce.compressFragment(payload, frame.getFin());
+
+        if (compressed == null)
+        {
+            // Streaming compression is not supported.
+            return false;
+        }
+
+        // Replace the plain payload with the compressed data.
+        frame.setPayload(compressed);
+
+        // Set Per-Message Compressed Bit only on the first frame
+        // (See RFC 7692, 6.1. Compression).
+        if (frame.isContinuationFrame() == false)
+        {
+            frame.setRsv1(true);
+        }
+
+        return true;
+    }
+
+
     private static byte[] compress(byte[] data, PerMessageCompressionExtension pmce)
     {
         try
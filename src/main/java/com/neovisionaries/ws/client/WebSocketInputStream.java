@@ -29,13 +29,49 @@ class WebSocketInputStream extends FilterInputStream
     }
 
 
-    public String readLine() throws IOException
+    public WebSocketFrame readFrame() throws IOException, WebSocketException
     {
-        return Misc.readLine(this, "UTF-8");
+        WebSocketFrame frame = new WebSocketFrame();
+
+        // FIN, RSV1-3, opcode, mask flag and the payload length.
+        long payloadLength = readFrameHeader(frame);
+
+        // Masking key
+        byte[] maskingKey = null;
+
+        if (frame.getMask())
+        {
+            // Read the masking key. (This should never happen.)
+            maskingKey = new byte[4];
+            readBytes(maskingKey, 4);
+        }
+
+        if (Integer.MAX_VALUE < payloadLength)
+        {
+            // In Java, the maximum array size is Integer.MAX_VALUE.
+            // Skip the payload and raise an exception.
+            skipQuietly(payloadLength);
+            throw new WebSocketException(
+                WebSocketError.TOO_LONG_PAYLOAD,
+                "The payload length of a frame exceeds the maximum array size in Java.");
+        }
+
+        // Read the payload if the payload length is not 0.
+        byte[] payload = readPayload(payloadLength, frame.getMask(), maskingKey);
+
+        return frame.setPayload(payload);
     }
 
 
-    public WebSocketFrame readFrame() throws IOException, WebSocketException
+    /**
+     * Read the header of a frame up to the payload length and set the
+     * flags and the opcode to the given frame. The masking key, if any,
+     * and the payload are left in the stream.
+     *
+     * @return
+     *         The payload length.
+     */
+    long readFrameHeader(WebSocketFrame frame) throws IOException, WebSocketException
     {
         // Buffer.
         byte[] buffer = new byte[8];
@@ -120,49 +156,31 @@ class WebSocketInputStream extends FilterInputStream
                              ((buffer[7] & 0xFF)      ));
         }
 
-        // Masking key
-        byte[] maskingKey = null;
-
-        if (mask)
-        {
-            // Read the masking key. (This should never happen.)
-            maskingKey = new byte[4];
-            readBytes(maskingKey, 4);
-        }
-
-        if (Integer.MAX_VALUE < payloadLength)
-        {
-            // In Java, the maximum array size is Integer.MAX_VALUE.
-            // Skip the payload and raise an exception.
-            skipQuietly(payloadLength);
-            throw new WebSocketException(
-                WebSocketError.TOO_LONG_PAYLOAD,
-                "The payload length of a frame exceeds the maximum array size in Java.");
-        }
-
-        // Read the payload if the payload length is not 0.
-        byte[] payload = readPayload(payloadLength, mask, maskingKey);
-
-        // Create a WebSocketFrame instance that represents a frame.
-        return new WebSocketFrame()
-            .setFin(fin)
+        frame.setFin(fin)
             .setRsv1(rsv1)
             .setRsv2(rsv2)
             .setRsv3(rsv3)
             .setOpcode(opcode)
-            .setMask(mask)
-            .setPayload(payload);
+            .setMask(mask);
+
+        return payloadLength;
     }
 
 
     void readBytes(byte[] buffer, int length) throws IOException, WebSocketException
+    {
+        readBytes(buffer, 0, length);
+    }
+
+
+    void readBytes(byte[] buffer, int offset, int length) throws IOException, WebSocketException
     {
         // Read
         int total = 0;
 
         while (total < length)
         {
-            int count = read(buffer, total, length - total);
+            int count = read(buffer, offset + total, length - total);
 
             if (count <= 0)
             {
@@ -175,7 +193,7 @@ class WebSocketInputStream extends FilterInputStream
     }
 
 
-    private void skipQuietly(long length)
+    void skipQuietly(long length)
     {
         try
         {
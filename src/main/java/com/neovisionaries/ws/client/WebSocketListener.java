@@ -626,4 +626,31 @@ public interface WebSocketListener
      * @since 1.21
      */
     void onSendingHandshake(WebSocket websocket, String requestLine, List<String[]> headers) throws Exception;
+
+
+    /**
+     * Called when a connection attempt by {@link WebSocket#connect()} has
+     * finished either successfully or not. This method is called before
+     * {@link #onConnected(WebSocket, Map) onConnected} or {@link
+     * #onConnectError(WebSocket, WebSocketException) onConnectError}.
+     *
+     * <p>
+     * The argument tells the time taken by each phase of the connection
+     * attempt and which IP address won the race among the IP addresses of
+     * the server, so that slow phases can be monitored.
+     * </p>
+     *
+     * @param websocket
+     *         The WebSocket.
+     *
+     * @param timings
+     *         The time taken by each phase of the connection attempt.
+     *
+     * @throws Exception
+     *         An exception thrown by an implementation of this method.
+     *         The exception is passed to {@link #handleCallbackError(WebSocket, Throwable)}.
+     *
+     * @since 2.10
+     */
+    void onConnectTimings(WebSocket websocket, ConnectTimings timings) throws Exception;
 }
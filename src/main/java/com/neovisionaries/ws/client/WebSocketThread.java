@@ -16,49 +16,282 @@
 package com.neovisionaries.ws.client;
 
 
-abstract class WebSocketThread extends Thread
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+
+abstract class WebSocketThread implements Runnable
 {
+    private static final int RUNNING    = 0;
+    private static final int SUSPENDING = 1;
+    private static final int SUSPENDED  = 2;
+
     protected final WebSocket mWebSocket;
+    private final String mName;
     private final ThreadType mThreadType;
+    private final Object mThreadLock = new Object();
+
+    // The thread which runs this task. When this task is given to an
+    // Executor, it is known only while the task is running.
+    private Thread mThread;
+    private boolean mExecuted;
+    private boolean mStarted;
+
+    // RUNNING, SUSPENDING or SUSPENDED. See suspend() and resume().
+    private int mRunState = RUNNING;
+    private boolean mResumeRequested;
 
 
     WebSocketThread(String name, WebSocket ws, ThreadType type)
     {
-        super(name);
-
+        mName       = name;
         mWebSocket  = ws;
         mThreadType = type;
     }
 
 
-    @Override
+    /**
+     * Start this task in a thread created by the thread factory for the
+     * thread type, or give this task to the executor for the thread type.
+     */
+    public void start()
+    {
+        ThreadSettings settings = mWebSocket.getThreadSettings();
+        Executor executor = settings.getExecutor(mThreadType);
+
+        if (executor != null)
+        {
+            synchronized (mThreadLock)
+            {
+                mExecuted = true;
+            }
+
+            // onThreadCreated() is called in the thread of the executor.
+            executor.execute(this);
+            return;
+        }
+
+        Thread thread = createThread(settings.getThreadFactory(mThreadType));
+
+        synchronized (mThreadLock)
+        {
+            mThread = thread;
+        }
+
+        // Execute onThreadCreated() of the listeners.
+        callOnThreadCreated(thread);
+
+        thread.start();
+    }
+
+
+    private Thread createThread(ThreadFactory factory)
+    {
+        Thread thread = null;
+
+        if (factory != null)
+        {
+            thread = factory.newThread(this);
+        }
+
+        if (thread == null)
+        {
+            // The default.
+            thread = new Thread(this, mName);
+        }
+
+        return thread;
+    }
+
+
     public void run()
     {
+        boolean first;
+        boolean executed;
+        Thread thread = Thread.currentThread();
+
+        synchronized (mThreadLock)
+        {
+            first    = (mStarted == false);
+            executed = mExecuted;
+            mStarted = true;
+            mThread  = thread;
+        }
+
         ListenerManager lm = mWebSocket.getListenerManager();
 
-        if (lm != null)
+        if (first)
         {
-            // Execute onThreadStarted() of the listeners.
-            lm.callOnThreadStarted(mThreadType, this);
+            if (executed)
+            {
+                // The thread of the executor was not known before.
+                callOnThreadCreated(thread);
+            }
+
+            if (lm != null)
+            {
+                // Execute onThreadStarted() of the listeners.
+                lm.callOnThreadStarted(mThreadType, thread);
+            }
         }
 
-        runMain();
+        boolean suspended = false;
 
-        if (lm != null)
+        try
         {
-            // Execute onThreadStopping() of the listeners.
-            lm.callOnThreadStopping(mThreadType, this);
+            suspended = runUntilSuspended();
+        }
+        finally
+        {
+            if (suspended == false && lm != null)
+            {
+                // Execute onThreadStopping() of the listeners.
+                lm.callOnThreadStopping(mThreadType, thread);
+            }
+
+            synchronized (mThreadLock)
+            {
+                // The thread may be returned to an executor. Clear the
+                // interrupted status set by interrupt() so that it does
+                // not affect the next task of the thread.
+                mThread = null;
+                Thread.interrupted();
+            }
         }
     }
 
 
-    public void callOnThreadCreated()
+    /**
+     * Call runMain() until it finishes or suspends this task.
+     *
+     * @return
+     *         {@code true} if this task has been suspended.
+     */
+    private boolean runUntilSuspended()
+    {
+        while (true)
+        {
+            runMain();
+
+            synchronized (mThreadLock)
+            {
+                if (mRunState != SUSPENDING)
+                {
+                    // Finished.
+                    return false;
+                }
+
+                if (mResumeRequested == false)
+                {
+                    // resume() will run this task again.
+                    mRunState = SUSPENDED;
+                    return true;
+                }
+
+                // resume() was called while suspending. Continue
+                // in this thread.
+                mRunState        = RUNNING;
+                mResumeRequested = false;
+            }
+        }
+    }
+
+
+    /**
+     * Let the task be suspended when runMain() returns. The subclass must
+     * arrange that {@link #resume()} is called later, and then return from
+     * runMain(). onThreadStopping() is not called for the suspension.
+     */
+    protected void suspend()
+    {
+        synchronized (mThreadLock)
+        {
+            mRunState        = SUSPENDING;
+            mResumeRequested = false;
+        }
+    }
+
+
+    /**
+     * Run the suspended task again in a thread created by the thread
+     * factory for the thread type, by the executor for the thread type,
+     * or by the worker threads of the selector transport. Nothing is
+     * done if the task is not suspended.
+     */
+    protected void resume()
+    {
+        synchronized (mThreadLock)
+        {
+            if (mRunState == SUSPENDING)
+            {
+                // runUntilSuspended() will call runMain() again.
+                mResumeRequested = true;
+                return;
+            }
+
+            if (mRunState != SUSPENDED)
+            {
+                // Running.
+                return;
+            }
+
+            mRunState = RUNNING;
+        }
+
+        ThreadSettings settings = mWebSocket.getThreadSettings();
+        Executor executor = settings.getExecutor(mThreadType);
+        ThreadFactory factory = settings.getThreadFactory(mThreadType);
+
+        if (executor == null && factory == null)
+        {
+            executor = SelectorGroup.getDefault().getWorkers();
+        }
+
+        if (executor != null)
+        {
+            executor.execute(this);
+        }
+        else
+        {
+            createThread(factory).start();
+        }
+    }
+
+
+    private void callOnThreadCreated(Thread thread)
     {
         ListenerManager lm = mWebSocket.getListenerManager();
 
         if (lm != null)
         {
-            lm.callOnThreadCreated(mThreadType, this);
+            lm.callOnThreadCreated(mThreadType, thread);
+        }
+    }
+
+
+    /**
+     * Interrupt the thread which runs this task.
+     */
+    protected void interrupt()
+    {
+        synchronized (mThreadLock)
+        {
+            if (mThread != null)
+            {
+                mThread.interrupt();
+            }
+        }
+    }
+
+
+    /**
+     * Check if the thread which runs this task has been interrupted.
+     */
+    protected boolean isInterrupted()
+    {
+        synchronized (mThreadLock)
+        {
+            return mThread != null && mThread.isInterrupted();
         }
     }
 
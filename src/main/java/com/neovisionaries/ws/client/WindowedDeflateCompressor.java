@@ -0,0 +1,1162 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.util.Arrays;
+
+
+/**
+ * DEFLATE (<a href="http://tools.ietf.org/html/rfc1951">RFC 1951</a>)
+ * compressor implementation from scratch whose LZ77 sliding window
+ * size can be limited.
+ *
+ * <p>
+ * {@link java.util.zip.Deflater} always uses a 32 KB sliding window,
+ * so it cannot be used when the server has agreed on a smaller
+ * {@code client_max_window_bits}. This implementation never emits a
+ * distance longer than the window size given to the constructor.
+ * In addition, when context takeover is enabled, the plain data of
+ * previous messages are remembered and referred to by the subsequent
+ * messages.
+ * </p>
+ *
+ * <p>
+ * The output of {@link #compress(byte[])} complies with
+ * <a href="https://tools.ietf.org/html/rfc7692#section-7.2.1"
+ * >7.2.1. Compression</a> of RFC 7692. That is, the output ends with
+ * an empty non-compressed block whose last four octets (0x00 0x00
+ * 0xFF 0xFF) have been removed.
+ * </p>
+ */
+class WindowedDeflateCompressor
+{
+    private static final int MIN_MATCH = 3;
+    private static final int MAX_MATCH = 258;
+    private static final int MAX_CHAIN_LENGTH = 64;
+    private static final int NICE_MATCH = 128;
+    private static final int MIN_HASH_BITS = 8;
+    private static final int MAX_HASH_BITS = 15;
+    private static final int MAX_BLOCK_SYMBOLS = 16384;
+    private static final int MAX_STORED_LENGTH = 65535;
+    private static final int END_OF_BLOCK = 256;
+    private static final int LITERAL_LENGTH_CODES = 286;
+    private static final int DISTANCE_CODES = 30;
+    private static final int CODE_LENGTH_CODES = 19;
+    private static final int MAX_CODE_LENGTH = 15;
+    private static final int MAX_CODE_LENGTH_CODE_LENGTH = 7;
+
+    private static final int[] LENGTH_BASES = {
+          3,   4,   5,   6,   7,   8,   9,  10,  11,  13,
+         15,  17,  19,  23,  27,  31,  35,  43,  51,  59,
+         67,  83,  99, 115, 131, 163, 195, 227, 258
+    };
+
+    private static final int[] LENGTH_EXTRA_BITS = {
+          0,   0,   0,   0,   0,   0,   0,   0,   1,   1,
+          1,   1,   2,   2,   2,   2,   3,   3,   3,   3,
+          4,   4,   4,   4,   5,   5,   5,   5,   0
+    };
+
+    private static final int[] DISTANCE_BASES = {
+            1,     2,     3,     4,     5,     7,     9,    13,    17,    25,
+           33,    49,    65,    97,   129,   193,   257,   385,   513,   769,
+         1025,  1537,  2049,  3073,  4097,  6145,  8193, 12289, 16385, 24577
+    };
+
+    private static final int[] DISTANCE_EXTRA_BITS = {
+            0,     0,     0,     0,     1,     1,     2,     2,     3,     3,
+            4,     4,     5,     5,     6,     6,     7,     7,     8,     8,
+            9,     9,    10,    10,    11,    11,    12,    12,    13,    13
+    };
+
+    private static final int[] CODE_LENGTH_ORDER =
+        { 16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15 };
+
+    // Index: match length (3-258), Value: index of LENGTH_BASES.
+    private static final int[] LENGTH_CODE_INDICES = buildLengthCodeIndices();
+
+    // Code lengths and code values of "fixed Huffman codes" (3.2.6).
+    private static final int[] FIXED_LITERAL_LENGTH_LENS  = buildFixedLiteralLengthLens();
+    private static final int[] FIXED_LITERAL_LENGTH_CODES = buildCodes(FIXED_LITERAL_LENGTH_LENS);
+    private static final int[] FIXED_DISTANCE_LENS        = buildFixedDistanceLens();
+    private static final int[] FIXED_DISTANCE_CODES       = buildCodes(FIXED_DISTANCE_LENS);
+
+    private final int mWindowSize;
+    private final boolean mContextTakeover;
+
+    // The plain data compressed so far. The window is followed by the
+    // input being compressed. When the buffer is full, the last window
+    // size bytes are moved to the top of the buffer.
+    private byte[] mBuffer;
+    private int mEnd;
+
+    // The oldest position that may be referred to. Data before it
+    // belong to previous messages which must not be referred to.
+    private int mStart;
+
+    // Hash chains to find matches. mHead[hash] holds the latest position
+    // whose 3 bytes have the hash value and mPrev[position & mWindowMask]
+    // holds the previous position which has the same hash value. They are
+    // kept across calls, so the window does not have to be hashed again.
+    private int[] mHead;
+    private int[] mPrev;
+    private int mHashMask;
+    private final int mWindowMask;
+
+    // The next position to register with the hash chains.
+    private int mInserted;
+
+    // Symbols of the current block.
+    private int[] mLiteralLengths;
+    private int[] mDistances;
+
+    // The distance of the match found by findLongestMatch().
+    private int mMatchDistance;
+
+    // The state before the last call of compress() for rollback().
+    // mSavedWindow holds the window when the buffer slid in the call.
+    private int mRollbackStart;
+    private int mRollbackEnd;
+    private byte[] mSavedWindow;
+
+    // Bits which have not filled a byte yet.
+    private final BitWriter mWriter = new BitWriter();
+
+
+    /**
+     * Constructor.
+     *
+     * @param windowSize
+     *         The maximum distance that the compressed data may refer
+     *         to. A power of 2 from 256 to 32768.
+     *
+     * @param contextTakeover
+     *         {@code true} to keep the sliding window across messages.
+     */
+    public WindowedDeflateCompressor(int windowSize, boolean contextTakeover)
+    {
+        mWindowSize      = windowSize;
+        mContextTakeover = contextTakeover;
+        mWindowMask      = windowSize - 1;
+    }
+
+
+    public int getWindowSize()
+    {
+        return mWindowSize;
+    }
+
+
+    public boolean isContextTakeover()
+    {
+        return mContextTakeover;
+    }
+
+
+    /**
+     * Compress a message.
+     *
+     * <p>
+     * When context takeover is enabled, the sliding window is updated
+     * by this call. If the caller decides not to send the compressed
+     * data, {@link #rollback()} must be called so that the sliding
+     * window is kept in sync with the one of the peer.
+     * </p>
+     */
+    public byte[] compress(byte[] input)
+    {
+        return compress(input, true);
+    }
+
+
+    /**
+     * Compress a fragment of a message.
+     *
+     * <p>
+     * Fragments of a message have to be given in order, and {@code fin}
+     * has to be {@code true} for the last fragment. The fragments after
+     * the first one may refer to the preceding ones. Concatenation of
+     * the outputs is the compressed message. Bits that do not fill a
+     * byte are carried over to the output for the next fragment.
+     * </p>
+     *
+     * @param input
+     *         A fragment of the plain message.
+     *
+     * @param fin
+     *         {@code true} if the fragment is the last one.
+     */
+    public byte[] compress(byte[] input, boolean fin)
+    {
+        if (mBuffer == null)
+        {
+            allocate();
+        }
+
+        mRollbackStart = mStart;
+        mRollbackEnd   = mEnd;
+        mSavedWindow   = null;
+
+        ByteArray output = new ByteArray(input.length / 2 + 16);
+        mWriter.setOutput(output);
+
+        // Append the input to the buffer piece by piece and compress it.
+        for (int offset = 0; offset < input.length; )
+        {
+            if (mEnd == mBuffer.length)
+            {
+                slide();
+            }
+
+            int length = Math.min(mBuffer.length - mEnd, input.length - offset);
+            System.arraycopy(input, offset, mBuffer, mEnd, length);
+
+            deflate(mEnd, mEnd + length, mWriter);
+
+            mEnd   += length;
+            offset += length;
+        }
+
+        if (fin)
+        {
+            // An empty non-compressed block (BFINAL=0, BTYPE=00) whose
+            // LEN and NLEN (0x00 0x00 0xFF 0xFF) are omitted.
+            mWriter.writeBits(0, 3);
+            mWriter.align();
+
+            if (!mContextTakeover)
+            {
+                // The next message must not refer to this one.
+                forget();
+            }
+        }
+
+        return output.toBytes();
+    }
+
+
+    /**
+     * Restore the sliding window to the state before the last call
+     * of {@link #compress(byte[])}. A message compressed fragment by
+     * fragment cannot be rolled back.
+     */
+    public void rollback()
+    {
+        if (mBuffer == null)
+        {
+            return;
+        }
+
+        if (mSavedWindow != null)
+        {
+            // The buffer slid while the message was compressed.
+            System.arraycopy(mSavedWindow, 0, mBuffer, 0, mSavedWindow.length);
+            mStart = 0;
+            mEnd   = mSavedWindow.length;
+        }
+        else
+        {
+            mStart = mRollbackStart;
+            mEnd   = mRollbackEnd;
+        }
+
+        mSavedWindow = null;
+
+        // The hash chains may contain the positions of the discarded
+        // data. Rebuild them from the window.
+        Arrays.fill(mHead, -1);
+        mInserted = Math.max(mStart, mEnd - mWindowSize);
+        insertUpTo(mEnd, mEnd);
+    }
+
+
+    /**
+     * Forget the sliding window.
+     */
+    public void reset()
+    {
+        forget();
+
+        mSavedWindow = null;
+        mWriter.clear();
+    }
+
+
+    private void allocate()
+    {
+        // Let the buffer hold the window and at least 32 KB of input,
+        // so blocks are not cut short when the window is small. The
+        // buffer slides by a multiple of the window size, which keeps
+        // the indices of mPrev unchanged.
+        mBuffer = new byte[mWindowSize + Math.max(mWindowSize, 32768)];
+
+        int hashBits = computeHashBits(mWindowSize);
+        mHashMask = (1 << hashBits) - 1;
+        mHead     = new int[1 << hashBits];
+        mPrev     = new int[mWindowSize];
+        Arrays.fill(mHead, -1);
+
+        mLiteralLengths = new int[MAX_BLOCK_SYMBOLS];
+        mDistances      = new int[MAX_BLOCK_SYMBOLS];
+    }
+
+
+    private void forget()
+    {
+        // The positions registered with the hash chains are all older
+        // than mStart, so they are never referred to.
+        mStart         = mEnd;
+        mInserted      = mEnd;
+        mRollbackStart = mEnd;
+        mRollbackEnd   = mEnd;
+    }
+
+
+    private void slide()
+    {
+        int delta = mEnd - mWindowSize;
+
+        if (mSavedWindow == null && mRollbackStart < mRollbackEnd)
+        {
+            // Keep the window before this call for rollback().
+            mSavedWindow = Arrays.copyOfRange(mBuffer,
+                    Math.max(mRollbackStart, mRollbackEnd - mWindowSize), mRollbackEnd);
+        }
+
+        // Move the window to the top of the buffer.
+        System.arraycopy(mBuffer, delta, mBuffer, 0, mWindowSize);
+
+        mEnd          -= delta;
+        mStart         = Math.max(0, mStart - delta);
+        mInserted     -= delta;
+        mRollbackStart = Math.max(0, mRollbackStart - delta);
+        mRollbackEnd   = Math.max(0, mRollbackEnd - delta);
+
+        slide(mHead, delta);
+        slide(mPrev, delta);
+    }
+
+
+    private static void slide(int[] positions, int delta)
+    {
+        for (int i = 0; i < positions.length; ++i)
+        {
+            int position = positions[i] - delta;
+
+            positions[i] = (0 <= position) ? position : -1;
+        }
+    }
+
+
+    private void deflate(int start, int end, BitWriter writer)
+    {
+        byte[] data = mBuffer;
+        int[] literalLengths = mLiteralLengths;
+        int[] distances      = mDistances;
+        int nSymbols   = 0;
+        int blockStart = start;
+        int position   = start;
+
+        // Register the positions of the window which needed the input
+        // to compute their hash values.
+        insertUpTo(position, end);
+
+        while (position < end)
+        {
+            int length = findLongestMatch(position, end);
+
+            if (MIN_MATCH <= length)
+            {
+                // <length, backward distance> pair.
+                literalLengths[nSymbols] = length;
+                distances[nSymbols]      = mMatchDistance;
+
+                position += length;
+            }
+            else
+            {
+                // Literal byte.
+                literalLengths[nSymbols] = data[position] & 0xFF;
+                distances[nSymbols]      = 0;
+
+                position += 1;
+            }
+
+            insertUpTo(position, end);
+
+            ++nSymbols;
+
+            if (nSymbols == MAX_BLOCK_SYMBOLS)
+            {
+                writeBlock(data, blockStart, position, literalLengths, distances, nSymbols, writer);
+                blockStart = position;
+                nSymbols   = 0;
+            }
+        }
+
+        if (nSymbols != 0)
+        {
+            writeBlock(data, blockStart, position, literalLengths, distances, nSymbols, writer);
+        }
+    }
+
+
+    private static int computeHashBits(int length)
+    {
+        int bits = MIN_HASH_BITS;
+
+        while (bits < MAX_HASH_BITS && (1 << bits) < length)
+        {
+            ++bits;
+        }
+
+        return bits;
+    }
+
+
+    private int hash(int position)
+    {
+        byte[] data = mBuffer;
+
+        int h = ((data[position] & 0xFF) << 16)
+              | ((data[position + 1] & 0xFF) << 8)
+              |  (data[position + 2] & 0xFF);
+
+        return ((h * 0x9E3779B1) >>> 15) & mHashMask;
+    }
+
+
+    /**
+     * Register the positions before {@code position} with the hash
+     * chains in order. At least 3 bytes are needed to compute a hash
+     * value, so the last 2 positions before {@code end} are left to
+     * the next call.
+     */
+    private void insertUpTo(int position, int end)
+    {
+        int last = Math.min(position, end - MIN_MATCH + 1);
+
+        for (; mInserted < last; ++mInserted)
+        {
+            int h = hash(mInserted);
+            mPrev[mInserted & mWindowMask] = mHead[h];
+            mHead[h] = mInserted;
+        }
+    }
+
+
+    /**
+     * Find the longest match for the data at the position. The length is
+     * returned and the distance is set to {@code mMatchDistance}.
+     */
+    private int findLongestMatch(int position, int end)
+    {
+        byte[] data   = mBuffer;
+        int bestLength = 0;
+        int maxLength  = Math.min(MAX_MATCH, end - position);
+
+        if (maxLength < MIN_MATCH)
+        {
+            return 0;
+        }
+
+        // The oldest position that the window allows to refer to.
+        int limit = Math.max(mStart, position - mWindowSize);
+
+        int candidate = mHead[hash(position)];
+
+        for (int chain = 0; chain < MAX_CHAIN_LENGTH && limit <= candidate && 0 <= candidate; ++chain)
+        {
+            // Compare the byte next to the current best length first.
+            if (data[candidate + bestLength] == data[position + bestLength])
+            {
+                int length = 0;
+
+                while (length < maxLength && data[candidate + length] == data[position + length])
+                {
+                    ++length;
+                }
+
+                if (bestLength < length)
+                {
+                    bestLength     = length;
+                    mMatchDistance = position - candidate;
+
+                    if (NICE_MATCH <= length || length == maxLength)
+                    {
+                        break;
+                    }
+                }
+            }
+
+            candidate = mPrev[candidate & mWindowMask];
+        }
+
+        return bestLength;
+    }
+
+
+    private static void writeBlock(
+            byte[] data, int blockStart, int blockEnd,
+            int[] literalLengths, int[] distances, int nSymbols, BitWriter writer)
+    {
+        // Count the frequencies of the symbols.
+        int[] literalLengthFreqs = new int[LITERAL_LENGTH_CODES];
+        int[] distanceFreqs      = new int[DISTANCE_CODES];
+
+        for (int i = 0; i < nSymbols; ++i)
+        {
+            if (distances[i] == 0)
+            {
+                ++literalLengthFreqs[literalLengths[i]];
+            }
+            else
+            {
+                ++literalLengthFreqs[257 + LENGTH_CODE_INDICES[literalLengths[i]]];
+                ++distanceFreqs[toDistanceCodeIndex(distances[i])];
+            }
+        }
+
+        literalLengthFreqs[END_OF_BLOCK] = 1;
+
+        // Build dynamic Huffman codes (3.2.7).
+        ensureTwoSymbols(literalLengthFreqs);
+        ensureTwoSymbols(distanceFreqs);
+        int[] literalLengthLens = buildCodeLengths(literalLengthFreqs, MAX_CODE_LENGTH);
+        int[] distanceLens      = buildCodeLengths(distanceFreqs, MAX_CODE_LENGTH);
+        DynamicHeader header    = new DynamicHeader(literalLengthLens, distanceLens);
+
+        // Estimate the size of each block type in bits.
+        long dynamicSize = 3 + header.computeSize()
+                + computeDataSize(literalLengthFreqs, literalLengthLens, distanceFreqs, distanceLens);
+        long fixedSize = 3
+                + computeDataSize(literalLengthFreqs, FIXED_LITERAL_LENGTH_LENS, distanceFreqs, FIXED_DISTANCE_LENS);
+        long storedSize = computeStoredSize(blockEnd - blockStart);
+
+        if (storedSize <= dynamicSize && storedSize <= fixedSize)
+        {
+            writeStoredBlocks(data, blockStart, blockEnd, writer);
+        }
+        else if (fixedSize <= dynamicSize)
+        {
+            // BFINAL=0, BTYPE=01 (fixed Huffman codes)
+            writer.writeBits(1 << 1, 3);
+            writeData(literalLengths, distances, nSymbols,
+                    FIXED_LITERAL_LENGTH_LENS, FIXED_LITERAL_LENGTH_CODES,
+                    FIXED_DISTANCE_LENS, FIXED_DISTANCE_CODES, writer);
+        }
+        else
+        {
+            // BFINAL=0, BTYPE=10 (dynamic Huffman codes)
+            writer.writeBits(2 << 1, 3);
+            header.write(writer);
+            writeData(literalLengths, distances, nSymbols,
+                    literalLengthLens, buildCodes(literalLengthLens),
+                    distanceLens, buildCodes(distanceLens), writer);
+        }
+    }
+
+
+    private static long computeDataSize(
+            int[] literalLengthFreqs, int[] literalLengthLens, int[] distanceFreqs, int[] distanceLens)
+    {
+        long size = 0;
+
+        for (int i = 0; i < LITERAL_LENGTH_CODES; ++i)
+        {
+            size += (long)literalLengthFreqs[i] * literalLengthLens[i];
+
+            if (257 <= i)
+            {
+                size += (long)literalLengthFreqs[i] * LENGTH_EXTRA_BITS[i - 257];
+            }
+        }
+
+        for (int i = 0; i < DISTANCE_CODES; ++i)
+        {
+            size += (long)distanceFreqs[i] * (distanceLens[i] + DISTANCE_EXTRA_BITS[i]);
+        }
+
+        return size;
+    }
+
+
+    private static long computeStoredSize(int length)
+    {
+        // The number of non-compressed blocks needed.
+        int nBlocks = Math.max(1, (length + MAX_STORED_LENGTH - 1) / MAX_STORED_LENGTH);
+
+        // 3 bits for the header, padding up to the byte boundary
+        // (at most 7 bits for the first block and 5 bits for the
+        // others) and 32 bits for LEN and NLEN.
+        return (long)nBlocks * (3 + 7 + 32) + (long)length * 8;
+    }
+
+
+    private static void writeStoredBlocks(byte[] data, int blockStart, int blockEnd, BitWriter writer)
+    {
+        // 3.2.4. Non-compressed blocks (BTYPE=00)
+        int position = blockStart;
+
+        do
+        {
+            int length = Math.min(MAX_STORED_LENGTH, blockEnd - position);
+
+            // BFINAL=0, BTYPE=00
+            writer.writeBits(0, 3);
+            writer.align();
+
+            // LEN and NLEN.
+            writer.writeBits(length, 16);
+            writer.writeBits(~length & 0xFFFF, 16);
+
+            writer.writeBytes(data, position, length);
+
+            position += length;
+        }
+        while (position < blockEnd);
+    }
+
+
+    private static void writeData(
+            int[] literalLengths, int[] distances, int nSymbols,
+            int[] literalLengthLens, int[] literalLengthCodes,
+            int[] distanceLens, int[] distanceCodes, BitWriter writer)
+    {
+        // 3.2.5. Compressed blocks (length and distance codes)
+        for (int i = 0; i < nSymbols; ++i)
+        {
+            int distance = distances[i];
+
+            if (distance == 0)
+            {
+                // Literal byte.
+                int literal = literalLengths[i];
+                writer.writeHuffmanCode(literalLengthCodes[literal], literalLengthLens[literal]);
+                continue;
+            }
+
+            // Length.
+            int length = literalLengths[i];
+            int index  = LENGTH_CODE_INDICES[length];
+            writer.writeHuffmanCode(literalLengthCodes[257 + index], literalLengthLens[257 + index]);
+            writer.writeBits(length - LENGTH_BASES[index], LENGTH_EXTRA_BITS[index]);
+
+            // Distance.
+            index = toDistanceCodeIndex(distance);
+            writer.writeHuffmanCode(distanceCodes[index], distanceLens[index]);
+            writer.writeBits(distance - DISTANCE_BASES[index], DISTANCE_EXTRA_BITS[index]);
+        }
+
+        // End of block.
+        writer.writeHuffmanCode(literalLengthCodes[END_OF_BLOCK], literalLengthLens[END_OF_BLOCK]);
+    }
+
+
+    private static int toDistanceCodeIndex(int distance)
+    {
+        int index = DISTANCE_CODES - 1;
+
+        while (distance < DISTANCE_BASES[index])
+        {
+            --index;
+        }
+
+        return index;
+    }
+
+
+    private static void ensureTwoSymbols(int[] freqs)
+    {
+        // A Huffman tree with only one leaf cannot be built, so make
+        // sure that at least two symbols have non-zero frequencies.
+        int count = 0;
+
+        for (int i = 0; i < freqs.length && count < 2; ++i)
+        {
+            if (freqs[i] != 0)
+            {
+                ++count;
+            }
+        }
+
+        for (int i = 0; count < 2; ++i)
+        {
+            if (freqs[i] == 0)
+            {
+                freqs[i] = 1;
+                ++count;
+            }
+        }
+    }
+
+
+    /**
+     * Build code lengths of Huffman codes whose lengths do not exceed
+     * the given maximum length.
+     */
+    private static int[] buildCodeLengths(int[] freqs, int maxLength)
+    {
+        int[] weights = freqs.clone();
+        int[] lengths = new int[freqs.length];
+
+        // If the tree is too deep, flatten the frequencies and retry.
+        // Frequencies eventually become equal, and then the tree depth
+        // becomes log2(the number of symbols).
+        while (maxLength < buildHuffmanTree(weights, lengths))
+        {
+            for (int i = 0; i < weights.length; ++i)
+            {
+                if (weights[i] != 0)
+                {
+                    weights[i] = (weights[i] + 1) / 2;
+                }
+            }
+        }
+
+        return lengths;
+    }
+
+
+    /**
+     * Build a Huffman tree and set the depths of the leaves into
+     * {@code lengths}. Returns the maximum depth.
+     */
+    private static int buildHuffmanTree(int[] weights, int[] lengths)
+    {
+        // Symbols with non-zero weights sorted by weight (insertion sort,
+        // the number of symbols is small).
+        int[] symbols = new int[weights.length];
+        int nLeaves = 0;
+
+        for (int sym = 0; sym < weights.length; ++sym)
+        {
+            lengths[sym] = 0;
+
+            if (weights[sym] == 0)
+            {
+                continue;
+            }
+
+            int i = nLeaves++;
+
+            for (; 0 < i && weights[sym] < weights[symbols[i - 1]]; --i)
+            {
+                symbols[i] = symbols[i - 1];
+            }
+
+            symbols[i] = sym;
+        }
+
+        // Nodes. [0, nLeaves) are leaves and [nLeaves, nNodes) are internal
+        // nodes. Internal nodes are created in ascending order of weight,
+        // so two queues (leaves and internal nodes) are enough to pick up
+        // two lightest nodes.
+        int nNodes = 2 * nLeaves - 1;
+        long[] nodeWeights = new long[nNodes];
+        int[] parents = new int[nNodes];
+
+        for (int i = 0; i < nLeaves; ++i)
+        {
+            nodeWeights[i] = weights[symbols[i]];
+        }
+
+        int leafIndex = 0;
+        int internalIndex = nLeaves;
+
+        for (int node = nLeaves; node < nNodes; ++node)
+        {
+            int[] children = new int[2];
+
+            for (int c = 0; c < 2; ++c)
+            {
+                if (leafIndex < nLeaves &&
+                    (node <= internalIndex || nodeWeights[leafIndex] <= nodeWeights[internalIndex]))
+                {
+                    children[c] = leafIndex++;
+                }
+                else
+                {
+                    children[c] = internalIndex++;
+                }
+            }
+
+            nodeWeights[node] = nodeWeights[children[0]] + nodeWeights[children[1]];
+            parents[children[0]] = node;
+            parents[children[1]] = node;
+        }
+
+        // Compute the depths from the root (the last node).
+        int[] depths = new int[nNodes];
+        int maxDepth = 0;
+
+        for (int node = nNodes - 2; 0 <= node; --node)
+        {
+            depths[node] = depths[parents[node]] + 1;
+        }
+
+        for (int i = 0; i < nLeaves; ++i)
+        {
+            lengths[symbols[i]] = depths[i];
+            maxDepth = Math.max(maxDepth, depths[i]);
+        }
+
+        return maxDepth;
+    }
+
+
+    /**
+     * Generate code values from code lengths (3.2.2.).
+     */
+    private static int[] buildCodes(int[] lengths)
+    {
+        int maxLength = Misc.max(lengths);
+
+        // Step 1. Count the number of codes for each code length.
+        int[] counts = new int[maxLength + 1];
+
+        for (int length : lengths)
+        {
+            ++counts[length];
+        }
+
+        // Step 2. Find the numerical value of the smallest code for each code length.
+        counts[0] = 0;
+        int[] nextCodes = new int[maxLength + 1];
+        int code = 0;
+
+        for (int bits = 1; bits <= maxLength; ++bits)
+        {
+            code = (code + counts[bits - 1]) << 1;
+            nextCodes[bits] = code;
+        }
+
+        // Step 3. Assign numerical values to all codes.
+        int[] codes = new int[lengths.length];
+
+        for (int sym = 0; sym < lengths.length; ++sym)
+        {
+            if (lengths[sym] != 0)
+            {
+                codes[sym] = nextCodes[lengths[sym]]++;
+            }
+        }
+
+        return codes;
+    }
+
+
+    private static int[] buildLengthCodeIndices()
+    {
+        int[] indices = new int[MAX_MATCH + 1];
+
+        for (int index = 0; index < LENGTH_BASES.length; ++index)
+        {
+            int end = (index + 1 < LENGTH_BASES.length) ? LENGTH_BASES[index + 1] : MAX_MATCH + 1;
+
+            for (int length = LENGTH_BASES[index]; length < end; ++length)
+            {
+                indices[length] = index;
+            }
+        }
+
+        // Length 258 is represented by the code 285, not by 284 + 31.
+        indices[MAX_MATCH] = LENGTH_BASES.length - 1;
+
+        return indices;
+    }
+
+
+    private static int[] buildFixedLiteralLengthLens()
+    {
+        // 3.2.6. Compression with fixed Huffman codes (BTYPE=01)
+        int[] lengths = new int[288];
+
+        for (int sym = 0; sym < 288; ++sym)
+        {
+            lengths[sym] = (sym < 144) ? 8 : (sym < 256) ? 9 : (sym < 280) ? 7 : 8;
+        }
+
+        return lengths;
+    }
+
+
+    private static int[] buildFixedDistanceLens()
+    {
+        // 3.2.6. Compression with fixed Huffman codes (BTYPE=01)
+        int[] lengths = new int[DISTANCE_CODES];
+        Arrays.fill(lengths, 5);
+
+        return lengths;
+    }
+
+
+    /**
+     * The header of a block compressed with dynamic Huffman codes,
+     * that is, HLIT, HDIST, HCLEN and the code lengths of the two
+     * alphabets encoded with the code length alphabet (3.2.7).
+     */
+    private static class DynamicHeader
+    {
+        private final int mHlit;
+        private final int mHdist;
+        private final int mHclen;
+        private final int[] mSymbols;
+        private final int[] mExtras;
+        private final int mSize;
+        private final int[] mCodeLengthLens;
+
+
+        DynamicHeader(int[] literalLengthLens, int[] distanceLens)
+        {
+            mHlit  = Math.max(257, countUsed(literalLengthLens));
+            mHdist = Math.max(1,   countUsed(distanceLens));
+
+            // Run-length encoding of the code lengths. The two alphabets
+            // are encoded separately so that no run crosses the boundary.
+            int[] symbols = new int[mHlit + mHdist];
+            int[] extras  = new int[mHlit + mHdist];
+            int n = encodeRuns(literalLengthLens, mHlit, symbols, extras, 0);
+            n = encodeRuns(distanceLens, mHdist, symbols, extras, n);
+            mSymbols = Arrays.copyOf(symbols, n);
+            mExtras  = Arrays.copyOf(extras, n);
+
+            // Huffman codes for the code length alphabet.
+            int[] freqs = new int[CODE_LENGTH_CODES];
+
+            for (int symbol : mSymbols)
+            {
+                ++freqs[symbol];
+            }
+
+            ensureTwoSymbols(freqs);
+            mCodeLengthLens = buildCodeLengths(freqs, MAX_CODE_LENGTH_CODE_LENGTH);
+
+            int hclen = CODE_LENGTH_CODES;
+
+            while (4 < hclen && mCodeLengthLens[CODE_LENGTH_ORDER[hclen - 1]] == 0)
+            {
+                --hclen;
+            }
+
+            mHclen = hclen;
+
+            int size = 5 + 5 + 4 + 3 * mHclen;
+
+            for (int i = 0; i < mSymbols.length; ++i)
+            {
+                size += mCodeLengthLens[mSymbols[i]] + extraBitsOf(mSymbols[i]);
+            }
+
+            mSize = size;
+        }
+
+
+        int computeSize()
+        {
+            return mSize;
+        }
+
+
+        void write(BitWriter writer)
+        {
+            writer.writeBits(mHlit - 257, 5);
+            writer.writeBits(mHdist - 1, 5);
+            writer.writeBits(mHclen - 4, 4);
+
+            for (int i = 0; i < mHclen; ++i)
+            {
+                writer.writeBits(mCodeLengthLens[CODE_LENGTH_ORDER[i]], 3);
+            }
+
+            int[] codes = buildCodes(mCodeLengthLens);
+
+            for (int i = 0; i < mSymbols.length; ++i)
+            {
+                int symbol = mSymbols[i];
+                writer.writeHuffmanCode(codes[symbol], mCodeLengthLens[symbol]);
+                writer.writeBits(mExtras[i], extraBitsOf(symbol));
+            }
+        }
+
+
+        private static int countUsed(int[] lengths)
+        {
+            int count = lengths.length;
+
+            while (0 < count && lengths[count - 1] == 0)
+            {
+                --count;
+            }
+
+            return count;
+        }
+
+
+        private static int extraBitsOf(int symbol)
+        {
+            switch (symbol)
+            {
+                case 16: return 2;
+                case 17: return 3;
+                case 18: return 7;
+                default: return 0;
+            }
+        }
+
+
+        private static int encodeRuns(int[] lengths, int count, int[] symbols, int[] extras, int n)
+        {
+            int i = 0;
+
+            while (i < count)
+            {
+                int length = lengths[i];
+                int run = 1;
+
+                while (i + run < count && lengths[i + run] == length)
+                {
+                    ++run;
+                }
+
+                i += run;
+
+                if (length == 0)
+                {
+                    // 18: Repeat a code length of 0 for 11 - 138 times.
+                    while (11 <= run)
+                    {
+                        int r = Math.min(run, 138);
+                        symbols[n] = 18;
+                        extras[n++] = r - 11;
+                        run -= r;
+                    }
+
+                    // 17: Repeat a code length of 0 for 3 - 10 times.
+                    if (3 <= run)
+                    {
+                        symbols[n] = 17;
+                        extras[n++] = run - 3;
+                        run = 0;
+                    }
+                }
+                else
+                {
+                    symbols[n] = length;
+                    extras[n++] = 0;
+                    --run;
+
+                    // 16: Copy the previous code length 3 - 6 times.
+                    while (3 <= run)
+                    {
+                        int r = Math.min(run, 6);
+                        symbols[n] = 16;
+                        extras[n++] = r - 3;
+                        run -= r;
+                    }
+                }
+
+                for (; 0 < run; --run)
+                {
+                    symbols[n] = length;
+                    extras[n++] = 0;
+                }
+            }
+
+            return n;
+        }
+    }
+
+
+    /**
+     * Writer to pack bits into bytes (3.1.1. Packing into bytes).
+     */
+    private static class BitWriter
+    {
+        private ByteArray mOutput;
+        private int mBits;
+        private int mBitCount;
+
+
+        void setOutput(ByteArray output)
+        {
+            mOutput = output;
+        }
+
+
+        void clear()
+        {
+            mBits = 0;
+            mBitCount = 0;
+        }
+
+
+        /**
+         * Write data elements other than Huffman codes, starting
+         * with the least-significant bit.
+         */
+        void writeBits(int value, int nBits)
+        {
+            mBits |= value << mBitCount;
+            mBitCount += nBits;
+
+            while (8 <= mBitCount)
+            {
+                mOutput.put(mBits);
+                mBits >>>= 8;
+                mBitCount -= 8;
+            }
+        }
+
+
+        /**
+         * Write a Huffman code, starting with the most-significant
+         * bit of the code.
+         */
+        void writeHuffmanCode(int code, int nBits)
+        {
+            int reversed = 0;
+
+            for (int i = 0; i < nBits; ++i)
+            {
+                reversed = (reversed << 1) | ((code >>> i) & 1);
+            }
+
+            writeBits(reversed, nBits);
+        }
+
+
+        void writeBytes(byte[] data, int index, int length)
+        {
+            mOutput.put(data, index, length);
+        }
+
+
+        /**
+         * Skip the remaining bits in the current byte.
+         */
+        void align()
+        {
+            if (mBitCount != 0)
+            {
+                mOutput.put(mBits);
+                mBits = 0;
+                mBitCount = 0;
+            }
+        }
+    }
+}
@@ -20,6 +20,9 @@ import static com.neovisionaries.ws.client.WebSocketState.CLOSED;
 import static com.neovisionaries.ws.client.WebSocketState.CLOSING;
 import java.io.IOException;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import com.neovisionaries.ws.client.StateManager.CloseInitiator;
 
 
@@ -29,13 +32,32 @@ class WritingThread extends WebSocketThread
     private static final int SHOULD_STOP     = 1;
     private static final int SHOULD_CONTINUE = 2;
     private static final int SHOULD_FLUSH    = 3;
+    private static final int SHOULD_SUSPEND  = 4;
+    private static final int SHOULD_SPIN     = 5;
     private static final int FLUSH_THRESHOLD = 1000;
+    private static final int SPIN_TRIES      = 10000;
+    private static final long PARK_NANOS     = 50000;
     private final LinkedList<WebSocketFrame> mFrames;
     private final PerMessageCompressionExtension mPMCE;
     private boolean mStopRequested;
     private WebSocketFrame mCloseFrame;
     private boolean mFlushNeeded;
     private boolean mStopped;
+    private boolean mCompressingFragments;
+    private final boolean mSuspendable;
+    private boolean mMainStarted;
+    private boolean mReady;
+
+    // Incremented when a frame, a flush or a stop is requested, so that
+    // the wait strategies can poll for work without holding the lock.
+    private volatile int mSignals;
+
+    // The value of mSignals when this thread started to spin.
+    private int mSpinSignals;
+
+    // Held while the output stream is used, either by this task or by a
+    // thread writing a frame directly. See sendFrameDirectly().
+    private final ReentrantLock mWriteLock = new ReentrantLock();
 
 
     public WritingThread(WebSocket websocket)
@@ -44,6 +66,10 @@ class WritingThread extends WebSocketThread
 
         mFrames = new LinkedList<WebSocketFrame>();
         mPMCE   = websocket.getPerMessageCompressionExtension();
+
+        // With the selector transport, this task does not hold a thread
+        // while no frame is queued.
+        mSuspendable = websocket.getSocketConnector().getChannelConnection() != null;
     }
 
 
@@ -52,7 +78,11 @@ class WritingThread extends WebSocketThread
     {
         try
         {
-            main();
+            if (main() == false)
+            {
+                // Suspended until a frame is queued.
+                return;
+            }
         }
         catch (Throwable t)
         {
@@ -79,9 +109,24 @@ class WritingThread extends WebSocketThread
     }
 
 
-    private void main()
+    /**
+     * @return
+     *         {@code false} if this task has been suspended.
+     */
+    private boolean main()
     {
-        mWebSocket.onWritingThreadStarted();
+        if (mMainStarted == false)
+        {
+            mMainStarted = true;
+            mWebSocket.onWritingThreadStarted();
+
+            synchronized (this)
+            {
+                // onConnected() has been called, so frames can be
+                // written directly from now on.
+                mReady = true;
+            }
+        }
 
         while (true)
         {
@@ -92,15 +137,34 @@ class WritingThread extends WebSocketThread
             {
                 break;
             }
+            else if (result == SHOULD_SUSPEND)
+            {
+                return false;
+            }
             else if (result == SHOULD_FLUSH)
             {
-                flushIgnoreError();
+                mWriteLock.lock();
+
+                try
+                {
+                    flushIgnoreError();
+                }
+                finally
+                {
+                    mWriteLock.unlock();
+                }
+
                 continue;
             }
             else if (result == SHOULD_CONTINUE)
             {
                 continue;
             }
+            else if (result == SHOULD_SPIN)
+            {
+                spin();
+                continue;
+            }
 
             try
             {
@@ -123,6 +187,8 @@ class WritingThread extends WebSocketThread
         {
             // An I/O error occurred.
         }
+
+        return true;
     }
 
 
@@ -134,7 +200,9 @@ class WritingThread extends WebSocketThread
             mStopRequested = true;
 
             // Wake up this thread.
+            ++mSignals;
             notifyAll();
+            resume();
         }
     }
 
@@ -207,7 +275,9 @@ class WritingThread extends WebSocketThread
             }
 
             // Wake up this thread.
+            ++mSignals;
             notifyAll();
+            resume();
         }
 
         // Queued.
@@ -215,6 +285,141 @@ class WritingThread extends WebSocketThread
     }
 
 
+    /**
+     * Get the number of frames waiting to be written.
+     */
+    public int getQueuedFrameCount()
+    {
+        synchronized (this)
+        {
+            return mFrames.size();
+        }
+    }
+
+
+    /**
+     * Write the frame on the caller's thread if this task is idle and
+     * no frame is queued.
+     *
+     * @return
+     *         {@code false} if the frame was not written. The caller
+     *         should queue the frame by {@link #queueFrame(WebSocketFrame)}.
+     */
+    public boolean sendFrameDirectly(WebSocketFrame frame)
+    {
+        // A close frame stops this task, so it always goes through the queue.
+        if (frame.isCloseFrame())
+        {
+            return false;
+        }
+
+        synchronized (this)
+        {
+            // Queued frames must be sent first, and nothing should be
+            // sent before onConnected() or after a close frame.
+            if (mReady == false || mStopped || mStopRequested ||
+                mCloseFrame != null || mFrames.size() != 0)
+            {
+                return false;
+            }
+
+            // If this task or another thread is writing, fall back to
+            // the queue rather than waiting.
+            if (mWriteLock.tryLock() == false)
+            {
+                return false;
+            }
+        }
+
+        try
+        {
+            sendFrame(frame);
+
+            if (frame.isPingFrame() || frame.isPongFrame() || isFlushNeeded(false))
+            {
+                doFlush();
+            }
+        }
+        catch (WebSocketException e)
+        {
+            // The listeners have been notified of the error. Stop this
+            // task as it stops after its own I/O errors.
+            requestStop();
+        }
+        finally
+        {
+            mWriteLock.unlock();
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Write the frame on the caller's thread. This is used in the
+     * synchronous mode, in which this task is never started.
+     *
+     * @throws WebSocketException
+     *         Writing the frame failed. The listeners have been notified.
+     */
+    void writeFrame(WebSocketFrame frame) throws WebSocketException
+    {
+        mWriteLock.lock();
+
+        try
+        {
+            sendFrame(frame);
+
+            // A close frame makes isFlushNeeded() return true.
+            if (frame.isPingFrame() || frame.isPongFrame() || isFlushNeeded(false))
+            {
+                doFlush();
+            }
+        }
+        finally
+        {
+            mWriteLock.unlock();
+        }
+    }
+
+
+    /**
+     * Flush the output on the caller's thread. This is used in the
+     * synchronous mode.
+     */
+    void flushFrames() throws WebSocketException
+    {
+        mWriteLock.lock();
+
+        try
+        {
+            doFlush();
+        }
+        finally
+        {
+            mWriteLock.unlock();
+        }
+    }
+
+
+    /**
+     * Get the close frame which has been sent, or {@code null}.
+     */
+    WebSocketFrame getCloseFrame()
+    {
+        mWriteLock.lock();
+
+        try
+        {
+            return mCloseFrame;
+        }
+        finally
+        {
+            mWriteLock.unlock();
+        }
+    }
+
+
     private static boolean isHighPriorityFrame(WebSocketFrame frame)
     {
         return (frame.isPingFrame() || frame.isPongFrame());
@@ -249,7 +454,9 @@ class WritingThread extends WebSocketThread
             mFlushNeeded = true;
 
             // Wake up this thread.
+            ++mSignals;
             notifyAll();
+            resume();
         }
     }
 
@@ -298,6 +505,21 @@ class WritingThread extends WebSocketThread
                     return SHOULD_FLUSH;
                 }
 
+                if (mSuspendable)
+                {
+                    // queueFrame(), queueFlush() or requestStop() resumes
+                    // this task.
+                    suspend();
+                    return SHOULD_SUSPEND;
+                }
+
+                if (mWebSocket.getWaitStrategy() != WaitStrategy.BLOCKING)
+                {
+                    // Wait outside the lock as the strategy specifies.
+                    mSpinSignals = mSignals;
+                    return SHOULD_SPIN;
+                }
+
                 try
                 {
                     // Wait until a new frame is added to the list
@@ -331,6 +553,68 @@ class WritingThread extends WebSocketThread
     }
 
 
+    /**
+     * Wait for a signal from queueFrame(), queueFlush() or requestStop()
+     * as the wait strategy specifies.
+     */
+    private void spin()
+    {
+        if (awaitSignal(mWebSocket.getWaitStrategy(), mSpinSignals))
+        {
+            return;
+        }
+
+        synchronized (this)
+        {
+            // If nothing has been signalled while spinning.
+            if (mSignals == mSpinSignals)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return
+     *         {@code false} if this thread should block.
+     */
+    private boolean awaitSignal(WaitStrategy strategy, int signals)
+    {
+        for (int tries = 0; mSignals == signals; ++tries)
+        {
+            switch (strategy)
+            {
+                case YIELDING:
+                    Thread.yield();
+                    break;
+
+                case BUSY_SPIN_THEN_PARK:
+                    if (SPIN_TRIES <= tries)
+                    {
+                        return false;
+                    }
+                    break;
+
+                case TIMED_PARK:
+                    LockSupport.parkNanos(PARK_NANOS);
+                    break;
+
+                default:
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+
     private void sendFrames(boolean last) throws WebSocketException
     {
         // The timestamp at which the last flush was executed.
@@ -340,48 +624,68 @@ class WritingThread extends WebSocketThread
         {
             WebSocketFrame frame;
 
-            synchronized (this)
+            // Acquire the lock before picking up a frame so that a frame
+            // written directly cannot overtake the frame.
+            mWriteLock.lock();
+
+            try
             {
-                // Pick up one frame from the queue.
-                frame = mFrames.poll();
+                synchronized (this)
+                {
+                    // Pick up one frame from the queue.
+                    frame = mFrames.poll();
+
+                    // Mainly for queueFrame().
+                    notifyAll();
+
+                    // If the queue is empty.
+                    if (frame == null)
+                    {
+                        // No frame to process.
+                        break;
+                    }
+                }
 
-                // Mainly for queueFrame().
-                notifyAll();
+                // Send the frame to the server.
+                sendFrame(frame);
 
-                // If the queue is empty.
-                if (frame == null)
+                // If the frame is PING or PONG.
+                if (frame.isPingFrame() || frame.isPongFrame())
                 {
-                    // No frame to process.
-                    break;
+                    // Deliver the frame to the server immediately.
+                    doFlush();
+                    lastFlushAt = System.currentTimeMillis();
+                    continue;
                 }
-            }
 
-            // Send the frame to the server.
-            sendFrame(frame);
+                // If flush is not needed.
+                if (isFlushNeeded(last) == false)
+                {
+                    // Try to consume the next frame without flush.
+                    continue;
+                }
 
-            // If the frame is PING or PONG.
-            if (frame.isPingFrame() || frame.isPongFrame())
-            {
-                // Deliver the frame to the server immediately.
-                doFlush();
-                lastFlushAt = System.currentTimeMillis();
-                continue;
+                // Flush if long time has passed since the last flush.
+                lastFlushAt = flushIfLongInterval(lastFlushAt);
             }
-
-            // If flush is not needed.
-            if (isFlushNeeded(last) == false)
+            finally
             {
-                // Try to consume the next frame without flush.
-                continue;
+                mWriteLock.unlock();
             }
-
-            // Flush if long time has passed since the last flush.
-            lastFlushAt = flushIfLongInterval(lastFlushAt);
         }
 
         if (isFlushNeeded(last))
         {
-            doFlush();
+            mWriteLock.lock();
+
+            try
+            {
+                doFlush();
+            }
+            finally
+            {
+                mWriteLock.unlock();
+            }
         }
     }
 
@@ -446,8 +750,109 @@ class WritingThread extends WebSocketThread
     private void sendFrame(WebSocketFrame frame) throws WebSocketException
     {
         // Compress the frame if appropriate.
-        frame = WebSocketFrame.compressFrame(frame, mPMCE);
+        frame = compressFrame(frame);
 
+        // Split the frame into multiple frames if necessary.
+        List<WebSocketFrame> frames = WebSocketFrame.splitIfNecessary(
+                frame, mWebSocket.getMaxPayloadSize(), null);
+
+        // If the frame was not split.
+        if (frames == null)
+        {
+            sendSingleFrame(frame);
+            return;
+        }
+
+        for (WebSocketFrame f : frames)
+        {
+            sendSingleFrame(f);
+        }
+    }
+
+
+    private WebSocketFrame compressFrame(WebSocketFrame frame) throws WebSocketException
+    {
+        // If Per-Message Compression is not enabled.
+        if (mPMCE == null)
+        {
+            return frame;
+        }
+
+        // If the frame is the first frame of a fragmented message
+        // which has not been compressed yet.
+        if ((frame.isTextFrame() || frame.isBinaryFrame()) &&
+            frame.getFin() == false && frame.getRsv1() == false)
+        {
+            // Start compressing the message fragment by fragment.
+            // Even if the compression fails, the frame can be sent
+            // as is because the message has not been started yet.
+            mCompressingFragments = compressFragmentIgnoreError(frame);
+
+            return frame;
+        }
+
+        // If the frame is a continuation frame of a fragmented message
+        // whose first frame has been compressed.
+        if (frame.isContinuationFrame() && mCompressingFragments)
+        {
+            if (frame.getFin())
+            {
+                // The last frame of the message.
+                mCompressingFragments = false;
+            }
+
+            compressFragment(frame);
+
+            return frame;
+        }
+
+        // Compress the frame if it is an unfragmented message.
+        return WebSocketFrame.compressFrame(frame, mPMCE);
+    }
+
+
+    private boolean compressFragmentIgnoreError(WebSocketFrame frame)
+    {
+        // Keep the original payload in case the compression fails.
+        byte[] payload = frame.getPayload();
+
+        try
+        {
+            return WebSocketFrame.compressFragment(frame, mPMCE);
+        }
+        catch (WebSocketException e)
+        {
+            // Send the plain original payload. The current implementation
+            // does not call any listener callback method for this error.
+            frame.setPayload(payload);
+            frame.setRsv1(false);
+
+            return false;
+        }
+    }
+
+
+    private void compressFragment(WebSocketFrame frame) throws WebSocketException
+    {
+        try
+        {
+            WebSocketFrame.compressFragment(frame, mPMCE);
+        }
+        catch (WebSocketException e)
+        {
+            // The preceding frames of the message have been compressed, so
+            // the frame cannot be sent without compression.
+            ListenerManager manager = mWebSocket.getListenerManager();
+            manager.callOnError(e);
+            manager.callOnSendError(e, frame);
+
+            throw e;
+        }
+    }
+
+
+    private void sendSingleFrame(WebSocketFrame frame) throws WebSocketException
+    {
         // Notify the listeners that the frame is about to be sent.
         mWebSocket.getListenerManager().callOnSendingFrame(frame);
 
@@ -500,6 +905,12 @@ class WritingThread extends WebSocketThread
             throw cause;
         }
 
+        if (frame.isPingFrame())
+        {
+            // Let the ping sender measure the round trip from now.
+            mWebSocket.getPingSender().onPingSent(frame.getPayload());
+        }
+
         // Notify the listeners that the frame was sent.
         mWebSocket.getListenerManager().callOnFrameSent(frame);
     }
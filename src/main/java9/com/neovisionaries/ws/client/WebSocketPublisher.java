@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static com.neovisionaries.ws.client.WebSocketOpcode.TEXT;
+import java.util.LinkedList;
+import java.util.concurrent.Flow;
+
+
+/**
+ * A {@link Flow.Publisher} of messages received by a web socket.
+ *
+ * <p>
+ * Reading is paused while the subscriber has no outstanding demand, so
+ * {@link Flow.Subscription#request(long) request(n)} drives how many
+ * messages the reading thread delivers, and TCP flow control pushes back
+ * on the server while the subscriber is slow. See {@link
+ * WebSocket#pauseReading()} for how control frames are handled meanwhile.
+ * </p>
+ *
+ * <blockquote>
+ * <pre style="border-left: solid 5px lightgray;"> WebSocket ws = factory.createSocket(uri);
+ *
+ * <span style="color: green;">// Create the publisher before connecting.</span>
+ * WebSocketPublisher publisher = new WebSocketPublisher(ws);
+ * publisher.subscribe(subscriber);
+ *
+ * ws.connect();</pre>
+ * </blockquote>
+ *
+ * <p>
+ * Messages are published as unfragmented text or binary frames. The
+ * subscriber is completed when the web socket is disconnected, or fails
+ * with the cause when the connection cannot be established. Only one
+ * subscriber is accepted. After the subscription is cancelled, reading
+ * is resumed and messages are no longer published.
+ * </p>
+ *
+ * <p>
+ * This class is available on Java 9 and later.
+ * </p>
+ *
+ * @see WebSocketSubscriber
+ *
+ * @since 2.10
+ */
+public class WebSocketPublisher implements Flow.Publisher<WebSocketFrame>
+{
+    private final WebSocket mWebSocket;
+    private final LinkedList<WebSocketFrame> mMessages = new LinkedList<WebSocketFrame>();
+    private boolean mSubscribed;
+    private Flow.Subscriber<? super WebSocketFrame> mSubscriber;
+    private long mDemand;
+    private boolean mCancelled;
+    private boolean mCompleted;
+    private Throwable mFailure;
+    private boolean mTerminated;
+    private boolean mDraining;
+    private boolean mMissed;
+
+
+    /**
+     * Constructor.
+     *
+     * <p>
+     * Reading of the web socket is paused until a subscriber requests
+     * messages. The web socket should not be connected yet.
+     * </p>
+     *
+     * @param websocket
+     *         The web socket whose messages are published.
+     *
+     * @throws IllegalArgumentException
+     *         {@code websocket} is {@code null}.
+     */
+    public WebSocketPublisher(WebSocket websocket)
+    {
+        if (websocket == null)
+        {
+            throw new IllegalArgumentException("websocket must not be null.");
+        }
+
+        mWebSocket = websocket;
+
+        websocket.pauseReading();
+        websocket.addListener(new Listener());
+    }
+
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super WebSocketFrame> subscriber)
+    {
+        if (subscriber == null)
+        {
+            throw new NullPointerException("subscriber must not be null.");
+        }
+
+        boolean accepted;
+
+        synchronized (this)
+        {
+            accepted = (mSubscribed == false);
+            mSubscribed = true;
+        }
+
+        if (accepted)
+        {
+            subscriber.onSubscribe(new Subscription());
+
+            // Signals other than onSubscribe() start after this point.
+            synchronized (this)
+            {
+                mSubscriber = subscriber;
+            }
+
+            drain();
+            return;
+        }
+
+        // Rejected. onSubscribe() must be called before onError().
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n)
+            {
+            }
+
+            @Override
+            public void cancel()
+            {
+            }
+        });
+        subscriber.onError(new IllegalStateException("WebSocketPublisher accepts only one subscriber."));
+    }
+
+
+    private class Subscription implements Flow.Subscription
+    {
+        @Override
+        public void request(long n)
+        {
+            synchronized (WebSocketPublisher.this)
+            {
+                if (n <= 0)
+                {
+                    // Rule 3.9 of Reactive Streams.
+                    mFailure = new IllegalArgumentException("n must be positive.");
+                    mMessages.clear();
+                }
+                else
+                {
+                    // Saturate at Long.MAX_VALUE, which means "unbounded".
+                    mDemand = (Long.MAX_VALUE - mDemand < n) ? Long.MAX_VALUE : mDemand + n;
+                }
+            }
+
+            drain();
+        }
+
+
+        @Override
+        public void cancel()
+        {
+            synchronized (WebSocketPublisher.this)
+            {
+                mCancelled = true;
+                mMessages.clear();
+            }
+
+            drain();
+        }
+    }
+
+
+    private class Listener extends WebSocketAdapter
+    {
+        @Override
+        public void onTextMessage(WebSocket websocket, String text)
+        {
+            add(WebSocketFrame.createTextFrame(text));
+        }
+
+
+        @Override
+        public void onTextMessage(WebSocket websocket, byte[] data)
+        {
+            // Called instead of onTextMessage(WebSocket, String) when
+            // WebSocket.setDirectTextMessage(true) has been set.
+            add(new WebSocketFrame().setFin(true).setOpcode(TEXT).setPayload(data));
+        }
+
+
+        @Override
+        public void onBinaryMessage(WebSocket websocket, byte[] binary)
+        {
+            add(WebSocketFrame.createBinaryFrame(binary));
+        }
+
+
+        @Override
+        public void onConnectError(WebSocket websocket, WebSocketException exception)
+        {
+            synchronized (WebSocketPublisher.this)
+            {
+                mFailure = exception;
+            }
+
+            drain();
+        }
+
+
+        @Override
+        public void onDisconnected(WebSocket websocket,
+                WebSocketFrame serverCloseFrame, WebSocketFrame clientCloseFrame,
+                boolean closedByServer)
+        {
+            synchronized (WebSocketPublisher.this)
+            {
+                mCompleted = true;
+            }
+
+            drain();
+        }
+    }
+
+
+    private void add(WebSocketFrame message)
+    {
+        synchronized (this)
+        {
+            if (mCancelled || mFailure != null)
+            {
+                return;
+            }
+
+            // Messages delivered after reading has been paused, for
+            // example when the reading thread stops, are kept until
+            // they are requested.
+            mMessages.add(message);
+        }
+
+        drain();
+    }
+
+
+    /**
+     * Emit the queued messages and the terminal signal as far as the
+     * demand allows. Signals are serialized even when this method is
+     * called on several threads, or from within the subscriber.
+     */
+    private void drain()
+    {
+        synchronized (this)
+        {
+            if (mDraining)
+            {
+                mMissed = true;
+                return;
+            }
+
+            mDraining = true;
+        }
+
+        while (true)
+        {
+            Flow.Subscriber<? super WebSocketFrame> subscriber;
+            WebSocketFrame message = null;
+            Throwable failure = null;
+            boolean complete = false;
+
+            synchronized (this)
+            {
+                subscriber = mSubscriber;
+
+                if (subscriber != null && mTerminated == false && mCancelled == false)
+                {
+                    if (mFailure != null)
+                    {
+                        failure = mFailure;
+                        mTerminated = true;
+                    }
+                    else if (mMessages.isEmpty() == false && 0 < mDemand)
+                    {
+                        message = mMessages.removeFirst();
+
+                        if (mDemand != Long.MAX_VALUE)
+                        {
+                            --mDemand;
+                        }
+                    }
+                    else if (mMessages.isEmpty() && mCompleted)
+                    {
+                        complete = true;
+                        mTerminated = true;
+                    }
+                }
+
+                if (message == null && failure == null && complete == false)
+                {
+                    // Called under the lock so that pausing and resuming
+                    // are applied in the order the demand changed. This
+                    // is called on the reading thread when the demand has
+                    // run out, so the following messages are held.
+                    if (mCancelled || mTerminated || (mMessages.isEmpty() && 0 < mDemand))
+                    {
+                        mWebSocket.resumeReading();
+                    }
+                    else
+                    {
+                        mWebSocket.pauseReading();
+                    }
+
+                    if (mMissed == false)
+                    {
+                        mDraining = false;
+                        return;
+                    }
+
+                    mMissed = false;
+                    continue;
+                }
+            }
+
+            if (failure != null)
+            {
+                subscriber.onError(failure);
+            }
+            else if (complete)
+            {
+                subscriber.onComplete();
+            }
+            else
+            {
+                subscriber.onNext(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.util.concurrent.Flow;
+
+
+/**
+ * A {@link Flow.Subscriber} which sends frames through a web socket.
+ *
+ * <p>
+ * The subscriber requests as many frames as the frame queue of the web
+ * socket can hold ({@link WebSocket#getFrameQueueSize()}, or 16 if the
+ * queue size is not limited), and requests one more each time a message
+ * has been written to the socket. Therefore, the writing thread's queue
+ * stays below its limit and {@code onNext} never blocks.
+ * </p>
+ *
+ * <p>
+ * The frames should be unfragmented data frames, and the subscriber
+ * should be the only sender of data frames through the web socket,
+ * because a message is regarded as written when a data frame whose FIN
+ * bit is set has been sent. {@code onComplete} disconnects the web
+ * socket normally, and {@code onError} disconnects it with {@link
+ * WebSocketCloseCode#UNEXPECTED}. The subscription is cancelled when
+ * the web socket is disconnected.
+ * </p>
+ *
+ * <blockquote>
+ * <pre style="border-left: solid 5px lightgray;"> WebSocket ws = factory.createSocket(uri).connect();
+ *
+ * publisher.subscribe(new WebSocketSubscriber(ws));</pre>
+ * </blockquote>
+ *
+ * <p>
+ * This class is available on Java 9 and later.
+ * </p>
+ *
+ * @see WebSocketPublisher
+ *
+ * @since 2.10
+ */
+public class WebSocketSubscriber implements Flow.Subscriber<WebSocketFrame>
+{
+    private static final int DEFAULT_REQUEST_SIZE = 16;
+
+
+    private final WebSocket mWebSocket;
+    private Flow.Subscription mSubscription;
+    private boolean mDisconnected;
+
+
+    /**
+     * Constructor.
+     *
+     * @param websocket
+     *         The web socket to send frames through.
+     *
+     * @throws IllegalArgumentException
+     *         {@code websocket} is {@code null}.
+     */
+    public WebSocketSubscriber(WebSocket websocket)
+    {
+        if (websocket == null)
+        {
+            throw new IllegalArgumentException("websocket must not be null.");
+        }
+
+        mWebSocket = websocket;
+
+        websocket.addListener(new Listener());
+    }
+
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription)
+    {
+        if (subscription == null)
+        {
+            throw new NullPointerException("subscription must not be null.");
+        }
+
+        synchronized (this)
+        {
+            // Rule 2.5 of Reactive Streams.
+            if (mSubscription != null || mDisconnected)
+            {
+                subscription.cancel();
+                return;
+            }
+
+            mSubscription = subscription;
+        }
+
+        int size = mWebSocket.getFrameQueueSize();
+
+        subscription.request(0 < size ? size : DEFAULT_REQUEST_SIZE);
+    }
+
+
+    @Override
+    public void onNext(WebSocketFrame frame)
+    {
+        if (frame == null)
+        {
+            throw new NullPointerException("frame must not be null.");
+        }
+
+        mWebSocket.sendFrame(frame);
+    }
+
+
+    @Override
+    public void onError(Throwable throwable)
+    {
+        if (throwable == null)
+        {
+            throw new NullPointerException("throwable must not be null.");
+        }
+
+        mWebSocket.disconnect(WebSocketCloseCode.UNEXPECTED, throwable.getMessage());
+    }
+
+
+    @Override
+    public void onComplete()
+    {
+        mWebSocket.disconnect();
+    }
+
+
+    private void requestNext(WebSocketFrame frame)
+    {
+        // The last frame of a message has been written or discarded.
+        if (frame.isDataFrame() == false || frame.getFin() == false)
+        {
+            return;
+        }
+
+        Flow.Subscription subscription;
+
+        synchronized (this)
+        {
+            subscription = mSubscription;
+        }
+
+        if (subscription != null)
+        {
+            subscription.request(1);
+        }
+    }
+
+
+    private class Listener extends WebSocketAdapter
+    {
+        @Override
+        public void onFrameSent(WebSocket websocket, WebSocketFrame frame)
+        {
+            requestNext(frame);
+        }
+
+
+        @Override
+        public void onFrameUnsent(WebSocket websocket, WebSocketFrame frame)
+        {
+            requestNext(frame);
+        }
+
+
+        @Override
+        public void onDisconnected(WebSocket websocket,
+                WebSocketFrame serverCloseFrame, WebSocketFrame clientCloseFrame,
+                boolean closedByServer)
+        {
+            Flow.Subscription subscription;
+
+            synchronized (WebSocketSubscriber.this)
+            {
+                mDisconnected = true;
+                subscription  = mSubscription;
+            }
+
+            if (subscription != null)
+            {
+                subscription.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+
+public class AdaptivePingTest
+{
+    /**
+     * Server which sends text messages for a while (or a burst of them at
+     * once) and records the times when ping frames arrive, answering them
+     * if told to.
+     */
+    private static class Server extends Thread
+    {
+        private final ServerSocket mServerSocket;
+        private final long mBusyTime;
+        private final boolean mAnswer;
+        private final int mBurst;
+        private volatile Socket mSocket;
+        final List<Long> pings = new CopyOnWriteArrayList<Long>();
+        volatile long busyUntil;
+
+
+        Server(long busyTime, boolean answer) throws Exception
+        {
+            this(busyTime, answer, 0);
+        }
+
+
+        Server(long busyTime, boolean answer, int burst) throws Exception
+        {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            mBusyTime = busyTime;
+            mAnswer = answer;
+            mBurst = burst;
+            setDaemon(true);
+        }
+
+
+        int getPort()
+        {
+            return mServerSocket.getLocalPort();
+        }
+
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                mSocket = mServerSocket.accept();
+
+                InputStream input = mSocket.getInputStream();
+                final OutputStream output = mSocket.getOutputStream();
+                final DataInputStream in = new DataInputStream(input);
+
+                ServerUtil.acceptHandshake(input, output);
+
+                Thread reader = new Thread() {
+                    @Override
+                    public void run()
+                    {
+                        readFrames(in, output);
+                    }
+                };
+
+                reader.setDaemon(true);
+                reader.start();
+
+                synchronized (output)
+                {
+                    for (int i = 0; i < mBurst; ++i)
+                    {
+                        output.write(ServerUtil.frame(0x81, new byte[125]));
+                    }
+
+                    output.flush();
+                }
+
+                busyUntil = System.currentTimeMillis() + mBusyTime;
+
+                while (System.currentTimeMillis() < busyUntil)
+                {
+                    synchronized (output)
+                    {
+                        output.write(ServerUtil.frame(0x81, "busy"));
+                        output.flush();
+                    }
+
+                    Thread.sleep(20);
+                }
+            }
+            catch (Exception e)
+            {
+                // The server socket has been closed.
+            }
+        }
+
+
+        private void readFrames(DataInputStream in, OutputStream output)
+        {
+            try
+            {
+                while (true)
+                {
+                    int opcode = in.readUnsignedByte() & 0x0F;
+                    byte[] payload = ServerUtil.readPayload(in);
+
+                    if (opcode == WebSocketOpcode.PING)
+                    {
+                        pings.add(System.currentTimeMillis());
+
+                        if (mAnswer)
+                        {
+                            synchronized (output)
+                            {
+                                output.write(ServerUtil.frame(0x8A, payload));
+                                output.flush();
+                            }
+                        }
+                    }
+                    else if (opcode == WebSocketOpcode.CLOSE)
+                    {
+                        break;
+                    }
+                }
+            }
+            catch (Exception e)
+            {
+                // The connection has been closed.
+            }
+        }
+
+
+        void close() throws Exception
+        {
+            mServerSocket.close();
+
+            if (mSocket != null)
+            {
+                mSocket.close();
+            }
+        }
+    }
+
+
+    @Test
+    public void test001() throws Exception
+    {
+        Server server = new Server(600, true);
+        server.start();
+
+        try
+        {
+            WebSocket ws = new WebSocketFactory()
+                .setConnectionTimeout(5000)
+                .createSocket("ws://127.0.0.1:" + server.getPort())
+                .setPingInterval(100)
+                .setAdaptivePing(true)
+                .setMaxMissedPongs(2)
+                .connect();
+
+            assertTrue(ws.isAdaptivePing());
+
+            Thread.sleep(1000);
+
+            // No ping frame while frames keep arriving.
+            assertTrue(0 < server.pings.size());
+
+            for (long time : server.pings)
+            {
+                assertTrue(server.busyUntil <= time);
+            }
+
+            // The pong frames have been matched with the ping frames.
+            assertTrue(0 <= ws.getPingRoundTripTime());
+            assertTrue(ws.isOpen());
+
+            ws.disconnect(WebSocketCloseCode.NORMAL, null, 0);
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test002() throws Exception
+    {
+        Server server = new Server(0, false);
+        server.start();
+
+        try
+        {
+            final List<WebSocketException> errors = new CopyOnWriteArrayList<WebSocketException>();
+            final CountDownLatch closed = new CountDownLatch(1);
+
+            WebSocket ws = new WebSocketFactory()
+                .setConnectionTimeout(5000)
+                .createSocket("ws://127.0.0.1:" + server.getPort())
+                .setPingInterval(100)
+                .setAdaptivePing(true)
+                .setMaxMissedPongs(2)
+                .addListener(new WebSocketAdapter() {
+                    @Override
+                    public void onError(WebSocket websocket, WebSocketException cause)
+                    {
+                        errors.add(cause);
+                    }
+
+                    @Override
+                    public void onDisconnected(WebSocket websocket,
+                            WebSocketFrame serverCloseFrame, WebSocketFrame clientCloseFrame,
+                            boolean closedByServer)
+                    {
+                        closed.countDown();
+                    }
+                })
+                .connect();
+
+            // The peer which does not answer ping frames is regarded as dead.
+            assertTrue(closed.await(5, TimeUnit.SECONDS));
+            assertEquals(2, server.pings.size());
+            assertEquals(WebSocketError.PONG_TIMEOUT, errors.get(0).getError());
+            assertEquals(-1, ws.getPingRoundTripTime());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test003() throws Exception
+    {
+        WebSocket ws = new WebSocketFactory().createSocket("ws://localhost/");
+
+        assertFalse(ws.isAdaptivePing());
+        assertEquals(0, ws.getMaxMissedPongs());
+        assertEquals(-1, ws.getPingRoundTripTime());
+
+        // The settings are copied by recreate().
+        ws.setAdaptivePing(true).setMaxMissedPongs(3);
+        WebSocket copy = ws.recreate();
+        assertTrue(copy.isAdaptivePing());
+        assertEquals(3, copy.getMaxMissedPongs());
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test004()
+    {
+        new WebSocket(new WebSocketFactory(), false, null, "localhost", "/", null).setMaxMissedPongs(-1);
+    }
+
+
+    @Test
+    public void test005() throws Exception
+    {
+        // More data than a paused reading thread reads in advance, so
+        // that the pong frames behind the data are not read.
+        Server server = new Server(0, true, 1000);
+        server.start();
+
+        try
+        {
+            final List<WebSocketException> errors = new CopyOnWriteArrayList<WebSocketException>();
+
+            WebSocket ws = new WebSocketFactory()
+                .setConnectionTimeout(5000)
+                .createSocket("ws://127.0.0.1:" + server.getPort())
+                .setPingInterval(100)
+                .setMaxMissedPongs(2)
+                .addListener(new WebSocketAdapter() {
+                    @Override
+                    public void onError(WebSocket websocket, WebSocketException cause)
+                    {
+                        errors.add(cause);
+                    }
+                });
+
+            // Pong frames are not read while reading is paused, but the
+            // peer is not regarded as dead.
+            ws.pauseReading().connect();
+
+            // More pings than the maximum number of missed pongs.
+            long deadline = System.currentTimeMillis() + 5000;
+
+            while (server.pings.size() < 3 && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(50);
+            }
+
+            assertTrue(3 <= server.pings.size());
+            assertTrue(ws.isOpen());
+
+            ws.resumeReading();
+            Thread.sleep(300);
+
+            assertTrue(ws.isOpen());
+            assertTrue(errors.isEmpty());
+            assertTrue(0 <= ws.getPingRoundTripTime());
+
+            ws.disconnect(WebSocketCloseCode.NORMAL, null, 0);
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+}
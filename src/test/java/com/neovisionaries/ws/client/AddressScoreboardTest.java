@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import org.junit.Test;
+
+
+public class AddressScoreboardTest
+{
+    private static InetAddress address(int n) throws UnknownHostException
+    {
+        return InetAddress.getByAddress(new byte[] { 10, 0, 0, (byte)n });
+    }
+
+
+    @Test
+    public void test001() throws UnknownHostException
+    {
+        AddressScoreboard scoreboard = new AddressScoreboard();
+        InetAddress[] addresses = { address(1), address(2), address(3) };
+
+        // Without records, the order is kept.
+        assertArrayEquals(addresses, scoreboard.sort(addresses));
+
+        // The fastest address goes first. Addresses without records follow.
+        scoreboard.recordSuccess(address(3), 20);
+        scoreboard.recordSuccess(address(2), 10);
+
+        InetAddress[] expected = { address(2), address(3), address(1) };
+        assertArrayEquals(expected, scoreboard.sort(addresses));
+    }
+
+
+    @Test
+    public void test002() throws UnknownHostException
+    {
+        AddressScoreboard scoreboard = new AddressScoreboard();
+        InetAddress[] addresses = { address(1), address(2) };
+
+        // A failed address is demoted even if it was fast.
+        scoreboard.recordSuccess(address(1), 5);
+        scoreboard.recordFailure(address(1));
+
+        InetAddress[] expected = { address(2), address(1) };
+        assertArrayEquals(expected, scoreboard.sort(addresses));
+
+        // A success restores it.
+        scoreboard.recordSuccess(address(1), 5);
+        assertArrayEquals(addresses, scoreboard.sort(addresses));
+    }
+
+
+    @Test
+    public void test003() throws UnknownHostException
+    {
+        AddressScoreboard scoreboard = new AddressScoreboard();
+
+        // No record.
+        assertEquals(250, scoreboard.getFallbackDelay(address(1), 250));
+
+        for (int i = 1; i <= 10; ++i)
+        {
+            scoreboard.recordSuccess(address(1), i * 30);
+        }
+
+        // The 90th percentile of 30, 60, ..., 300.
+        assertEquals(270, scoreboard.getFallbackDelay(address(1), 250));
+
+        // Clamped to the minimum.
+        scoreboard.recordSuccess(address(2), 1);
+        assertEquals(100, scoreboard.getFallbackDelay(address(2), 250));
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+
+public class CachingHostResolverTest
+{
+    /**
+     * Stand-in resolver which does not access any DNS server.
+     */
+    private static class LocalResolver implements HostResolver
+    {
+        final AtomicInteger count = new AtomicInteger();
+        volatile boolean failing;
+        volatile long delay;
+
+
+        public InetAddress[] resolve(String hostname) throws UnknownHostException
+        {
+            int n = count.incrementAndGet();
+
+            if (0 < delay)
+            {
+                try
+                {
+                    Thread.sleep(delay);
+                }
+                catch (InterruptedException e)
+                {
+                }
+            }
+
+            if (failing)
+            {
+                throw new UnknownHostException(hostname);
+            }
+
+            // 10.0.0.{n}
+            return new InetAddress[] {
+                InetAddress.getByAddress(hostname, new byte[] { 10, 0, 0, (byte)n })
+            };
+        }
+    }
+
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+        }
+    }
+
+
+    @Test
+    public void test001() throws UnknownHostException
+    {
+        LocalResolver local = new LocalResolver();
+        CachingHostResolver resolver = new CachingHostResolver(local);
+
+        // The second lookup is served from the cache.
+        InetAddress[] first  = resolver.resolve("example.com");
+        InetAddress[] second = resolver.resolve("example.com");
+
+        assertEquals(1, local.count.get());
+        assertEquals(first[0], second[0]);
+
+        // Another hostname.
+        resolver.resolve("example.org");
+        assertEquals(2, local.count.get());
+    }
+
+
+    @Test
+    public void test002()
+    {
+        LocalResolver local = new LocalResolver();
+        local.failing = true;
+        CachingHostResolver resolver = new CachingHostResolver(local).setNegativeTtl(60 * 1000L);
+
+        for (int i = 0; i < 2; ++i)
+        {
+            try
+            {
+                resolver.resolve("unknown.example.com");
+                fail("The hostname was resolved.");
+            }
+            catch (UnknownHostException e)
+            {
+            }
+        }
+
+        // The failure has been cached.
+        assertEquals(1, local.count.get());
+    }
+
+
+    @Test
+    public void test003() throws UnknownHostException
+    {
+        LocalResolver local = new LocalResolver();
+        CachingHostResolver resolver = new CachingHostResolver(local).setPositiveTtl(50);
+
+        resolver.resolve("example.com");
+
+        // The entry has expired.
+        sleep(100);
+        InetAddress[] addresses = resolver.resolve("example.com");
+
+        assertEquals(2, local.count.get());
+        assertEquals(2, addresses[0].getAddress()[3]);
+    }
+
+
+    @Test
+    public void test004() throws Exception
+    {
+        final LocalResolver local = new LocalResolver();
+        local.delay = 100;
+        final CachingHostResolver resolver = new CachingHostResolver(local);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final InetAddress[][] results = new InetAddress[10][];
+        Thread[] threads = new Thread[results.length];
+
+        for (int i = 0; i < threads.length; ++i)
+        {
+            final int index = i;
+
+            threads[i] = new Thread() {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        latch.await();
+                        results[index] = resolver.resolve("example.com");
+                    }
+                    catch (Exception e)
+                    {
+                    }
+                }
+            };
+
+            threads[i].start();
+        }
+
+        latch.countDown();
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        // The concurrent lookups have been coalesced.
+        assertEquals(1, local.count.get());
+
+        for (InetAddress[] result : results)
+        {
+            assertEquals(results[0][0], result[0]);
+        }
+    }
+
+
+    @Test
+    public void test005() throws UnknownHostException
+    {
+        LocalResolver local = new LocalResolver();
+        CachingHostResolver resolver = new CachingHostResolver(local).setPositiveTtl(500);
+
+        resolver.resolve("example.com");
+
+        // After 80% of the TTL, the cached result is returned and
+        // the hostname is resolved again in the background.
+        sleep(420);
+        InetAddress[] addresses = resolver.resolve("example.com");
+        assertEquals(1, addresses[0].getAddress()[3]);
+
+        sleep(50);
+        assertEquals(2, local.count.get());
+
+        // The refreshed result.
+        addresses = resolver.resolve("example.com");
+        assertEquals(2, addresses[0].getAddress()[3]);
+    }
+
+
+    @Test
+    public void test006()
+    {
+        WebSocketFactory factory = new WebSocketFactory();
+        HostResolver resolver = new LocalResolver();
+
+        assertSame(resolver, factory.setHostResolver(resolver).getHostResolver());
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+
+public class ConnectSchedulerTest
+{
+    /**
+     * Server which holds each connection for a while and closes it
+     * without responding. The peak number of connections is recorded.
+     */
+    private static class Server extends Thread
+    {
+        private final ServerSocket mServerSocket;
+        private final long mHoldTime;
+        private int mCurrent;
+        int peak;
+        int accepted;
+
+
+        Server(long holdTime) throws Exception
+        {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            mHoldTime = holdTime;
+            setDaemon(true);
+        }
+
+
+        String getURI()
+        {
+            return "ws://127.0.0.1:" + mServerSocket.getLocalPort() + "/";
+        }
+
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    final Socket socket = mServerSocket.accept();
+
+                    synchronized (this)
+                    {
+                        ++accepted;
+                        ++mCurrent;
+                        peak = Math.max(peak, mCurrent);
+                    }
+
+                    new Thread() {
+                        @Override
+                        public void run()
+                        {
+                            hold(socket);
+                        }
+                    }.start();
+                }
+            }
+            catch (Exception e)
+            {
+                // The server socket has been closed.
+            }
+        }
+
+
+        private void hold(Socket socket)
+        {
+            try
+            {
+                Thread.sleep(mHoldTime);
+            }
+            catch (Exception e)
+            {
+            }
+
+            // Before the client notices the close and starts another attempt.
+            synchronized (this)
+            {
+                --mCurrent;
+            }
+
+            try
+            {
+                socket.close();
+            }
+            catch (Exception e)
+            {
+            }
+        }
+
+
+        void close() throws Exception
+        {
+            mServerSocket.close();
+        }
+    }
+
+
+    private static List<WebSocket> createSockets(WebSocketFactory factory, String uri, int count) throws Exception
+    {
+        List<WebSocket> websockets = new ArrayList<WebSocket>();
+
+        for (int i = 0; i < count; ++i)
+        {
+            websockets.add(factory.createSocket(uri));
+        }
+
+        return websockets;
+    }
+
+
+    private static void assertFailed(Future<WebSocket> future) throws InterruptedException
+    {
+        try
+        {
+            future.get();
+            fail("The connection attempt succeeded.");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof WebSocketException);
+        }
+    }
+
+
+    @Test
+    public void test001() throws Exception
+    {
+        Server server = new Server(50);
+        server.start();
+
+        try
+        {
+            final AtomicInteger finished = new AtomicInteger();
+            WebSocketFactory factory = new WebSocketFactory().setConnectionTimeout(5000);
+
+            ConnectScheduler scheduler = new ConnectScheduler()
+                .setMaxConcurrency(4)
+                .setMaxConcurrencyPerHost(2)
+                .setProgressListener(new ConnectProgressListener() {
+                    public void onConnectFinished(ConnectScheduler scheduler, WebSocket websocket, WebSocketException cause)
+                    {
+                        finished.incrementAndGet();
+                    }
+                });
+
+            List<Future<WebSocket>> futures =
+                scheduler.connect(createSockets(factory, server.getURI(), 8));
+
+            for (Future<WebSocket> future : futures)
+            {
+                // The server closes the connection without responding.
+                assertFailed(future);
+            }
+
+            // The limit per host has been honored.
+            assertTrue(server.peak <= 2);
+            assertEquals(8, server.accepted);
+
+            assertEquals(8, scheduler.getFailedCount());
+            assertEquals(0, scheduler.getSucceededCount());
+            assertEquals(0, scheduler.getWaitingCount());
+            assertEquals(8, finished.get());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test002() throws Exception
+    {
+        Server server = new Server(0);
+        server.start();
+
+        try
+        {
+            WebSocketFactory factory = new WebSocketFactory().setConnectionTimeout(5000);
+
+            // 20 attempts per second.
+            ConnectScheduler scheduler = factory.getConnectScheduler().setRampUpRate(20);
+
+            long startTime = System.currentTimeMillis();
+
+            List<Future<WebSocket>> futures =
+                scheduler.connect(createSockets(factory, server.getURI(), 5));
+
+            for (Future<WebSocket> future : futures)
+            {
+                assertFailed(future);
+            }
+
+            // The fifth attempt starts 200 milliseconds after the first one.
+            assertTrue(200 <= System.currentTimeMillis() - startTime);
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test003() throws Exception
+    {
+        Server server = new Server(200);
+        server.start();
+
+        try
+        {
+            WebSocketFactory factory = new WebSocketFactory().setConnectionTimeout(5000);
+            ConnectScheduler scheduler = new ConnectScheduler().setMaxConcurrency(1);
+
+            List<Future<WebSocket>> futures =
+                scheduler.connect(createSockets(factory, server.getURI(), 2));
+
+            // The second attempt is waiting and can be cancelled.
+            assertTrue(futures.get(1).cancel(false));
+            assertFailed(futures.get(0));
+
+            assertEquals(1, scheduler.getCancelledCount());
+            assertEquals(1, scheduler.getFailedCount());
+            assertEquals(0, scheduler.getWaitingCount());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import org.junit.Test;
+
+
+public class ConnectTimingsTest
+{
+    @Test
+    public void test001() throws Exception
+    {
+        final ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+        // Accept a connection and close it without responding.
+        Thread thread = new Thread() {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Socket socket = server.accept();
+                    socket.getInputStream().read();
+                    socket.close();
+                }
+                catch (Exception e)
+                {
+                }
+            }
+        };
+        thread.start();
+
+        final ConnectTimings[] notified = new ConnectTimings[1];
+
+        try
+        {
+            WebSocket ws = new WebSocketFactory()
+                .setConnectionTimeout(5000)
+                .createSocket("ws://127.0.0.1:" + server.getLocalPort())
+                .addListener(new WebSocketAdapter() {
+                    @Override
+                    public void onConnectTimings(WebSocket websocket, ConnectTimings timings)
+                    {
+                        notified[0] = timings;
+                    }
+                });
+
+            try
+            {
+                ws.connect();
+                fail("The opening handshake succeeded.");
+            }
+            catch (WebSocketException e)
+            {
+            }
+
+            ConnectTimings timings = ws.getConnectTimings();
+            assertSame(timings, notified[0]);
+
+            assertTrue(0 <= timings.getHostResolutionTime());
+            assertTrue(0 <= timings.getSocketConnectionTime());
+            assertEquals(InetAddress.getByName("127.0.0.1"), timings.getAddress());
+            assertFalse(timings.isPreConnected());
+
+            // Not performed.
+            assertEquals(-1, timings.getProxyHandshakeTime());
+            assertEquals(-1, timings.getSSLHandshakeTime());
+            assertEquals(-1, timings.getHostnameVerificationTime());
+
+            // Failed.
+            assertEquals(-1, timings.getOpeningHandshakeTime());
+
+            assertTrue(timings.getHostResolutionTime() + timings.getSocketConnectionTime() <= timings.getTotalTime());
+        }
+        finally
+        {
+            server.close();
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+
+public class DirectWriteTest
+{
+    private static WebSocket connect(EchoServer server, final List<String> messages,
+            final List<Thread> senders, final CountDownLatch latch) throws Exception
+    {
+        return new WebSocketFactory()
+            .setConnectionTimeout(5000)
+            .createSocket("ws://127.0.0.1:" + server.getPort())
+            .setDirectWrite(true)
+            .addListener(new WebSocketAdapter() {
+                @Override
+                public void onFrameSent(WebSocket websocket, WebSocketFrame frame)
+                {
+                    if (frame.isTextFrame())
+                    {
+                        senders.add(Thread.currentThread());
+                    }
+                }
+
+                @Override
+                public void onTextMessage(WebSocket websocket, String text)
+                {
+                    messages.add(text);
+                    latch.countDown();
+                }
+            })
+            .connect();
+    }
+
+
+    @Test
+    public void test001() throws Exception
+    {
+        // A frame sent on an idle connection is written on the caller's thread.
+        EchoServer server = new EchoServer(1);
+        server.start();
+
+        try
+        {
+            List<String> messages = new CopyOnWriteArrayList<String>();
+            List<Thread> senders  = new CopyOnWriteArrayList<Thread>();
+            CountDownLatch latch  = new CountDownLatch(1);
+
+            WebSocket ws = connect(server, messages, senders, latch);
+
+            // Wait until the writing thread has started and become idle.
+            Thread.sleep(200);
+
+            ws.sendText("direct");
+
+            // The frame has been written before sendText() returned.
+            assertEquals(1, senders.size());
+            assertSame(Thread.currentThread(), senders.get(0));
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals("direct", messages.get(0));
+
+            ws.disconnect();
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test002() throws Exception
+    {
+        // Frames sent by multiple threads, some written directly and
+        // others queued, keep the order of each sender.
+        final int count = 200;
+
+        EchoServer server = new EchoServer(count * 2);
+        server.start();
+
+        try
+        {
+            List<String> messages = new CopyOnWriteArrayList<String>();
+            List<Thread> senders  = new CopyOnWriteArrayList<Thread>();
+            CountDownLatch latch  = new CountDownLatch(count * 2);
+
+            final WebSocket ws = connect(server, messages, senders, latch);
+
+            Thread[] threads = new Thread[2];
+
+            for (int t = 0; t < threads.length; ++t)
+            {
+                final String prefix = String.valueOf((char)('a' + t));
+
+                threads[t] = new Thread() {
+                    @Override
+                    public void run()
+                    {
+                        for (int i = 0; i < count; ++i)
+                        {
+                            ws.sendText(prefix + i);
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            int[] next = new int[threads.length];
+
+            for (String message : messages)
+            {
+                int t = message.charAt(0) - 'a';
+
+                assertEquals(String.valueOf(next[t]), message.substring(1));
+                ++next[t];
+            }
+
+            ws.disconnect();
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+
+/**
+ * Server which echoes back text messages from the client.
+ */
+class EchoServer extends Thread
+{
+    private final ServerSocket mServerSocket;
+    private final int mCount;
+
+
+    EchoServer(int count) throws Exception
+    {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mCount = count;
+        setDaemon(true);
+    }
+
+
+    int getPort()
+    {
+        return mServerSocket.getLocalPort();
+    }
+
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            Socket socket = mServerSocket.accept();
+            socket.setSoTimeout(5000);
+
+            InputStream input = socket.getInputStream();
+            OutputStream output = socket.getOutputStream();
+
+            ServerUtil.acceptHandshake(input, output);
+
+            DataInputStream in = new DataInputStream(input);
+
+            // Echo back the text messages from the client.
+            for (int i = 0; i < mCount; ++i)
+            {
+                // Skip the first byte (FIN + TEXT).
+                in.readUnsignedByte();
+
+                output.write(ServerUtil.frame(0x81, ServerUtil.readPayload(in)));
+                output.flush();
+            }
+
+            // Wait until the client closes the connection.
+            while (input.read() != -1)
+            {
+            }
+
+            socket.close();
+        }
+        catch (Exception e)
+        {
+            // The server socket has been closed.
+        }
+    }
+
+
+    void close() throws Exception
+    {
+        mServerSocket.close();
+    }
+}
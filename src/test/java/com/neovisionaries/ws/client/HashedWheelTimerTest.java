@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+
+public class HashedWheelTimerTest
+{
+    private static Runnable record(final List<Integer> list, final int value, final CountDownLatch latch)
+    {
+        return new Runnable() {
+            public void run()
+            {
+                list.add(value);
+                latch.countDown();
+            }
+        };
+    }
+
+
+    @Test
+    public void test001() throws Exception
+    {
+        // Tasks run in the order of their deadlines, including a task
+        // whose deadline is beyond one rotation of the small wheel.
+        HashedWheelTimer timer = new HashedWheelTimer("test", 10, 4);
+        List<Integer> list = new CopyOnWriteArrayList<Integer>();
+        CountDownLatch latch = new CountDownLatch(3);
+
+        long start = System.currentTimeMillis();
+
+        timer.schedule(record(list, 3, latch), 150);
+        timer.schedule(record(list, 1, latch), 0);
+        timer.schedule(record(list, 2, latch), 30);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(150 <= System.currentTimeMillis() - start);
+
+        assertEquals(3, list.size());
+        assertEquals(1, (int)list.get(0));
+        assertEquals(2, (int)list.get(1));
+        assertEquals(3, (int)list.get(2));
+        assertEquals(0, timer.getPendingCount());
+    }
+
+
+    @Test
+    public void test002() throws Exception
+    {
+        // A cancelled task does not run.
+        HashedWheelTimer timer = new HashedWheelTimer("test", 10, 8);
+        List<Integer> list = new CopyOnWriteArrayList<Integer>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        HashedWheelTimer.Timeout cancelled = timer.schedule(record(list, 1, new CountDownLatch(1)), 20);
+        HashedWheelTimer.Timeout expired   = timer.schedule(record(list, 2, latch), 50);
+
+        assertEquals(2, timer.getPendingCount());
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertTrue(cancelled.isCancelled());
+        assertEquals(1, timer.getPendingCount());
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, list.size());
+        assertEquals(2, (int)list.get(0));
+        assertTrue(expired.isExpired());
+        assertFalse(expired.cancel());
+    }
+
+
+    @Test
+    public void test003() throws Exception
+    {
+        // The timer can be used again after its thread has terminated.
+        HashedWheelTimer timer = new HashedWheelTimer("test", 10, 8);
+        List<Integer> list = new CopyOnWriteArrayList<Integer>();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        timer.schedule(record(list, 1, latch), 10);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        Thread.sleep(100);
+
+        latch = new CountDownLatch(1);
+        timer.schedule(record(list, 2, latch), 10);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        assertEquals(2, list.size());
+    }
+
+
+    @Test
+    public void test004() throws Exception
+    {
+        // A blocking task handed over by offload() does not delay the
+        // other tasks of the timer.
+        final HashedWheelTimer timer = new HashedWheelTimer("test", 10, 8);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        List<Integer> list = new CopyOnWriteArrayList<Integer>();
+
+        timer.schedule(new Runnable() {
+            public void run()
+            {
+                timer.offload(new Runnable() {
+                    public void run()
+                    {
+                        try
+                        {
+                            blocker.await();
+                        }
+                        catch (InterruptedException e)
+                        {
+                        }
+                    }
+                });
+            }
+        }, 10);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        timer.schedule(record(list, 1, latch), 50);
+
+        try
+        {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(1, list.size());
+        }
+        finally
+        {
+            blocker.countDown();
+        }
+    }
+}
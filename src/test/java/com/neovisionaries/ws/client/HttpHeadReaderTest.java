@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+
+public class HttpHeadReaderTest
+{
+    private static HttpHeadReader read(InputStream input) throws IOException
+    {
+        HttpHeadReader head = new HttpHeadReader(input);
+        head.read();
+
+        return head;
+    }
+
+
+    private static InputStream stream(byte[]... chunks)
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        for (byte[] chunk : chunks)
+        {
+            baos.write(chunk, 0, chunk.length);
+        }
+
+        return new BufferedInputStream(new ByteArrayInputStream(baos.toByteArray()));
+    }
+
+
+    @Test
+    public void test001() throws IOException
+    {
+        HttpHeadReader head = read(stream(Misc.getBytesUTF8(
+            "HTTP/1.1 101 Switching Protocols\r\n" +
+            "Upgrade: websocket\r\n" +
+            "connection:Upgrade  \r\n" +
+            "X-Multi: a\r\n" +
+            "X-Multi: b\r\n" +
+            "\r\n")));
+
+        assertTrue(head.isComplete());
+        assertEquals("HTTP/1.1 101 Switching Protocols", head.getStatusLine());
+
+        Map<String, List<String>> headers = head.getHeaders();
+        assertEquals("websocket", headers.get("upgrade").get(0));
+        assertEquals("Upgrade", headers.get("Connection").get(0));
+        assertEquals(2, headers.get("X-Multi").size());
+        assertEquals("b", headers.get("X-Multi").get(1));
+    }
+
+
+    @Test
+    public void test002() throws IOException, WebSocketException
+    {
+        // An unmasked text frame "hello" sent together with the response.
+        byte[] frame = { (byte)0x81, 0x05, 'h', 'e', 'l', 'l', 'o' };
+
+        WebSocketInputStream input = new WebSocketInputStream(stream(
+            Misc.getBytesUTF8("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n\r\n"),
+            frame));
+
+        HttpHeadReader head = read(input);
+        assertTrue(head.isComplete());
+
+        // The bytes after the head are left for the frame reader.
+        WebSocketFrame received = input.readFrame();
+        assertEquals("hello", received.getPayloadText());
+    }
+
+
+    @Test
+    public void test003() throws IOException
+    {
+        // Bare LFs, obsolete line folding and a head longer than a chunk.
+        StringBuilder value = new StringBuilder();
+
+        for (int i = 0; i < 3000; ++i)
+        {
+            value.append('x');
+        }
+
+        HttpHeadReader head = read(stream(Misc.getBytesUTF8(
+            "HTTP/1.1 200 OK\n" +
+            "X-Long: " + value + "\n" +
+            "X-Folded: first\n" +
+            " \t second\n" +
+            "\n" +
+            "body")));
+
+        Map<String, List<String>> headers = head.getHeaders();
+        assertEquals(value.toString(), headers.get("X-Long").get(0));
+        assertEquals("first second", headers.get("X-Folded").get(0));
+    }
+
+
+    @Test
+    public void test004() throws IOException
+    {
+        // The stream ends before the empty line.
+        HttpHeadReader head = read(stream(Misc.getBytesUTF8("HTTP/1.1 200 OK\r\nServer: x")));
+
+        assertFalse(head.isComplete());
+        assertEquals("HTTP/1.1 200 OK", head.getStatusLine());
+        assertEquals("x", head.getHeaders().get("Server").get(0));
+
+        // No bytes at all.
+        head = read(stream(new byte[0]));
+        assertFalse(head.isComplete());
+        assertNull(head.getStatusLine());
+    }
+
+
+    @Test
+    public void test005() throws IOException
+    {
+        // The connection breaks in the header section.
+        final byte[] bytes = Misc.getBytesUTF8("HTTP/1.1 101 Switching Protocols\r\nUpgrade: web");
+
+        InputStream broken = new InputStream() {
+            private int mPosition;
+
+            @Override
+            public int read() throws IOException
+            {
+                if (mPosition < bytes.length)
+                {
+                    return bytes[mPosition++] & 0xFF;
+                }
+
+                throw new IOException("Connection reset");
+            }
+        };
+
+        try
+        {
+            new HandshakeReader(null).readHandshake(
+                new WebSocketInputStream(new BufferedInputStream(broken)), "key");
+            fail("The error was not reported.");
+        }
+        catch (WebSocketException e)
+        {
+            assertEquals(WebSocketError.HTTP_HEADER_FAILURE, e.getError());
+        }
+    }
+}
@@ -16,11 +16,15 @@
 package com.neovisionaries.ws.client;
 
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.Arrays;
 import org.junit.Test;
 
 
@@ -69,6 +73,74 @@ public class PerMessageDeflateExtensionTest
     }
 
 
+    private static byte[] generateMessage(int seed, int length)
+    {
+        // Text which contains many repetitions at various distances.
+        String[] words = { "alpha ", "bravo ", "charlie ", "delta ", "echo ", "foxtrot " };
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; builder.length() < length; ++i)
+        {
+            builder.append(words[(i * 7 + seed) % words.length]).append(i % 100).append(' ');
+        }
+
+        return Misc.getBytesUTF8(builder.substring(0, length));
+    }
+
+
+    private static void roundTrip(String sender, String receiver, int... lengths) throws WebSocketException
+    {
+        // The sender compresses messages as a client and the receiver
+        // decompresses them as if they were sent by a server that has
+        // agreed on the same window size.
+        PerMessageDeflateExtension compressor   = parseValid(sender);
+        PerMessageDeflateExtension decompressor = parseValid(receiver);
+
+        for (int i = 0; i < lengths.length; ++i)
+        {
+            byte[] plain      = generateMessage(i, lengths[i]);
+            byte[] compressed = compressor.compress(plain);
+
+            assertTrue(compressed.length < plain.length);
+            assertArrayEquals(plain, decompressor.decompress(compressed));
+        }
+    }
+
+
+    private static byte[] compressFragments(
+            PerMessageDeflateExtension extension, byte[] plain, int fragmentSize) throws WebSocketException
+    {
+        ByteArray compressed = new ByteArray(plain.length);
+
+        for (int from = 0; from < plain.length; from += fragmentSize)
+        {
+            int to = Math.min(from + fragmentSize, plain.length);
+            byte[] fragment = Arrays.copyOfRange(plain, from, to);
+
+            compressed.put(extension.compressFragment(fragment, to == plain.length));
+        }
+
+        return compressed.toBytes();
+    }
+
+
+    private static byte[] decompressFragments(
+            PerMessageDeflateExtension extension, byte[] compressed, int fragmentSize, int maxLength) throws WebSocketException
+    {
+        byte[] plain = null;
+
+        for (int from = 0; from < compressed.length; from += fragmentSize)
+        {
+            int to = Math.min(from + fragmentSize, compressed.length);
+            byte[] fragment = Arrays.copyOfRange(compressed, from, to);
+
+            plain = extension.decompressFragment(fragment, to == compressed.length, maxLength);
+        }
+
+        return plain;
+    }
+
+
     @Test
     public void test001()
     {
@@ -212,4 +284,227 @@ public class PerMessageDeflateExtensionTest
         assertNotNull(exception);
         assertSame(WebSocketError.PERMESSAGE_DEFLATE_INVALID_MAX_WINDOW_BITS, exception.getError());
     }
+
+
+    @Test
+    public void test015() throws WebSocketException
+    {
+        // Messages longer than the 256-byte window with context takeover.
+        roundTrip("permessage-deflate; client_max_window_bits=8",
+                  "permessage-deflate; server_max_window_bits=8",
+                  300, 1000, 5000, 100000);
+    }
+
+
+    @Test
+    public void test016() throws WebSocketException
+    {
+        // Messages longer than the 1024-byte window without context takeover.
+        roundTrip("permessage-deflate; client_max_window_bits=10; client_no_context_takeover",
+                  "permessage-deflate; server_max_window_bits=10; server_no_context_takeover",
+                  2000, 3000, 70000);
+    }
+
+
+    @Test
+    public void test017() throws WebSocketException
+    {
+        PerMessageDeflateExtension extension = parseValid("permessage-deflate; client_max_window_bits=9");
+
+        // Data which cannot be compressed is returned as is.
+        byte[] plain = Misc.nextBytes(1000);
+
+        assertSame(plain, extension.compress(plain));
+    }
+
+
+    @Test
+    public void test018() throws WebSocketException
+    {
+        PerMessageDeflateExtension compressor   = parseValid("permessage-deflate");
+        PerMessageDeflateExtension decompressor = parseValid("permessage-deflate");
+
+        // Fragmented messages, an unfragmented message and a fragmented message
+        // again. Fragments are compressed incrementally with context takeover.
+        byte[][] messages = {
+            generateMessage(0, 50000), generateMessage(1, 7000), generateMessage(2, 9999)
+        };
+
+        for (int i = 0; i < messages.length; ++i)
+        {
+            byte[] plain      = messages[i];
+            byte[] compressed = compressFragments(compressor, plain, 1000);
+
+            assertTrue(compressed.length < plain.length);
+            assertArrayEquals(plain, decompressor.decompress(compressed));
+        }
+
+        byte[] plain = generateMessage(3, 3000);
+        assertArrayEquals(plain, decompressor.decompress(compressor.compress(plain)));
+
+        plain = generateMessage(4, 5000);
+        assertArrayEquals(plain, decompressor.decompress(compressFragments(compressor, plain, 333)));
+    }
+
+
+    @Test
+    public void test019() throws WebSocketException
+    {
+        PerMessageDeflateExtension compressor   = parseValid("permessage-deflate");
+        PerMessageDeflateExtension decompressor = parseValid("permessage-deflate");
+
+        // Compressed messages are decompressed fragment by fragment. Fragments
+        // are split at arbitrary positions, so blocks span multiple fragments.
+        int[] fragmentSizes = { 1, 7, 100, 4096 };
+
+        for (int i = 0; i < fragmentSizes.length; ++i)
+        {
+            byte[] plain      = generateMessage(i, 20000 + i);
+            byte[] compressed = compressor.compress(plain);
+
+            assertArrayEquals(plain, decompressFragments(decompressor, compressed, fragmentSizes[i], 0));
+        }
+    }
+
+
+    @Test
+    public void test020() throws WebSocketException
+    {
+        PerMessageDeflateExtension compressor   = parseValid("permessage-deflate");
+        PerMessageDeflateExtension decompressor = parseValid("permessage-deflate");
+
+        // 10 MB of zeros are compressed into about 10 KB.
+        byte[] compressed = compressor.compress(new byte[10 * 1024 * 1024]);
+
+        try
+        {
+            decompressFragments(decompressor, compressed, 1024, 1024 * 1024);
+        }
+        catch (WebSocketException e)
+        {
+            assertSame(WebSocketError.TOO_LONG_DECOMPRESSED_MESSAGE, e.getError());
+            return;
+        }
+
+        fail("The decompressed message exceeding the maximum length was accepted.");
+    }
+
+
+    @Test
+    public void test021()
+    {
+        DeflateContextPool pool = new DeflateContextPool();
+
+        // A window returned to the pool is reused after being cleared.
+        ByteArray window = pool.acquireWindow(1024);
+        window.put(new byte[] { 1, 2, 3 });
+        pool.releaseWindow(window);
+        assertEquals(1, pool.size());
+
+        ByteArray reused = pool.acquireWindow(1024);
+        assertSame(window, reused);
+        assertEquals(0, reused.length());
+        assertEquals(0, pool.size());
+
+        // A smaller window is not used for a larger request.
+        pool.releaseWindow(reused);
+        assertNotSame(window, pool.acquireWindow(2048));
+
+        pool.clear();
+    }
+
+
+    @Test
+    public void test022() throws InterruptedException
+    {
+        // The idle timeout is long enough for the background thread not
+        // to trim the entries before they are counted.
+        DeflateContextPool pool = new DeflateContextPool().setIdleTimeout(200);
+
+        pool.releaseDeflater(pool.acquireDeflater());
+        pool.releaseWindow(pool.acquireWindow(1024));
+        assertEquals(2, pool.size());
+
+        // Entries idle longer than the timeout are released.
+        Thread.sleep(400);
+        pool.trim();
+        assertEquals(0, pool.size());
+
+        // Nothing is kept when the maximum size is 0.
+        pool.setMaxSize(0);
+        pool.releaseWindow(pool.acquireWindow(1024));
+        assertEquals(0, pool.size());
+    }
+
+
+    @Test
+    public void test023() throws WebSocketException
+    {
+        // The window is borrowed from the pool only while a message
+        // is decompressed when server_no_context_takeover is agreed.
+        roundTrip("permessage-deflate", "permessage-deflate; server_no_context_takeover", 100, 5000, 100);
+    }
+
+
+    @Test
+    public void test024() throws WebSocketException
+    {
+        PerMessageDeflateExtension compressor   = parseValid("permessage-deflate; client_max_window_bits=9");
+        PerMessageDeflateExtension decompressor = parseValid("permessage-deflate");
+
+        // Messages which cannot be compressed are sent as is, so they must
+        // not remain in the sliding window. The second one is long enough
+        // to make the buffer of the compressor slide.
+        int[] lengths = { 1000, 0, 3000, 0, 100, 50000 };
+
+        for (int i = 0; i < lengths.length; ++i)
+        {
+            if (lengths[i] == 0)
+            {
+                byte[] random = Misc.nextBytes(i == 1 ? 1000 : 100000);
+                assertSame(random, compressor.compress(random));
+                continue;
+            }
+
+            byte[] plain = generateMessage(i, lengths[i]);
+            assertArrayEquals(plain, decompressor.decompress(compressor.compress(plain)));
+        }
+    }
+
+
+    @Test
+    public void test025() throws WebSocketException
+    {
+        // java.util.zip.Deflater is used for fragments with the 32 KB window
+        // and the windowed compressor is used for a smaller window.
+        String[][] pairs = {
+            { "permessage-deflate", "permessage-deflate" },
+            { "permessage-deflate; client_no_context_takeover", "permessage-deflate; server_no_context_takeover" },
+            { "permessage-deflate; client_max_window_bits=10", "permessage-deflate" },
+        };
+
+        for (String[] pair : pairs)
+        {
+            PerMessageDeflateExtension compressor   = parseValid(pair[0]);
+            PerMessageDeflateExtension decompressor = parseValid(pair[1]);
+
+            for (int i = 0; i < 3; ++i)
+            {
+                byte[] plain = generateMessage(i, 30000);
+
+                // The last fragment is empty.
+                ByteArray compressed = new ByteArray(plain.length);
+                compressed.put(compressor.compressFragment(Arrays.copyOfRange(plain, 0, 10000), false));
+                compressed.put(compressor.compressFragment(Arrays.copyOfRange(plain, 10000, 30000), false));
+                compressed.put(compressor.compressFragment(new byte[0], true));
+
+                assertTrue(compressed.length() < plain.length);
+                assertArrayEquals(plain, decompressor.decompress(compressed.toBytes()));
+
+                // An unfragmented message in between.
+                plain = generateMessage(i, 5000);
+                assertArrayEquals(plain, decompressor.decompress(compressor.compress(plain)));
+            }
+        }
+    }
 }
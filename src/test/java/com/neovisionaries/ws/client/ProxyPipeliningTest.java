@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import org.junit.Test;
+
+
+public class ProxyPipeliningTest
+{
+    /**
+     * Stand-in for a proxy server and a WebSocket endpoint behind it.
+     * It waits for both the CONNECT request and the opening handshake
+     * before responding, so a client which waits for the response to
+     * the CONNECT request cannot connect.
+     */
+    private static class Proxy extends Thread
+    {
+        private final ServerSocket mServerSocket;
+        private final boolean mAccept;
+        volatile String received;
+
+
+        Proxy(boolean accept) throws Exception
+        {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            mAccept = accept;
+            setDaemon(true);
+        }
+
+
+        int getPort()
+        {
+            return mServerSocket.getLocalPort();
+        }
+
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                Socket socket = mServerSocket.accept();
+                socket.setSoTimeout(5000);
+
+                // The CONNECT request and the opening handshake.
+                String requests = readHeads(socket.getInputStream(), 2);
+                received = requests;
+
+                OutputStream output = socket.getOutputStream();
+                output.write(Misc.getBytesUTF8(respond(requests)));
+                output.flush();
+
+                // Wait until the client closes the connection.
+                while (socket.getInputStream().read() != -1)
+                {
+                }
+
+                socket.close();
+            }
+            catch (Exception e)
+            {
+                // The server socket has been closed.
+            }
+        }
+
+
+        private String respond(String requests) throws Exception
+        {
+            if (mAccept == false)
+            {
+                return "HTTP/1.1 407 Proxy Authentication Required\r\nContent-Length: 0\r\n\r\n";
+            }
+
+            // Both responses are sent at once.
+            return "HTTP/1.1 200 Connection established\r\n\r\n" +
+                   ServerUtil.respond(requests);
+        }
+
+
+        private static String readHeads(InputStream input, int count) throws Exception
+        {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            int state = 0;
+
+            while (0 < count)
+            {
+                int b = input.read();
+
+                if (b == -1)
+                {
+                    break;
+                }
+
+                buffer.write(b);
+
+                // Count "\r\n\r\n".
+                state = (b == (state % 2 == 0 ? '\r' : '\n')) ? state + 1 : (b == '\r' ? 1 : 0);
+
+                if (state == 4)
+                {
+                    --count;
+                    state = 0;
+                }
+            }
+
+            return Misc.toStringUTF8(buffer.toByteArray());
+        }
+
+
+        void close() throws Exception
+        {
+            mServerSocket.close();
+        }
+    }
+
+
+    private static WebSocket createSocket(Proxy proxy) throws Exception
+    {
+        WebSocketFactory factory = new WebSocketFactory().setConnectionTimeout(5000);
+        factory.getProxySettings().setHost("127.0.0.1").setPort(proxy.getPort()).setPipelined(true);
+
+        return factory.createSocket("ws://example.com/chat");
+    }
+
+
+    @Test
+    public void test001() throws Exception
+    {
+        Proxy proxy = new Proxy(true);
+        proxy.start();
+
+        try
+        {
+            WebSocket ws = createSocket(proxy).connect();
+
+            assertTrue(proxy.received.startsWith("CONNECT example.com:80 HTTP/1.1\r\n"));
+            assertTrue(proxy.received.contains("GET /chat HTTP/1.1\r\n"));
+            assertTrue(0 <= ws.getConnectTimings().getProxyHandshakeTime());
+
+            ws.disconnect();
+        }
+        finally
+        {
+            proxy.close();
+        }
+    }
+
+
+    @Test
+    public void test002() throws Exception
+    {
+        Proxy proxy = new Proxy(false);
+        proxy.start();
+
+        try
+        {
+            createSocket(proxy).connect();
+            fail("The proxy server accepted the CONNECT request.");
+        }
+        catch (WebSocketException e)
+        {
+            assertEquals(WebSocketError.PROXY_HANDSHAKE_ERROR, e.getError());
+        }
+        finally
+        {
+            proxy.close();
+        }
+    }
+}
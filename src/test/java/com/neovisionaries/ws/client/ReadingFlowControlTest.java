@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+
+public class ReadingFlowControlTest
+{
+    /**
+     * Server which sends some text messages and a ping frame, waits for
+     * the pong frame, sends the same number of text messages again, and
+     * then echoes back the close frame from the client.
+     */
+    private static class Server extends Thread
+    {
+        private final ServerSocket mServerSocket;
+        private final int mCount;
+        final CountDownLatch pong = new CountDownLatch(1);
+
+
+        Server(int count) throws Exception
+        {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            mCount = count;
+            setDaemon(true);
+        }
+
+
+        int getPort()
+        {
+            return mServerSocket.getLocalPort();
+        }
+
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                Socket socket = mServerSocket.accept();
+                socket.setSoTimeout(5000);
+
+                InputStream input = socket.getInputStream();
+                OutputStream output = socket.getOutputStream();
+                DataInputStream in = new DataInputStream(input);
+
+                ServerUtil.acceptHandshake(input, output);
+
+                for (int i = 0; i < mCount; ++i)
+                {
+                    output.write(ServerUtil.frame(0x81, String.valueOf(i)));
+                }
+
+                output.write(ServerUtil.frame(0x89, "p"));
+                output.flush();
+
+                // The pong frame.
+                if (readOpcode(in) == WebSocketOpcode.PONG)
+                {
+                    pong.countDown();
+                }
+
+                for (int i = mCount; i < mCount * 2; ++i)
+                {
+                    output.write(ServerUtil.frame(0x81, String.valueOf(i)));
+                }
+
+                output.flush();
+
+                // Echo back the close frame from the client.
+                while (readOpcode(in) != WebSocketOpcode.CLOSE)
+                {
+                }
+
+                output.write(ServerUtil.frame(0x88, new byte[] { 0x03, (byte)0xE8 }));
+                output.flush();
+
+                socket.close();
+            }
+            catch (Exception e)
+            {
+                // The server socket has been closed.
+            }
+        }
+
+
+        /**
+         * Read a frame from the client and return its opcode.
+         */
+        private static int readOpcode(DataInputStream input) throws Exception
+        {
+            int opcode = input.readUnsignedByte() & 0x0F;
+            ServerUtil.readPayload(input);
+
+            return opcode;
+        }
+
+
+        void close() throws Exception
+        {
+            mServerSocket.close();
+        }
+    }
+
+
+    private static void pauseAndResume(Transport transport) throws Exception
+    {
+        final int count = 10;
+
+        Server server = new Server(count);
+        server.start();
+
+        try
+        {
+            final List<String> messages = new CopyOnWriteArrayList<String>();
+            final CountDownLatch latch  = new CountDownLatch(count * 2);
+            final CountDownLatch closed = new CountDownLatch(1);
+
+            WebSocket ws = new WebSocketFactory()
+                .setConnectionTimeout(5000)
+                .setTransport(transport)
+                .createSocket("ws://127.0.0.1:" + server.getPort())
+                .pauseReading()
+                .addListener(new WebSocketAdapter() {
+                    @Override
+                    public void onTextMessage(WebSocket websocket, String text)
+                    {
+                        messages.add(text);
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onDisconnected(WebSocket websocket,
+                            WebSocketFrame serverCloseFrame, WebSocketFrame clientCloseFrame,
+                            boolean closedByServer)
+                    {
+                        closed.countDown();
+                    }
+                })
+                .connect();
+
+            assertTrue(ws.isReadingPaused());
+
+            // The ping frame is answered while the messages are held.
+            assertTrue(server.pong.await(5, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            assertEquals(0, messages.size());
+
+            ws.resumeReading();
+            assertFalse(ws.isReadingPaused());
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            for (int i = 0; i < count * 2; ++i)
+            {
+                assertEquals(String.valueOf(i), messages.get(i));
+            }
+
+            ws.disconnect();
+            assertTrue(closed.await(5, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test001() throws Exception
+    {
+        pauseAndResume(Transport.SOCKET);
+    }
+
+
+    @Test
+    public void test002() throws Exception
+    {
+        pauseAndResume(Transport.SELECTOR);
+    }
+
+
+    @Test
+    public void test003() throws Exception
+    {
+        final int count = 10;
+
+        Server server = new Server(count);
+        server.start();
+
+        try
+        {
+            InboundMessageQueue queue = new InboundMessageQueue(4);
+
+            WebSocket ws = new WebSocketFactory()
+                .setConnectionTimeout(5000)
+                .createSocket("ws://127.0.0.1:" + server.getPort())
+                .addListener(queue)
+                .connect();
+
+            // Reading is paused when the queue is full, but the ping frame
+            // is still answered.
+            assertTrue(server.pong.await(5, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            assertEquals(4, queue.getSize());
+            assertTrue(ws.isReadingPaused());
+
+            for (int i = 0; i < count * 2; ++i)
+            {
+                WebSocketFrame message = queue.poll(5, TimeUnit.SECONDS);
+
+                assertTrue(message.isTextFrame());
+                assertEquals(String.valueOf(i), message.getPayloadText());
+                assertTrue(queue.getSize() <= queue.getCapacity());
+            }
+
+            assertFalse(ws.isReadingPaused());
+            assertEquals(null, queue.poll());
+
+            ws.disconnect();
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test004()
+    {
+        new InboundMessageQueue(0);
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+
+public class ReconnectManagerTest
+{
+    /**
+     * Server which closes each connection without responding.
+     */
+    private static class Server extends Thread
+    {
+        private final ServerSocket mServerSocket;
+
+
+        Server() throws Exception
+        {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            setDaemon(true);
+        }
+
+
+        String getURI()
+        {
+            return "ws://127.0.0.1:" + mServerSocket.getLocalPort() + "/";
+        }
+
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    Socket socket = mServerSocket.accept();
+                    socket.close();
+                }
+            }
+            catch (Exception e)
+            {
+                // The server socket has been closed.
+            }
+        }
+
+
+        void close() throws Exception
+        {
+            mServerSocket.close();
+        }
+    }
+
+
+    @Test
+    public void test001()
+    {
+        ReconnectPolicy policy = new ReconnectPolicy().setMinDelay(100).setMaxDelay(1000);
+        Random random = new Random();
+        long delay = 0;
+
+        for (int i = 0; i < 100; ++i)
+        {
+            long next = policy.nextDelay(delay, random);
+
+            // Between the minimum delay and three times the previous delay.
+            assertTrue(100 <= next);
+            assertTrue(next <= Math.min(1000, Math.max(delay, 100) * 3));
+
+            delay = next;
+        }
+    }
+
+
+    @Test
+    public void test002() throws Exception
+    {
+        Server server = new Server();
+        server.start();
+
+        try
+        {
+            final List<Boolean> retries = new ArrayList<Boolean>();
+            final List<WebSocket> failed = new ArrayList<WebSocket>();
+            final CountDownLatch latch = new CountDownLatch(1);
+
+            ReconnectManager manager = new ReconnectManager(
+                new ReconnectPolicy().setMinDelay(10).setMaxDelay(50).setMaxAttempts(3));
+
+            manager.addListener(new ReconnectAdapter() {
+                @Override
+                public void onReconnectError(ReconnectManager manager, WebSocket websocket, WebSocketException cause, boolean retrying)
+                {
+                    synchronized (retries)
+                    {
+                        retries.add(retrying);
+                        failed.add(websocket);
+                    }
+
+                    if (retrying == false)
+                    {
+                        latch.countDown();
+                    }
+                }
+            });
+
+            WebSocket ws = new WebSocketFactory().setConnectionTimeout(5000).createSocket(server.getURI());
+            manager.manage(ws);
+
+            // The failure triggers reconnection.
+            ws.connectAsynchronously();
+
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+            synchronized (retries)
+            {
+                assertEquals(3, retries.size());
+                assertTrue(retries.get(0));
+                assertTrue(retries.get(1));
+                assertFalse(retries.get(2));
+
+                // Each attempt uses a new instance.
+                assertNotSame(ws, failed.get(0));
+                assertNotSame(failed.get(0), failed.get(1));
+            }
+
+            // The manager has given up.
+            assertTrue(manager.getWebSockets().isEmpty());
+
+            manager.close();
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test003() throws Exception
+    {
+        Server server = new Server();
+        server.start();
+
+        try
+        {
+            final List<Long> delays = new ArrayList<Long>();
+            final CountDownLatch latch = new CountDownLatch(4);
+
+            // 10 attempts per second, i.e. 100 milliseconds apart.
+            ReconnectManager manager = new ReconnectManager(
+                new ReconnectPolicy().setMinDelay(1).setMaxDelay(1)
+                    .setMaxAttempts(1).setMaxReconnectRatePerHost(10));
+
+            manager.addListener(new ReconnectAdapter() {
+                @Override
+                public void onReconnecting(ReconnectManager manager, WebSocket websocket, int attempt, long delay)
+                {
+                    synchronized (delays)
+                    {
+                        delays.add(delay);
+                    }
+                }
+
+                @Override
+                public void onReconnectError(ReconnectManager manager, WebSocket websocket, WebSocketException cause, boolean retrying)
+                {
+                    latch.countDown();
+                }
+            });
+
+            WebSocketFactory factory = new WebSocketFactory().setConnectionTimeout(5000);
+
+            for (int i = 0; i < 4; ++i)
+            {
+                WebSocket ws = factory.createSocket(server.getURI());
+                manager.manage(ws);
+                ws.connectAsynchronously();
+            }
+
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+            synchronized (delays)
+            {
+                assertEquals(4, delays.size());
+
+                long max = 0;
+
+                for (long delay : delays)
+                {
+                    max = Math.max(max, delay);
+                }
+
+                // The last attempt waits for the others.
+                assertTrue(250 <= max);
+            }
+
+            manager.close();
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.KeyStore;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import org.junit.Test;
+
+
+public class SSLSessionResumptionTest
+{
+    // Self-signed certificate for "localhost" and "127.0.0.1".
+    private static final String KEY_STORE = "/server.p12";
+    private static final char[] PASSWORD = "password".toCharArray();
+
+
+    /**
+     * Server which performs SSL handshakes, reads the opening handshake
+     * requests and closes the connections without responding.
+     */
+    private static class Server extends Thread
+    {
+        private final SSLServerSocket mServerSocket;
+
+
+        Server(SSLContext context) throws Exception
+        {
+            mServerSocket = (SSLServerSocket)context.getServerSocketFactory()
+                    .createServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            setDaemon(true);
+        }
+
+
+        int getPort()
+        {
+            return mServerSocket.getLocalPort();
+        }
+
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    SSLSocket socket = (SSLSocket)mServerSocket.accept();
+
+                    try
+                    {
+                        socket.startHandshake();
+
+                        // Read the request until the empty line.
+                        BufferedReader reader = new BufferedReader(
+                                new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                        String line;
+                        while ((line = reader.readLine()) != null && line.length() != 0)
+                        {
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                    }
+                    finally
+                    {
+                        socket.close();
+                    }
+                }
+            }
+            catch (Exception e)
+            {
+                // The server socket has been closed.
+            }
+        }
+
+
+        void close() throws Exception
+        {
+            mServerSocket.close();
+        }
+    }
+
+
+    private static KeyStore loadKeyStore() throws Exception
+    {
+        InputStream in = SSLSessionResumptionTest.class.getResourceAsStream(KEY_STORE);
+
+        try
+        {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(in, PASSWORD);
+            return keyStore;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+
+    private static void connect(WebSocket ws)
+    {
+        try
+        {
+            ws.connect();
+        }
+        catch (WebSocketException e)
+        {
+            // The server closes the connection after the SSL handshake.
+        }
+    }
+
+
+    @Test
+    public void test001() throws Exception
+    {
+        KeyStore keyStore = loadKeyStore();
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, PASSWORD);
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+        SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, tmf.getTrustManagers(), null);
+
+        Server server = new Server(serverContext);
+        server.start();
+
+        try
+        {
+            WebSocketFactory factory = new WebSocketFactory()
+                .setSSLContext(clientContext)
+                .setSSLSessionCacheSize(16)
+                .setConnectionTimeout(5000)
+                .setHostResolver(new HostResolver() {
+                    public InetAddress[] resolve(String hostname) throws UnknownHostException
+                    {
+                        // Stand-in for DNS.
+                        return new InetAddress[] { InetAddress.getByName("127.0.0.1") };
+                    }
+                });
+
+            WebSocket ws = factory.createSocket("wss://localhost:" + server.getPort());
+
+            // The first connection performs a full handshake.
+            connect(ws);
+            assertEquals(1, factory.getFullSSLHandshakeCount());
+            assertEquals(0, factory.getResumedSSLHandshakeCount());
+
+            // The next connection resumes the session.
+            connect(ws.recreate());
+            assertEquals(1, factory.getFullSSLHandshakeCount());
+            assertEquals(1, factory.getResumedSSLHandshakeCount());
+
+            assertEquals(16, clientContext.getClientSessionContext().getSessionCacheSize());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.security.KeyStore;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import org.junit.Test;
+
+
+public class SelectorTransportTest
+{
+    // Self-signed certificate for "localhost" and "127.0.0.1".
+    private static final String KEY_STORE = "/server.p12";
+    private static final char[] PASSWORD = "password".toCharArray();
+
+
+    // Behaviors of the server after the text message.
+    private static final int ECHO   = 0;
+    private static final int ABRUPT = 1;
+    private static final int STALL  = 2;
+
+
+    /**
+     * Server which sends a text message after the opening handshake
+     * and echoes back text messages from the client. If told to, the
+     * server closes the connection without a close frame right after
+     * the text message, or sends a part of a frame and stops, instead.
+     */
+    private static class Server extends Thread
+    {
+        private final ServerSocket mServerSocket;
+        private final int mMode;
+
+
+        Server(ServerSocket serverSocket)
+        {
+            this(serverSocket, ECHO);
+        }
+
+
+        Server(ServerSocket serverSocket, int mode)
+        {
+            mServerSocket = serverSocket;
+            mMode = mode;
+            setDaemon(true);
+        }
+
+
+        int getPort()
+        {
+            return mServerSocket.getLocalPort();
+        }
+
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                Socket socket = mServerSocket.accept();
+                socket.setSoTimeout(5000);
+
+                InputStream input = socket.getInputStream();
+                OutputStream output = socket.getOutputStream();
+
+                ServerUtil.acceptHandshake(input, output);
+                output.write(ServerUtil.frame(0x81, "hello"));
+                output.flush();
+
+                if (mMode == ABRUPT)
+                {
+                    socket.close();
+                    return;
+                }
+
+                if (mMode == STALL)
+                {
+                    // The header of a text frame whose payload is 100
+                    // bytes long, and only 10 bytes of the payload.
+                    Thread.sleep(500);
+                    output.write(new byte[] { (byte)0x81, 100 });
+                    output.write(new byte[10]);
+                    output.flush();
+                }
+
+                // Echo back the text message from the client.
+                DataInputStream in = new DataInputStream(input);
+                in.readUnsignedByte();
+                output.write(ServerUtil.frame(0x81, ServerUtil.readPayload(in)));
+                output.flush();
+
+                // Wait until the client closes the connection.
+                while (input.read() != -1)
+                {
+                }
+
+                socket.close();
+            }
+            catch (Exception e)
+            {
+                // The server socket has been closed.
+            }
+        }
+
+
+        void close() throws Exception
+        {
+            mServerSocket.close();
+        }
+    }
+
+
+    private static SSLContext createContext(boolean server) throws Exception
+    {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        InputStream in = SelectorTransportTest.class.getResourceAsStream(KEY_STORE);
+
+        try
+        {
+            keyStore.load(in, PASSWORD);
+        }
+        finally
+        {
+            in.close();
+        }
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+
+        KeyManagerFactory kmf = null;
+
+        if (server)
+        {
+            kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(keyStore, PASSWORD);
+        }
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf == null ? null : kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+        return context;
+    }
+
+
+    private static void exchange(WebSocketFactory factory, String uri) throws Exception
+    {
+        final List<String> messages = new CopyOnWriteArrayList<String>();
+        final CountDownLatch latch = new CountDownLatch(2);
+
+        WebSocket ws = factory.createSocket(uri).addListener(new WebSocketAdapter() {
+            @Override
+            public void onTextMessage(WebSocket websocket, String text)
+            {
+                messages.add(text);
+                latch.countDown();
+            }
+        });
+
+        ws.connect();
+
+        // The reading thread and the writing thread run on the channel.
+        assertNotNull(ws.getSocketConnector().getChannelConnection());
+
+        ws.sendText("echo");
+
+        latch.await(5, TimeUnit.SECONDS);
+
+        assertEquals(2, messages.size());
+        assertEquals("hello", messages.get(0));
+        assertEquals("echo", messages.get(1));
+
+        ws.disconnect();
+    }
+
+
+    @Test
+    public void test001() throws Exception
+    {
+        Server server = new Server(new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1")));
+        server.start();
+
+        try
+        {
+            WebSocketFactory factory = new WebSocketFactory()
+                .setTransport(Transport.SELECTOR)
+                .setConnectionTimeout(5000);
+
+            exchange(factory, "ws://127.0.0.1:" + server.getPort());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test002() throws Exception
+    {
+        Server server = new Server(createContext(true).getServerSocketFactory()
+                .createServerSocket(0, 50, InetAddress.getByName("127.0.0.1")));
+        server.start();
+
+        try
+        {
+            WebSocketFactory factory = new WebSocketFactory()
+                .setTransport(Transport.SELECTOR)
+                .setSSLContext(createContext(false))
+                .setConnectionTimeout(5000)
+                .setHostResolver(new HostResolver() {
+                    public InetAddress[] resolve(String hostname) throws UnknownHostException
+                    {
+                        // Stand-in for DNS.
+                        return new InetAddress[] { InetAddress.getByName("127.0.0.1") };
+                    }
+                });
+
+            // The SSLEngine verifies the certificate and the hostname.
+            exchange(factory, "wss://localhost:" + server.getPort());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test003() throws Exception
+    {
+        Server server = new Server(new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1")), ABRUPT);
+        server.start();
+
+        try
+        {
+            final CountDownLatch latch = new CountDownLatch(1);
+
+            WebSocket ws = new WebSocketFactory()
+                .setTransport(Transport.SELECTOR)
+                .setConnectionTimeout(5000)
+                .createSocket("ws://127.0.0.1:" + server.getPort())
+                .addListener(new WebSocketAdapter() {
+                    @Override
+                    public void onDisconnected(WebSocket websocket,
+                            WebSocketFrame serverCloseFrame, WebSocketFrame clientCloseFrame,
+                            boolean closedByServer)
+                    {
+                        latch.countDown();
+                    }
+                });
+
+            ws.connect();
+
+            // The end of the stream is noticed although the channel is
+            // still open on this side and the reading task is parked.
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(WebSocketState.CLOSED, ws.getState());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test004() throws Exception
+    {
+        Server server = new Server(new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1")), STALL);
+        server.start();
+
+        try
+        {
+            final CountDownLatch latch = new CountDownLatch(1);
+
+            WebSocket ws = new WebSocketFactory()
+                .setTransport(Transport.SELECTOR)
+                .setConnectionTimeout(5000)
+                .createSocket("ws://127.0.0.1:" + server.getPort())
+                .addListener(new WebSocketAdapter() {
+                    @Override
+                    public void onDisconnected(WebSocket websocket,
+                            WebSocketFrame serverCloseFrame, WebSocketFrame clientCloseFrame,
+                            boolean closedByServer)
+                    {
+                        latch.countDown();
+                    }
+                });
+
+            ws.connect();
+
+            // The server stops in the middle of a frame. The socket timeout
+            // is 0, but the worker thread is not held forever.
+            ws.getSocketConnector().getChannelConnection().setStallTimeout(1000);
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(WebSocketState.CLOSED, ws.getState());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+}
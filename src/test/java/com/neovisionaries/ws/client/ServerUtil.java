@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Utilities for the servers of tests, which perform the opening handshake
+ * and exchange small frames with a client.
+ */
+class ServerUtil
+{
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+
+    private ServerUtil()
+    {
+    }
+
+
+    /**
+     * Read the opening handshake request from the client and send the
+     * successful response.
+     */
+    static void acceptHandshake(InputStream input, OutputStream output) throws Exception
+    {
+        output.write(Misc.getBytesUTF8(respond(readHead(input))));
+        output.flush();
+    }
+
+
+    /**
+     * Build the successful response to the opening handshake request.
+     */
+    static String respond(String request) throws Exception
+    {
+        Matcher matcher = Pattern.compile("Sec-WebSocket-Key: (\\S+)").matcher(request);
+        matcher.find();
+
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+                Misc.getBytesUTF8(matcher.group(1) + GUID));
+
+        return "HTTP/1.1 101 Switching Protocols\r\n" +
+               "Upgrade: websocket\r\n" +
+               "Connection: Upgrade\r\n" +
+               "Sec-WebSocket-Accept: " + Base64.encode(digest) + "\r\n\r\n";
+    }
+
+
+    /**
+     * Read an HTTP head up to and including the empty line.
+     */
+    static String readHead(InputStream input) throws Exception
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        int state = 0;
+
+        while (state < 4)
+        {
+            int b = input.read();
+
+            if (b == -1)
+            {
+                break;
+            }
+
+            buffer.write(b);
+
+            // Look for "\r\n\r\n".
+            state = (b == (state % 2 == 0 ? '\r' : '\n')) ? state + 1 : (b == '\r' ? 1 : 0);
+        }
+
+        return Misc.toStringUTF8(buffer.toByteArray());
+    }
+
+
+    static byte[] frame(int head, String payload)
+    {
+        return frame(head, Misc.getBytesUTF8(payload));
+    }
+
+
+    /**
+     * Build an unmasked frame whose payload is shorter than 126 bytes.
+     *
+     * @param head
+     *         The first byte of the frame, e.g. 0x81 for FIN + TEXT.
+     */
+    static byte[] frame(int head, byte[] payload)
+    {
+        byte[] frame = new byte[2 + payload.length];
+
+        frame[0] = (byte)head;
+        frame[1] = (byte)payload.length;
+        System.arraycopy(payload, 0, frame, 2, payload.length);
+
+        return frame;
+    }
+
+
+    /**
+     * Read the rest of a frame from the client after its first byte,
+     * and unmask the payload, which must be shorter than 126 bytes.
+     */
+    static byte[] readPayload(DataInputStream input) throws Exception
+    {
+        int length = input.readUnsignedByte() & 0x7F;
+
+        // Frames from a client are always masked.
+        byte[] mask    = new byte[4];
+        byte[] payload = new byte[length];
+        input.readFully(mask);
+        input.readFully(payload);
+
+        for (int i = 0; i < length; ++i)
+        {
+            payload[i] ^= mask[i % 4];
+        }
+
+        return payload;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+
+public class ShardedWebSocketTest
+{
+    /**
+     * Server which accepts any number of connections, echoes back text
+     * messages and close frames.
+     */
+    private static class Server extends Thread
+    {
+        private final ServerSocket mServerSocket;
+        final List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+
+
+        Server() throws Exception
+        {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            setDaemon(true);
+        }
+
+
+        int getPort()
+        {
+            return mServerSocket.getLocalPort();
+        }
+
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    final Socket socket = mServerSocket.accept();
+                    sockets.add(socket);
+
+                    Thread thread = new Thread() {
+                        @Override
+                        public void run()
+                        {
+                            serve(socket);
+                        }
+                    };
+
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            }
+            catch (Exception e)
+            {
+                // The server socket has been closed.
+            }
+        }
+
+
+        private static void serve(Socket socket)
+        {
+            try
+            {
+                InputStream input = socket.getInputStream();
+                OutputStream output = socket.getOutputStream();
+                DataInputStream in = new DataInputStream(input);
+
+                ServerUtil.acceptHandshake(input, output);
+
+                while (true)
+                {
+                    int opcode = in.readUnsignedByte() & 0x0F;
+                    byte[] payload = ServerUtil.readPayload(in);
+
+                    if (opcode == WebSocketOpcode.TEXT)
+                    {
+                        output.write(ServerUtil.frame(0x81, payload));
+                        output.flush();
+                    }
+                    else if (opcode == WebSocketOpcode.CLOSE)
+                    {
+                        output.write(ServerUtil.frame(0x88, payload));
+                        output.flush();
+                        break;
+                    }
+                }
+
+                socket.close();
+            }
+            catch (Exception e)
+            {
+                // The connection has been closed.
+            }
+        }
+
+
+        void close() throws Exception
+        {
+            mServerSocket.close();
+
+            for (Socket socket : sockets)
+            {
+                socket.close();
+            }
+        }
+    }
+
+
+    /**
+     * Listener which records the messages and the shards they came from.
+     */
+    private static class Recorder extends WebSocketAdapter
+    {
+        final List<String> messages = new CopyOnWriteArrayList<String>();
+        final List<WebSocket> sources = new CopyOnWriteArrayList<WebSocket>();
+        final CountDownLatch latch;
+
+
+        Recorder(int count)
+        {
+            latch = new CountDownLatch(count);
+        }
+
+
+        @Override
+        public void onTextMessage(WebSocket websocket, String text)
+        {
+            messages.add(text);
+            sources.add(websocket);
+            latch.countDown();
+        }
+
+
+        Map<WebSocket, Integer> countBySource()
+        {
+            Map<WebSocket, Integer> counts = new HashMap<WebSocket, Integer>();
+
+            for (WebSocket source : sources)
+            {
+                Integer count = counts.get(source);
+                counts.put(source, (count == null) ? 1 : count + 1);
+            }
+
+            return counts;
+        }
+    }
+
+
+    private static ShardedWebSocket connect(Server server, int shards, Recorder recorder) throws Exception
+    {
+        WebSocketFactory factory = new WebSocketFactory().setConnectionTimeout(5000);
+
+        return new ShardedWebSocket(factory, "ws://127.0.0.1:" + server.getPort(), shards)
+            .addListener(recorder)
+            .connect();
+    }
+
+
+    @Test
+    public void test001() throws Exception
+    {
+        Server server = new Server();
+        server.start();
+
+        try
+        {
+            // Round robin. Messages from the shards are merged.
+            Recorder recorder = new Recorder(6);
+            ShardedWebSocket ws = connect(server, 3, recorder);
+
+            assertEquals(3, ws.getOpenShardCount());
+
+            for (int i = 0; i < 6; ++i)
+            {
+                ws.sendText(String.valueOf(i));
+            }
+
+            assertTrue(recorder.latch.await(5, TimeUnit.SECONDS));
+
+            Map<WebSocket, Integer> counts = recorder.countBySource();
+            assertEquals(3, counts.size());
+
+            for (Integer count : counts.values())
+            {
+                assertEquals(2, (int)count);
+            }
+
+            ws.disconnect();
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test002() throws Exception
+    {
+        Server server = new Server();
+        server.start();
+
+        try
+        {
+            // Messages with the same key go through one shard in order.
+            Recorder recorder = new Recorder(20);
+            ShardedWebSocket ws = connect(server, 3, recorder)
+                .setStrategy(ShardingStrategy.LEAST_QUEUED);
+
+            assertEquals(ShardingStrategy.LEAST_QUEUED, ws.getStrategy());
+
+            for (int i = 0; i < 10; ++i)
+            {
+                ws.sendText("key", "k" + i);
+                ws.sendText("u" + i);
+            }
+
+            assertTrue(recorder.latch.await(5, TimeUnit.SECONDS));
+
+            List<String> keyed = new ArrayList<String>();
+            WebSocket source = null;
+
+            for (int i = 0; i < recorder.messages.size(); ++i)
+            {
+                String message = recorder.messages.get(i);
+
+                if (message.startsWith("k"))
+                {
+                    keyed.add(message);
+
+                    if (source != null)
+                    {
+                        assertTrue(source == recorder.sources.get(i));
+                    }
+
+                    source = recorder.sources.get(i);
+                }
+            }
+
+            for (int i = 0; i < 10; ++i)
+            {
+                assertEquals("k" + i, keyed.get(i));
+            }
+
+            ws.disconnect();
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test003() throws Exception
+    {
+        Server server = new Server();
+        server.start();
+
+        try
+        {
+            Recorder recorder = new Recorder(1);
+            ShardedWebSocket ws = connect(server, 2, recorder).setReconnectDelay(0);
+            WebSocket first = ws.getShards().get(0);
+
+            // Kill the connection of the first shard.
+            server.sockets.get(0).close();
+
+            long deadline = System.currentTimeMillis() + 5000;
+
+            while (ws.getShards().get(0) == first || ws.getOpenShardCount() < 2)
+            {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+
+            // The shard has been replaced by a new connection.
+            assertNotSame(first, ws.getShards().get(0));
+            assertEquals(3, server.sockets.size());
+
+            // The replacement inherits the listeners.
+            ws.sendText(ws.getShards().get(0).hashCode(), "x");
+            assertTrue(recorder.latch.await(5, TimeUnit.SECONDS));
+
+            // Shards are not replaced after disconnect().
+            ws.disconnect();
+            Thread.sleep(200);
+            assertEquals(3, server.sockets.size());
+            assertEquals(0, ws.getOpenShardCount());
+            assertFalse(ws.getShards().get(0).isOpen());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test004() throws Exception
+    {
+        new ShardedWebSocket(new WebSocketFactory(), "ws://localhost/", 0);
+    }
+}
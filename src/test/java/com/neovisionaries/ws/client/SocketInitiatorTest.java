@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.net.SocketFactory;
+import org.junit.Test;
+
+
+public class SocketInitiatorTest
+{
+    @Test
+    public void test001() throws Exception
+    {
+        InetAddress good = InetAddress.getByName("127.0.0.1");
+        InetAddress bad  = InetAddress.getByName("127.0.0.2");
+        ServerSocket server = new ServerSocket(0, 50, good);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        AddressScoreboard scoreboard = new AddressScoreboard();
+
+        try
+        {
+            Address address = new Address("localhost", server.getLocalPort());
+
+            // The fallback delay is long, so the second address would not
+            // race in time unless the refused first address released it.
+            SocketInitiator initiator = new SocketInitiator(
+                    SocketFactory.getDefault(), address, 5000, null,
+                    DualStackMode.BOTH, 10000, false, scoreboard, executor);
+
+            long start  = System.currentTimeMillis();
+            Socket socket = initiator.establish(new InetAddress[] { bad, good });
+            long elapsed = System.currentTimeMillis() - start;
+
+            assertTrue(socket.isConnected());
+            assertEquals(good, socket.getInetAddress());
+            assertTrue(elapsed < 5000);
+            socket.close();
+
+            // The refused address has been demoted.
+            InetAddress[] expected = { good, bad };
+            assertArrayEquals(expected, scoreboard.sort(new InetAddress[] { bad, good }));
+        }
+        finally
+        {
+            executor.shutdownNow();
+            server.close();
+        }
+    }
+
+
+    @Test(timeout = 10000)
+    public void test002() throws Exception
+    {
+        InetAddress good = InetAddress.getByName("127.0.0.1");
+        final InetAddress hung = InetAddress.getByName("127.0.0.3");
+        ServerSocket server = new ServerSocket(0, 50, good);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newCachedThreadPool();
+
+        // A socket factory whose connect() to the hung address blocks
+        // like one to a blackholed host with no connect timeout.
+        final SocketFactory factory = new SocketFactory() {
+            @Override
+            public Socket createSocket()
+            {
+                return new Socket() {
+                    @Override
+                    public void connect(SocketAddress endpoint, int timeout) throws IOException
+                    {
+                        if (hung.equals(((InetSocketAddress)endpoint).getAddress()))
+                        {
+                            try
+                            {
+                                release.await();
+                            }
+                            catch (InterruptedException e)
+                            {
+                            }
+
+                            throw new SocketTimeoutException();
+                        }
+
+                        super.connect(endpoint, timeout);
+                    }
+                };
+            }
+
+            @Override
+            public Socket createSocket(String host, int port)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Socket createSocket(InetAddress host, int port)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        try
+        {
+            final Address address = new Address("localhost", server.getLocalPort());
+
+            // Occupy more threads than the shared executor pools with
+            // connect() calls which hang.
+            for (int i = 0; i < 100; ++i)
+            {
+                callers.execute(new Runnable() {
+                    public void run()
+                    {
+                        try
+                        {
+                            new SocketInitiator(factory, address, 0, null, DualStackMode.BOTH,
+                                    250, false, new AddressScoreboard(), null)
+                                .establish(new InetAddress[] { hung });
+                        }
+                        catch (Exception e)
+                        {
+                        }
+                    }
+                });
+            }
+
+            Thread.sleep(500);
+
+            // A connection to another address is not queued behind them.
+            SocketInitiator initiator = new SocketInitiator(
+                    factory, address, 0, null, DualStackMode.BOTH,
+                    250, false, new AddressScoreboard(), null);
+
+            long start  = System.currentTimeMillis();
+            Socket socket = initiator.establish(new InetAddress[] { good });
+            long elapsed = System.currentTimeMillis() - start;
+
+            assertTrue(socket.isConnected());
+            assertTrue(elapsed < 2000);
+            socket.close();
+        }
+        finally
+        {
+            release.countDown();
+            callers.shutdown();
+            callers.awaitTermination(5, TimeUnit.SECONDS);
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+
+public class SocketPoolTest
+{
+    /**
+     * Server which records the remote ports of accepted connections and
+     * closes each connection when it receives data or EOF.
+     */
+    private static class Server extends Thread
+    {
+        private final ServerSocket mServerSocket;
+        final List<Integer> ports = new ArrayList<Integer>();
+        int closedByClient;
+
+
+        Server() throws Exception
+        {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            setDaemon(true);
+        }
+
+
+        String getURI()
+        {
+            return "ws://127.0.0.1:" + mServerSocket.getLocalPort() + "/";
+        }
+
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    final Socket socket = mServerSocket.accept();
+
+                    synchronized (this)
+                    {
+                        ports.add(socket.getPort());
+                        notifyAll();
+                    }
+
+                    new Thread() {
+                        @Override
+                        public void run()
+                        {
+                            serve(socket);
+                        }
+                    }.start();
+                }
+            }
+            catch (Exception e)
+            {
+                // The server socket has been closed.
+            }
+        }
+
+
+        private void serve(Socket socket)
+        {
+            try
+            {
+                InputStream in = socket.getInputStream();
+
+                if (in.read() == -1)
+                {
+                    synchronized (this)
+                    {
+                        ++closedByClient;
+                        notifyAll();
+                    }
+                }
+
+                socket.close();
+            }
+            catch (Exception e)
+            {
+            }
+        }
+
+
+        synchronized void awaitAccepts(int count) throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + 5000;
+
+            while (ports.size() < count && System.currentTimeMillis() < deadline)
+            {
+                wait(100);
+            }
+        }
+
+
+        synchronized void awaitClosedByClient(int count) throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + 5000;
+
+            while (closedByClient < count && System.currentTimeMillis() < deadline)
+            {
+                wait(100);
+            }
+        }
+
+
+        void close() throws Exception
+        {
+            mServerSocket.close();
+        }
+    }
+
+
+    @Test
+    public void test001() throws Exception
+    {
+        Server server = new Server();
+        server.start();
+
+        WebSocketFactory factory = new WebSocketFactory()
+            .setConnectionTimeout(5000)
+            .setPreConnectedSocketCount(2);
+
+        try
+        {
+            factory.preConnect(server.getURI());
+            server.awaitAccepts(2);
+            assertEquals(2, server.ports.size());
+
+            // Wait until the connected sockets are added to the pool.
+            Thread.sleep(100);
+
+            WebSocket ws = factory.createSocket(server.getURI());
+
+            try
+            {
+                // The server closes the connection on the opening handshake.
+                ws.connect();
+            }
+            catch (WebSocketException e)
+            {
+            }
+
+            // One of the pre-connected sockets has been used.
+            int port = ws.getSocket().getLocalPort();
+            assertTrue(server.ports.subList(0, 2).contains(port));
+
+            // The used socket is replaced.
+            server.awaitAccepts(3);
+            assertEquals(3, server.ports.size());
+
+            // The pooled sockets are closed.
+            Thread.sleep(100);
+            factory.closePreConnectedSockets();
+            server.awaitClosedByClient(2);
+            assertEquals(2, server.closedByClient);
+        }
+        finally
+        {
+            factory.setPreConnectedSocketCount(0);
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test002() throws Exception
+    {
+        Server server = new Server();
+        server.start();
+
+        WebSocketFactory factory = new WebSocketFactory()
+            .setPreConnectedSocketCount(1)
+            .setPreConnectedSocketLifetime(100);
+
+        try
+        {
+            factory.preConnect(server.getURI());
+
+            // The expired socket is replaced by the background maintenance.
+            server.awaitAccepts(2);
+            assertEquals(2, server.ports.size());
+        }
+        finally
+        {
+            factory.setPreConnectedSocketCount(0);
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Test;
+
+
+public class SynchronousModeTest
+{
+    /**
+     * Server which sends a ping frame and some messages, waits for the
+     * pong frame and a text message from the client, and then closes
+     * the connection.
+     */
+    private static class Server extends Thread
+    {
+        private final ServerSocket mServerSocket;
+        final List<String> received = new CopyOnWriteArrayList<String>();
+
+
+        Server() throws Exception
+        {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            setDaemon(true);
+        }
+
+
+        int getPort()
+        {
+            return mServerSocket.getLocalPort();
+        }
+
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                Socket socket = mServerSocket.accept();
+                socket.setSoTimeout(5000);
+
+                InputStream input = socket.getInputStream();
+                OutputStream output = socket.getOutputStream();
+                DataInputStream in = new DataInputStream(input);
+
+                ServerUtil.acceptHandshake(input, output);
+
+                // A ping frame and a fragmented text message.
+                output.write(ServerUtil.frame(0x89, "p"));
+                output.write(ServerUtil.frame(0x01, "hel"));
+                output.write(ServerUtil.frame(0x80, "lo"));
+                output.write(ServerUtil.frame(0x82, new byte[] { 1, 2, 3 }));
+                output.flush();
+
+                // The pong frame and a text message.
+                received.add(readFrame(in));
+                received.add(readFrame(in));
+
+                // A message too long for the client's buffer.
+                output.write(ServerUtil.frame(0x81, "01234567890123456789"));
+                output.write(ServerUtil.frame(0x81, "ok"));
+                output.write(ServerUtil.frame(0x88, new byte[] { 0x03, (byte)0xE8 }));
+                output.flush();
+
+                // The close frame echoed back.
+                received.add(readFrame(in));
+
+                socket.close();
+            }
+            catch (Exception e)
+            {
+                // The server socket has been closed.
+            }
+        }
+
+
+        /**
+         * Read a frame from the client and describe it as "opcode:payload".
+         */
+        private static String readFrame(DataInputStream input) throws Exception
+        {
+            int opcode = input.readUnsignedByte() & 0x0F;
+
+            return opcode + ":" + Misc.toStringUTF8(ServerUtil.readPayload(input));
+        }
+
+
+        void close() throws Exception
+        {
+            mServerSocket.close();
+        }
+    }
+
+
+    private static String toString(ByteBuffer buffer)
+    {
+        buffer.flip();
+
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        buffer.clear();
+
+        return Misc.toStringUTF8(bytes);
+    }
+
+
+    @Test
+    public void test001() throws Exception
+    {
+        Server server = new Server();
+        server.start();
+
+        try
+        {
+            final List<Thread> senders = new CopyOnWriteArrayList<Thread>();
+            final List<WebSocketFrame> closeFrames = new CopyOnWriteArrayList<WebSocketFrame>();
+
+            WebSocket ws = new WebSocketFactory()
+                .setConnectionTimeout(5000)
+                .createSocket("ws://127.0.0.1:" + server.getPort())
+                .setSynchronous(true)
+                .addListener(new WebSocketAdapter() {
+                    @Override
+                    public void onFrameSent(WebSocket websocket, WebSocketFrame frame)
+                    {
+                        senders.add(Thread.currentThread());
+                    }
+
+                    @Override
+                    public void onDisconnected(WebSocket websocket,
+                            WebSocketFrame serverCloseFrame, WebSocketFrame clientCloseFrame,
+                            boolean closedByServer)
+                    {
+                        closeFrames.add(serverCloseFrame);
+                    }
+                })
+                .connect();
+
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+
+            // The ping frame is answered and the fragments are reassembled.
+            assertEquals(WebSocketOpcode.TEXT, ws.receive(buffer, 5000));
+            assertEquals("hello", toString(buffer));
+
+            assertEquals(WebSocketOpcode.BINARY, ws.receive(buffer, 5000));
+            buffer.flip();
+            byte[] binary = new byte[buffer.remaining()];
+            buffer.get(binary);
+            buffer.clear();
+            assertArrayEquals(new byte[] { 1, 2, 3 }, binary);
+
+            // The server is waiting for a message.
+            assertEquals(-1, ws.receive(buffer, 100));
+
+            // Written on this thread before sendText() returns.
+            ws.sendText("echo");
+            assertSame(Thread.currentThread(), senders.get(senders.size() - 1));
+
+            try
+            {
+                ws.receive(ByteBuffer.allocate(8), 5000);
+                fail("The message did not overflow the buffer.");
+            }
+            catch (WebSocketException e)
+            {
+                assertEquals(WebSocketError.BUFFER_OVERFLOW, e.getError());
+            }
+
+            // The connection is still usable after the overflow.
+            assertEquals(WebSocketOpcode.TEXT, ws.receive(buffer, 5000));
+            assertEquals("ok", toString(buffer));
+
+            assertEquals(WebSocketOpcode.CLOSE, ws.receive(buffer, 5000));
+            assertEquals(WebSocketState.CLOSED, ws.getState());
+            assertEquals(1, closeFrames.size());
+            assertNotNull(closeFrames.get(0));
+            assertEquals(WebSocketCloseCode.NORMAL, closeFrames.get(0).getCloseCode());
+
+            server.join(5000);
+
+            assertEquals(3, server.received.size());
+            assertEquals(WebSocketOpcode.PONG + ":p", server.received.get(0));
+            assertEquals(WebSocketOpcode.TEXT + ":echo", server.received.get(1));
+            assertEquals(WebSocketOpcode.CLOSE, Integer.parseInt(server.received.get(2).split(":")[0]));
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test(expected = IllegalStateException.class)
+    public void test002() throws Exception
+    {
+        WebSocket ws = new WebSocketFactory().createSocket("ws://localhost/");
+
+        // Not connected in the synchronous mode.
+        ws.receive(ByteBuffer.allocate(8), 0);
+    }
+
+
+    @Test
+    public void test003() throws Exception
+    {
+        EchoServer server = new EchoServer(0);
+        server.start();
+
+        try
+        {
+            final List<String> senders = new CopyOnWriteArrayList<String>();
+
+            WebSocket ws = new WebSocketFactory()
+                .setConnectionTimeout(5000)
+                .createSocket("ws://127.0.0.1:" + server.getPort())
+                .setSynchronous(true)
+                .setPingInterval(50)
+                .addListener(new WebSocketAdapter() {
+                    @Override
+                    public void onFrameSent(WebSocket websocket, WebSocketFrame frame)
+                    {
+                        if (frame.isPingFrame())
+                        {
+                            senders.add(Thread.currentThread().getName());
+                        }
+                    }
+                })
+                .connect();
+
+            // Ping frames are sent while nobody calls receive(), but they
+            // are not written on the thread of the shared timer.
+            Thread.sleep(500);
+
+            assertTrue(0 < senders.size());
+
+            for (String sender : senders)
+            {
+                assertNotEquals("WebSocketTimer", sender);
+            }
+
+            ws.disconnect(WebSocketCloseCode.NORMAL, null, 0);
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+}
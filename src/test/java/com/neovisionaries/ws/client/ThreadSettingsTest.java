@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+
+public class ThreadSettingsTest
+{
+    /**
+     * Listener which records the thread events of connect threads.
+     */
+    private static class Recorder extends WebSocketAdapter
+    {
+        final List<String> events = new ArrayList<String>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        final CountDownLatch stopped = new CountDownLatch(1);
+
+
+        private synchronized void record(String event, ThreadType type, Thread thread)
+        {
+            if (type == ThreadType.CONNECT_THREAD)
+            {
+                events.add(event);
+                threads.add(thread);
+            }
+        }
+
+
+        @Override
+        public void onThreadCreated(WebSocket websocket, ThreadType type, Thread thread)
+        {
+            record("created", type, thread);
+        }
+
+
+        @Override
+        public void onThreadStarted(WebSocket websocket, ThreadType type, Thread thread)
+        {
+            record("started", type, thread);
+        }
+
+
+        @Override
+        public void onThreadStopping(WebSocket websocket, ThreadType type, Thread thread)
+        {
+            record("stopping", type, thread);
+
+            if (type == ThreadType.CONNECT_THREAD)
+            {
+                stopped.countDown();
+            }
+        }
+    }
+
+
+    private static WebSocket createSocket(WebSocketFactory factory) throws Exception
+    {
+        // Nothing listens on the port, so the connect thread fails soon.
+        return factory.setConnectionTimeout(1000).createSocket("ws://127.0.0.1:1/");
+    }
+
+
+    @Test
+    public void test001() throws Exception
+    {
+        final List<Thread> created = new ArrayList<Thread>();
+
+        WebSocketFactory factory = new WebSocketFactory().setThreadFactory(
+            ThreadType.CONNECT_THREAD, new ThreadFactory() {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "custom");
+
+                    synchronized (created)
+                    {
+                        created.add(thread);
+                    }
+
+                    return thread;
+                }
+            });
+
+        Recorder recorder = new Recorder();
+        createSocket(factory).addListener(recorder).connectAsynchronously();
+
+        assertTrue(recorder.stopped.await(10, TimeUnit.SECONDS));
+
+        synchronized (recorder)
+        {
+            assertEquals("[created, started, stopping]", recorder.events.toString());
+
+            // All the events are for the thread created by the factory.
+            for (Thread thread : recorder.threads)
+            {
+                assertSame(created.get(0), thread);
+            }
+        }
+    }
+
+
+    @Test
+    public void test002() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try
+        {
+            WebSocketFactory factory = new WebSocketFactory()
+                .setThreadFactory(ThreadType.CONNECT_THREAD, Executors.defaultThreadFactory())
+                .setExecutor(ThreadType.CONNECT_THREAD, executor);
+
+            // The executor replaces the thread factory.
+            assertNull(factory.getThreadFactory(ThreadType.CONNECT_THREAD));
+
+            Recorder recorder = new Recorder();
+            WebSocket ws = createSocket(factory).addListener(recorder);
+            assertSame(executor, ws.getExecutor(ThreadType.CONNECT_THREAD));
+
+            ws.connectAsynchronously();
+
+            assertTrue(recorder.stopped.await(10, TimeUnit.SECONDS));
+
+            synchronized (recorder)
+            {
+                // onThreadCreated() is called in the thread of the executor.
+                assertEquals("[created, started, stopping]", recorder.events.toString());
+                assertSame(recorder.threads.get(0), recorder.threads.get(2));
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void test003()
+    {
+        if (VirtualThreads.isAvailable())
+        {
+            ThreadFactory factory = VirtualThreads.newThreadFactory("virtual");
+            Thread thread = factory.newThread(new Runnable() {
+                public void run()
+                {
+                }
+            });
+
+            assertEquals("virtual", thread.getName());
+            return;
+        }
+
+        try
+        {
+            new WebSocketFactory().useVirtualThreads();
+            fail("Virtual threads are not available on this runtime.");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+
+public class WaitStrategyTest
+{
+    private static final int COUNT = 20;
+
+
+    private static void exchange(WaitStrategy strategy) throws Exception
+    {
+        EchoServer server = new EchoServer(COUNT);
+        server.start();
+
+        try
+        {
+            final List<String> messages = new CopyOnWriteArrayList<String>();
+            final CountDownLatch latch  = new CountDownLatch(COUNT);
+            final CountDownLatch closed = new CountDownLatch(1);
+
+            WebSocket ws = new WebSocketFactory()
+                .setConnectionTimeout(5000)
+                .createSocket("ws://127.0.0.1:" + server.getPort())
+                .setWaitStrategy(strategy)
+                .addListener(new WebSocketAdapter() {
+                    @Override
+                    public void onTextMessage(WebSocket websocket, String text)
+                    {
+                        messages.add(text);
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onDisconnected(WebSocket websocket,
+                            WebSocketFrame serverCloseFrame, WebSocketFrame clientCloseFrame,
+                            boolean closedByServer)
+                    {
+                        closed.countDown();
+                    }
+                })
+                .connect();
+
+            assertEquals(strategy, ws.getWaitStrategy());
+
+            // Send messages one by one, letting the writing thread wait
+            // between them.
+            for (int i = 0; i < COUNT; ++i)
+            {
+                ws.sendText(String.valueOf(i));
+                Thread.sleep(5);
+            }
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            for (int i = 0; i < COUNT; ++i)
+            {
+                assertEquals(String.valueOf(i), messages.get(i));
+            }
+
+            // The writing thread stops while waiting.
+            ws.disconnect(WebSocketCloseCode.NORMAL, null, 0);
+            assertTrue(closed.await(5, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test001() throws Exception
+    {
+        exchange(WaitStrategy.BLOCKING);
+    }
+
+
+    @Test
+    public void test002() throws Exception
+    {
+        exchange(WaitStrategy.YIELDING);
+    }
+
+
+    @Test
+    public void test003() throws Exception
+    {
+        exchange(WaitStrategy.BUSY_SPIN_THEN_PARK);
+    }
+
+
+    @Test
+    public void test004() throws Exception
+    {
+        exchange(WaitStrategy.TIMED_PARK);
+    }
+
+
+    @Test
+    public void test005()
+    {
+        WebSocket ws = new WebSocket(new WebSocketFactory(), false, null, "localhost", "/", null);
+
+        assertEquals(WaitStrategy.BLOCKING, ws.getWaitStrategy());
+        assertEquals(WaitStrategy.BLOCKING, ws.setWaitStrategy(null).getWaitStrategy());
+    }
+}
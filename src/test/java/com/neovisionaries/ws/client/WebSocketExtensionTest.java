@@ -20,6 +20,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
@@ -87,4 +88,78 @@ public class WebSocketExtensionTest
         assertEquals("1", extension.getParameter("x"));
         assertEquals("2", extension.getParameter("y"));
     }
+
+
+    private static class ReversingExtension extends PerMessageCompressionExtension
+    {
+        public ReversingExtension(String name)
+        {
+            super(name);
+        }
+
+
+        private static byte[] reverse(byte[] data)
+        {
+            byte[] reversed = new byte[data.length];
+
+            for (int i = 0; i < data.length; ++i)
+            {
+                reversed[i] = data[data.length - 1 - i];
+            }
+
+            return reversed;
+        }
+
+
+        @Override
+        protected byte[] compress(byte[] plain)
+        {
+            return reverse(plain);
+        }
+
+
+        @Override
+        protected byte[] decompress(byte[] compressed)
+        {
+            return reverse(compressed);
+        }
+    }
+
+
+    @Test
+    public void test006() throws WebSocketException
+    {
+        WebSocketExtension.registerPerMessageCompressionExtension("x-reverse",
+            new PerMessageCompressionExtensionFactory() {
+                public PerMessageCompressionExtension create(String name)
+                {
+                    return new ReversingExtension(name);
+                }
+            });
+
+        try
+        {
+            WebSocketExtension extension = parse("x-reverse; level=3");
+
+            assertTrue(extension instanceof ReversingExtension);
+            assertEquals("x-reverse", extension.getName());
+            assertEquals("3", extension.getParameter("level"));
+
+            // Fragments are accumulated by the default implementation.
+            ReversingExtension codec = (ReversingExtension)extension;
+            byte[] compressed = codec.compress(new byte[] { 1, 2, 3, 4 });
+            assertNull(codec.decompressFragment(new byte[] { compressed[0], compressed[1] }, false, 0));
+            byte[] plain = codec.decompressFragment(new byte[] { compressed[2], compressed[3] }, true, 0);
+            assertEquals(4, plain.length);
+            assertEquals(1, plain[0]);
+            assertEquals(4, plain[3]);
+        }
+        finally
+        {
+            WebSocketExtension.unregisterPerMessageCompressionExtension("x-reverse");
+        }
+
+        // No longer a per-message compression extension.
+        assertSame(WebSocketExtension.class, parse("x-reverse").getClass());
+    }
 }
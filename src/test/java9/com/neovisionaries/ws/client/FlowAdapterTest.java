@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2019 Neo Visionaries Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.neovisionaries.ws.client;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+
+public class FlowAdapterTest
+{
+    private static final int COUNT = 10;
+
+
+    /**
+     * Subscriber which records the signals from a publisher.
+     */
+    private static class Recorder implements Flow.Subscriber<WebSocketFrame>
+    {
+        final List<String> messages = new CopyOnWriteArrayList<String>();
+        final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final CountDownLatch received;
+        final CountDownLatch terminated = new CountDownLatch(1);
+        volatile Flow.Subscription subscription;
+
+
+        Recorder(int count)
+        {
+            received = new CountDownLatch(count);
+        }
+
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            this.subscription = subscription;
+            subscribed.countDown();
+        }
+
+
+        @Override
+        public void onNext(WebSocketFrame frame)
+        {
+            messages.add(frame.getPayloadText());
+            received.countDown();
+        }
+
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            errors.add(throwable);
+            terminated.countDown();
+        }
+
+
+        @Override
+        public void onComplete()
+        {
+            terminated.countDown();
+        }
+    }
+
+
+    @Test
+    public void test001() throws Exception
+    {
+        EchoServer server = new EchoServer(COUNT);
+        server.start();
+
+        try
+        {
+            final CountDownLatch closing = new CountDownLatch(1);
+
+            WebSocket ws = new WebSocketFactory()
+                .setConnectionTimeout(5000)
+                .createSocket("ws://127.0.0.1:" + server.getPort())
+                .addListener(new WebSocketAdapter() {
+                    @Override
+                    public void onFrameSent(WebSocket websocket, WebSocketFrame frame)
+                    {
+                        if (frame.isCloseFrame())
+                        {
+                            closing.countDown();
+                        }
+                    }
+                });
+
+            Recorder recorder = new Recorder(COUNT);
+            new WebSocketPublisher(ws).subscribe(recorder);
+            assertTrue(recorder.subscribed.await(5, TimeUnit.SECONDS));
+
+            ws.connect();
+
+            // Messages sent by a Flow.Publisher.
+            SubmissionPublisher<WebSocketFrame> source = new SubmissionPublisher<WebSocketFrame>();
+            source.subscribe(new WebSocketSubscriber(ws));
+
+            for (int i = 0; i < COUNT; ++i)
+            {
+                source.submit(WebSocketFrame.createTextFrame(String.valueOf(i)));
+            }
+
+            // Only the requested messages are published.
+            recorder.subscription.request(3);
+            Thread.sleep(500);
+            assertEquals(3, recorder.messages.size());
+
+            recorder.subscription.request(Long.MAX_VALUE);
+            assertTrue(recorder.received.await(5, TimeUnit.SECONDS));
+
+            for (int i = 0; i < COUNT; ++i)
+            {
+                assertEquals(String.valueOf(i), recorder.messages.get(i));
+            }
+
+            // onComplete() disconnects the web socket.
+            source.close();
+            assertTrue(closing.await(5, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+
+    @Test
+    public void test002() throws Exception
+    {
+        WebSocket ws = new WebSocketFactory().createSocket("ws://localhost/");
+        WebSocketPublisher publisher = new WebSocketPublisher(ws);
+
+        publisher.subscribe(new Recorder(0));
+
+        // A second subscriber is rejected.
+        Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+
+        assertTrue(recorder.terminated.await(5, TimeUnit.SECONDS));
+        assertEquals(1, recorder.errors.size());
+        assertTrue(recorder.errors.get(0) instanceof IllegalStateException);
+    }
+
+
+    @Test
+    public void test003() throws Exception
+    {
+        EchoServer server = new EchoServer(0);
+        server.start();
+
+        try
+        {
+            WebSocket ws = new WebSocketFactory()
+                .setConnectionTimeout(5000)
+                .createSocket("ws://127.0.0.1:" + server.getPort());
+
+            Recorder recorder = new Recorder(0);
+            new WebSocketPublisher(ws).subscribe(recorder);
+
+            ws.connect();
+
+            // The subscriber is completed when the web socket is disconnected.
+            ws.disconnect(WebSocketCloseCode.NORMAL, null, 0);
+            assertTrue(recorder.terminated.await(5, TimeUnit.SECONDS));
+            assertEquals(0, recorder.errors.size());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+}